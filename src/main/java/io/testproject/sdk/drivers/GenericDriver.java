@@ -24,9 +24,9 @@ import io.testproject.sdk.internal.exceptions.ObsoleteVersionException;
 import io.testproject.sdk.internal.helpers.GenericCommandExecutor;
 import io.testproject.sdk.internal.helpers.ReportingCommandsExecutor;
 import io.testproject.sdk.internal.reporting.Reporter;
+import io.testproject.sdk.internal.rest.AgentCapabilities;
 import io.testproject.sdk.internal.rest.AgentClient;
 import io.testproject.sdk.internal.rest.ReportSettings;
-import org.apache.maven.artifact.versioning.ComparableVersion;
 import org.openqa.selenium.Platform;
 import org.openqa.selenium.remote.CapabilityType;
 import org.openqa.selenium.remote.Command;
@@ -41,11 +41,6 @@ import java.net.URL;
  */
 public final class GenericDriver implements ReportingDriver {
 
-    /**
-     * Minimum Agent version that supports Generic drivers.
-     */
-    private static final String MIN_GENERIC_DRIVER_SUPPORTED_VERSION = "0.64.40";
-
     /**
      * Steps reporter instance.
      */
@@ -562,11 +557,10 @@ public final class GenericDriver implements ReportingDriver {
         DesiredCapabilities capabilities = new DesiredCapabilities();
         capabilities.setCapability(CapabilityType.PLATFORM_NAME, Platform.ANY);
 
-        String version = AgentClient.getVersion(remoteAddress);
-        if (new ComparableVersion(version).compareTo(
-                new ComparableVersion(MIN_GENERIC_DRIVER_SUPPORTED_VERSION)) < 0) {
+        AgentCapabilities agent = AgentClient.getCapabilities(remoteAddress);
+        if (!agent.isGenericDriver()) {
             StringBuilder message = new StringBuilder()
-                    .append("Target Agent version").append(" [").append(version).append("] ")
+                    .append("Target Agent version").append(" [").append(agent.getVersion()).append("] ")
                     .append("doesn't support Generic driver. ")
                     .append("Upgrade the Agent to the latest version and try again.");
             throw new AgentConnectException(message.toString());
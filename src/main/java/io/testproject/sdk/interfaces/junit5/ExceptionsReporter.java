@@ -23,7 +23,8 @@ import org.junit.jupiter.api.extension.ExtendWith;
 /**
  * Implementing this interface enabled automatic JUnit5 assertions reporting.
  */
-@ExtendWith({io.testproject.sdk.internal.reporting.extensions.junit5.ExceptionsReporter.class})
+@ExtendWith({io.testproject.sdk.internal.reporting.extensions.junit5.ExceptionsReporter.class,
+        io.testproject.sdk.internal.reporting.extensions.junit5.TestContextPublisher.class})
 public interface ExceptionsReporter {
 
     /**
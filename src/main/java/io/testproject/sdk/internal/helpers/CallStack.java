@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.helpers;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Lazy view of the calling thread's stack, used to infer the running test on every driver command.
+ * <p>
+ * Frames are walked with a {@link StackWalker} only as deep as the searches need, and no deeper than the limit
+ * set in {@value #TP_STACK_FRAMES_LIMIT_VARIABLE_NAME}. Frames walked once are kept for the following searches,
+ * which only walk the frames beyond them. Only the class and method of a frame are resolved, stack trace
+ * elements are never materialized. The stack can only be walked by the thread that captured it,
+ * before the method that captured it returns.
+ */
+public final class CallStack {
+
+    /**
+     * Constant for environment variable name that may store the maximum number of frames to walk.
+     */
+    public static final String TP_STACK_FRAMES_LIMIT_VARIABLE_NAME = "TP_STACK_FRAMES_LIMIT";
+
+    /**
+     * The default maximum number of frames to walk is 512.
+     */
+    private static final int FRAMES_LIMIT = 512;
+
+    /**
+     * Maximum number of frames to walk, read once since the stack is walked on every driver command.
+     */
+    private static final int LIMIT = Math.max(1, EnvironmentHelper.getInt(TP_STACK_FRAMES_LIMIT_VARIABLE_NAME,
+            FRAMES_LIMIT));
+
+    /**
+     * Walker resolving the classes of the frames, so that they don't have to be loaded by name.
+     */
+    private static final StackWalker WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    /**
+     * Thread that captured the stack.
+     */
+    private final Thread thread;
+
+    /**
+     * Frame of the method that captured the stack, the frames above it are the ones of the searches.
+     */
+    private final StackWalker.StackFrame capturer;
+
+    /**
+     * Frames walked so far, from the one of the method that captured the stack.
+     */
+    private final List<StackWalker.StackFrame> frames;
+
+    /**
+     * True once all the frames within the limit were walked.
+     */
+    private boolean complete;
+
+    /**
+     * Initializes a new view of the current thread's stack.
+     *
+     * @param frames   Frames walked when capturing the stack, from the one of the method that captured it.
+     * @param complete True if all the frames within the limit were walked.
+     */
+    private CallStack(final List<StackWalker.StackFrame> frames, final boolean complete) {
+        this.thread = Thread.currentThread();
+        this.capturer = frames.get(0);
+        this.frames = frames;
+        this.complete = complete;
+    }
+
+    /**
+     * Captures the stack of the current thread. Only the frame of the calling method is walked.
+     *
+     * @return View of the current thread's stack.
+     */
+    public static CallStack capture() {
+        return capture(frame -> true);
+    }
+
+    /**
+     * Captures the stack of the current thread, walking right away the frames down to the first one that matches.
+     * Searches that stop at or above this frame don't have to walk the stack again.
+     *
+     * @param until Predicate matching the last frame to walk.
+     * @return View of the current thread's stack.
+     */
+    public static CallStack capture(final Predicate<StackWalker.StackFrame> until) {
+        List<StackWalker.StackFrame> walked = new ArrayList<>();
+        boolean complete = WALKER.walk(stream -> {
+            // Skip the frames of this class, down to the method that captured the stack
+            Iterator<StackWalker.StackFrame> iterator = stream.iterator();
+            StackWalker.StackFrame frame = iterator.next();
+            while (frame.getDeclaringClass() == CallStack.class) {
+                frame = iterator.next();
+            }
+
+            walked.add(frame);
+            while (!until.test(frame)) {
+                if (!iterator.hasNext() || walked.size() >= LIMIT) {
+                    return true;
+                }
+                frame = iterator.next();
+                walked.add(frame);
+            }
+            return false;
+        });
+        return new CallStack(walked, complete);
+    }
+
+    /**
+     * Walks the frames from the innermost, until one of them yields a result.
+     *
+     * @param mapper Function returning a result for a frame, or null to carry on with the next frame.
+     * @param <T>    Type of the result.
+     * @return The first result, or null if no frame yielded one.
+     */
+    public <T> T find(final Function<StackWalker.StackFrame, T> mapper) {
+        if (Thread.currentThread() != this.thread) {
+            throw new IllegalStateException("The stack can only be walked by the thread that captured it");
+        }
+
+        for (StackWalker.StackFrame frame : this.frames) {
+            T result = mapper.apply(frame);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        if (this.complete) {
+            return null;
+        }
+
+        return WALKER.walk(stream -> {
+            // Skip the frames of the search, up to the method that captured the stack, and the frames walked before
+            Iterator<StackWalker.StackFrame> iterator = stream.iterator();
+            boolean found = false;
+            while (!found && iterator.hasNext()) {
+                found = isCapturer(iterator.next());
+            }
+            for (int i = 1; i < this.frames.size() && iterator.hasNext(); i++) {
+                iterator.next();
+            }
+
+            while (iterator.hasNext() && this.frames.size() < LIMIT) {
+                StackWalker.StackFrame frame = iterator.next();
+                this.frames.add(frame);
+                T result = mapper.apply(frame);
+                if (result != null) {
+                    return result;
+                }
+            }
+
+            this.complete = true;
+            return null;
+        });
+    }
+
+    /**
+     * Checks whether a frame is the one of the method that captured the stack.
+     * The methods searching the stack may be of the same class, but not of the same method.
+     *
+     * @param frame Frame to check.
+     * @return True if the frame is of the method that captured the stack, otherwise False.
+     */
+    private boolean isCapturer(final StackWalker.StackFrame frame) {
+        return frame.getDeclaringClass() == this.capturer.getDeclaringClass()
+                && frame.getMethodName().equals(this.capturer.getMethodName())
+                && frame.getDescriptor().equals(this.capturer.getDescriptor());
+    }
+
+    /**
+     * Checks whether any frame matches, walking no further than the first match.
+     *
+     * @param predicate Predicate to test the frames with.
+     * @return True if a frame matched, otherwise False.
+     */
+    public boolean anyMatch(final Predicate<StackWalker.StackFrame> predicate) {
+        return find(frame -> predicate.test(frame) ? Boolean.TRUE : null) != null;
+    }
+
+    /**
+     * Returns the outermost frame, where the thread started, or the last one within the limit on deeper stacks.
+     *
+     * @return Outermost frame.
+     */
+    public StackWalker.StackFrame getOutermost() {
+        find(frame -> null);
+        return this.frames.get(this.frames.size() - 1);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.internal.helpers;
+
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.Response;
+
+/**
+ * Copy of an executed command and its response, taken on the thread that executed it,
+ * along with what is known only on that thread, to be reported in the background.
+ */
+final class CommandSnapshot extends StashedCommand {
+
+    /**
+     * Time the command was executed, in milliseconds since the epoch.
+     */
+    private final long timestamp;
+
+    /**
+     * True if the test should be reported when it changed.
+     */
+    private final boolean testReported;
+
+    /**
+     * Name of the test that executed the command.
+     */
+    private final String testName;
+
+    /**
+     * Initializes a new snapshot by cloning provided command and response.
+     *
+     * @param command      Command object.
+     * @param response     Command response object.
+     * @param testReported True if the test should be reported when it changed.
+     * @param testName     Name of the test that executed the command.
+     */
+    CommandSnapshot(final Command command, final Response response, final boolean testReported,
+                    final String testName) {
+        super(command, response);
+        this.timestamp = System.currentTimeMillis();
+        this.testReported = testReported;
+        this.testName = testName;
+    }
+
+    /**
+     * Getter for {@link #timestamp} field.
+     *
+     * @return value of {@link #timestamp} field
+     */
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Getter for {@link #testReported} field.
+     *
+     * @return value of {@link #testReported} field
+     */
+    boolean isTestReported() {
+        return testReported;
+    }
+
+    /**
+     * Getter for {@link #testName} field.
+     *
+     * @return value of {@link #testName} field
+     */
+    String getTestName() {
+        return testName;
+    }
+}
@@ -53,6 +53,16 @@ public final class CustomAppiumCommandExecutor
      */
     private final StashedCommands stashedCommands = new StashedCommands();
 
+    /**
+     * Screenshots for reports that are being taken in the background.
+     */
+    private final PendingScreenshots pendingScreenshots = new PendingScreenshots();
+
+    /**
+     * Elements of the session known to be secure or not, for redaction.
+     */
+    private final SecureElements secureElements = new SecureElements();
+
     /**
      * Flag to enable/disable any reports.
      */
@@ -120,6 +130,8 @@ public final class CustomAppiumCommandExecutor
         Response response = null;
 
         if (!command.getName().equals(DriverCommand.QUIT)) {
+            // Let the screenshots of previous reports show the state before this command
+            pendingScreenshots.await();
             // Preserve the mobile session, agent got /change custom Appium endpoint
             response = super.execute(command);
         }
@@ -140,6 +152,16 @@ public final class CustomAppiumCommandExecutor
         return stashedCommands;
     }
 
+    @Override
+    public PendingScreenshots getPendingScreenshots() {
+        return pendingScreenshots;
+    }
+
+    @Override
+    public SecureElements getSecureElements() {
+        return secureElements;
+    }
+
     /**
      * Getter for {@link #reportsDisabled} field.
      *
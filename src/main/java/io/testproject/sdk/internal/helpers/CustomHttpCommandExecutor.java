@@ -74,6 +74,16 @@ public final class CustomHttpCommandExecutor extends HttpCommandExecutor
      */
     private final StashedCommands stashedCommands = new StashedCommands();
 
+    /**
+     * Screenshots for reports that are being taken in the background.
+     */
+    private final PendingScreenshots pendingScreenshots = new PendingScreenshots();
+
+    /**
+     * Elements of the session known to be secure or not, for redaction.
+     */
+    private final SecureElements secureElements = new SecureElements();
+
     /**
      * Constant for environment variable name that will determine if the driver should be quit.
      * Used by the agent to avoid terminating the Selenium server session when executing coded
@@ -122,6 +132,8 @@ public final class CustomHttpCommandExecutor extends HttpCommandExecutor
         // environment variable is set to true.
         // Used when running tests through the platform to avoid closing the session.
         if (!(keepSessionOpen && isQuitCommand)) {
+            // Let the screenshots of previous reports show the state before this command
+            pendingScreenshots.await();
             try {
                 response = super.execute(command);
             } catch (IOException e) {
@@ -146,6 +158,16 @@ public final class CustomHttpCommandExecutor extends HttpCommandExecutor
         return stashedCommands;
     }
 
+    @Override
+    public PendingScreenshots getPendingScreenshots() {
+        return pendingScreenshots;
+    }
+
+    @Override
+    public SecureElements getSecureElements() {
+        return secureElements;
+    }
+
     /**
      * Getter for {@link #reportsDisabled} field.
      *
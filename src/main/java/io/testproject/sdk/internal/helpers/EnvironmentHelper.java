@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Utility class to read SDK tuning values from environment variables.
+ * When an environment variable is not set, a JVM system property with the same name is used instead.
+ */
+public final class EnvironmentHelper {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(EnvironmentHelper.class);
+
+    /**
+     * Private default constructor to prevent instance initialization of this utility class.
+     */
+    private EnvironmentHelper() {
+    }
+
+    /**
+     * Reads a string value from an environment variable.
+     *
+     * @param name         Name of the environment variable.
+     * @param defaultValue Value to use when the variable is not set or is blank.
+     * @return Trimmed value of the environment variable, or the default value.
+     */
+    public static String getString(final String name, final String defaultValue) {
+        String value = read(name, defaultValue);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+
+        return value.trim();
+    }
+
+    /**
+     * Reads an integer value from an environment variable.
+     *
+     * @param name         Name of the environment variable.
+     * @param defaultValue Value to use when the variable is not set or can't be parsed.
+     * @return Value of the environment variable, or the default value.
+     */
+    public static int getInt(final String name, final int defaultValue) {
+        String value = read(name, defaultValue);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("Failed to convert the value of environment variable {}. "
+                    + "Using the default value: {}.", name, defaultValue, e);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a long value from an environment variable.
+     *
+     * @param name         Name of the environment variable.
+     * @param defaultValue Value to use when the variable is not set or can't be parsed.
+     * @return Value of the environment variable, or the default value.
+     */
+    public static long getLong(final String name, final long defaultValue) {
+        String value = read(name, defaultValue);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("Failed to convert the value of environment variable {}. "
+                    + "Using the default value: {}.", name, defaultValue, e);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads the raw value of an environment variable, or of a system property with the same name.
+     *
+     * @param name         Name of the environment variable.
+     * @param defaultValue Default value, used for logging only.
+     * @return Value of the environment variable, or null if it is not set or can't be read.
+     */
+    private static String read(final String name, final Object defaultValue) {
+        try {
+            String value = System.getenv(name);
+            return value != null ? value : System.getProperty(name);
+        } catch (SecurityException e) {
+            LOG.warn("Failed to retrieve the value of environment variable {}. "
+                    + "Using the default value: {}.", name, defaultValue, e);
+            return null;
+        }
+    }
+}
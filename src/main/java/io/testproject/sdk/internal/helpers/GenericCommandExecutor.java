@@ -65,6 +65,16 @@ public final class GenericCommandExecutor
      */
     private final StashedCommands stashedCommands = new StashedCommands();
 
+    /**
+     * Screenshots for reports that are being taken in the background.
+     */
+    private final PendingScreenshots pendingScreenshots = new PendingScreenshots();
+
+    /**
+     * Elements of the session known to be secure or not, for redaction.
+     */
+    private final SecureElements secureElements = new SecureElements();
+
     /**
      * Initializes a new instance of this an Executor restoring command/response codecs.
      *
@@ -100,6 +110,16 @@ public final class GenericCommandExecutor
         return stashedCommands;
     }
 
+    @Override
+    public PendingScreenshots getPendingScreenshots() {
+        return pendingScreenshots;
+    }
+
+    @Override
+    public SecureElements getSecureElements() {
+        return secureElements;
+    }
+
     /**
      * Getter for {@link #reportsDisabled} field.
      *
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.internal.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command reports prepared in the background, while the test carries on.
+ * <p>
+ * Enabled by setting {@value #TP_ASYNC_COMMAND_REPORTS_VARIABLE_NAME} to true. The driver command hands over
+ * a snapshot of what it executed, and the reports are prepared one at a time on a dedicated thread: reporting
+ * the test when it changed, building the report, serializing it and queueing it. Any other report waits for
+ * the pending command reports, so that reports are still in the order they were made.
+ * <p>
+ * Every pending report holds on to the response of its command, so at most
+ * {@value #TP_ASYNC_COMMAND_REPORTS_MAX_PENDING_VARIABLE_NAME} reports wait to be prepared.
+ * Beyond that, the command prepares its report itself once the pending ones are done.
+ */
+public final class PendingCommandReports {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(PendingCommandReports.class);
+
+    /**
+     * Constant for environment variable name that may enable preparing command reports in the background.
+     */
+    public static final String TP_ASYNC_COMMAND_REPORTS_VARIABLE_NAME = "TP_ASYNC_COMMAND_REPORTS";
+
+    /**
+     * Constant for environment variable name that may store the maximum number of reports
+     * waiting to be prepared in the background.
+     */
+    public static final String TP_ASYNC_COMMAND_REPORTS_MAX_PENDING_VARIABLE_NAME =
+            "TP_ASYNC_COMMAND_REPORTS_MAX_PENDING";
+
+    /**
+     * The default maximum number of reports waiting to be prepared is 16.
+     */
+    private static final int MAX_PENDING = 16;
+
+    /**
+     * Maximum number of reports waiting to be prepared.
+     */
+    private final int maxPending;
+
+    /**
+     * Thread preparing the reports, created with the first report.
+     */
+    private ExecutorService reporter;
+
+    /**
+     * The thread of {@link #reporter}.
+     */
+    private volatile Thread reporterThread;
+
+    /**
+     * Completes once the last report handed over was prepared.
+     */
+    private CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+
+    /**
+     * Private constructor, use {@link #create()} instead.
+     *
+     * @param maxPending Maximum number of reports waiting to be prepared.
+     */
+    private PendingCommandReports(final int maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Creates a new instance if command reports should be prepared in the background.
+     *
+     * @return Pending command reports, or null if {@value #TP_ASYNC_COMMAND_REPORTS_VARIABLE_NAME} is not set to true.
+     */
+    public static PendingCommandReports create() {
+        if (!Boolean.parseBoolean(EnvironmentHelper.getString(TP_ASYNC_COMMAND_REPORTS_VARIABLE_NAME, "false"))) {
+            return null;
+        }
+
+        return new PendingCommandReports(Math.max(1,
+                EnvironmentHelper.getInt(TP_ASYNC_COMMAND_REPORTS_MAX_PENDING_VARIABLE_NAME, MAX_PENDING)));
+    }
+
+    /**
+     * Prepares a report in the background, after the reports handed over before it.
+     * When too many reports are pending, waits for them and prepares the report on the calling thread.
+     *
+     * @param report Action preparing and submitting the report.
+     */
+    public synchronized void submit(final Runnable report) {
+        Runnable prepare = () -> {
+            try {
+                report.run();
+            } catch (RuntimeException e) {
+                LOG.error("Failed to report a command", e);
+            }
+        };
+
+        if (this.reporter == null) {
+            this.reporter = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(this.maxPending), runnable -> {
+                        Thread thread = new Thread(runnable, "command-reporter");
+                        thread.setDaemon(true);
+                        this.reporterThread = thread;
+                        return thread;
+                    });
+        } else if (this.reporter.isShutdown()) {
+            // The session is closing, there is no one to hand over to
+            prepare.run();
+            return;
+        }
+
+        try {
+            this.last = CompletableFuture.runAsync(prepare, this.reporter);
+        } catch (RejectedExecutionException e) {
+            // Too many reports are pending, prepare this one here after them
+            this.last.join();
+            prepare.run();
+        }
+    }
+
+    /**
+     * Waits for the pending reports to be prepared.
+     * Returns immediately when called while preparing a report.
+     */
+    public void await() {
+        if (Thread.currentThread() == this.reporterThread) {
+            return;
+        }
+
+        CompletableFuture<Void> pending;
+        synchronized (this) {
+            pending = this.last;
+        }
+        pending.join();
+    }
+
+    /**
+     * Waits for the pending reports to be prepared and stops the reporting thread.
+     */
+    public void close() {
+        await();
+        synchronized (this) {
+            if (this.reporter != null) {
+                this.reporter.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Screenshots for reports that are taken in the background, while the test carries on.
+ * <p>
+ * Enabled by setting {@value #TP_ASYNC_SCREENSHOTS_VARIABLE_NAME} to true.
+ * Screenshots are taken one at a time on a dedicated thread. The next driver command waits for the pending
+ * screenshots to be taken before it is executed, so that they still show the state the report refers to.
+ */
+public final class PendingScreenshots {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(PendingScreenshots.class);
+
+    /**
+     * Constant for environment variable name that may enable taking screenshots in the background.
+     */
+    public static final String TP_ASYNC_SCREENSHOTS_VARIABLE_NAME = "TP_ASYNC_SCREENSHOTS";
+
+    /**
+     * Thread taking the screenshots, created with the first screenshot.
+     */
+    private ExecutorService capturer;
+
+    /**
+     * The thread of {@link #capturer}.
+     */
+    private volatile Thread capturerThread;
+
+    /**
+     * Completes once the last screenshot requested was taken.
+     */
+    private CompletableFuture<String> last = CompletableFuture.completedFuture(null);
+
+    /**
+     * Checks whether screenshots should be taken in the background.
+     *
+     * @return True if {@value #TP_ASYNC_SCREENSHOTS_VARIABLE_NAME} is set to true, otherwise False.
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(EnvironmentHelper.getString(TP_ASYNC_SCREENSHOTS_VARIABLE_NAME, "false"));
+    }
+
+    /**
+     * Takes a screenshot in the background, after the screenshots requested before it.
+     *
+     * @param capture Action taking the screenshot.
+     * @return Future completed with the screenshot as base64 string, or with null if it could not be taken.
+     */
+    public synchronized CompletableFuture<String> capture(final Supplier<String> capture) {
+        Supplier<String> screenshot = () -> {
+            try {
+                return capture.get();
+            } catch (RuntimeException e) {
+                LOG.error("Failed to take a screenshot for the report", e);
+                return null;
+            }
+        };
+
+        if (this.capturer == null) {
+            this.capturer = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "screenshot-capturer");
+                thread.setDaemon(true);
+                this.capturerThread = thread;
+                return thread;
+            });
+        } else if (this.capturer.isShutdown()) {
+            // The driver is quitting, there is no next command to wait for
+            return CompletableFuture.completedFuture(screenshot.get());
+        }
+
+        this.last = CompletableFuture.supplyAsync(screenshot, this.capturer);
+        return this.last;
+    }
+
+    /**
+     * Waits for the pending screenshots to be taken.
+     * Returns immediately when called while taking a screenshot.
+     */
+    public void await() {
+        if (Thread.currentThread() == this.capturerThread) {
+            return;
+        }
+
+        CompletableFuture<String> pending;
+        synchronized (this) {
+            pending = this.last;
+        }
+        pending.join();
+    }
+
+    /**
+     * Stops the screenshots thread once the pending screenshots are taken.
+     */
+    public synchronized void close() {
+        if (this.capturer != null) {
+            this.capturer.shutdown();
+        }
+    }
+}
@@ -72,6 +72,7 @@ public final class RedactHelper {
 
     /**
      * Checks whether redaction is required.
+     * Elements are checked with the driver once per session, until they may have gone stale.
      *
      * @param executor  Executor instance that executed the command
      * @param command   Command sent to the Driver
@@ -80,6 +81,19 @@ public final class RedactHelper {
      */
     private static boolean isRedactRequired(final ReportingCommandsExecutor executor,
                                             final Command command, final String elementId) {
+        return executor.getSecureElements().isSecure(elementId, id -> isSecured(executor, command, id));
+    }
+
+    /**
+     * Checks with the driver whether the element command invoked on is a secure element.
+     *
+     * @param executor  Executor instance that executed the command
+     * @param command   Command sent to the Driver
+     * @param elementId The ID of the element that the command was executed on.
+     * @return True if the element is a secure element, otherwise False.
+     */
+    private static boolean isSecured(final ReportingCommandsExecutor executor,
+                                     final Command command, final String elementId) {
         Capabilities capabilities = executor.getAgentClient().getSession().getCapabilities();
         String platformName = capabilities.getCapability(CapabilityType.PLATFORM_NAME).toString();
 
@@ -17,6 +17,7 @@
 
 package io.testproject.sdk.internal.helpers;
 
+import io.testproject.sdk.internal.reporting.TestContext;
 import io.testproject.sdk.internal.reporting.inferrers.InferrerFactory;
 import io.testproject.sdk.internal.rest.AgentClient;
 import io.testproject.sdk.internal.rest.messages.TestReport;
@@ -28,8 +29,6 @@ import org.openqa.selenium.support.ui.FluentWait;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Arrays;
-import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static io.testproject.sdk.internal.helpers.RedactHelper.redactCommand;
@@ -74,6 +73,20 @@ public interface ReportingCommandsExecutor {
      */
     StashedCommands getStashedCommands();
 
+    /**
+     * Getter for <em>pending screenshots</em> field.
+     *
+     * @return Screenshots for reports that are being taken in the background.
+     */
+    PendingScreenshots getPendingScreenshots();
+
+    /**
+     * Getter for <em>secure elements</em> field.
+     *
+     * @return Elements of the session known to be secure or not, for redaction.
+     */
+    SecureElements getSecureElements();
+
     /**
      * Getter for <em>reportsDisabled</em> field.
      *
@@ -145,23 +158,38 @@ public interface ReportingCommandsExecutor {
      */
     default void reportCommand(final Command command, final Response response) {
         boolean isQuitCommand = command.getName().equals(DriverCommand.QUIT);
-        List<StackTraceElement> traces = Arrays.asList(Thread.currentThread().getStackTrace());
+        CallStack stack = CallStack.capture(InferrerFactory::isFramework);
+
+        // Forget the elements that may have gone stale, before redacting
+        getSecureElements().update(command, response);
+
+        // Prepare the report of a passed command in the background, once what's known only here was captured
+        PendingCommandReports pending = getAgentClient().getPendingCommandReports();
+        if (pending != null && !isQuitCommand && !isReportsDisabled() && !isCommandReportsDisabled()
+                && isCommandPassed(response) && !isFluentWait(stack) && getStashedCommands().isEmpty()) {
+            boolean testReported = !isTestAutoReportsDisabled();
+            // Typing into password fields is redacted now, while the element is still there
+            CommandSnapshot snapshot = new CommandSnapshot(
+                    isRedactionDisabled() ? command : redactCommand(this, command), response,
+                    testReported, testReported ? inferTestName(stack) : null);
+            pending.submit(() -> reportCommand(snapshot));
+            return;
+        }
 
         // Report Tests
         if (!isTestAutoReportsDisabled()) {
-            reportTest(traces, isQuitCommand);
+            reportTest(stack, isQuitCommand);
         }
 
         if (isQuitCommand) {
             // Close client after finishing the test via driver quit command.
             getAgentClient().close();
+            getPendingScreenshots().close();
             // Do not report quit to avoid creating new test in reports
             return;
         }
 
-        // Check if executed from a FluentWait loop
-        boolean isFluentWait = traces.stream().anyMatch(t -> t.getClassName().equals(FluentWait.class.getName()));
-        if (isFluentWait) {
+        if (isFluentWait(stack)) {
             // Stash command - same one might follow with different response (result)
             // Only the last one executed will be stashed, having the "final" result
             getStashedCommands().add(new StashedCommand(command, response));
@@ -176,16 +204,62 @@ public interface ReportingCommandsExecutor {
         }
     }
 
+    /**
+     * Reports a command captured by a driver command, on the thread preparing the reports in the background.
+     *
+     * @param snapshot Captured command and response.
+     */
+    private void reportCommand(final CommandSnapshot snapshot) {
+        if (snapshot.isTestReported()) {
+            reportTest(snapshot.getTestName(), false);
+        }
+
+        if (!getAgentClient().reportCommand(snapshot.getCommand(), extractResponse(snapshot.getResponse()),
+                true, null, snapshot.getTimestamp())) {
+            LOG.error("Failed reporting command: {}", snapshot.getCommand());
+        }
+    }
+
+    /**
+     * Checks whether a command was executed from a FluentWait loop,
+     * which runs within the test, above the test framework frames.
+     *
+     * @param stack Call Stack of the command.
+     * @return True if executed from a FluentWait loop, otherwise False.
+     */
+    private boolean isFluentWait(final CallStack stack) {
+        return Boolean.TRUE.equals(stack.find(f -> f.getClassName().equals(FluentWait.class.getName())
+                ? Boolean.TRUE : InferrerFactory.isFramework(f) ? Boolean.FALSE : null));
+    }
+
+    /**
+     * Report Test to Agent.
+     *
+     * @param stack Call Stack to analyze when searching for Test name.
+     * @param force True if called just before session is getting closed,
+     *              but test hasn't changed, to force reporting. Otherwise False.
+     */
+    default void reportTest(CallStack stack, boolean force) {
+        String testName = inferTestName(stack);
+
+        // Let the commands executed before be reported first
+        PendingCommandReports pending = getAgentClient().getPendingCommandReports();
+        if (pending != null) {
+            pending.await();
+        }
+
+        reportTest(testName, force);
+    }
+
     /**
      * Report Test to Agent.
      *
-     * @param traces Call Stack to analyze when searching for Test name.
-     * @param force  True if called just before session is getting closed,
-     *               but test hasn't changed, to force reporting. Otherwise False.
+     * @param testName Name of the Test that is running.
+     * @param force    True if called just before session is getting closed,
+     *                 but test hasn't changed, to force reporting. Otherwise False.
      */
-    default void reportTest(List<StackTraceElement> traces, boolean force) {
+    default void reportTest(String testName, boolean force) {
         // Check if test context has changed
-        String testName = inferTestName(traces);
 
         // Set first test name
         if (getCurrentTest().get() == null) {
@@ -209,13 +283,19 @@ public interface ReportingCommandsExecutor {
     }
 
     /**
-     * Infer Test name from call stack.
+     * Infer Test name from the test published by a Unit Testing framework listener,
+     * or from call stack when none is published.
      *
-     * @param traces Call Stack to analyze.
+     * @param stack Call Stack to analyze.
      * @return Test name.
      */
-    default String inferTestName(List<StackTraceElement> traces) {
-        return InferrerFactory.getInferrer(traces).inferTestName();
+    default String inferTestName(CallStack stack) {
+        String testName = TestContext.getTestName();
+        if (testName != null) {
+            return testName;
+        }
+
+        return InferrerFactory.getInferrer(stack).inferTestName();
     }
 
     /**
@@ -238,6 +318,14 @@ public interface ReportingCommandsExecutor {
             return true;
         }
 
+        if (!passed && PendingScreenshots.isEnabled()) {
+            // Report right away, the screenshot is attached once taken in the background
+            Command redacted = isRedactionDisabled() ? command : redactCommand(executor, command);
+            Command screenshotCommand = new Command(command.getSessionId(), DriverCommand.SCREENSHOT);
+            return agentClient.reportCommand(redacted, extractResponse(response), false,
+                    getPendingScreenshots().capture(() -> this.execute(screenshotCommand, true).getValue().toString()));
+        }
+
         String screenshot = null;
         if (!passed) {
             try {
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.internal.helpers;
+
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.Dialect;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Elements of a driver session known to be secure or not, such as password fields, for the redaction
+ * of the values typed into them.
+ * <p>
+ * Checking whether an element is secure takes a round trip to the browser or device. The outcome is kept
+ * per element ID until the element may have gone stale: when the page, window, frame or context changes,
+ * or when a command reports the element to be stale. Elements found using one of the locators set in
+ * {@value #TP_REDACTION_SAFE_LOCATORS_VARIABLE_NAME} are known not to be secure without checking them.
+ * Setting {@value #TP_REDACTION_POLICY_VARIABLE_NAME} to {@value #POLICY_ALWAYS} redacts all the typed values
+ * without checking any element.
+ */
+public final class SecureElements {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(SecureElements.class);
+
+    /**
+     * Constant for environment variable name that may store the redaction policy.
+     */
+    public static final String TP_REDACTION_POLICY_VARIABLE_NAME = "TP_REDACTION_POLICY";
+
+    /**
+     * Constant for environment variable name that may store the number of elements remembered per session.
+     */
+    public static final String TP_REDACTION_CACHE_SIZE_VARIABLE_NAME = "TP_REDACTION_CACHE_SIZE";
+
+    /**
+     * Constant for environment variable name that may store a regular expression matching the locators
+     * of elements that are not secure, as <em>strategy=value</em>, e.g. <em>id=search|name=q</em>.
+     */
+    public static final String TP_REDACTION_SAFE_LOCATORS_VARIABLE_NAME = "TP_REDACTION_SAFE_LOCATORS";
+
+    /**
+     * Policy checking every element once, the default.
+     */
+    public static final String POLICY_CHECK = "check";
+
+    /**
+     * Policy redacting all the typed values without checking the elements.
+     */
+    public static final String POLICY_ALWAYS = "always";
+
+    /**
+     * The default number of elements remembered per session.
+     */
+    private static final int CACHE_SIZE = 1024;
+
+    /**
+     * Appium command switching between the native and web contexts.
+     */
+    private static final String SWITCH_TO_CONTEXT = "switchToContext";
+
+    /**
+     * True if all the typed values are redacted without checking the elements.
+     */
+    private final boolean redactAll;
+
+    /**
+     * Locators of elements that are not secure, or null if all the elements are checked.
+     */
+    private final Pattern safeLocators;
+
+    /**
+     * Whether elements are secure, by element ID, least recently used first.
+     */
+    private final Map<String, Boolean> elements;
+
+    /**
+     * Initializes a new instance using the values set in the environment variables.
+     */
+    public SecureElements() {
+        String policy = EnvironmentHelper.getString(TP_REDACTION_POLICY_VARIABLE_NAME, POLICY_CHECK);
+        if (!policy.equalsIgnoreCase(POLICY_CHECK) && !policy.equalsIgnoreCase(POLICY_ALWAYS)) {
+            LOG.warn("Unknown redaction policy [{}], using [{}]", policy, POLICY_CHECK);
+        }
+        this.redactAll = policy.equalsIgnoreCase(POLICY_ALWAYS);
+        this.safeLocators = compile(EnvironmentHelper.getString(TP_REDACTION_SAFE_LOCATORS_VARIABLE_NAME, null));
+
+        int capacity = Math.max(0, EnvironmentHelper.getInt(TP_REDACTION_CACHE_SIZE_VARIABLE_NAME, CACHE_SIZE));
+        this.elements = new LinkedHashMap<>(Math.min(capacity, CACHE_SIZE), 1, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Checks whether an element is secure, checking it only if its outcome isn't known.
+     *
+     * @param elementId ID of the element.
+     * @param check     Check of the element with the driver.
+     * @return True if the element is secure and the value typed into it should be redacted, otherwise False.
+     */
+    public boolean isSecure(final String elementId, final Predicate<String> check) {
+        if (this.redactAll) {
+            return true;
+        }
+
+        Boolean secure;
+        synchronized (this) {
+            secure = this.elements.get(elementId);
+        }
+
+        if (secure == null) {
+            // Don't hold the lock while waiting for the driver
+            secure = check.test(elementId);
+            synchronized (this) {
+                this.elements.put(elementId, secure);
+            }
+        }
+
+        return secure;
+    }
+
+    /**
+     * Tracks a command executed by the driver, forgetting the elements that may have gone stale
+     * and remembering the elements found using safe locators.
+     *
+     * @param command  Command executed by the driver.
+     * @param response Response to the command.
+     */
+    public void update(final Command command, final Response response) {
+        switch (command.getName()) {
+            case DriverCommand.GET:
+            case DriverCommand.GO_BACK:
+            case DriverCommand.GO_FORWARD:
+            case DriverCommand.REFRESH:
+            case DriverCommand.SWITCH_TO_WINDOW:
+            case DriverCommand.SWITCH_TO_FRAME:
+            case DriverCommand.SWITCH_TO_PARENT_FRAME:
+            case DriverCommand.CLOSE:
+            case SWITCH_TO_CONTEXT:
+                clear();
+                return;
+            case DriverCommand.FIND_ELEMENT:
+            case DriverCommand.FIND_ELEMENTS:
+            case DriverCommand.FIND_CHILD_ELEMENT:
+            case DriverCommand.FIND_CHILD_ELEMENTS:
+                if (this.safeLocators != null && response.getValue() != null
+                        && this.safeLocators.matcher(command.getParameters().get("using") + "="
+                        + command.getParameters().get("value")).matches()) {
+                    remember(response.getValue());
+                }
+                return;
+            default:
+                break;
+        }
+
+        Object elementId = command.getParameters().get("id");
+        if (elementId != null && isStale(response)) {
+            synchronized (this) {
+                this.elements.remove(elementId.toString());
+            }
+        }
+    }
+
+    /**
+     * Forgets all the elements.
+     */
+    public synchronized void clear() {
+        this.elements.clear();
+    }
+
+    /**
+     * Remembers the elements found using a safe locator as not secure.
+     *
+     * @param found Element, or list of elements, as returned by the driver.
+     */
+    private void remember(final Object found) {
+        Collection<?> list = found instanceof Collection ? (Collection<?>) found : Collections.singleton(found);
+        synchronized (this) {
+            for (Object element : list) {
+                if (!(element instanceof Map)) {
+                    continue;
+                }
+
+                Object elementId = ((Map<?, ?>) element).get(Dialect.W3C.getEncodedElementKey());
+                if (elementId == null) {
+                    elementId = ((Map<?, ?>) element).get(Dialect.OSS.getEncodedElementKey());
+                }
+                if (elementId != null) {
+                    this.elements.put(elementId.toString(), Boolean.FALSE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether a response reports that the element of the command went stale.
+     *
+     * @param response Response to the command.
+     * @return True if the element is stale, otherwise False.
+     */
+    private static boolean isStale(final Response response) {
+        return "stale element reference".equals(response.getState())
+                || Integer.valueOf(ErrorCodes.STALE_ELEMENT_REFERENCE).equals(response.getStatus());
+    }
+
+    /**
+     * Compiles the regular expression matching safe locators.
+     *
+     * @param regex Regular expression, or null.
+     * @return Compiled expression, or null if there is none or it is invalid.
+     */
+    private static Pattern compile(final String regex) {
+        if (regex == null || regex.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            LOG.error("Invalid regular expression in {}, all the elements are checked",
+                    TP_REDACTION_SAFE_LOCATORS_VARIABLE_NAME, e);
+            return null;
+        }
+    }
+}
@@ -21,7 +21,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Will be used to manage the driver and AgentClient shutdown threads to ensure
@@ -35,14 +36,14 @@ public final class ShutdownThreadManager extends Thread {
     private static ShutdownThreadManager instance;
 
     /**
-     * Store the AgentClient shutdown thread.
+     * Map to store the shutdown threads of all the open Agent clients.
      */
-    private Runnable agentClientShutdownThread;
+    private final Map<Object, Runnable> agentClientShutdownThreads = new ConcurrentHashMap<>();
 
     /**
-     * Hash map to store the shutdown threads of all the active drivers.
+     * Map to store the shutdown threads of all the active drivers.
      */
-    private HashMap<Object, Runnable> driverShutdownThreads;
+    private final Map<Object, Runnable> driverShutdownThreads = new ConcurrentHashMap<>();
 
     /**
      * Logger instance.
@@ -52,17 +53,20 @@ public final class ShutdownThreadManager extends Thread {
     /**
      * Add Agent Client shutdown thread to the manager.
      *
+     * @param agentClient added to the manager.
      * @param shutdownThread of the agent client.
      */
-    public void addAgentClient(final Runnable shutdownThread) {
-        agentClientShutdownThread = shutdownThread;
+    public void addAgentClient(final Object agentClient, final Runnable shutdownThread) {
+        agentClientShutdownThreads.put(agentClient, shutdownThread);
     }
 
     /**
      * Remove Agent Client shutdown thread from the manager.
+     *
+     * @param agentClient removed from the manager.
      */
-    public void removeAgentClient() {
-        agentClientShutdownThread = null;
+    public void removeAgentClient(final Object agentClient) {
+        agentClientShutdownThreads.remove(agentClient);
     }
 
     /**
@@ -90,7 +94,6 @@ public final class ShutdownThreadManager extends Thread {
      * as a shutdown hook.
      */
     private ShutdownThreadManager() {
-        driverShutdownThreads = new HashMap<>();
         Runtime.getRuntime().addShutdownHook(this);
     }
 
@@ -99,7 +102,7 @@ public final class ShutdownThreadManager extends Thread {
      *
      * @return instance of the class.
      */
-    public static ShutdownThreadManager getInstance() {
+    public static synchronized ShutdownThreadManager getInstance() {
         if (instance == null) {
             instance = new ShutdownThreadManager();
         }
@@ -118,8 +121,8 @@ public final class ShutdownThreadManager extends Thread {
             for (Runnable runnable : runnables) {
                 runnable.run();
             }
-            if (agentClientShutdownThread != null) {
-                agentClientShutdownThread.run();
+            for (Runnable runnable : agentClientShutdownThreads.values()) {
+                runnable.run();
             }
         } catch (Throwable e) {
             LOG.error("Failed running shutdown thread", e);
@@ -47,6 +47,14 @@ class StashedCommands {
         return new ArrayList<>(map.values());
     }
 
+    /**
+     * Check whether there are stashed commands.
+     * @return True if no command is stashed, otherwise False.
+     */
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
     /**
      * Get a specific commands using its hash.
      * @param hash {@link StashedCommand} hash.
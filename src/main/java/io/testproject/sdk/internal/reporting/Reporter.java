@@ -19,15 +19,17 @@ package io.testproject.sdk.internal.reporting;
 
 import io.testproject.sdk.drivers.GenericDriver;
 import io.testproject.sdk.drivers.ReportingDriver;
+import io.testproject.sdk.internal.helpers.CallStack;
+import io.testproject.sdk.internal.helpers.PendingScreenshots;
 import io.testproject.sdk.internal.helpers.ReportingCommandsExecutor;
 import io.testproject.sdk.internal.rest.AgentClient;
+import io.testproject.sdk.internal.rest.ReportsMetrics;
 import io.testproject.sdk.internal.rest.messages.StepReport;
 import org.openqa.selenium.remote.RemoteWebDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
-import java.util.List;
 
 /**
  * Steps reporter.
@@ -79,13 +81,7 @@ public final class Reporter {
      * @return True if the class is a Cucumber tests runner class, false otherwise.
      */
     private boolean checkIfCucumber() {
-        try {
-            List<StackTraceElement> traces = Arrays.asList(Thread.currentThread().getStackTrace());
-            return isCucumberPresent(traces);
-        } catch (ClassNotFoundException e) {
-            LOG.error("Unable to find calling class related to Cucumber", e);
-            return false;
-        }
+        return isCucumberPresent(CallStack.capture());
     }
 
     /**
@@ -99,20 +95,12 @@ public final class Reporter {
     }
 
     /**
-     * Helper method which scans the current stack trace for the cucumber runner class.
-     * @param traces Current thread stacktrace.
+     * Helper method which scans the current call stack for the cucumber runner class.
+     * @param stack Current thread call stack.
      * @return True if one of the classes was annotated with Cucumber Annotations, false otherwise.
-     * @throws ClassNotFoundException If no class was found for the stacktrace element.
      */
-    private boolean isCucumberPresent(final List<StackTraceElement> traces) throws ClassNotFoundException {
-        for (StackTraceElement ste : traces) {
-            if (isCucumberAnnotationPresent(Class.forName(ste.getClassName()))) {
-                return true;
-            }
-        }
-
-        // No annotation was found, return false.
-        return false;
+    private boolean isCucumberPresent(final CallStack stack) {
+        return stack.anyMatch(frame -> isCucumberAnnotationPresent(frame.getDeclaringClass()));
     }
 
     /**
@@ -163,6 +151,17 @@ public final class Reporter {
         this.driver.getReportingCommandExecutor().setRedactionDisabled(disable);
     }
 
+    /**
+     * Metrics of the reports sent by this driver session, such as the reports queue depth,
+     * the time it takes the Agent to accept reports, batch sizes, retries and dropped reports.
+     * The metrics are also registered as a JMX MBean while the session is open.
+     *
+     * @return Live view of the reports metrics, or null if reports are disabled for the session.
+     */
+    public ReportsMetrics getMetrics() {
+        return agentClient.getReportsMetrics();
+    }
+
     /**
      * Report step with description.
      *
@@ -234,19 +233,25 @@ public final class Reporter {
         }
 
         if (!this.driver.getReportingCommandExecutor().isReportsDisabled()) {
-            List<StackTraceElement> traces = Arrays.asList(Thread.currentThread().getStackTrace());
-            this.driver.getReportingCommandExecutor().reportTest(traces, false);
+            // The stack is only walked if the test isn't published by a framework listener
+            this.driver.getReportingCommandExecutor().reportTest(CallStack.capture(), false);
         }
 
+        boolean background = screenshot && PendingScreenshots.isEnabled();
         StepReport report = new StepReport(description, message, passed,
-                screenshot ? driver.getScreenshot() : null);
+                screenshot && !background ? driver.getScreenshot() : null);
 
         if (driver.getReportingCommandExecutor().isReportsDisabled()) {
             LOG.trace("Step [{}] - [{}]", description, passed ? "Passed" : "Failed");
             return;
         }
 
-        if (!agentClient.reportStep(report)) {
+        // Screenshots taken in the background are attached to the report once taken
+        boolean reported = background
+                ? agentClient.reportStep(report,
+                        driver.getReportingCommandExecutor().getPendingScreenshots().capture(driver::getScreenshot))
+                : agentClient.reportStep(report);
+        if (!reported) {
             LOG.error("Failed reporting step to Agent");
         }
     }
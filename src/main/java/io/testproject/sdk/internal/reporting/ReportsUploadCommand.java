@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.reporting;
+
+import io.testproject.sdk.drivers.GenericDriver;
+import io.testproject.sdk.drivers.ReportType;
+import io.testproject.sdk.internal.rest.ReportsUploader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line entry point uploading reports recorded by the file report sink to an Agent.
+ * <p>
+ * Usage: {@code java -cp <sdk jar> io.testproject.sdk.internal.reporting.ReportsUploadCommand
+ * [--agent <url>] [--token <token>] [--project <name>] [--job <name>] [--offset <bytes>] <file>...}
+ * <p>
+ * A new session is started with the Agent and the files are uploaded to it in order.
+ * The offset reached in every file is saved next to it, in {@code <file>.offset}, so that running
+ * the command again resumes an upload that stopped. The offset file is deleted once the file is fully uploaded.
+ * The command exits with status 0 if all the files were fully uploaded, 1 if an upload stopped,
+ * and 2 if the arguments are invalid.
+ */
+public final class ReportsUploadCommand {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ReportsUploadCommand.class);
+
+    /**
+     * Extension of the files holding the offset an upload resumes from.
+     */
+    public static final String OFFSET_EXTENSION = ".offset";
+
+    /**
+     * Exit status when an upload stopped.
+     */
+    private static final int EXIT_INCOMPLETE = 1;
+
+    /**
+     * Exit status when the arguments are invalid.
+     */
+    private static final int EXIT_USAGE = 2;
+
+    /**
+     * Command usage.
+     */
+    private static final String USAGE = "Usage: ReportsUploadCommand [--agent <url>] [--token <token>]"
+            + " [--project <name>] [--job <name>] [--offset <bytes>] <file>...";
+
+    /**
+     * Utility class.
+     */
+    private ReportsUploadCommand() {
+    }
+
+    /**
+     * Uploads the recorded files passed as arguments.
+     *
+     * @param args Command line arguments.
+     * @throws Exception if the session could not be started or a file could not be read.
+     */
+    public static void main(final String[] args) throws Exception {
+        URL agent = null;
+        String token = null;
+        String project = null;
+        String job = null;
+        Long offset = null;
+        List<Path> files = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--agent":
+                        agent = new URL(args[++i]);
+                        break;
+                    case "--token":
+                        token = args[++i];
+                        break;
+                    case "--project":
+                        project = args[++i];
+                        break;
+                    case "--job":
+                        job = args[++i];
+                        break;
+                    case "--offset":
+                        offset = Long.parseLong(args[++i]);
+                        break;
+                    default:
+                        files.add(Paths.get(args[i]));
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException | IOException e) {
+            files.clear();
+        }
+
+        if (files.isEmpty()) {
+            System.err.println(USAGE);
+            System.exit(EXIT_USAGE);
+        }
+
+        GenericDriver driver = new GenericDriver(agent, token, project, job, false, ReportType.CLOUD_AND_LOCAL);
+        boolean complete = true;
+        try {
+            driver.report().disableCommandReports(true);
+            driver.report().disableTestAutoReports(true);
+            for (Path file : files) {
+                complete &= upload(driver, file, offset);
+
+                // An explicit offset applies to the first file only
+                offset = null;
+            }
+        } finally {
+            driver.quit();
+        }
+
+        System.exit(complete ? 0 : EXIT_INCOMPLETE);
+    }
+
+    /**
+     * Uploads a file, resuming from the saved offset unless an offset is given.
+     *
+     * @param driver Driver of the session to upload the reports to.
+     * @param file   File recorded by the file report sink.
+     * @param offset Offset to start from, or null to resume from the saved offset.
+     * @return True if the file was fully uploaded, otherwise False.
+     * @throws IOException          if the file could not be read.
+     * @throws InterruptedException if the thread was interrupted while uploading.
+     */
+    private static boolean upload(final GenericDriver driver, final Path file, final Long offset)
+            throws IOException, InterruptedException {
+        Path offsetFile = Paths.get(file + OFFSET_EXTENSION);
+        long start = 0;
+        if (offset != null) {
+            start = offset;
+        } else if (Files.exists(offsetFile)) {
+            start = Long.parseLong(new String(Files.readAllBytes(offsetFile), StandardCharsets.UTF_8).trim());
+            LOG.info("Resuming the upload of [{}] from offset {}", file, start);
+        }
+
+        ReportsUploader.Result result = driver.getReportingCommandExecutor().getAgentClient()
+                .uploadReports(file, start);
+        if (result.isComplete()) {
+            Files.deleteIfExists(offsetFile);
+        } else {
+            Files.write(offsetFile, Long.toString(result.getOffset()).getBytes(StandardCharsets.UTF_8));
+        }
+        return result.isComplete();
+    }
+}
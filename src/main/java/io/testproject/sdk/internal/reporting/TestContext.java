@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.internal.reporting;
+
+/**
+ * The test running on the current thread, as published by the Unit Testing frameworks listeners.
+ * <p>
+ * The listeners publish the test when it starts and withdraw it when it ends, so that the driver commands and steps
+ * executed meanwhile find it with a thread local lookup, instead of inferring it from the call stack.
+ * Tests running in parallel each publish to their own thread. Threads started by a test inherit it,
+ * until the test ends. When no listener is registered, or outside of tests, no test is published
+ * and the test is inferred from the call stack.
+ */
+public final class TestContext {
+
+    /**
+     * The test published on the current thread, inherited by the threads it starts.
+     */
+    private static final InheritableThreadLocal<TestContext> CURRENT = new InheritableThreadLocal<>();
+
+    /**
+     * Name of the test.
+     */
+    private final String testName;
+
+    /**
+     * True once the test ended, for the threads that inherited it.
+     */
+    private volatile boolean ended;
+
+    /**
+     * Initializes a new context for a test that started.
+     *
+     * @param testName Name of the test.
+     */
+    private TestContext(final String testName) {
+        this.testName = testName;
+    }
+
+    /**
+     * Publishes a test that started on the current thread, in place of the previous one.
+     *
+     * @param testName Name of the test, or null to have it inferred from the call stack.
+     */
+    public static void start(final String testName) {
+        end();
+        if (testName != null) {
+            CURRENT.set(new TestContext(testName));
+        }
+    }
+
+    /**
+     * Withdraws the test published on the current thread, also from the threads that inherited it.
+     */
+    public static void end() {
+        TestContext context = CURRENT.get();
+        if (context != null) {
+            context.ended = true;
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Returns the name of the test published on the current thread.
+     *
+     * @return Name of the test, or null if no test is published.
+     */
+    public static String getTestName() {
+        TestContext context = CURRENT.get();
+        return context != null && !context.ended ? context.testName : null;
+    }
+}
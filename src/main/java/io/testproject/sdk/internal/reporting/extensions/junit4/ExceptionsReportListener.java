@@ -22,7 +22,7 @@ import org.junit.runners.BlockJUnit4ClassRunner;
 import org.junit.runners.model.InitializationError;
 
 /**
- * JUnit4 Test class runner using the Exceptions reporter.
+ * JUnit4 Test class runner using the Exceptions reporter and publishing the running test.
  * The test runner class must be specified in a @RunWith annotation
  * to enable assertion reporting.
  */
@@ -38,12 +38,13 @@ public class ExceptionsReportListener extends BlockJUnit4ClassRunner {
     }
 
     /**
-     * Register test case failure event listener.
+     * Register test case failure and test context event listeners.
      * @param notifier
      */
     @Override
     public void run(final RunNotifier notifier) {
         notifier.addListener(new ExceptionsReporter());
+        notifier.addListener(new TestContextPublisher());
         super.run(notifier);
     }
 }
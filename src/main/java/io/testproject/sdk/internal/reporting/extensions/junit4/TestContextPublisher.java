@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.internal.reporting.extensions.junit4;
+
+import io.testproject.sdk.internal.reporting.TestContext;
+import io.testproject.sdk.internal.reporting.inferrers.JUnitInferrer;
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunListener;
+
+/**
+ * JUnit4 listener that publishes the running test, so that its name doesn't have to be inferred
+ * from the call stack of every driver command.
+ */
+@RunListener.ThreadSafe
+public class TestContextPublisher extends RunListener {
+
+    /**
+     * Event listener for test start.
+     * Publishes the test.
+     *
+     * @param description Description of the test.
+     */
+    @Override
+    public void testStarted(final Description description) {
+        TestContext.start(getTestName(description));
+    }
+
+    /**
+     * Event listener for test end.
+     * Withdraws the test.
+     *
+     * @param description Description of the test.
+     */
+    @Override
+    public void testFinished(final Description description) {
+        TestContext.end();
+    }
+
+    /**
+     * Infers Test name of a described test method.
+     *
+     * @param description Description of the test.
+     * @return A name of the Test, or null if the test method can't be found.
+     */
+    private static String getTestName(final Description description) {
+        if (description.getTestClass() == null || description.getMethodName() == null) {
+            return null;
+        }
+
+        try {
+            return JUnitInferrer.getTestName(description.getTestClass().getMethod(description.getMethodName()));
+        } catch (NoSuchMethodException e) {
+            // Parameterized tests are described with the parameters, such as test[0],
+            // their names are inferred from the call stack.
+            return null;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.internal.reporting.extensions.junit5;
+
+import io.testproject.sdk.internal.reporting.TestContext;
+import io.testproject.sdk.internal.reporting.inferrers.JUnitInferrer;
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
+import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+/**
+ * JUnit5 extension that publishes the running test, so that its name doesn't have to be inferred
+ * from the call stack of every driver command.
+ */
+public class TestContextPublisher implements BeforeTestExecutionCallback, AfterTestExecutionCallback {
+
+    /**
+     * Publish the test before it is executed.
+     *
+     * @param context JUnit extension context.
+     */
+    @Override
+    public void beforeTestExecution(final ExtensionContext context) {
+        TestContext.start(context.getTestMethod().map(JUnitInferrer::getTestName).orElse(null));
+    }
+
+    /**
+     * Withdraw the test after it was executed.
+     *
+     * @param context JUnit extension context.
+     */
+    @Override
+    public void afterTestExecution(final ExtensionContext context) {
+        TestContext.end();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.internal.reporting.extensions.testng;
+
+import io.testproject.sdk.internal.reporting.TestContext;
+import io.testproject.sdk.internal.reporting.inferrers.TestNGInferrer;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+
+/**
+ * TestNG listener that publishes the running test, so that its name doesn't have to be inferred
+ * from the call stack of every driver command.
+ */
+public class TestContextPublisher implements ITestListener {
+
+    /**
+     * Publish the test when it starts.
+     *
+     * @param result TestNG test result.
+     */
+    @Override
+    public void onTestStart(final ITestResult result) {
+        TestContext.start(TestNGInferrer.getTestName(result.getMethod().getConstructorOrMethod().getMethod()));
+    }
+
+    /**
+     * Withdraw the test when it passes.
+     *
+     * @param result TestNG test result.
+     */
+    @Override
+    public void onTestSuccess(final ITestResult result) {
+        TestContext.end();
+    }
+
+    /**
+     * Withdraw the test when it fails.
+     *
+     * @param result TestNG test result.
+     */
+    @Override
+    public void onTestFailure(final ITestResult result) {
+        TestContext.end();
+    }
+
+    /**
+     * Withdraw the test when it is skipped.
+     *
+     * @param result TestNG test result.
+     */
+    @Override
+    public void onTestSkipped(final ITestResult result) {
+        TestContext.end();
+    }
+
+    /**
+     * Withdraw the test when it fails within the success percentage.
+     *
+     * @param result TestNG test result.
+     */
+    @Override
+    public void onTestFailedButWithinSuccessPercentage(final ITestResult result) {
+        TestContext.end();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.reporting.inferrers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static io.testproject.sdk.internal.reporting.FrameworksNames.JUNIT_PACKAGE_NAME_PREFIX;
+import static io.testproject.sdk.internal.reporting.FrameworksNames.TESTNG_PACKAGE_NAME_PREFIX;
+
+/**
+ * Unit Testing frameworks annotations of the methods on the call stack, resolved once per class.
+ * <p>
+ * Resolving them copies the declared methods of the class, reads their annotations and invokes the annotations
+ * reflectively, which is too slow to be done for the frames of every driver command. Once a class is resolved,
+ * looking up one of its methods takes two hash lookups. The resolved methods are kept by the classes themselves,
+ * using a {@link ClassValue}, and hold names only, no classes, methods or annotations: a class unloaded with its
+ * class loader takes its resolved methods with it.
+ */
+final class AnnotatedMethods {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(AnnotatedMethods.class);
+
+    /**
+     * Methods annotated with JUnit or TestNG annotations, by class and method name.
+     */
+    private static final ClassValue<Map<String, TestMethod>> METHODS = new ClassValue<>() {
+        @Override
+        protected Map<String, TestMethod> computeValue(final Class<?> type) {
+            return resolve(type);
+        }
+    };
+
+    /**
+     * Private default constructor to prevent instance initialization of this utility class.
+     */
+    private AnnotatedMethods() {
+    }
+
+    /**
+     * Returns a method annotated with JUnit or TestNG annotations.
+     *
+     * @param clazz      Class declaring the method.
+     * @param methodName Name of the method.
+     * @return The annotated method, or null if it has no JUnit nor TestNG annotations.
+     */
+    static TestMethod get(final Class<?> clazz, final String methodName) {
+        return METHODS.get(clazz).get(methodName);
+    }
+
+    /**
+     * Resolves the methods of a class annotated with JUnit or TestNG annotations.
+     *
+     * @param clazz Class to resolve.
+     * @return Annotated methods by name.
+     */
+    private static Map<String, TestMethod> resolve(final Class<?> clazz) {
+        Method[] declared;
+        try {
+            declared = clazz.getDeclaredMethods();
+        } catch (LinkageError e) {
+            LOG.debug("Failed to resolve the methods of class [{}]: {}", clazz.getName(), e.getMessage());
+            return Map.of();
+        }
+
+        Map<String, TestMethod> methods = new HashMap<>();
+        Set<String> names = new HashSet<>();
+        for (Method method : declared) {
+            // Frames only tell the name of the method, the first method of that name stands for its overloads
+            if (!names.add(method.getName())) {
+                continue;
+            }
+
+            boolean junit = Arrays.stream(method.getDeclaredAnnotations())
+                    .anyMatch(a -> a.annotationType().getName().startsWith(JUNIT_PACKAGE_NAME_PREFIX));
+            boolean testNG = Arrays.stream(method.getDeclaredAnnotations())
+                    .anyMatch(a -> a.annotationType().getName().startsWith(TESTNG_PACKAGE_NAME_PREFIX));
+            if (junit || testNG) {
+                methods.put(method.getName(), new TestMethod(
+                        junit, junit ? JUnitInferrer.resolveTestName(method) : null,
+                        testNG, testNG ? TestNGInferrer.resolveTestName(method) : null));
+            }
+        }
+
+        return methods.isEmpty() ? Map.of() : Map.copyOf(methods);
+    }
+
+    /**
+     * Method annotated with JUnit or TestNG annotations.
+     */
+    static final class TestMethod {
+
+        /**
+         * True if the method has any JUnit annotation.
+         */
+        private final boolean junit;
+
+        /**
+         * Test name inferred from JUnit annotations, null if the method is not a JUnit test.
+         */
+        private final String junitTestName;
+
+        /**
+         * True if the method has any TestNG annotation.
+         */
+        private final boolean testNG;
+
+        /**
+         * Test name inferred from TestNG annotations, null if the method has no TestNG annotation.
+         */
+        private final String testNGTestName;
+
+        /**
+         * Initializes a new annotated method.
+         *
+         * @param junit          True if the method has any JUnit annotation.
+         * @param junitTestName  Test name inferred from JUnit annotations.
+         * @param testNG         True if the method has any TestNG annotation.
+         * @param testNGTestName Test name inferred from TestNG annotations.
+         */
+        private TestMethod(final boolean junit, final String junitTestName,
+                           final boolean testNG, final String testNGTestName) {
+            this.junit = junit;
+            this.junitTestName = junitTestName;
+            this.testNG = testNG;
+            this.testNGTestName = testNGTestName;
+        }
+
+        /**
+         * Getter for {@link #junit} field.
+         *
+         * @return value of {@link #junit} field
+         */
+        boolean isJUnit() {
+            return junit;
+        }
+
+        /**
+         * Getter for {@link #junitTestName} field.
+         *
+         * @return value of {@link #junitTestName} field
+         */
+        String getJUnitTestName() {
+            return junitTestName;
+        }
+
+        /**
+         * Getter for {@link #testNG} field.
+         *
+         * @return value of {@link #testNG} field
+         */
+        boolean isTestNG() {
+            return testNG;
+        }
+
+        /**
+         * Getter for {@link #testNGTestName} field.
+         *
+         * @return value of {@link #testNGTestName} field
+         */
+        String getTestNGTestName() {
+            return testNGTestName;
+        }
+    }
+}
@@ -17,27 +17,26 @@
 
 package io.testproject.sdk.internal.reporting.inferrers;
 
+import io.testproject.sdk.internal.helpers.CallStack;
 import io.testproject.sdk.internal.rest.ReportSettings;
 
-import java.util.List;
-
 /**
  * Generic inferrer for Project and Job names.
  */
 public class GenericInferrer implements ReportSettingsInferrer {
 
     /**
-     * Stack traces list to analyze in order to infer Project and Job names.
+     * Call stack to analyze in order to infer Project and Job names.
      */
-    private final List<StackTraceElement> traces;
+    private final CallStack stack;
 
     /**
      * Initializes a new Generic inferrer.
      *
-     * @param traces Stack traces list to analyze.
+     * @param stack Call stack to analyze.
      */
-    public GenericInferrer(final List<StackTraceElement> traces) {
-        this.traces = traces;
+    public GenericInferrer(final CallStack stack) {
+        this.stack = stack;
     }
 
     /**
@@ -50,17 +49,9 @@ public class GenericInferrer implements ReportSettingsInferrer {
      */
     @Override
     public ReportSettings inferReportSettings() {
-        StackTraceElement firstTrace = traces.get(traces.size() - 1);
-        Class<?> clazz;
-        try {
-            clazz = Class.forName(firstTrace.getClassName());
-        } catch (ClassNotFoundException e) {
-            LOG.error("Failed to create an instance of a class", e);
-            return getUnnamedEntries();
-        }
-
-        String projectName = getPackageName(clazz);
-        String jobName = firstTrace.getClassName();
+        StackWalker.StackFrame firstFrame = stack.getOutermost();
+        String projectName = getPackageName(firstFrame.getDeclaringClass());
+        String jobName = firstFrame.getClassName();
 
         return new ReportSettings(projectName, jobName);
     }
@@ -72,6 +63,6 @@ public class GenericInferrer implements ReportSettingsInferrer {
      */
     @Override
     public String inferTestName() {
-        return traces.get(traces.size() - 1).getMethodName();
+        return stack.getOutermost().getMethodName();
     }
 }
@@ -17,7 +17,7 @@
 
 package io.testproject.sdk.internal.reporting.inferrers;
 
-import java.util.List;
+import io.testproject.sdk.internal.helpers.CallStack;
 
 import static io.testproject.sdk.internal.reporting.FrameworksNames.JUNIT_PACKAGE_NAME_PREFIX;
 import static io.testproject.sdk.internal.reporting.FrameworksNames.TESTNG_PACKAGE_NAME_PREFIX;
@@ -34,17 +34,29 @@ public final class InferrerFactory {
     }
 
     /**
-     * Initializes an inferrer specific type based on provided stack traces.
-     * @param traces Stack traces list to analyze in order to determine specific inferrer type.
+     * Initializes an inferrer specific type based on provided call stack.
+     * The framework running the test is the one of the innermost framework frame, right below the test.
+     * @param stack Call stack to analyze in order to determine specific inferrer type.
      * @return An instance of an inferrer compatible with the Unit Testing framework used.
      */
-    public static ReportSettingsInferrer getInferrer(final List<StackTraceElement> traces) {
-        if (traces.stream().anyMatch(p -> p.getClassName().startsWith(JUNIT_PACKAGE_NAME_PREFIX))) {
-            return new JUnitInferrer(traces);
-        } else if (traces.stream().anyMatch(p -> p.getClassName().startsWith(TESTNG_PACKAGE_NAME_PREFIX))) {
-            return new TestNGInferrer(traces);
+    public static ReportSettingsInferrer getInferrer(final CallStack stack) {
+        StackWalker.StackFrame framework = stack.find(p -> isFramework(p) ? p : null);
+        if (framework == null) {
+            return new GenericInferrer(stack);
+        } else if (framework.getClassName().startsWith(JUNIT_PACKAGE_NAME_PREFIX)) {
+            return new JUnitInferrer(stack);
         } else {
-            return new GenericInferrer(traces);
+            return new TestNGInferrer(stack);
         }
     }
+
+    /**
+     * Checks whether a frame belongs to one of the supported Unit Testing frameworks.
+     * @param frame Frame to check.
+     * @return True if the frame is of a JUnit or TestNG class, otherwise False.
+     */
+    public static boolean isFramework(final StackWalker.StackFrame frame) {
+        return frame.getClassName().startsWith(JUNIT_PACKAGE_NAME_PREFIX)
+                || frame.getClassName().startsWith(TESTNG_PACKAGE_NAME_PREFIX);
+    }
 }
@@ -17,7 +17,7 @@
 
 package io.testproject.sdk.internal.reporting.inferrers;
 
-import io.testproject.sdk.internal.reporting.FrameworksNames;
+import io.testproject.sdk.internal.helpers.CallStack;
 import io.testproject.sdk.internal.rest.ReportSettings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,7 +26,6 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -43,17 +42,17 @@ public class JUnitInferrer implements ReportSettingsInferrer {
     private static final Logger LOG = LoggerFactory.getLogger(JUnitInferrer.class);
 
     /**
-     * Stack traces list to analyze in order to infer Project and Job names.
+     * Call stack to analyze in order to infer Project and Job names.
      */
-    private final List<StackTraceElement> traces;
+    private final CallStack stack;
 
     /**
      * Initializes a new inferrer for JUnit.
      *
-     * @param traces Stack traces list to analyze.
+     * @param stack Call stack to analyze.
      */
-    public JUnitInferrer(final List<StackTraceElement> traces) {
-        this.traces = traces;
+    public JUnitInferrer(final CallStack stack) {
+        this.stack = stack;
     }
 
     /**
@@ -67,34 +66,27 @@ public class JUnitInferrer implements ReportSettingsInferrer {
      */
     @Override
     public ReportSettings inferReportSettings() {
-        // Iterate over stack trace trying to find JUnit annotations
-        for (StackTraceElement stackTraceElement : this.traces) {
-            Class<?> clazz;
-            try {
-                clazz = Class.forName(stackTraceElement.getClassName());
-            } catch (ClassNotFoundException e) {
-                LOG.error("Failed to create an instance of a class", e);
-                return getUnnamedEntries();
-            }
+        // Walk the stack trying to find JUnit annotations
+        ReportSettings reportSettings = this.stack.find(frame -> {
+            Class<?> clazz = frame.getDeclaringClass();
 
             // Find the method
-            Optional<Method> method = Arrays.stream(clazz.getDeclaredMethods())
-                    .filter(m -> m.getName().equals(stackTraceElement.getMethodName())).findFirst();
-
-            if (method.isEmpty()) {
-                continue;
-            }
+            AnnotatedMethods.TestMethod method = AnnotatedMethods.get(clazz, frame.getMethodName());
 
             // Check if this method has any JUnit annotations
-            if (Arrays.stream(method.get().getDeclaredAnnotations())
-                    .anyMatch(a -> a.annotationType().getName()
-                            .startsWith(FrameworksNames.JUNIT_PACKAGE_NAME_PREFIX))) {
+            if (method != null && method.isJUnit()) {
                 ReportSettings result = inspectDisplayName(clazz);
                 // If JUnit's DisplayName annotation was found -> return it.
                 // Otherwise -> return clazz package name and clazz simple name
                 return Objects.requireNonNullElseGet(result, () ->
                         new ReportSettings(getPackageName(clazz), clazz.getSimpleName()));
             }
+
+            return null;
+        });
+
+        if (reportSettings != null) {
+            return reportSettings;
         }
 
         LOG.warn("Something is wrong... JUnit classes in stack but no annotated methods were found.");
@@ -131,72 +123,89 @@ public class JUnitInferrer implements ReportSettingsInferrer {
      */
     @Override
     public String inferTestName() {
-        for (StackTraceElement stackTraceElement : traces) {
-            Class<?> clazz;
-            try {
-                clazz = Class.forName(stackTraceElement.getClassName());
-            } catch (ClassNotFoundException e) {
-                LOG.error("Failed to create an instance of a class", e);
+        Optional<String> testName = this.stack.find(this::inferTestName);
+        if (testName != null) {
+            return testName.orElse(null);
+        }
 
-                // Return a name of the first method in call stack.
-                return traces.get(traces.size() - 1).getMethodName();
-            }
+        // No JUnit annotations found: using first caller info
+        return this.stack.getOutermost().getMethodName();
+    }
 
-            // Find the method
-            Optional<Method> method = Arrays.stream(clazz.getDeclaredMethods())
-                    .filter(m -> m.getName().equals(stackTraceElement.getMethodName())).findFirst();
+    /**
+     * Infers Test name from a single frame of the call stack.
+     *
+     * @param frame Frame to analyze.
+     * @return The name of the Test, empty if there is nothing to infer, or null to analyze the next frame.
+     */
+    private Optional<String> inferTestName(final StackWalker.StackFrame frame) {
+        // Dynamic test
+        if (frame.getClassName().equals(JUNIT5_DYNAMIC_TEST_DESCRIPTOR)) {
+            return Optional.of("Dynamic Test");
+        }
 
-            if (method.isEmpty()) {
-                continue;
-            }
+        // Find the method, resolved once per class
+        AnnotatedMethods.TestMethod method = AnnotatedMethods.get(frame.getDeclaringClass(), frame.getMethodName());
 
-            // Check if the method has any of the supported UnitTesting frameworks prefixes.
-            boolean annotated = Arrays.stream(method.get().getDeclaredAnnotations())
-                    .anyMatch(a -> a.annotationType().getName().startsWith(JUNIT_PACKAGE_NAME_PREFIX));
+        // Continue to the next frame if this method has no JUnit annotation
+        if (method == null || !method.isJUnit()) {
+            return null;
+        }
 
-            // Dynamic test
-            if (stackTraceElement.getClassName().equals(JUNIT5_DYNAMIC_TEST_DESCRIPTOR)) {
-                return "Dynamic Test";
-            }
+        // If not JUnit @Test method, nothing to infer.
+        if (method.getJUnitTestName() == null) {
+            LOG.trace("No JUnit test annotations detected, skipping inferring {} method name", frame.getMethodName());
+            return Optional.empty();
+        }
 
-            // Continue to the next trace if this method has no JUnit annotation
-            if (!annotated) {
-                continue;
-            }
+        return Optional.of(method.getJUnitTestName());
+    }
 
-            // If not JUnit @Test method, nothing to infer.
-            if (Arrays.stream(method.get().getDeclaredAnnotations())
-                    .noneMatch(a -> Arrays.asList(JUNIT4_TEST_ANNOTATION, JUNIT5_TEST_ANNOTATION,
-                            JUNIT5_PARAMETERIZED_TEST_ANNOTATION)
-                                           .contains(a.annotationType().getName()))) {
-                LOG.trace("No JUnit test annotations detected, skipping inferring {} method name", method.get()
-                        .getName());
-                return null;
-            }
+    /**
+     * Infers Test name of a test method using JUnit annotations, the same way as when the method is on the call stack.
+     *
+     * @param method Test method.
+     * @return A name of the Test, or null if the method is not a JUnit test.
+     */
+    public static String getTestName(final Method method) {
+        AnnotatedMethods.TestMethod annotated = AnnotatedMethods.get(method.getDeclaringClass(), method.getName());
+        return annotated != null ? annotated.getJUnitTestName() : null;
+    }
 
-            // Search for @DisplayName annotation
-            Optional<Annotation> displayNameAnnotation =
-                    Arrays.stream(method.get().getDeclaredAnnotations())
-                            .filter(a -> a.annotationType().getName().equals(JUNIT5_DISPLAY_NAME_ANNOTATION))
-                            .findFirst();
-
-            // Annotation @DisplayName is present
-            if (displayNameAnnotation.isPresent()) {
-                try {
-                    Method valueMethod = displayNameAnnotation.get().annotationType()
-                            .getDeclaredMethod(JUNIT5_DISPLAY_NAME_VALUE);
-                    return valueMethod.invoke(displayNameAnnotation.get()).toString();
-                } catch (IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
-                    LOG.error("Failed to infer Test name from DisplayName annotation", e);
-                    return method.get().getName();
-                }
-            }
+    /**
+     * Resolves Test name of a method using JUnit annotations.
+     *
+     * @param method Method annotated with JUnit annotations.
+     * @return A name of the Test, or null if the method is not a JUnit test.
+     */
+    static String resolveTestName(final Method method) {
+        // If not JUnit @Test method, nothing to infer.
+        if (Arrays.stream(method.getDeclaredAnnotations())
+                .noneMatch(a -> Arrays.asList(JUNIT4_TEST_ANNOTATION, JUNIT5_TEST_ANNOTATION,
+                        JUNIT5_PARAMETERIZED_TEST_ANNOTATION)
+                                       .contains(a.annotationType().getName()))) {
+            return null;
+        }
 
-            // No @DisplayName found
-            return method.get().getName();
+        // Search for @DisplayName annotation
+        Optional<Annotation> displayNameAnnotation =
+                Arrays.stream(method.getDeclaredAnnotations())
+                        .filter(a -> a.annotationType().getName().equals(JUNIT5_DISPLAY_NAME_ANNOTATION))
+                        .findFirst();
+
+        // Annotation @DisplayName is present
+        if (displayNameAnnotation.isPresent()) {
+            try {
+                Method valueMethod = displayNameAnnotation.get().annotationType()
+                        .getDeclaredMethod(JUNIT5_DISPLAY_NAME_VALUE);
+                return valueMethod.invoke(displayNameAnnotation.get()).toString();
+            } catch (IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
+                LOG.error("Failed to infer Test name from DisplayName annotation", e);
+                return method.getName();
+            }
         }
 
-        // No JUnit annotations found: using first caller info
-        return traces.get(traces.size() - 1).getMethodName();
+        // No @DisplayName found
+        return method.getName();
     }
 }
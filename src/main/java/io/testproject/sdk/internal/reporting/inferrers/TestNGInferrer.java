@@ -17,7 +17,7 @@
 
 package io.testproject.sdk.internal.reporting.inferrers;
 
-import io.testproject.sdk.internal.reporting.FrameworksNames;
+import io.testproject.sdk.internal.helpers.CallStack;
 import io.testproject.sdk.internal.rest.ReportSettings;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -27,7 +27,6 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -44,17 +43,17 @@ public class TestNGInferrer implements ReportSettingsInferrer {
     private static final Logger LOG = LoggerFactory.getLogger(TestNGInferrer.class);
 
     /**
-     * Stack traces list to analyze in order to infer Project and Job names.
+     * Call stack to analyze in order to infer Project and Job names.
      */
-    private final List<StackTraceElement> traces;
+    private final CallStack stack;
 
     /**
      * Initializes a new inferrer for TestNG.
      *
-     * @param traces Stack traces list to analyze.
+     * @param stack Call stack to analyze.
      */
-    public TestNGInferrer(final List<StackTraceElement> traces) {
-        this.traces = traces;
+    public TestNGInferrer(final CallStack stack) {
+        this.stack = stack;
     }
 
     /**
@@ -69,34 +68,27 @@ public class TestNGInferrer implements ReportSettingsInferrer {
      */
     @Override
     public ReportSettings inferReportSettings() {
-        // Iterate over stack trace trying to find JUnit annotations
-        for (StackTraceElement stackTraceElement : this.traces) {
-            Class<?> clazz;
-            try {
-                clazz = Class.forName(stackTraceElement.getClassName());
-            } catch (ClassNotFoundException e) {
-                LOG.error("Failed to create an instance of a class", e);
-                return getUnnamedEntries();
-            }
+        // Walk the stack trying to find TestNG annotations
+        ReportSettings reportSettings = this.stack.find(frame -> {
+            Class<?> clazz = frame.getDeclaringClass();
 
             // Find the method
-            Optional<Method> method = Arrays.stream(clazz.getDeclaredMethods())
-                    .filter(m -> m.getName().equals(stackTraceElement.getMethodName())).findFirst();
-
-            if (method.isEmpty()) {
-                continue;
-            }
+            AnnotatedMethods.TestMethod method = AnnotatedMethods.get(clazz, frame.getMethodName());
 
             // Check if this method has any TestNG annotations
-            if (Arrays.stream(method.get().getDeclaredAnnotations())
-                    .anyMatch(a -> a.annotationType().getName()
-                            .startsWith(FrameworksNames.TESTNG_PACKAGE_NAME_PREFIX))) {
+            if (method != null && method.isTestNG()) {
                 ReportSettings result = inspectAnnotations(clazz);
                 // If TestNG @BeforeClass or @BeforeSuite annotations with description were found -> return it.
                 // Otherwise -> return clazz package name and clazz simple name
                 return Objects.requireNonNullElseGet(result, () ->
                         new ReportSettings(getPackageName(clazz), clazz.getSimpleName()));
             }
+
+            return null;
+        });
+
+        if (reportSettings != null) {
+            return reportSettings;
         }
 
         LOG.warn("Something is wrong... TestNG classes in stack but no annotated methods were found.");
@@ -165,123 +157,137 @@ public class TestNGInferrer implements ReportSettingsInferrer {
      */
     @Override
     public String inferTestName() {
-        for (StackTraceElement stackTraceElement : traces) {
-            Class<?> clazz;
-            try {
-                clazz = Class.forName(stackTraceElement.getClassName());
-            } catch (ClassNotFoundException e) {
-                LOG.debug("Failed to create an instance of a class [{}]: {}",
-                        stackTraceElement.getClassName(), e.getMessage());
-                continue;
-            }
-
-            // Find the method
-            Optional<Method> method = Arrays.stream(clazz.getDeclaredMethods())
-                    .filter(m -> m.getName().equals(stackTraceElement.getMethodName())).findFirst();
-
-            if (method.isEmpty()) {
-                continue;
-            }
+        Optional<String> testName = this.stack.find(this::inferTestName);
+        if (testName != null) {
+            return testName.orElse(null);
+        }
 
-            // Check if the method has any of the supported UnitTesting frameworks prefixes.
-            boolean isTestNG = Arrays.stream(method.get().getDeclaredAnnotations())
-                    .anyMatch(a -> a.annotationType().getName().startsWith(TESTNG_PACKAGE_NAME_PREFIX));
+        // No TestNG annotations found: using first caller info
+        return this.stack.getOutermost().getMethodName();
+    }
 
-            // Continue to the next trace if this method has no TestNG annotation
-            if (!isTestNG) {
-                continue;
-            }
+    /**
+     * Infers Test name from a single frame of the call stack.
+     *
+     * @param frame Frame to analyze.
+     * @return The name of the Test, or null to analyze the next frame.
+     */
+    private Optional<String> inferTestName(final StackWalker.StackFrame frame) {
+        // Find the method, resolved once per class
+        AnnotatedMethods.TestMethod method = AnnotatedMethods.get(frame.getDeclaringClass(), frame.getMethodName());
 
-            // Search for @Test annotation
-            Optional<Annotation> testAnnotation =
-                    Arrays.stream(method.get().getDeclaredAnnotations())
-                            .filter(a -> a.annotationType().getName().equals(TESTNG_TEST_ANNOTATION))
-                            .findFirst();
+        // Continue to the next frame if this method has no TestNG annotation
+        if (method == null || !method.isTestNG()) {
+            return null;
+        }
 
-            // Annotation @Test is present
-            if (testAnnotation.isPresent()) {
-                try {
+        return Optional.of(method.getTestNGTestName());
+    }
 
-                    // Get testName method of the annotation
-                    Method testNameMethod = testAnnotation.get().annotationType()
-                            .getDeclaredMethod(TESTNG_TEST_NAME_VALUE);
+    /**
+     * Infers Test name of a test method using TestNG annotations, the same way as when the method is on the call stack.
+     *
+     * @param method Test method.
+     * @return A name of the Test, or null if the method has no TestNG annotation.
+     */
+    public static String getTestName(final Method method) {
+        AnnotatedMethods.TestMethod annotated = AnnotatedMethods.get(method.getDeclaringClass(), method.getName());
+        return annotated != null ? annotated.getTestNGTestName() : null;
+    }
 
-                    // Get description method of the annotation
-                    Method descriptionMethod = testAnnotation.get().annotationType()
-                            .getDeclaredMethod(TESTNG_DESCRIPTION_VALUE);
+    /**
+     * Resolves Test name of a method using TestNG annotations.
+     *
+     * @param method Method annotated with TestNG annotations.
+     * @return A name of the Test.
+     */
+    static String resolveTestName(final Method method) {
+        // Search for @Test annotation
+        Optional<Annotation> testAnnotation =
+                Arrays.stream(method.getDeclaredAnnotations())
+                        .filter(a -> a.annotationType().getName().equals(TESTNG_TEST_ANNOTATION))
+                        .findFirst();
+
+        // Annotation @Test is present
+        if (testAnnotation.isPresent()) {
+            try {
 
-                    // Invoke methods to get names and description values
-                    String testName = testNameMethod.invoke(testAnnotation.get()).toString();
-                    String description = descriptionMethod.invoke(testAnnotation.get()).toString();
+                // Get testName method of the annotation
+                Method testNameMethod = testAnnotation.get().annotationType()
+                        .getDeclaredMethod(TESTNG_TEST_NAME_VALUE);
 
-                    // Set test name if not empty
-                    StringBuilder result = new StringBuilder();
-                    if (!StringUtils.isEmpty(testName)) {
-                        result.append(testName);
-                    }
+                // Get description method of the annotation
+                Method descriptionMethod = testAnnotation.get().annotationType()
+                        .getDeclaredMethod(TESTNG_DESCRIPTION_VALUE);
 
-                    // Append description if not empty
-                    if (!StringUtils.isEmpty(description)) {
+                // Invoke methods to get names and description values
+                String testName = testNameMethod.invoke(testAnnotation.get()).toString();
+                String description = descriptionMethod.invoke(testAnnotation.get()).toString();
 
-                        // Append hyphen to separate testName and description
-                        if (result.length() != 0) {
-                            result.append(" - ");
-                        }
+                // Set test name if not empty
+                StringBuilder result = new StringBuilder();
+                if (!StringUtils.isEmpty(testName)) {
+                    result.append(testName);
+                }
 
-                        // Append description
-                        result.append(description);
-                    }
+                // Append description if not empty
+                if (!StringUtils.isEmpty(description)) {
 
-                    // If result is still empty - use method name
-                    if (result.length() == 0) {
-                        return method.get().getName();
+                    // Append hyphen to separate testName and description
+                    if (result.length() != 0) {
+                        result.append(" - ");
                     }
 
-                    // Return result
-                    return result.toString();
-                } catch (IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
-                    LOG.error("Failed to infer Test name from @Test annotation", e);
+                    // Append description
+                    result.append(description);
+                }
 
-                    // Return the name of the method that is annotated with @Test
-                    return method.get().getName();
+                // If result is still empty - use method name
+                if (result.length() == 0) {
+                    return method.getName();
                 }
-            }
 
-            // Search for other TestNG annotations
-            Optional<Annotation> otherAnnotation =
-                    Arrays.stream(method.get().getDeclaredAnnotations())
-                            .filter(a -> a.annotationType().getName().startsWith(TESTNG_PACKAGE_NAME_PREFIX))
-                            .findFirst();
-
-            // No other TestNG annotations were found
-            if (otherAnnotation.isEmpty()) {
-                // Can't happen - got this far because there was a TestNG annotation on the method!
-                LOG.warn("Something went wrong, method has TestNG annotations but none of them could be used.");
-                return method.get().getName();
+                // Return result
+                return result.toString();
+            } catch (IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
+                LOG.error("Failed to infer Test name from @Test annotation", e);
+
+                // Return the name of the method that is annotated with @Test
+                return method.getName();
             }
+        }
 
-            // Check if annotation got a 'description' method
-            Optional<Method> descriptionMethod =
-                    Arrays.stream(otherAnnotation.get().annotationType().getDeclaredMethods())
-                            .filter(m -> m.getName().equals(TESTNG_DESCRIPTION_VALUE)).findFirst();
+        // Search for other TestNG annotations
+        Optional<Annotation> otherAnnotation =
+                Arrays.stream(method.getDeclaredAnnotations())
+                        .filter(a -> a.annotationType().getName().startsWith(TESTNG_PACKAGE_NAME_PREFIX))
+                        .findFirst();
+
+        // No other TestNG annotations were found
+        if (otherAnnotation.isEmpty()) {
+            // Can't happen - got this far because there was a TestNG annotation on the method!
+            LOG.warn("Something went wrong, method has TestNG annotations but none of them could be used.");
+            return method.getName();
+        }
 
-            // No 'description' method
-            if (descriptionMethod.isEmpty()) {
-                LOG.debug("Something went wrong... encountered a TestNG annotation without a description method.");
-                return method.get().getName();
-            }
+        // Check if annotation got a 'description' method
+        Optional<Method> descriptionMethod =
+                Arrays.stream(otherAnnotation.get().annotationType().getDeclaredMethods())
+                        .filter(m -> m.getName().equals(TESTNG_DESCRIPTION_VALUE)).findFirst();
 
-            // Return the description field of a TestNG annotation
-            try {
-                String description = descriptionMethod.get().invoke(otherAnnotation.get()).toString();
-                return !StringUtils.isEmpty(description) ? description : method.get().getName();
-            } catch (IllegalAccessException | InvocationTargetException e) {
-                LOG.error("Failed to infer Test name from TestNG annotation description", e);
-                return method.get().getName();
-            }
+        // No 'description' method
+        if (descriptionMethod.isEmpty()) {
+            LOG.debug("Something went wrong... encountered a TestNG annotation without a description method.");
+            return method.getName();
         }
 
-        // No JUnit annotations found or failed to create class from name: using first caller info
-        return traces.get(traces.size() - 1).getMethodName();
+        // Return the description field of a TestNG annotation
+        try {
+            String description = descriptionMethod.get().invoke(otherAnnotation.get()).toString();
+            return !StringUtils.isEmpty(description) ? description : method.getName();
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            LOG.error("Failed to infer Test name from TestNG annotation description", e);
+            return method.getName();
+        }
     }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Features supported by an Agent, inferred from its version.
+ * <p>
+ * Versions are parsed once and the result is shared by all the sessions using an Agent of that version.
+ */
+public final class AgentCapabilities {
+
+    /**
+     * Minimum Agent version that support session reuse.
+     */
+    private static final String MIN_SESSION_REUSE_CAPABLE_VERSION = "0.64.32";
+
+    /**
+     * Minimum Agent version that supports Generic driver.
+     */
+    private static final String MIN_GENERIC_DRIVER_SUPPORTED_VERSION = "0.64.40";
+
+    /**
+     * Minimum Agent version that supports local reports.
+     */
+    private static final String MIN_LOCAL_REPORT_SUPPORTED_VERSION = "2.1.0";
+
+    /**
+     * Minimum Agent version that supports batch reporting.
+     */
+    private static final String MIN_BATCH_REPORT_SUPPORTED_VERSION = "3.1.0";
+
+    /**
+     * Capabilities of an Agent which version is unknown, none is supported.
+     */
+    private static final AgentCapabilities UNKNOWN = new AgentCapabilities(null);
+
+    /**
+     * Capabilities by Agent version.
+     */
+    private static final Map<String, AgentCapabilities> VERSIONS = new ConcurrentHashMap<>();
+
+    /**
+     * Agent version.
+     */
+    private final String version;
+
+    /**
+     * True if the Agent can reuse a session.
+     */
+    private final boolean sessionReuse;
+
+    /**
+     * True if the Agent supports Generic driver.
+     */
+    private final boolean genericDriver;
+
+    /**
+     * True if the Agent supports local reports.
+     */
+    private final boolean localReports;
+
+    /**
+     * True if the Agent accepts reports in batches.
+     */
+    private final boolean batchReports;
+
+    /**
+     * Initializes the capabilities of an Agent version.
+     *
+     * @param version Agent version, or null if unknown.
+     */
+    private AgentCapabilities(final String version) {
+        this.version = version;
+        ComparableVersion agentVersion = version != null ? new ComparableVersion(version) : null;
+        this.sessionReuse = atLeast(agentVersion, MIN_SESSION_REUSE_CAPABLE_VERSION);
+        this.genericDriver = atLeast(agentVersion, MIN_GENERIC_DRIVER_SUPPORTED_VERSION);
+        this.localReports = atLeast(agentVersion, MIN_LOCAL_REPORT_SUPPORTED_VERSION);
+        this.batchReports = atLeast(agentVersion, MIN_BATCH_REPORT_SUPPORTED_VERSION);
+    }
+
+    /**
+     * Returns the capabilities of an Agent version.
+     *
+     * @param version Agent version, or null if unknown.
+     * @return Capabilities of the Agent version, none if the version is unknown.
+     */
+    public static AgentCapabilities of(final String version) {
+        if (version == null) {
+            return UNKNOWN;
+        }
+        return VERSIONS.computeIfAbsent(version, AgentCapabilities::new);
+    }
+
+    /**
+     * Compares an Agent version with the minimum version supporting a feature.
+     *
+     * @param agentVersion Agent version, or null if unknown.
+     * @param minimum      Minimum version supporting the feature.
+     * @return True if the Agent version is known and not older than the minimum version.
+     */
+    private static boolean atLeast(final ComparableVersion agentVersion, final String minimum) {
+        return agentVersion != null && agentVersion.compareTo(new ComparableVersion(minimum)) >= 0;
+    }
+
+    /**
+     * Getter for {@link #version} field.
+     *
+     * @return value of {@link #version} field
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Getter for {@link #sessionReuse} field.
+     *
+     * @return value of {@link #sessionReuse} field
+     */
+    public boolean isSessionReuse() {
+        return sessionReuse;
+    }
+
+    /**
+     * Getter for {@link #genericDriver} field.
+     *
+     * @return value of {@link #genericDriver} field
+     */
+    public boolean isGenericDriver() {
+        return genericDriver;
+    }
+
+    /**
+     * Getter for {@link #localReports} field.
+     *
+     * @return value of {@link #localReports} field
+     */
+    public boolean isLocalReports() {
+        return localReports;
+    }
+
+    /**
+     * Getter for {@link #batchReports} field.
+     *
+     * @return value of {@link #batchReports} field
+     */
+    public boolean isBatchReports() {
+        return batchReports;
+    }
+}
@@ -21,6 +21,9 @@ import com.google.gson.*;
 import io.testproject.sdk.drivers.ReportType;
 import io.testproject.sdk.internal.addons.ActionProxy;
 import io.testproject.sdk.internal.exceptions.*;
+import io.testproject.sdk.internal.helpers.CallStack;
+import io.testproject.sdk.internal.helpers.EnvironmentHelper;
+import io.testproject.sdk.internal.helpers.PendingCommandReports;
 import io.testproject.sdk.internal.helpers.ShutdownThreadManager;
 import io.testproject.sdk.internal.reporting.inferrers.GenericInferrer;
 import io.testproject.sdk.internal.reporting.inferrers.InferrerFactory;
@@ -42,8 +45,7 @@ import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.maven.artifact.versioning.ComparableVersion;
+import org.apache.http.util.EntityUtils;
 import org.openqa.selenium.Capabilities;
 import org.openqa.selenium.MutableCapabilities;
 import org.openqa.selenium.Platform;
@@ -57,8 +59,10 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.net.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 
 public final class AgentClient implements Closeable {
 
@@ -72,11 +76,22 @@ public final class AgentClient implements Closeable {
      */
     public static final int REPORTS_QUEUE_TIMEOUT = 60 * 10;
 
+    /**
+     * Maximum amount of time to wait in seconds for the queue to stop after it was terminated.
+     */
+    private static final int REPORTS_QUEUE_SHUTDOWN_TIMEOUT = 5;
+
     /**
      * Constant for a custom capability name used to track AgentClient instances.
      */
     private static final String TP_GUID = "tp:guid";
 
+    /**
+     * Constant for environment variable name that may allow several sessions to run at the same time.
+     * When not set, creating a driver closes the session of the previous one.
+     */
+    public static final String TP_PARALLEL_SESSIONS_VARIABLE_NAME = "TP_PARALLEL_SESSIONS";
+
     /**
      * Constant for environment variable name that may store Agent base URL.
      */
@@ -108,24 +123,32 @@ public final class AgentClient implements Closeable {
     private static final int ADDON_EXECUTION_SOCKET_TIMEOUT_MS = 60 * 1000;
 
     /**
-     * Minimum Agent version that support session reuse.
+     * Logger instance.
      */
-    private static final String MIN_SESSION_REUSE_CAPABLE_VERSION = "0.64.32";
+    private static final Logger LOG = LoggerFactory.getLogger(AgentClient.class);
 
     /**
-     * Minimum Agent version that supports local reports.
+     * AgentClient instance of the driver created last, when sessions don't run in parallel.
+     * It stays current once the driver quit, so that reports sent afterwards (e.g. the Cucumber job name)
+     * still find it.
      */
-    private static final String MIN_LOCAL_REPORT_SUPPORTED_VERSION = "2.1.0";
+    private static volatile AgentClient instance;
 
     /**
-     * Logger instance.
+     * AgentClient instance of the driver created last, even once closed, when sessions don't run in parallel.
+     * The next driver decides whether to reuse its development socket and closes it for good.
      */
-    private static final Logger LOG = LoggerFactory.getLogger(AgentClient.class);
+    private static AgentClient previous;
+
+    /**
+     * Open AgentClient instances, by the session tracking capability of their driver.
+     */
+    private static final Map<String, AgentClient> CLIENTS = new ConcurrentHashMap<>();
 
     /**
-     * AgentClient instance used by active driver.
+     * AgentClient instance of the driver created last on the current thread.
      */
-    private static AgentClient instance;
+    private static final ThreadLocal<AgentClient> CURRENT = new ThreadLocal<>();
 
     /**
      * Class member to store Agent version obtained when session is initialized.
@@ -162,6 +185,11 @@ public final class AgentClient implements Closeable {
      */
     private final CloseableHttpClient httpClient;
 
+    /**
+     * Manages the development socket of the session, shared by the sessions unless they run in parallel.
+     */
+    private final SocketManager socketManager;
+
     /**
      * Future to keep the async task of starting the reports queue.
      */
@@ -172,6 +200,11 @@ public final class AgentClient implements Closeable {
      */
     private ReportsQueue reportsQueue;
 
+    /**
+     * Sinks the reports are handed to, null if reports are disabled.
+     */
+    private ReportSink reportSink;
+
     /**
      * Class member to store Agent session details.
      */
@@ -216,9 +249,34 @@ public final class AgentClient implements Closeable {
     private SessionResponse agentResponse;
 
     /**
-     * Minimum Agent version that supports batch reporting.
+     * Agent status, retrieved when the session response does not advertise the reporting capabilities.
+     */
+    private AgentStatusResponse agentStatus;
+
+    /**
+     * Screenshots already sent to the Agent in this session, null if screenshots are always sent inline.
+     */
+    private ScreenshotCache screenshotCache;
+
+    /**
+     * Processor shrinking screenshots before they are reported, null if screenshots are reported as taken.
+     */
+    private ScreenshotProcessor screenshotProcessor;
+
+    /**
+     * Hands reports over to the reports queue in order, while their screenshots are processed.
+     */
+    private final ReportsSequencer reportsSequencer = new ReportsSequencer();
+
+    /**
+     * Merges identical consecutive command reports, null if every command is reported on its own.
+     */
+    private ReportsCoalescer reportsCoalescer;
+
+    /**
+     * Command reports prepared in the background, null if they are prepared by the driver commands.
      */
-    private static final String MIN_BATCH_REPORT_SUPPORTED_VERSION = "3.1.0";
+    private PendingCommandReports pendingCommandReports;
 
 
     /**
@@ -267,7 +325,9 @@ public final class AgentClient implements Closeable {
         }
 
         // Initialize HTTP Client
-        HttpClientBuilder httpClientBuilder = HttpClients.custom()
+        // Connections are pooled per Agent and shared by all the sessions
+        AgentConnectionPool connectionPool = AgentConnectionPool.get(this.remoteAddress);
+        HttpClientBuilder httpClientBuilder = connectionPool.newClientBuilder()
                 .addInterceptorLast((HttpRequestInterceptor) (request, context) -> {
                     request.setHeader(HttpHeaders.AUTHORIZATION, this.token);
                     request.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
@@ -275,6 +335,9 @@ public final class AgentClient implements Closeable {
                 });
         this.httpClient = httpClientBuilder.build();
 
+        // Sessions running in parallel validate and close their own development socket
+        this.socketManager = isParallelSessions() ? SocketManager.create() : SocketManager.getInstance();
+
         // Start Session
         this.reportsDisabled = disableReports;
         ReportSettings sessionReportSettings = null;
@@ -302,21 +365,44 @@ public final class AgentClient implements Closeable {
         // Make sure local reports are supported
         verifyLocalReportsSupported(reportSettings.getReportType());
 
-        // Start reports queue
+        // Start reports queue and the other report sinks
         if (!disableReports) {
-            if (new ComparableVersion(version).compareTo(
-                    new ComparableVersion(MIN_BATCH_REPORT_SUPPORTED_VERSION)) >= 0) {
-                        this.reportsQueue = new ReportsQueueBatch(
-                                this.httpClient, this.getSession().getSessionId(), this.remoteAddress);
-            } else {
-                this.reportsQueue = new ReportsQueue(this.httpClient, this.getSession().getSessionId());
+            Set<String> sinks = ReportSinks.getConfigured();
+            ReportSink agentSink = null;
+            if (sinks.contains(ReportSinks.AGENT)) {
+                // Open the connections used by the reports queue ahead of the first reports
+                connectionPool.warmUp(CONNECTION_TIMEOUT_MS);
+
+                ContentEncoding contentEncoding = negotiateContentEncoding();
+                ReportsJournal journal = ReportsJournal.open(this.getSession().getSessionId());
+                if (AgentCapabilities.of(version).isBatchReports()) {
+                            this.reportsQueue = new ReportsQueueBatch(this.httpClient,
+                                    this.getSession().getSessionId(), this.remoteAddress, getDefaultHttpConfig(),
+                                    contentEncoding, journal);
+                } else {
+                    this.reportsQueue = new ReportsQueue(this.httpClient, this.getSession().getSessionId(),
+                            getDefaultHttpConfig(), contentEncoding, journal);
+                }
+                this.reportsQueue.getMetrics().register();
+                this.reportsQueueFuture = reportsExecutorService.submit(this.reportsQueue);
+                agentSink = new AgentReportSink(this.reportsQueue, this.remoteAddress);
             }
-            this.reportsQueueFuture = reportsExecutorService.submit(this.reportsQueue);
+
+            // Reports recorded elsewhere must carry their screenshots, only the Agent resolves digests
+            if (sinks.size() == 1 && agentSink != null) {
+                this.screenshotCache = negotiateScreenshotCache();
+                this.reportsQueue.setScreenshotCache(this.screenshotCache);
+            }
+            this.screenshotProcessor = ScreenshotProcessor.create();
+            this.reportsCoalescer = ReportsCoalescer.create(coalesced ->
+                    this.reportsSequencer.submit(() -> enqueueReport(Routes.REPORT_COMMAND, coalesced)));
+            this.pendingCommandReports = PendingCommandReports.create();
+            this.reportSink = ReportSinks.open(this.getSession().getSessionId(), agentSink);
         }
 
         // Make sure to exit gracefully and close the development socket
         // Add with the highest priority to be executed last.
-        ShutdownThreadManager.getInstance().addAgentClient(() -> close(true));
+        ShutdownThreadManager.getInstance().addAgentClient(this, () -> close(true));
     }
 
     /**
@@ -356,32 +442,63 @@ public final class AgentClient implements Closeable {
             return false;
         }
 
-        boolean result = false;
-        try {
-            ComparableVersion agentVersion = new ComparableVersion(version);
-            result = agentVersion.compareTo(new ComparableVersion(MIN_SESSION_REUSE_CAPABLE_VERSION)) >= 0;
-            LOG.trace("Agent [{}] {} session re-use", version, result ? "supports" : "does not support");
-            return result;
-        } catch (IllegalArgumentException e) {
-            LOG.error(e.getMessage(), e);
-        }
-
+        boolean result = AgentCapabilities.of(version).isSessionReuse();
+        LOG.trace("Agent [{}] {} session re-use", version, result ? "supports" : "does not support");
         return result;
     }
 
     /**
-     * Get current instance of the AgentClient.
+     * Get current instance of the AgentClient: the one of the driver created last on the current thread
+     * if it is still open. Unless sessions run in parallel, otherwise the one of the driver created last,
+     * even if that driver quit.
      * Method is meant for internal use only.
      *
-     * @return current instance of AgentClient.
+     * @return current instance of AgentClient, or null if there is none.
      */
     public static AgentClient getInstance() {
-        if (instance == null) {
+        AgentClient current = CURRENT.get();
+        if (current != null && CLIENTS.get(current.getGuid()) == current) {
+            return current;
+        }
+
+        // A session running in parallel belongs to the thread that created its driver
+        AgentClient client = isParallelSessions() ? null : instance;
+        if (client == null) {
             if (!warned) {
                 warned = true;
             }
         }
-        return instance;
+        return client;
+    }
+
+    /**
+     * Get the open instance of the AgentClient of a driver.
+     * Method is meant for internal use only.
+     *
+     * @param capabilities Capabilities of the driver, holding its session tracking capability.
+     * @return instance of AgentClient, or null if the driver has none open.
+     */
+    public static AgentClient getInstance(final Capabilities capabilities) {
+        Object guid = capabilities.getCapability(TP_GUID);
+        return guid != null ? CLIENTS.get(guid.toString()) : null;
+    }
+
+    /**
+     * Checks whether several sessions may run at the same time, set in {@value #TP_PARALLEL_SESSIONS_VARIABLE_NAME}.
+     *
+     * @return True if sessions run in parallel, otherwise False.
+     */
+    private static boolean isParallelSessions() {
+        return Boolean.parseBoolean(EnvironmentHelper.getString(TP_PARALLEL_SESSIONS_VARIABLE_NAME, "false"));
+    }
+
+    /**
+     * Session tracking capability of the driver, that identifies this instance.
+     *
+     * @return value of the {@link #TP_GUID} capability.
+     */
+    private String getGuid() {
+        return String.valueOf(getSession().getCapabilities().getCapability(TP_GUID));
     }
 
     /**
@@ -537,24 +654,45 @@ public final class AgentClient implements Closeable {
             capabilities = capabilities.merge(newCapabilities);
         }
 
+        String guid = capabilities.getCapability(TP_GUID).toString();
+        AgentClient client = CLIENTS.get(guid);
+        if (client != null) {
+            CURRENT.set(client);
+            return client;
+        }
+
+        if (isParallelSessions()) {
+            // Sessions of other drivers are left open, each driver has its own client and reports queue
+            client = new AgentClient(remoteAddress, token, capabilities, reportSettings, disableReports,
+                    sessionSocketTimeout);
+            AgentClient existing = CLIENTS.putIfAbsent(guid, client);
+            if (existing != null) {
+                // Another thread created a client for the same driver meanwhile
+                client.stop();
+                client = existing;
+            }
+            CURRENT.set(client);
+            return client;
+        }
+
         // Synchronized to avoid possible multiple threads race condition
         synchronized (AgentClient.class) {
 
             // Check if an instance of an AgentClient class has been already cached
-            if (instance == null || !instance.getSession().getCapabilities().getCapability(TP_GUID).equals(
+            if (previous == null || !previous.getSession().getCapabilities().getCapability(TP_GUID).equals(
                     capabilities.getCapability(TP_GUID))) {
 
                 // Close existing session if required
                 ReportSettings settings = reportSettings;
-                if (instance != null) {
+                if (previous != null) {
                     // If either setting is null we need to re-infer settings.
                     // Without it we can't reuse previously-inferred settings.
                     if (settings.getProjectName() == null || settings.getJobName() == null) {
                         settings = inferReportSettings(reportSettings);
                     }
 
-                    boolean sameReportSettings = instance.getReportSetting() != null
-                            && instance.getReportSetting().equals(settings);
+                    boolean sameReportSettings = previous.getReportSetting() != null
+                            && previous.getReportSetting().equals(settings);
                     // If the report doesn't go to the same Project/Job,
                     // or Agent doesn't support session reuse - close it.
                     // and Cucumber does not force session reuse.
@@ -566,16 +704,18 @@ public final class AgentClient implements Closeable {
                     }
 
                     // Close existing instance
-                    instance.stop();
+                    previous.stop();
                 }
 
                 // No instance yet or it's for another driver and needs to be re-initialized
-                instance = new AgentClient(remoteAddress, token, capabilities, settings,
+                previous = new AgentClient(remoteAddress, token, capabilities, settings,
                         disableReports, sessionSocketTimeout);
+                CLIENTS.put(guid, previous);
+                instance = previous;
             }
+            CURRENT.set(previous);
+            return previous;
         }
-
-        return instance;
     }
 
     /**
@@ -591,6 +731,33 @@ public final class AgentClient implements Closeable {
      */
     public static String getVersion(final URL remoteAddress)
             throws AgentConnectException, MalformedURLException {
+        return getCapabilities(remoteAddress).getVersion();
+    }
+
+    /**
+     * Retrieves the capabilities of the target Agent.
+     * The Agent status is requested once and shared by the drivers, see {@link AgentStatusCache}.
+     *
+     * @param remoteAddress Agent API base URL, see {@link #getVersion(URL)}.
+     * @return Agent capabilities.
+     * @throws AgentConnectException if Agent is not responding or responds with an error
+     * @throws MalformedURLException if the Agent API base URL provided is malformed
+     */
+    public static AgentCapabilities getCapabilities(final URL remoteAddress)
+            throws AgentConnectException, MalformedURLException {
+        return AgentStatusCache.getCapabilities(inferRemoteAddress(remoteAddress), AgentClient::getStatus);
+    }
+
+    /**
+     * Retrieves the status of the target Agent.
+     *
+     * @param remoteAddress Agent API base URL, see {@link #getVersion(URL)}.
+     * @return Agent status.
+     * @throws AgentConnectException if Agent is not responding or responds with an error
+     * @throws MalformedURLException if the Agent API base URL provided is malformed
+     */
+    private static AgentStatusResponse getStatus(final URL remoteAddress)
+            throws AgentConnectException, MalformedURLException {
 
         // Determine Agent API address
         URL agentAddress = inferRemoteAddress(remoteAddress);
@@ -607,39 +774,34 @@ public final class AgentClient implements Closeable {
                 .build();
         httpGet.setConfig(config);
 
-        // Prepare HTTP client
-        HttpClientBuilder httpClientBuilder = HttpClients.custom()
+        // Prepare HTTP client, sharing the connections to the Agent
+        HttpClientBuilder httpClientBuilder = AgentConnectionPool.get(agentAddress).newClientBuilder()
                 .addInterceptorLast((HttpRequestInterceptor) (request, context) -> {
                     request.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
                     request.setHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
                 });
 
-        // Send POST request
-        CloseableHttpResponse response;
-        try {
-            response = httpClientBuilder.build().execute(httpGet);
-        } catch (IOException e) {
-            LOG.error("Failed to get Agent status", e);
-            throw new AgentConnectException("Failed to get Agent status", e);
-        }
-
-        // Handle unsuccessful response
-        if (response != null && response.getStatusLine().getStatusCode() != HttpURLConnection.HTTP_OK) {
-            LOG.error("Agent responded with an unexpected status {} to status request",
-                    response.getStatusLine().getStatusCode());
-        }
+        // Send GET request, closing the response returns the connection to the pool
+        String responseBody;
+        try (CloseableHttpClient client = httpClientBuilder.build();
+             CloseableHttpResponse response = client.execute(httpGet)) {
 
-        if (response == null) {
-            LOG.error("Agent response is empty");
-            throw new AgentConnectException("Failed to get Agent status");
-        }
+            // Handle unsuccessful response
+            if (response.getStatusLine().getStatusCode() != HttpURLConnection.HTTP_OK) {
+                LOG.error("Agent responded with an unexpected status {} to status request",
+                        response.getStatusLine().getStatusCode());
+            }
 
-        // Read Response
-        String responseBody;
-        try {
-            responseBody = IOUtils.toString(response.getEntity().getContent(), StandardCharsets.UTF_8.name());
+            // Read Response
+            try {
+                responseBody = IOUtils.toString(response.getEntity().getContent(), StandardCharsets.UTF_8.name());
+            } catch (IOException e) {
+                LOG.error("Failed reading Agent status response", e);
+                throw new AgentConnectException("Failed to get Agent status", e);
+            }
         } catch (IOException e) {
-            LOG.error("Failed reading Agent status response", e);
+            AgentStatusCache.invalidate(agentAddress);
+            LOG.error("Failed to get Agent status", e);
             throw new AgentConnectException("Failed to get Agent status", e);
         }
 
@@ -652,8 +814,61 @@ public final class AgentClient implements Closeable {
             throw new AgentConnectException("Failed to parse Agent response", e);
         }
 
-        // Return tag as version
-        return status.getTag();
+        return status;
+    }
+
+    /**
+     * Negotiates the content encoding of report requests.
+     * Uses the encodings advertised in the session response,
+     * or in the Agent status when the session response does not include them.
+     *
+     * @return Content encoding to use for report requests.
+     */
+    private ContentEncoding negotiateContentEncoding() {
+        List<String> accepted = agentResponse != null ? agentResponse.getAcceptedContentEncodings() : null;
+        if (accepted == null && getAgentStatus() != null) {
+            accepted = agentStatus.getAcceptedContentEncodings();
+        }
+
+        ContentEncoding contentEncoding = ContentEncoding.negotiate(accepted);
+        LOG.trace("Reports will be sent using [{}] content encoding", contentEncoding.getToken());
+        return contentEncoding;
+    }
+
+    /**
+     * Negotiates the deduplication of screenshots in reports.
+     * Uses the capability advertised in the session response,
+     * or in the Agent status when the session response does not include it.
+     *
+     * @return Screenshots cache, or null if screenshots should be sent inline.
+     */
+    private ScreenshotCache negotiateScreenshotCache() {
+        Boolean accepted = agentResponse != null ? agentResponse.getAcceptsScreenshotDigests() : null;
+        if (accepted == null && getAgentStatus() != null) {
+            accepted = agentStatus.getAcceptsScreenshotDigests();
+        }
+
+        ScreenshotCache cache = ScreenshotCache.negotiate(Boolean.TRUE.equals(accepted));
+        LOG.trace("Screenshots will be sent {}", cache != null ? "once per session" : "inline");
+        return cache;
+    }
+
+    /**
+     * Retrieves the Agent status once, for the reporting capabilities it advertises.
+     * Drivers created shortly before may already have retrieved it.
+     *
+     * @return Agent status, or null if it could not be retrieved.
+     */
+    private AgentStatusResponse getAgentStatus() {
+        if (agentStatus == null) {
+            try {
+                agentStatus = AgentStatusCache.getStatus(remoteAddress, AgentClient::getStatus);
+            } catch (AgentConnectException | MalformedURLException e) {
+                LOG.debug("Failed to retrieve the reporting capabilities of the Agent", e);
+            }
+        }
+
+        return agentStatus;
     }
 
     private RequestConfig getDefaultHttpConfig() {
@@ -757,6 +972,7 @@ public final class AgentClient implements Closeable {
             // It has to be set again to avoid initializing an new AgentClient instance for these capabilities again
             mutableCapabilities.setCapability(TP_GUID, guid);
             version = agentResponse.getVersion();
+            AgentStatusCache.verify(remoteAddress, version);
             // Set the server URL to null if using the Generic driver.
             URL serverUrl = ((capabilities.getPlatform() == Platform.ANY) ? null
                     : new URL(agentResponse.getServerAddress()));
@@ -794,7 +1010,7 @@ public final class AgentClient implements Closeable {
         }
 
         // Open TCP socket
-        SocketManager.getInstance().openSocket(this.remoteAddress.getHost(), agentResponse.getDevSocketPort(),
+        socketManager.openSocket(this.remoteAddress.getHost(), agentResponse.getDevSocketPort(),
                 agentResponse.getUuid());
     }
 
@@ -804,6 +1020,7 @@ public final class AgentClient implements Closeable {
      * @return the translated exception
      */
     private AgentConnectException translateAgentConnectFailure(final IOException e) {
+        AgentStatusCache.invalidate(this.remoteAddress);
         Throwable rootCause = ExceptionUtils.getRootCause(e);
         if (SocketTimeoutException.class.isAssignableFrom(rootCause.getClass())) {
             return new AgentConnectException("Could not complete the request to start a new session. "
@@ -833,15 +1050,15 @@ public final class AgentClient implements Closeable {
 
         LOG.trace("Report settings were not provided or incomplete, trying to infer...");
 
-        // Grab stack traces to analyze callers and infer Project/Job names
-        List<StackTraceElement> traces = Arrays.asList(Thread.currentThread().getStackTrace());
+        // Grab the call stack to analyze callers and infer Project/Job names
+        CallStack stack = CallStack.capture(InferrerFactory::isFramework);
 
         // Try to infer Project and Job names from Unit Testing FWs annotations
-        ReportSettings inferredReportSettings = InferrerFactory.getInferrer(traces).inferReportSettings();
+        ReportSettings inferredReportSettings = InferrerFactory.getInferrer(stack).inferReportSettings();
 
         // Inferrer returned empty ReportSettings
         if (inferredReportSettings == null) {
-            inferredReportSettings = new GenericInferrer(traces).inferReportSettings();
+            inferredReportSettings = new GenericInferrer(stack).inferReportSettings();
         }
 
         LOG.info("Inferred [{}] and [{}] for Project and Job names accordingly.",
@@ -876,8 +1093,7 @@ public final class AgentClient implements Closeable {
      * @throws AgentConnectException when local reports are not supported.
      */
     private void verifyLocalReportsSupported(final ReportType reportType) throws AgentConnectException {
-        if (reportType == ReportType.LOCAL && new ComparableVersion(version).compareTo(
-                new ComparableVersion(MIN_LOCAL_REPORT_SUPPORTED_VERSION)) < 0) {
+        if (reportType == ReportType.LOCAL && !AgentCapabilities.of(version).isLocalReports()) {
             StringBuilder message = new StringBuilder()
                     .append("Target Agent version").append(" [").append(version).append("] ")
                     .append("doesn't support local reports. ")
@@ -935,6 +1151,40 @@ public final class AgentClient implements Closeable {
         return session;
     }
 
+    /**
+     * Uploads reports recorded by the {@link FileReportSink} to this session, using the reports batch endpoint.
+     *
+     * @param file   File recorded by the {@link FileReportSink}.
+     * @param offset Offset in the file to start from, 0 or the offset returned by a previous upload.
+     * @return Outcome of the upload, holding the offset a later upload resumes from.
+     * @throws IOException          if the file could not be read.
+     * @throws InterruptedException if the thread was interrupted while uploading.
+     * @see ReportsUploader
+     */
+    public ReportsUploader.Result uploadReports(final Path file, final long offset)
+            throws IOException, InterruptedException {
+        return new ReportsUploader(this.httpClient, this.remoteAddress, negotiateContentEncoding())
+                .upload(file, offset);
+    }
+
+    /**
+     * Metrics of the reports sent by this session.
+     *
+     * @return Reports metrics, or null if reports are disabled.
+     */
+    public ReportsMetrics getReportsMetrics() {
+        return reportsQueue != null ? reportsQueue.getMetrics() : null;
+    }
+
+    /**
+     * Getter for {@link #pendingCommandReports} field.
+     *
+     * @return Command reports prepared in the background, or null if they are prepared by the driver commands.
+     */
+    public PendingCommandReports getPendingCommandReports() {
+        return pendingCommandReports;
+    }
+
     /**
      * Getter for {@link #version} field.
      *
@@ -1007,7 +1257,7 @@ public final class AgentClient implements Closeable {
      * Removes shutdown hook and calls {@link #close()}.
      */
     private void stop() {
-        ShutdownThreadManager.getInstance().removeAgentClient();
+        ShutdownThreadManager.getInstance().removeAgentClient(this);
         LOG.trace("Removed shutdown thread to avoid unnecessary close() calls");
         close();
     }
@@ -1016,7 +1266,7 @@ public final class AgentClient implements Closeable {
     /**
      * Implementation of {@link Closeable Closable} interface.
      * Closes all open resources such as the reporting queue without closing
-     * the TCP socket open with the agent.
+     * the TCP socket open with the agent, unless the session has a socket of its own.
      */
     public void close() {
         close(false);
@@ -1030,6 +1280,19 @@ public final class AgentClient implements Closeable {
      */
     public void close(final boolean exiting) {
         LOG.trace("Closing AgentClient for driver session [{}]", this.getSession().getSessionId());
+        CLIENTS.remove(getGuid(), this);
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+
+        if (pendingCommandReports != null) {
+            pendingCommandReports.close();
+        }
+
+        if (reportSink != null) {
+            flushReports();
+        }
+
         if (reportsQueueFuture != null && !reportsQueueFuture.isDone()) {
             reportsQueue.stop();
             try {
@@ -1050,10 +1313,34 @@ public final class AgentClient implements Closeable {
 
         if (!reportsExecutorService.isTerminated()) {
             reportsExecutorService.shutdown();
+            try {
+                // Let a forcibly terminated queue save the unsent reports to the reports journal
+                reportsExecutorService.awaitTermination(REPORTS_QUEUE_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (reportsQueue != null) {
+            reportsQueue.getMetrics().unregister();
+        }
+
+        if (reportSink != null) {
+            try {
+                reportSink.close();
+            } catch (IOException e) {
+                LOG.error("Failed to close the report sinks", e);
+            }
         }
 
-        // Make sure to close the socket when exiting.
-        if (exiting) {
+        // Make sure to close the socket when exiting, or right away if it's the socket of this session only.
+        if (socketManager != SocketManager.getInstance()) {
+            socketManager.closeSocket();
+            if (!exiting) {
+                // Nothing is left to close when the process exits
+                ShutdownThreadManager.getInstance().removeAgentClient(this);
+            }
+        } else if (exiting) {
             LOG.debug("Agent client is closing development socket as process is exiting...");
             SocketManager.getInstance().closeSocket();
         }
@@ -1078,32 +1365,58 @@ public final class AgentClient implements Closeable {
                                  final Object result,
                                  final boolean passed,
                                  final String screenshot) {
-        // Initialize POST request to Agent API
-        HttpPost httpPost = new HttpPost(remoteAddress + Routes.REPORT_COMMAND);
-        httpPost.setConfig(getDefaultHttpConfig());
+        return reportCommand(command, result, passed, screenshot, System.currentTimeMillis());
+    }
 
+    /**
+     * Reports a driver command execution to the Agent, e.g. some time after it was executed.
+     *
+     * @param command    Command executed by the driver.
+     * @param result     Command result formatted as String
+     * @param passed     Boolean flag to indicate command successful execution or failure.
+     * @param screenshot Screenshot as base64 string.
+     * @param timestamp  Time the command was executed, in milliseconds since the epoch.
+     * @return True if successfully reported, otherwise False.
+     */
+    public boolean reportCommand(final Command command,
+                                 final Object result,
+                                 final boolean passed,
+                                 final String screenshot,
+                                 final long timestamp) {
         // Prepare payload
         DriverCommandReport report =
                 new DriverCommandReport(command.getName(), command.getParameters(), result, passed);
 
         // Set screenshot into report when provided
-        if (screenshot != null) {
-            report.setScreenshot(screenshot);
-        }
-
-        String json;
-        try {
-            json = GSON.toJson(report);
-        } catch (Exception e) {
-            return false;
+        if (screenshot == null) {
+            if (this.reportsCoalescer != null) {
+                awaitCommandReports();
+                return this.reportsCoalescer.submit(report, timestamp);
+            }
+            return submitReport(Routes.REPORT_COMMAND, report);
         }
 
-        StringEntity entity = new StringEntity(json, StandardCharsets.UTF_8);
-        httpPost.setEntity(entity);
+        return submitReport(Routes.REPORT_COMMAND, report, CompletableFuture.completedFuture(screenshot),
+                taken -> attachScreenshot(report, taken));
+    }
 
-        // Send POST request
-        this.reportsQueue.submit(httpPost, report);
-        return true;
+    /**
+     * Reports a driver command execution to the Agent, with a screenshot that is still being taken.
+     * The report is queued once the screenshot is taken, after the reports submitted before it.
+     *
+     * @param command    Command executed by the driver.
+     * @param result     Command result formatted as String
+     * @param passed     Boolean flag to indicate command successful execution or failure.
+     * @param screenshot Future completed with the screenshot as base64 string, or with null if it was not taken.
+     * @return True if successfully handed over, otherwise False.
+     */
+    public boolean reportCommand(final Command command,
+                                 final Object result,
+                                 final boolean passed,
+                                 final CompletableFuture<String> screenshot) {
+        DriverCommandReport report =
+                new DriverCommandReport(command.getName(), command.getParameters(), result, passed);
+        return submitReport(Routes.REPORT_COMMAND, report, screenshot, taken -> attachScreenshot(report, taken));
     }
 
     /**
@@ -1113,17 +1426,24 @@ public final class AgentClient implements Closeable {
      * @return True is successful, otherwise False.
      */
     public boolean reportStep(final StepReport report) {
-        // Initialize POST request to Agent API
-        HttpPost httpPost = new HttpPost(remoteAddress + Routes.REPORT_STEP);
-        httpPost.setConfig(getDefaultHttpConfig());
+        if (report.getScreenshot() == null) {
+            return submitReport(Routes.REPORT_STEP, report);
+        }
 
-        // Prepare payload
-        StringEntity entity = new StringEntity(GSON.toJson(report), StandardCharsets.UTF_8);
-        httpPost.setEntity(entity);
+        return submitReport(Routes.REPORT_STEP, report, CompletableFuture.completedFuture(report.getScreenshot()),
+                taken -> attachScreenshot(report, taken));
+    }
 
-        // Send POST request
-        this.reportsQueue.submit(httpPost, report);
-        return true;
+    /**
+     * Reports a step to the Agent, with a screenshot that is still being taken.
+     * The report is queued once the screenshot is taken, after the reports submitted before it.
+     *
+     * @param report     Report to submit.
+     * @param screenshot Future completed with the screenshot as base64 string, or with null if it was not taken.
+     * @return True if successfully handed over, otherwise False.
+     */
+    public boolean reportStep(final StepReport report, final CompletableFuture<String> screenshot) {
+        return submitReport(Routes.REPORT_STEP, report, screenshot, taken -> attachScreenshot(report, taken));
     }
 
     /**
@@ -1133,17 +1453,140 @@ public final class AgentClient implements Closeable {
      * @return True is successful, otherwise False.
      */
     public boolean reportTest(final TestReport report) {
-        // Initialize POST request to Agent API
-        HttpPost httpPost = new HttpPost(remoteAddress + Routes.REPORT_TEST);
-        httpPost.setConfig(getDefaultHttpConfig());
+        return submitReport(Routes.REPORT_TEST, report);
+    }
 
-        // Prepare payload
-        StringEntity entity = new StringEntity(GSON.toJson(report), StandardCharsets.UTF_8);
-        httpPost.setEntity(entity);
+    /**
+     * Attaches a screenshot to a command report.
+     *
+     * @param report     Command report.
+     * @param screenshot Screenshot as base64 string.
+     */
+    private void attachScreenshot(final DriverCommandReport report, final String screenshot) {
+        report.setScreenshot(screenshot);
+        if (this.screenshotCache != null) {
+            this.screenshotCache.deduplicate(report);
+        }
+    }
 
-        // Send POST request
-        this.reportsQueue.submit(httpPost, report);
-        return true;
+    /**
+     * Attaches a screenshot to a step report.
+     *
+     * @param report     Step report.
+     * @param screenshot Screenshot as base64 string.
+     */
+    private void attachScreenshot(final StepReport report, final String screenshot) {
+        report.setScreenshot(screenshot);
+        if (this.screenshotCache != null) {
+            this.screenshotCache.deduplicate(report);
+        }
+    }
+
+    /**
+     * Submits a report with a screenshot to the reports queue.
+     * The screenshot may still be being taken, and is processed on a worker thread when screenshots are processed.
+     * The report is queued once its screenshot is ready, after the reports submitted before it.
+     *
+     * @param route      Agent API route that accepts the report when it is sent on its own.
+     * @param report     Report to submit.
+     * @param screenshot Future completed with the screenshot as base64 string, or with null if it was not taken.
+     * @param attach     Action attaching the screenshot to the report.
+     * @return True if successfully queued or handed over, otherwise False.
+     */
+    private boolean submitReport(final String route, final Report report, final CompletableFuture<String> screenshot,
+                                 final Consumer<String> attach) {
+        awaitCommandReports();
+        if (this.reportsCoalescer != null) {
+            this.reportsCoalescer.flush();
+        }
+
+        CompletableFuture<String> prepared = screenshot;
+        if (this.screenshotProcessor != null) {
+            prepared = screenshot.thenCompose(taken -> taken != null
+                    ? this.screenshotProcessor.processAsync(taken) : CompletableFuture.completedFuture(null));
+        }
+
+        return this.reportsSequencer.submit(prepared, taken -> {
+            if (taken != null) {
+                attach.accept(taken);
+            }
+            return enqueueReport(route, report);
+        });
+    }
+
+    /**
+     * Submits a report to the reports queue, after the reports submitted before it.
+     *
+     * @param route  Agent API route that accepts the report when it is sent on its own.
+     * @param report Report to submit.
+     * @return True if successfully queued or handed over, otherwise False.
+     */
+    private boolean submitReport(final String route, final Report report) {
+        awaitCommandReports();
+        if (this.reportsCoalescer != null) {
+            this.reportsCoalescer.flush();
+        }
+        return this.reportsSequencer.submit(() -> enqueueReport(route, report));
+    }
+
+    /**
+     * Waits for the command reports prepared in the background, so that reports are submitted in the order
+     * they were made. Returns immediately when called while preparing a command report.
+     */
+    private void awaitCommandReports() {
+        if (this.pendingCommandReports != null) {
+            this.pendingCommandReports.await();
+        }
+    }
+
+    /**
+     * Submits the report held back by the coalescer, waits for the reports that are still being prepared
+     * to be queued, and stops processing screenshots.
+     */
+    private void flushReports() {
+        if (this.reportsCoalescer != null) {
+            this.reportsCoalescer.flush();
+        }
+
+        try {
+            if (!this.reportsSequencer.flush(REPORTS_QUEUE_TIMEOUT, TimeUnit.SECONDS)) {
+                LOG.warn("Screenshots were not ready in a timely manner, some reports were not queued.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (this.screenshotProcessor != null) {
+            this.screenshotProcessor.close();
+        }
+    }
+
+    /**
+     * Serializes a report and hands it to the report sinks, such as the reports queue.
+     * The report is serialized exactly once, only its UTF-8 encoded JSON is kept in the queue.
+     *
+     * @param route  Agent API route that accepts the report when it is sent on its own.
+     * @param report Report to submit.
+     * @return True if successfully serialized and accepted by the sinks, otherwise False.
+     */
+    private boolean enqueueReport(final String route, final Report report) {
+        if (this.reportSink == null) {
+            return false;
+        }
+
+        byte[] payload;
+        long start = System.nanoTime();
+        try {
+            payload = GSON.toJson(report).getBytes(StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            LOG.error("Failed to serialize report: [{}]", report, e);
+            return false;
+        }
+
+        if (this.reportsQueue != null) {
+            this.reportsQueue.getMetrics().serialized(System.nanoTime() - start);
+        }
+        return this.reportSink.accept(route, payload, report);
     }
 
     /**
@@ -1245,6 +1688,8 @@ public final class AgentClient implements Closeable {
             return;
         }
 
+        // Give the connection back to the pool
+        EntityUtils.consumeQuietly(response.getEntity());
         if (response.getStatusLine().getStatusCode() != HttpURLConnection.HTTP_OK) {
             LOG.error("Failed to update job name to {}", updatedJobName);
         }
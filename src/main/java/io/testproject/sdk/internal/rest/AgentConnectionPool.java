@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.helpers.EnvironmentHelper;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.BasicHttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pools of keep-alive connections to the Agent, one per Agent endpoint, shared for the lifetime of the JVM.
+ * <p>
+ * All HTTP clients communicating with an Agent share its pool, so that sessions, status requests, addon
+ * executions and reports reuse the same connections instead of opening new ones. Closing a client leaves
+ * the pool open. Idle connections are closed in the background after {@value #TP_IDLE_TIMEOUT_VARIABLE_NAME}
+ * milliseconds.
+ */
+public final class AgentConnectionPool {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(AgentConnectionPool.class);
+
+    /**
+     * Constant for environment variable name that may store the maximum number of connections to an Agent.
+     */
+    public static final String TP_MAX_CONNECTIONS_VARIABLE_NAME = "TP_AGENT_MAX_CONNECTIONS";
+
+    /**
+     * Constant for environment variable name that may store the maximum number of connections
+     * to a single Agent route.
+     */
+    public static final String TP_MAX_CONNECTIONS_PER_ROUTE_VARIABLE_NAME = "TP_AGENT_MAX_CONNECTIONS_PER_ROUTE";
+
+    /**
+     * Constant for environment variable name that may store the time in milliseconds a connection is kept alive,
+     * when the Agent doesn't say how long it keeps it.
+     */
+    public static final String TP_KEEP_ALIVE_VARIABLE_NAME = "TP_AGENT_KEEP_ALIVE_MS";
+
+    /**
+     * Constant for environment variable name that may store the time in milliseconds after which
+     * idle connections are closed.
+     */
+    public static final String TP_IDLE_TIMEOUT_VARIABLE_NAME = "TP_AGENT_IDLE_TIMEOUT_MS";
+
+    /**
+     * Constant for environment variable name that may disable TCP_NODELAY on connections to the Agent.
+     */
+    public static final String TP_TCP_NO_DELAY_VARIABLE_NAME = "TP_AGENT_TCP_NODELAY";
+
+    /**
+     * Constant for environment variable name that may store the number of connections opened
+     * when a session starts.
+     */
+    public static final String TP_WARM_UP_CONNECTIONS_VARIABLE_NAME = "TP_AGENT_WARM_UP_CONNECTIONS";
+
+    /**
+     * The default maximum number of connections to an Agent.
+     */
+    private static final int MAX_CONNECTIONS = 20;
+
+    /**
+     * The default maximum number of connections to a single Agent route.
+     */
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 8;
+
+    /**
+     * The default time a connection is kept alive is 30 seconds.
+     */
+    private static final long KEEP_ALIVE_MS = 30 * 1000;
+
+    /**
+     * The default time after which idle connections are closed is 10 seconds.
+     */
+    private static final long IDLE_TIMEOUT_MS = 10 * 1000;
+
+    /**
+     * Connections idle for more than a second are validated before they are reused.
+     */
+    private static final int VALIDATE_AFTER_INACTIVITY_MS = 1000;
+
+    /**
+     * Pools by Agent endpoint.
+     */
+    private static final Map<String, AgentConnectionPool> POOLS = new ConcurrentHashMap<>();
+
+    /**
+     * Agent endpoint, as scheme://host:port.
+     */
+    private final HttpHost host;
+
+    /**
+     * Connection manager shared by the HTTP clients.
+     */
+    private final PoolingHttpClientConnectionManager manager;
+
+    /**
+     * Time in milliseconds a connection is kept alive, when the Agent doesn't say how long it keeps it.
+     */
+    private final long keepAliveMillis;
+
+    /**
+     * Keep alive strategy shared by the HTTP clients.
+     */
+    private final ConnectionKeepAliveStrategy keepAliveStrategy;
+
+    /**
+     * Initializes a new pool using the values set in the environment variables.
+     *
+     * @param host Agent endpoint.
+     */
+    private AgentConnectionPool(final HttpHost host) {
+        this.host = host;
+
+        int maxPerRoute = Math.max(Math.max(1, EnvironmentHelper.getInt(TP_MAX_CONNECTIONS_PER_ROUTE_VARIABLE_NAME,
+                MAX_CONNECTIONS_PER_ROUTE)), getReportsConnections());
+        this.manager = new PoolingHttpClientConnectionManager();
+        this.manager.setMaxTotal(Math.max(maxPerRoute, EnvironmentHelper.getInt(TP_MAX_CONNECTIONS_VARIABLE_NAME,
+                MAX_CONNECTIONS)));
+        this.manager.setDefaultMaxPerRoute(maxPerRoute);
+        this.manager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+        this.manager.setDefaultSocketConfig(SocketConfig.custom()
+                .setTcpNoDelay(Boolean.parseBoolean(EnvironmentHelper.getString(TP_TCP_NO_DELAY_VARIABLE_NAME,
+                        "true")))
+                .setSoKeepAlive(true)
+                .build());
+
+        this.keepAliveMillis = EnvironmentHelper.getLong(TP_KEEP_ALIVE_VARIABLE_NAME, KEEP_ALIVE_MS);
+        this.keepAliveStrategy = (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration > 0 ? duration : this.keepAliveMillis;
+        };
+
+        long idleMillis = Math.max(1, EnvironmentHelper.getLong(TP_IDLE_TIMEOUT_VARIABLE_NAME, IDLE_TIMEOUT_MS));
+        new IdleConnectionEvictor(this.manager, idleMillis, TimeUnit.MILLISECONDS, idleMillis,
+                TimeUnit.MILLISECONDS).start();
+
+        LOG.trace("Connection pool to {} allows {} connections per route and {} in total",
+                host, maxPerRoute, this.manager.getMaxTotal());
+    }
+
+    /**
+     * Returns the pool of connections to an Agent, creating it on first use.
+     *
+     * @param agentAddress Agent API base URL.
+     * @return Pool of connections to the Agent.
+     */
+    public static AgentConnectionPool get(final URL agentAddress) {
+        HttpHost host = new HttpHost(agentAddress.getHost(),
+                agentAddress.getPort() != -1 ? agentAddress.getPort() : agentAddress.getDefaultPort(),
+                agentAddress.getProtocol());
+        return POOLS.computeIfAbsent(host.toURI(), key -> new AgentConnectionPool(host));
+    }
+
+    /**
+     * Number of connections the reports queue may use at once, plus one for other requests to the Agent.
+     *
+     * @return Number of connections.
+     */
+    private static int getReportsConnections() {
+        return ReportsQueueBatch.getPipelineDepth() + 1;
+    }
+
+    /**
+     * Creates a builder of HTTP clients sharing the pool.
+     *
+     * @return HTTP client builder.
+     */
+    public HttpClientBuilder newClientBuilder() {
+        return HttpClients.custom()
+                .setConnectionManager(this.manager)
+                .setConnectionManagerShared(true)
+                .setKeepAliveStrategy(this.keepAliveStrategy);
+    }
+
+    /**
+     * Opens connections to the Agent ahead of the requests that will use them,
+     * as set in {@value #TP_WARM_UP_CONNECTIONS_VARIABLE_NAME}, by default as many as the reports queue uses.
+     * Connections that are already open in the pool count as well. Failures are ignored,
+     * connections are opened when needed instead.
+     *
+     * @param timeoutMillis Maximum time in milliseconds to wait for a connection to open.
+     * @return Number of connections opened.
+     */
+    public int warmUp(final int timeoutMillis) {
+        int count = Math.min(this.manager.getDefaultMaxPerRoute(),
+                EnvironmentHelper.getInt(TP_WARM_UP_CONNECTIONS_VARIABLE_NAME, getReportsConnections()));
+        HttpRoute route = new HttpRoute(this.host, null, "https".equalsIgnoreCase(this.host.getSchemeName()));
+        List<HttpClientConnection> leased = new ArrayList<>();
+        int opened = 0;
+        try {
+            // Lease all the connections at once, so that distinct connections are opened
+            for (int i = 0; i < count; i++) {
+                ConnectionRequest request = this.manager.requestConnection(route, null);
+                HttpClientConnection connection = request.get(timeoutMillis, TimeUnit.MILLISECONDS);
+                leased.add(connection);
+                if (!connection.isOpen()) {
+                    this.manager.connect(connection, route, timeoutMillis, new BasicHttpContext());
+                    this.manager.routeComplete(connection, route, new BasicHttpContext());
+                    opened++;
+                }
+            }
+        } catch (IOException | ExecutionException e) {
+            LOG.debug("Failed to open connections to {} ahead of time", this.host, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (HttpClientConnection connection : leased) {
+                this.manager.releaseConnection(connection, null, this.keepAliveMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        LOG.trace("Opened {} connections to {} ahead of time", opened, this.host);
+        return opened;
+    }
+
+    /**
+     * Getter for {@link #manager} field.
+     *
+     * @return value of {@link #manager} field
+     */
+    public PoolingHttpClientConnectionManager getManager() {
+        return manager;
+    }
+}
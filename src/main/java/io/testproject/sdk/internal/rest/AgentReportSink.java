@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.rest.messages.Report;
+
+import java.net.URL;
+
+/**
+ * Sink sending the reports to the Agent, through the reports queue of the session.
+ * The queue is stopped by the {@link AgentClient}, once the reports were handed to all the sinks.
+ */
+final class AgentReportSink implements ReportSink {
+
+    /**
+     * Reports queue of the session.
+     */
+    private final ReportsQueue queue;
+
+    /**
+     * Agent API base URL.
+     */
+    private final URL remoteAddress;
+
+    /**
+     * Initializes a new instance of the class.
+     *
+     * @param queue         Reports queue of the session.
+     * @param remoteAddress Agent API base URL.
+     */
+    AgentReportSink(final ReportsQueue queue, final URL remoteAddress) {
+        this.queue = queue;
+        this.remoteAddress = remoteAddress;
+    }
+
+    /**
+     * Submits a report to the reports queue.
+     *
+     * @param route   Agent API route that accepts the report when it is sent on its own.
+     * @param payload Report serialized to UTF-8 encoded JSON.
+     * @param report  Report that was serialized.
+     * @return Always True, reports that can't be queued are dropped and counted by the queue.
+     */
+    @Override
+    public boolean accept(final String route, final byte[] payload, final Report report) {
+        this.queue.submit(this.remoteAddress + route, payload, report);
+        return true;
+    }
+
+    /**
+     * Does nothing, the queue is stopped by the {@link AgentClient}.
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.exceptions.AgentConnectException;
+import io.testproject.sdk.internal.helpers.EnvironmentHelper;
+import io.testproject.sdk.internal.rest.messages.AgentStatusResponse;
+import org.apache.http.HttpHost;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Status of the Agents, one per Agent endpoint, shared by all the drivers in the JVM.
+ * <p>
+ * Drivers created one after the other find the Agent status and capabilities retrieved by the first one,
+ * instead of requesting them again. A status is kept for {@value #TP_STATUS_TTL_VARIABLE_NAME} milliseconds
+ * and dropped as soon as communicating with its Agent fails, so that a restarted or upgraded Agent is noticed.
+ */
+public final class AgentStatusCache {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(AgentStatusCache.class);
+
+    /**
+     * Constant for environment variable name that may store the time in milliseconds an Agent status is kept,
+     * 0 disables the cache.
+     */
+    public static final String TP_STATUS_TTL_VARIABLE_NAME = "TP_AGENT_STATUS_TTL_MS";
+
+    /**
+     * The default time an Agent status is kept is 60 seconds.
+     */
+    private static final long STATUS_TTL_MS = 60 * 1000;
+
+    /**
+     * Statuses by Agent endpoint.
+     */
+    private static final Map<String, AgentStatusCache> ENTRIES = new ConcurrentHashMap<>();
+
+    /**
+     * Status retrieved last, or null if it is not known.
+     */
+    private volatile Status status;
+
+    /**
+     * Retrieves the status of an Agent.
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        /**
+         * Requests the status from the Agent.
+         *
+         * @param agentAddress Agent API base URL.
+         * @return Agent status.
+         * @throws AgentConnectException if Agent is not responding or responds with an error
+         * @throws MalformedURLException if the Agent API base URL provided is malformed
+         */
+        AgentStatusResponse load(URL agentAddress) throws AgentConnectException, MalformedURLException;
+    }
+
+    /**
+     * Agent status along with the capabilities inferred from it.
+     */
+    private static final class Status {
+
+        /**
+         * Agent status.
+         */
+        private final AgentStatusResponse response;
+
+        /**
+         * Capabilities of the Agent version.
+         */
+        private final AgentCapabilities capabilities;
+
+        /**
+         * Time, as returned by {@link System#nanoTime()}, after which the status is no longer used.
+         */
+        private final long expiresAt;
+
+        /**
+         * Creates a new instance of the class.
+         *
+         * @param response  Agent status.
+         * @param expiresAt Time after which the status is no longer used.
+         */
+        private Status(final AgentStatusResponse response, final long expiresAt) {
+            this.response = response;
+            this.capabilities = AgentCapabilities.of(response != null ? response.getTag() : null);
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Checks whether the status may still be used.
+         *
+         * @return True if the status didn't expire yet.
+         */
+        private boolean isValid() {
+            return System.nanoTime() - this.expiresAt < 0;
+        }
+    }
+
+    /**
+     * Instances are created by {@link #entry(URL)}.
+     */
+    private AgentStatusCache() {
+    }
+
+    /**
+     * Returns the status of an Agent, requesting it only if it isn't known or expired.
+     * Concurrent callers wait for a single request.
+     *
+     * @param agentAddress Agent API base URL.
+     * @param loader       Requests the status when needed.
+     * @return Agent status.
+     * @throws AgentConnectException if Agent is not responding or responds with an error
+     * @throws MalformedURLException if the Agent API base URL provided is malformed
+     */
+    public static AgentStatusResponse getStatus(final URL agentAddress, final Loader loader)
+            throws AgentConnectException, MalformedURLException {
+        return entry(agentAddress).get(agentAddress, loader).response;
+    }
+
+    /**
+     * Returns the capabilities of an Agent, requesting its status only if it isn't known or expired.
+     *
+     * @param agentAddress Agent API base URL.
+     * @param loader       Requests the status when needed.
+     * @return Agent capabilities.
+     * @throws AgentConnectException if Agent is not responding or responds with an error
+     * @throws MalformedURLException if the Agent API base URL provided is malformed
+     */
+    public static AgentCapabilities getCapabilities(final URL agentAddress, final Loader loader)
+            throws AgentConnectException, MalformedURLException {
+        return entry(agentAddress).get(agentAddress, loader).capabilities;
+    }
+
+    /**
+     * Drops the status of an Agent, the next caller requests it again.
+     *
+     * @param agentAddress Agent API base URL.
+     */
+    public static void invalidate(final URL agentAddress) {
+        AgentStatusCache entry = ENTRIES.get(key(agentAddress));
+        if (entry != null && entry.status != null) {
+            LOG.trace("Dropping the cached status of Agent at {}", agentAddress);
+            entry.status = null;
+        }
+    }
+
+    /**
+     * Drops the status of an Agent if its version changed, e.g. when it was upgraded.
+     *
+     * @param agentAddress Agent API base URL.
+     * @param version      Agent version reported by a session.
+     */
+    public static void verify(final URL agentAddress, final String version) {
+        AgentStatusCache entry = ENTRIES.get(key(agentAddress));
+        Status known = entry != null ? entry.status : null;
+        if (known != null && known.response != null && version != null
+                && !version.equals(known.response.getTag())) {
+            invalidate(agentAddress);
+        }
+    }
+
+    /**
+     * Returns the entry of an Agent endpoint, creating it on first use.
+     *
+     * @param agentAddress Agent API base URL.
+     * @return Entry of the Agent endpoint.
+     */
+    private static AgentStatusCache entry(final URL agentAddress) {
+        return ENTRIES.computeIfAbsent(key(agentAddress), k -> new AgentStatusCache());
+    }
+
+    /**
+     * Agent endpoint of a URL, as scheme://host:port.
+     *
+     * @param agentAddress Agent API base URL.
+     * @return Agent endpoint.
+     */
+    private static String key(final URL agentAddress) {
+        return new HttpHost(agentAddress.getHost(),
+                agentAddress.getPort() != -1 ? agentAddress.getPort() : agentAddress.getDefaultPort(),
+                agentAddress.getProtocol()).toURI();
+    }
+
+    /**
+     * Returns the status, requesting it if it isn't known or expired.
+     *
+     * @param agentAddress Agent API base URL.
+     * @param loader       Requests the status when needed.
+     * @return Agent status.
+     * @throws AgentConnectException if Agent is not responding or responds with an error
+     * @throws MalformedURLException if the Agent API base URL provided is malformed
+     */
+    private Status get(final URL agentAddress, final Loader loader)
+            throws AgentConnectException, MalformedURLException {
+        Status known = this.status;
+        if (known != null && known.isValid()) {
+            return known;
+        }
+
+        synchronized (this) {
+            // Another caller may have requested it meanwhile
+            known = this.status;
+            if (known != null && known.isValid()) {
+                return known;
+            }
+
+            AgentStatusResponse response;
+            try {
+                response = loader.load(agentAddress);
+            } catch (AgentConnectException | MalformedURLException e) {
+                this.status = null;
+                throw e;
+            }
+
+            long ttl = Math.max(0, EnvironmentHelper.getLong(TP_STATUS_TTL_VARIABLE_NAME, STATUS_TTL_MS));
+            known = new Status(response, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl));
+            if (ttl > 0) {
+                this.status = known;
+            }
+            return known;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.helpers.EnvironmentHelper;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content encodings that can be applied to report requests sent to the Agent.
+ * <p>
+ * The encoding is negotiated when a session starts: reports are compressed only if the Agent
+ * advertises that it accepts the encoding, and the user did not disable compression using the
+ * {@value #TP_COMPRESSION_VARIABLE_NAME} environment variable.
+ */
+public enum ContentEncoding {
+
+    /**
+     * Reports are sent as is.
+     */
+    IDENTITY("identity"),
+
+    /**
+     * Reports are compressed using gzip.
+     */
+    GZIP("gzip"),
+
+    /**
+     * Reports are compressed using deflate (zlib format).
+     */
+    DEFLATE("deflate");
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ContentEncoding.class);
+
+    /**
+     * Constant for environment variable name that may store the preferred encoding:
+     * auto (default), gzip, deflate or none.
+     */
+    public static final String TP_COMPRESSION_VARIABLE_NAME = "TP_REPORTS_COMPRESSION";
+
+    /**
+     * Constant for environment variable name that may store the compression level (1-9).
+     */
+    public static final String TP_COMPRESSION_LEVEL_VARIABLE_NAME = "TP_REPORTS_COMPRESSION_LEVEL";
+
+    /**
+     * Value of {@value #TP_COMPRESSION_VARIABLE_NAME} that picks the best encoding accepted by the Agent.
+     */
+    private static final String AUTO = "auto";
+
+    /**
+     * Value of {@value #TP_COMPRESSION_VARIABLE_NAME} that disables compression.
+     */
+    private static final String NONE = "none";
+
+    /**
+     * Size of the buffer used by the compressing stream.
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Token used in the Content-Encoding header.
+     */
+    private final String token;
+
+    /**
+     * Initializes a new instance of the enum.
+     *
+     * @param token Token used in the Content-Encoding header.
+     */
+    ContentEncoding(final String token) {
+        this.token = token;
+    }
+
+    /**
+     * Getter for {@link #token} field.
+     *
+     * @return value of {@link #token} field
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Selects the encoding to use for report requests.
+     * Considers the encodings accepted by the Agent and the preference set in
+     * {@value #TP_COMPRESSION_VARIABLE_NAME}, preferring gzip when both encodings are accepted.
+     *
+     * @param accepted Encodings accepted by the Agent, may be null if the Agent did not advertise any.
+     * @return Encoding to use, {@link #IDENTITY} if compression is disabled or not supported.
+     */
+    public static ContentEncoding negotiate(final Collection<String> accepted) {
+        String preference = EnvironmentHelper.getString(TP_COMPRESSION_VARIABLE_NAME, AUTO)
+                .toLowerCase(Locale.ROOT);
+        if (preference.equals(NONE) || preference.equals(IDENTITY.token)) {
+            return IDENTITY;
+        }
+
+        if (accepted == null || accepted.isEmpty()) {
+            return IDENTITY;
+        }
+
+        if (preference.equals(GZIP.token) || preference.equals(DEFLATE.token)) {
+            ContentEncoding preferred = preference.equals(GZIP.token) ? GZIP : DEFLATE;
+            if (accepts(accepted, preferred)) {
+                return preferred;
+            }
+
+            LOG.warn("Agent does not accept {} encoded reports, reports will not be compressed.", preference);
+            return IDENTITY;
+        }
+
+        if (!preference.equals(AUTO)) {
+            LOG.warn("Unknown value [{}] of environment variable {}, using: {}.",
+                    preference, TP_COMPRESSION_VARIABLE_NAME, AUTO);
+        }
+
+        if (accepts(accepted, GZIP)) {
+            return GZIP;
+        }
+
+        return accepts(accepted, DEFLATE) ? DEFLATE : IDENTITY;
+    }
+
+    /**
+     * Checks whether an encoding is in the list of accepted encodings.
+     *
+     * @param accepted Encodings accepted by the Agent.
+     * @param encoding Encoding to look for.
+     * @return True if accepted, otherwise False.
+     */
+    private static boolean accepts(final Collection<String> accepted, final ContentEncoding encoding) {
+        return accepted.stream().anyMatch(token -> token != null && token.trim().equalsIgnoreCase(encoding.token));
+    }
+
+    /**
+     * Reads the compression level from {@value #TP_COMPRESSION_LEVEL_VARIABLE_NAME}.
+     * Defaults to the fastest level, since reports compress well even with it
+     * and compression should not slow down the reports queue.
+     *
+     * @return Compression level between 1 and 9.
+     */
+    public static int getCompressionLevel() {
+        int level = EnvironmentHelper.getInt(TP_COMPRESSION_LEVEL_VARIABLE_NAME, Deflater.BEST_SPEED);
+        return Math.min(Deflater.BEST_COMPRESSION, Math.max(Deflater.BEST_SPEED, level));
+    }
+
+    /**
+     * Wraps an entity so that it is compressed using this encoding while it is written to the request.
+     *
+     * @param entity Entity to compress.
+     * @param level  Compression level between 1 and 9.
+     * @return Compressing entity, or the same entity for {@link #IDENTITY}.
+     */
+    public HttpEntity compress(final HttpEntity entity, final int level) {
+        if (this == IDENTITY || entity == null) {
+            return entity;
+        }
+
+        return new CompressingEntity(entity, this, level);
+    }
+
+    /**
+     * Opens a compressing stream on top of the request output stream.
+     *
+     * @param outputStream Request output stream.
+     * @param level        Compression level.
+     * @return Compressing stream. Closing it writes the trailer but leaves the request stream open.
+     * @throws IOException if writing the header fails.
+     */
+    DeflaterOutputStream open(final OutputStream outputStream, final int level) throws IOException {
+        // The request stream is closed by the HTTP client, not by the compressing stream
+        OutputStream target = new FilterOutputStream(outputStream) {
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+
+        if (this == GZIP) {
+            return new LeveledGZIPOutputStream(target, level);
+        }
+
+        return new DeflaterOutputStream(target, new Deflater(level), BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                def.end();
+            }
+        };
+    }
+
+    /**
+     * Gzip stream with a configurable compression level.
+     */
+    private static final class LeveledGZIPOutputStream extends GZIPOutputStream {
+
+        /**
+         * Initializes a new instance of the class and writes the gzip header.
+         *
+         * @param outputStream Stream to write the compressed data to.
+         * @param level        Compression level.
+         * @throws IOException if writing the header fails.
+         */
+        LeveledGZIPOutputStream(final OutputStream outputStream, final int level) throws IOException {
+            super(outputStream, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+
+    /**
+     * Entity that compresses the wrapped entity while writing it.
+     * The compressed length is not known in advance, so the entity is sent using chunked transfer encoding.
+     */
+    private static final class CompressingEntity extends HttpEntityWrapper {
+
+        /**
+         * Encoding to compress with.
+         */
+        private final ContentEncoding encoding;
+
+        /**
+         * Compression level.
+         */
+        private final int level;
+
+        /**
+         * Initializes a new instance of the class.
+         *
+         * @param entity   Entity to compress.
+         * @param encoding Encoding to compress with.
+         * @param level    Compression level.
+         */
+        CompressingEntity(final HttpEntity entity, final ContentEncoding encoding, final int level) {
+            super(entity);
+            this.encoding = encoding;
+            this.level = level;
+        }
+
+        @Override
+        public Header getContentEncoding() {
+            return new BasicHeader(HttpHeaders.CONTENT_ENCODING, encoding.getToken());
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return true;
+        }
+
+        @Override
+        public InputStream getContent() {
+            throw new UnsupportedOperationException("Compressed content can only be written to a stream");
+        }
+
+        @Override
+        public void writeTo(final OutputStream outputStream) throws IOException {
+            try (DeflaterOutputStream compressed = encoding.open(outputStream, level)) {
+                wrappedEntity.writeTo(compressed);
+            }
+        }
+    }
+}
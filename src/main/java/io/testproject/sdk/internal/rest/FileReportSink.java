@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.helpers.EnvironmentHelper;
+import io.testproject.sdk.internal.rest.messages.Report;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sink recording reports to local files, as newline-delimited JSON.
+ * <p>
+ * Every line holds one report, exactly as it is sent to the Agent in a reports batch, so that recorded files
+ * can be uploaded to an Agent later. Files are append-only, named {@code <session>.<index>.ndjson},
+ * and a new file is started once a file reaches {@value #TP_FILE_MAX_BYTES_VARIABLE_NAME} bytes.
+ * Reports are buffered in memory and written in large chunks, the buffer is written when the sink is closed.
+ */
+public final class FileReportSink implements ReportSink {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(FileReportSink.class);
+
+    /**
+     * Name selecting the sink in {@value ReportSinks#TP_REPORT_SINKS_VARIABLE_NAME}.
+     */
+    public static final String NAME = "file";
+
+    /**
+     * Constant for environment variable name that may store the directory of the reports files.
+     */
+    public static final String TP_FILE_DIR_VARIABLE_NAME = "TP_REPORTS_FILE_DIR";
+
+    /**
+     * Constant for environment variable name that may store the size in bytes after which a new file is started.
+     */
+    public static final String TP_FILE_MAX_BYTES_VARIABLE_NAME = "TP_REPORTS_FILE_MAX_BYTES";
+
+    /**
+     * Extension of the reports files.
+     */
+    public static final String EXTENSION = ".ndjson";
+
+    /**
+     * The default directory, under the temporary directory, when none is set.
+     */
+    private static final String DEFAULT_DIRECTORY = "testproject-reports";
+
+    /**
+     * The default size of a file is 64MB.
+     */
+    private static final long FILE_MAX_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * Size of the buffer reports are written to before they are written to the file is 256KB.
+     */
+    private static final int BUFFER_BYTES = 256 * 1024;
+
+    /**
+     * Separator of the reports in a file.
+     */
+    private static final byte NEW_LINE = '\n';
+
+    /**
+     * Directory of the files.
+     */
+    private final Path directory;
+
+    /**
+     * Driver session ID, prefix of the file names.
+     */
+    private final String sessionId;
+
+    /**
+     * Size in bytes after which a new file is started.
+     */
+    private final long maxFileBytes;
+
+    /**
+     * Reports that were not written to the file yet.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    /**
+     * Index of the current file.
+     */
+    private int index;
+
+    /**
+     * Current file, null once the sink is closed.
+     */
+    private FileChannel channel;
+
+    /**
+     * Size in bytes of the current file, including the buffered reports.
+     */
+    private long fileBytes;
+
+    /**
+     * Initializes a new instance of the class, starting a new file after the files recorded before
+     * for the same session.
+     *
+     * @param directory    Directory of the files, created if needed.
+     * @param sessionId    Driver session ID.
+     * @param maxFileBytes Size in bytes after which a new file is started.
+     * @throws IOException if the directory or the file could not be created.
+     */
+    public FileReportSink(final Path directory, final String sessionId, final long maxFileBytes)
+            throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.sessionId = sessionId;
+        this.maxFileBytes = Math.max(1, maxFileBytes);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, sessionId + ".*" + EXTENSION)) {
+            for (Path file : files) {
+                this.index = Math.max(this.index, parseIndex(file) + 1);
+            }
+        }
+        this.channel = openFile();
+    }
+
+    /**
+     * Creates a sink using the values set in the environment variables.
+     *
+     * @param sessionId Driver session ID.
+     * @return the sink.
+     * @throws IOException if the directory or the file could not be created.
+     */
+    public static FileReportSink open(final String sessionId) throws IOException {
+        String directory = EnvironmentHelper.getString(TP_FILE_DIR_VARIABLE_NAME,
+                Paths.get(System.getProperty("java.io.tmpdir"), DEFAULT_DIRECTORY).toString());
+        return new FileReportSink(Paths.get(directory), sessionId,
+                EnvironmentHelper.getLong(TP_FILE_MAX_BYTES_VARIABLE_NAME, FILE_MAX_BYTES));
+    }
+
+    /**
+     * Buffers a report, writing the buffer to the file when it is full.
+     *
+     * @param route   Agent API route, not recorded since every report carries its type.
+     * @param payload Report serialized to UTF-8 encoded JSON.
+     * @param report  Report that was serialized.
+     * @return True if the report was recorded, False if the sink is closed or writing failed.
+     */
+    @Override
+    public synchronized boolean accept(final String route, final byte[] payload, final Report report) {
+        if (this.channel == null) {
+            return false;
+        }
+
+        long lineBytes = payload.length + 1L;
+        try {
+            if (this.fileBytes > 0 && this.fileBytes + lineBytes > this.maxFileBytes) {
+                rotate();
+            }
+
+            if (lineBytes > this.buffer.remaining()) {
+                writeBuffer();
+            }
+
+            if (lineBytes > this.buffer.remaining()) {
+                // Larger than the buffer, written as is
+                write(ByteBuffer.wrap(payload));
+            } else {
+                this.buffer.put(payload);
+            }
+            this.buffer.put(NEW_LINE);
+            this.fileBytes += lineBytes;
+            return true;
+        } catch (IOException e) {
+            LOG.error("Failed to record a report to [{}]", getFile(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the buffered reports to the file.
+     *
+     * @throws IOException if writing failed.
+     */
+    public synchronized void flush() throws IOException {
+        if (this.channel != null) {
+            writeBuffer();
+        }
+    }
+
+    /**
+     * Writes the buffered reports and closes the file. Does nothing if already closed.
+     *
+     * @throws IOException if writing failed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.channel == null) {
+            return;
+        }
+
+        try {
+            writeBuffer();
+        } finally {
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+
+    /**
+     * Path of the current file.
+     *
+     * @return the path of the file reports are recorded to.
+     */
+    public synchronized Path getFile() {
+        return this.directory.resolve(this.sessionId + "." + this.index + EXTENSION);
+    }
+
+    /**
+     * Closes the current file and starts the next one.
+     *
+     * @throws IOException if writing or creating the file failed.
+     */
+    private void rotate() throws IOException {
+        writeBuffer();
+        this.channel.close();
+        this.index++;
+        this.channel = openFile();
+        this.fileBytes = 0;
+    }
+
+    /**
+     * Creates the current file.
+     *
+     * @return Channel writing to the file.
+     * @throws IOException if the file could not be created.
+     */
+    private FileChannel openFile() throws IOException {
+        Path file = getFile();
+        LOG.trace("Recording reports to [{}]", file);
+        return FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Writes the buffered reports to the file and empties the buffer.
+     *
+     * @throws IOException if writing failed.
+     */
+    private void writeBuffer() throws IOException {
+        this.buffer.flip();
+        try {
+            write(this.buffer);
+        } finally {
+            this.buffer.clear();
+        }
+    }
+
+    /**
+     * Writes bytes to the file.
+     *
+     * @param bytes Bytes to write.
+     * @throws IOException if writing failed.
+     */
+    private void write(final ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            this.channel.write(bytes);
+        }
+    }
+
+    /**
+     * Extracts the index of a file from its name.
+     *
+     * @param file File named {@code <session>.<index>.ndjson}.
+     * @return the index, or -1 if the name doesn't hold one.
+     */
+    static int parseIndex(final Path file) {
+        String name = file.getFileName().toString();
+        String index = name.substring(0, name.length() - EXTENSION.length());
+        index = index.substring(index.lastIndexOf('.') + 1);
+        try {
+            return Integer.parseInt(index);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.rest.messages.Report;
+
+import java.io.Closeable;
+
+/**
+ * Destination of the reports made by a driver session, such as the Agent or a local file.
+ * <p>
+ * Sinks are selected using {@value ReportSinks#TP_REPORT_SINKS_VARIABLE_NAME}, and several sinks may be combined.
+ * Additional sinks are provided by implementing {@link ReportSinkProvider}.
+ * Reports are handed to a sink one at a time, in the order they were made.
+ */
+public interface ReportSink extends Closeable {
+
+    /**
+     * Accepts a report.
+     *
+     * @param route   Agent API route that accepts the report when it is sent on its own.
+     * @param payload Report serialized to UTF-8 encoded JSON, as sent in a reports batch. Must not be modified.
+     * @param report  Report that was serialized.
+     * @return True if the report was accepted, otherwise False.
+     */
+    boolean accept(String route, byte[] payload, Report report);
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import java.io.IOException;
+
+/**
+ * Service provider of a {@link ReportSink}, discovered using {@link java.util.ServiceLoader}.
+ * <p>
+ * Providers are registered in {@code META-INF/services/io.testproject.sdk.internal.rest.ReportSinkProvider}
+ * and selected by listing their name in {@value ReportSinks#TP_REPORT_SINKS_VARIABLE_NAME}.
+ */
+public interface ReportSinkProvider {
+
+    /**
+     * Name selecting the sink in {@value ReportSinks#TP_REPORT_SINKS_VARIABLE_NAME}.
+     *
+     * @return the sink name.
+     */
+    String getName();
+
+    /**
+     * Creates a sink for the reports of a driver session.
+     *
+     * @param sessionId Driver session ID.
+     * @return the sink.
+     * @throws IOException if the sink could not be opened.
+     */
+    ReportSink create(String sessionId) throws IOException;
+}
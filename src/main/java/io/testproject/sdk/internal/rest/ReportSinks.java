@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.helpers.EnvironmentHelper;
+import io.testproject.sdk.internal.rest.messages.Report;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * Selects the sinks the reports are handed to, and combines them into a single sink.
+ * <p>
+ * Sinks are listed by name in {@value #TP_REPORT_SINKS_VARIABLE_NAME}, separated by commas:
+ * {@value #AGENT} (default) sends the reports to the Agent, {@value FileReportSink#NAME} records them
+ * to local files (see {@link FileReportSink}), and other names select a sink provided by a {@link ReportSinkProvider}.
+ */
+public final class ReportSinks implements ReportSink {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ReportSinks.class);
+
+    /**
+     * Constant for environment variable name that may store the names of the sinks.
+     */
+    public static final String TP_REPORT_SINKS_VARIABLE_NAME = "TP_REPORT_SINKS";
+
+    /**
+     * Name of the sink sending the reports to the Agent.
+     */
+    public static final String AGENT = "agent";
+
+    /**
+     * Combined sinks.
+     */
+    private final List<ReportSink> sinks;
+
+    /**
+     * Initializes a new instance of the class.
+     *
+     * @param sinks Sinks to hand every report to, in order.
+     */
+    public ReportSinks(final List<ReportSink> sinks) {
+        this.sinks = new ArrayList<>(sinks);
+    }
+
+    /**
+     * Reads the names of the sinks from {@value #TP_REPORT_SINKS_VARIABLE_NAME}.
+     *
+     * @return Names of the sinks, in lower case and without duplicates.
+     */
+    public static Set<String> getConfigured() {
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : EnvironmentHelper.getString(TP_REPORT_SINKS_VARIABLE_NAME, AGENT).split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+
+        return names.isEmpty() ? Collections.singleton(AGENT) : names;
+    }
+
+    /**
+     * Opens the configured sinks for a driver session.
+     * Sinks that fail to open or are unknown are skipped.
+     *
+     * @param sessionId Driver session ID.
+     * @param agent     Sink sending the reports to the Agent, used when {@value #AGENT} is configured. May be null.
+     * @return A sink combining the configured sinks, or null if none could be opened.
+     */
+    public static ReportSink open(final String sessionId, final ReportSink agent) {
+        List<ReportSink> opened = new ArrayList<>();
+        for (String name : getConfigured()) {
+            if (AGENT.equals(name)) {
+                if (agent != null) {
+                    opened.add(agent);
+                }
+                continue;
+            }
+
+            try {
+                ReportSink sink = create(name, sessionId);
+                if (sink != null) {
+                    opened.add(sink);
+                } else {
+                    LOG.warn("Unknown report sink [{}] is ignored.", name);
+                }
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Failed to open report sink [{}], reports are not recorded by it.", name, e);
+            }
+        }
+
+        if (opened.isEmpty()) {
+            return null;
+        }
+        return opened.size() == 1 ? opened.get(0) : new ReportSinks(opened);
+    }
+
+    /**
+     * Creates a sink by its name.
+     *
+     * @param name      Sink name.
+     * @param sessionId Driver session ID.
+     * @return the sink, or null if no sink has this name.
+     * @throws IOException if the sink could not be opened.
+     */
+    private static ReportSink create(final String name, final String sessionId) throws IOException {
+        if (FileReportSink.NAME.equals(name)) {
+            return FileReportSink.open(sessionId);
+        }
+
+        for (ReportSinkProvider provider : ServiceLoader.load(ReportSinkProvider.class)) {
+            if (name.equalsIgnoreCase(provider.getName())) {
+                return provider.create(sessionId);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Hands a report to all the sinks.
+     *
+     * @param route   Agent API route that accepts the report when it is sent on its own.
+     * @param payload Report serialized to UTF-8 encoded JSON.
+     * @param report  Report that was serialized.
+     * @return True if all the sinks accepted the report, otherwise False.
+     */
+    @Override
+    public boolean accept(final String route, final byte[] payload, final Report report) {
+        boolean accepted = true;
+        for (ReportSink sink : this.sinks) {
+            try {
+                accepted &= sink.accept(route, payload, report);
+            } catch (RuntimeException e) {
+                LOG.error("Report sink [{}] failed to accept a report", sink.getClass().getSimpleName(), e);
+                accepted = false;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Closes all the sinks.
+     *
+     * @throws IOException if a sink failed to close, after trying to close all of them.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (ReportSink sink : this.sinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * HTTP entity that streams a batch of encoded reports as a JSON array.
+ * <p>
+ * The reports are written one by one straight into the request output stream using chunked transfer encoding,
+ * so the batch is never joined into a single buffer or string.
+ * The entity is repeatable, allowing the same batch to be sent again when an attempt fails.
+ */
+public final class ReportsBatchEntity extends AbstractHttpEntity {
+
+    /**
+     * JSON array opening bracket.
+     */
+    private static final byte[] ARRAY_START = {'['};
+
+    /**
+     * JSON array elements separator.
+     */
+    private static final byte[] SEPARATOR = {','};
+
+    /**
+     * JSON array closing bracket.
+     */
+    private static final byte[] ARRAY_END = {']'};
+
+    /**
+     * Reports serialized to UTF-8 encoded JSON.
+     */
+    private final List<byte[]> payloads;
+
+    /**
+     * Initializes a new instance of the class.
+     *
+     * @param payloads Reports serialized to UTF-8 encoded JSON.
+     */
+    public ReportsBatchEntity(final List<byte[]> payloads) {
+        this.payloads = payloads;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+        setChunked(true);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent() {
+        List<InputStream> streams = new ArrayList<>(payloads.size() * 2 + 1);
+        streams.add(new ByteArrayInputStream(ARRAY_START));
+        for (int i = 0; i < payloads.size(); i++) {
+            if (i > 0) {
+                streams.add(new ByteArrayInputStream(SEPARATOR));
+            }
+            streams.add(new ByteArrayInputStream(payloads.get(i)));
+        }
+        streams.add(new ByteArrayInputStream(ARRAY_END));
+
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    @Override
+    public void writeTo(final OutputStream outputStream) throws IOException {
+        outputStream.write(ARRAY_START);
+        for (int i = 0; i < payloads.size(); i++) {
+            if (i > 0) {
+                outputStream.write(SEPARATOR);
+            }
+            outputStream.write(payloads.get(i));
+        }
+        outputStream.write(ARRAY_END);
+        outputStream.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.helpers.EnvironmentHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces the attempts to send reports to the Agent.
+ * <p>
+ * Failed attempts are retried after an exponentially growing, jittered delay.
+ * Once all attempts to send a request fail, the circuit opens: requests wait instead of hammering the Agent,
+ * while new reports keep accumulating in the reports queue. When the open interval elapses,
+ * a single request probes the Agent (half-open). The circuit closes when the probe succeeds,
+ * otherwise it opens again for twice as long, up to {@value #TP_CIRCUIT_MAX_OPEN_VARIABLE_NAME} milliseconds.
+ * Once the Agent doesn't recover for {@value #TP_CIRCUIT_MAX_OUTAGE_VARIABLE_NAME} milliseconds,
+ * no more attempts are allowed and the reports are given up.
+ */
+public final class ReportsCircuitBreaker {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ReportsCircuitBreaker.class);
+
+    /**
+     * Constant for environment variable name that may store the delay in milliseconds before the first retry.
+     */
+    public static final String TP_RETRY_BACKOFF_VARIABLE_NAME = "TP_REPORTS_RETRY_BACKOFF_MS";
+
+    /**
+     * Constant for environment variable name that may store the maximum delay in milliseconds between retries.
+     */
+    public static final String TP_RETRY_MAX_BACKOFF_VARIABLE_NAME = "TP_REPORTS_RETRY_MAX_BACKOFF_MS";
+
+    /**
+     * Constant for environment variable name that may store the time in milliseconds the circuit stays open
+     * before the Agent is probed.
+     */
+    public static final String TP_CIRCUIT_OPEN_VARIABLE_NAME = "TP_REPORTS_CIRCUIT_OPEN_MS";
+
+    /**
+     * Constant for environment variable name that may store the maximum time in milliseconds
+     * the circuit stays open before the Agent is probed.
+     */
+    public static final String TP_CIRCUIT_MAX_OPEN_VARIABLE_NAME = "TP_REPORTS_CIRCUIT_MAX_OPEN_MS";
+
+    /**
+     * Constant for environment variable name that may store the maximum time in milliseconds
+     * the Agent may be unavailable before the reports are given up.
+     */
+    public static final String TP_CIRCUIT_MAX_OUTAGE_VARIABLE_NAME = "TP_REPORTS_CIRCUIT_MAX_OUTAGE_MS";
+
+    /**
+     * The default delay before the first retry is 200ms.
+     */
+    private static final long RETRY_BACKOFF_MS = 200;
+
+    /**
+     * The default maximum delay between retries is 5 seconds.
+     */
+    private static final long RETRY_MAX_BACKOFF_MS = 5 * 1000;
+
+    /**
+     * The default time the circuit stays open is 5 seconds.
+     */
+    private static final long CIRCUIT_OPEN_MS = 5 * 1000;
+
+    /**
+     * The default maximum time the circuit stays open is one minute.
+     */
+    private static final long CIRCUIT_MAX_OPEN_MS = 60 * 1000;
+
+    /**
+     * The default maximum time the Agent may be unavailable is 10 minutes.
+     */
+    private static final long CIRCUIT_MAX_OUTAGE_MS = 10 * 60 * 1000;
+
+    /**
+     * Circuit states.
+     */
+    public enum State {
+        /**
+         * Requests are sent to the Agent.
+         */
+        CLOSED,
+
+        /**
+         * Requests wait for the Agent to recover.
+         */
+        OPEN,
+
+        /**
+         * A single request probes whether the Agent recovered.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Delay in milliseconds before the first retry.
+     */
+    private final long backoffMillis;
+
+    /**
+     * Maximum delay in milliseconds between retries.
+     */
+    private final long maxBackoffMillis;
+
+    /**
+     * Initial time in nanoseconds the circuit stays open.
+     */
+    private final long initialOpenNanos;
+
+    /**
+     * Maximum time in nanoseconds the circuit stays open.
+     */
+    private final long maxOpenNanos;
+
+    /**
+     * Maximum time in nanoseconds the Agent may be unavailable.
+     */
+    private final long maxOutageNanos;
+
+    /**
+     * Current state.
+     */
+    private State state = State.CLOSED;
+
+    /**
+     * Time in nanoseconds the circuit stays open this time.
+     */
+    private long openNanos;
+
+    /**
+     * Time, as returned by {@link System#nanoTime()}, at which the Agent may be probed.
+     */
+    private long probeAt;
+
+    /**
+     * Time, as returned by {@link System#nanoTime()}, at which the Agent stopped accepting reports.
+     */
+    private long outageStart;
+
+    /**
+     * Flag that is raised once the Agent was unavailable for too long and no more attempts are allowed.
+     */
+    private boolean givenUp;
+
+    /**
+     * Flag that is raised to probe the Agent without waiting for the open interval to elapse.
+     */
+    private boolean expedited;
+
+    /**
+     * Number of times the circuit opened.
+     */
+    private long trips;
+
+    /**
+     * Initializes a new instance of the class using the values set in the environment variables.
+     */
+    public ReportsCircuitBreaker() {
+        this.backoffMillis = Math.max(1, EnvironmentHelper.getLong(TP_RETRY_BACKOFF_VARIABLE_NAME,
+                RETRY_BACKOFF_MS));
+        this.maxBackoffMillis = Math.max(this.backoffMillis, EnvironmentHelper.getLong(
+                TP_RETRY_MAX_BACKOFF_VARIABLE_NAME, RETRY_MAX_BACKOFF_MS));
+        this.initialOpenNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, EnvironmentHelper.getLong(
+                TP_CIRCUIT_OPEN_VARIABLE_NAME, CIRCUIT_OPEN_MS)));
+        this.maxOpenNanos = Math.max(this.initialOpenNanos, TimeUnit.MILLISECONDS.toNanos(
+                EnvironmentHelper.getLong(TP_CIRCUIT_MAX_OPEN_VARIABLE_NAME, CIRCUIT_MAX_OPEN_MS)));
+        this.maxOutageNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, EnvironmentHelper.getLong(
+                TP_CIRCUIT_MAX_OUTAGE_VARIABLE_NAME, CIRCUIT_MAX_OUTAGE_MS)));
+        this.openNanos = this.initialOpenNanos;
+    }
+
+    /**
+     * Calculates the delay before a retry: the delay doubles with every retry up to the maximum,
+     * and a random half of it is shaved off, so that senders failing together don't retry together.
+     *
+     * @param retry Number of the retry, starting from 1.
+     * @return Delay in milliseconds.
+     */
+    public long backoffMillis(final int retry) {
+        int shift = Math.min(Math.max(0, retry - 1), Long.SIZE - 2);
+        long cap = this.backoffMillis > (this.maxBackoffMillis >> shift)
+                ? this.maxBackoffMillis : this.backoffMillis << shift;
+        long half = cap / 2;
+        return cap - half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    /**
+     * Waits until a request may be sent.
+     * Returns immediately while the circuit is closed. While it is open, waits for the open interval to elapse
+     * and lets a single request probe the Agent, the others keep waiting for the outcome of the probe.
+     * Once the Agent was unavailable for longer than the maximum outage, no more attempts are allowed.
+     *
+     * @param attempts Number of attempts a request may make while the circuit is closed.
+     * @return Number of attempts the request may make: all of them when the circuit is closed,
+     * a single one for a probe, or none once the Agent was unavailable for too long.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    public synchronized int awaitAttempts(final int attempts) throws InterruptedException {
+        while (true) {
+            if (this.state == State.CLOSED) {
+                return attempts;
+            }
+
+            long now = System.nanoTime();
+            long outageRemaining = this.outageStart + this.maxOutageNanos - now;
+            if (outageRemaining <= 0) {
+                if (!this.givenUp) {
+                    this.givenUp = true;
+                    LOG.warn("Agent did not accept reports for {}ms, giving up the reports.",
+                            TimeUnit.NANOSECONDS.toMillis(this.maxOutageNanos));
+                }
+                return 0;
+            }
+
+            if (this.state == State.OPEN) {
+                long remaining = this.probeAt - now;
+                if (remaining <= 0 || this.expedited) {
+                    this.state = State.HALF_OPEN;
+                    return 1;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, Math.min(remaining, outageRemaining));
+            } else {
+                // Another request is probing the Agent
+                TimeUnit.NANOSECONDS.timedWait(this, outageRemaining);
+            }
+        }
+    }
+
+    /**
+     * Records a request that was sent successfully, closing the circuit.
+     */
+    public synchronized void onSuccess() {
+        if (this.state != State.CLOSED) {
+            LOG.info("Agent is accepting reports again, resuming reporting.");
+        }
+
+        this.state = State.CLOSED;
+        this.openNanos = this.initialOpenNanos;
+        notifyAll();
+    }
+
+    /**
+     * Records a request that failed all its attempts, opening the circuit.
+     * A failed probe keeps the circuit open twice as long as before.
+     */
+    public synchronized void onFailure() {
+        if (this.state == State.OPEN) {
+            return;
+        }
+
+        if (this.state == State.HALF_OPEN) {
+            this.openNanos = Math.min(this.maxOpenNanos, this.openNanos * 2);
+        } else {
+            this.openNanos = this.initialOpenNanos;
+            this.trips++;
+            this.outageStart = System.nanoTime();
+            LOG.warn("Agent is not accepting reports, new reports are kept until it recovers.");
+        }
+
+        this.state = State.OPEN;
+        this.probeAt = System.nanoTime() + this.openNanos;
+        LOG.info("Probing the Agent again in {}ms.", TimeUnit.NANOSECONDS.toMillis(this.openNanos));
+        notifyAll();
+    }
+
+    /**
+     * Lets the Agent be probed without waiting for the open interval to elapse.
+     * Used when the reports queue stops, so that the remaining reports are attempted one last time.
+     */
+    public synchronized void expedite() {
+        this.expedited = true;
+        notifyAll();
+    }
+
+    /**
+     * Getter for {@link #state} field.
+     *
+     * @return value of {@link #state} field
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Getter for {@link #trips} field.
+     *
+     * @return number of times the circuit opened.
+     */
+    public synchronized long getTrips() {
+        return trips;
+    }
+}
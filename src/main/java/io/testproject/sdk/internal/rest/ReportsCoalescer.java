@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.helpers.EnvironmentHelper;
+import io.testproject.sdk.internal.rest.messages.DriverCommandReport;
+
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Merges runs of identical consecutive command reports, e.g. made by polling loops, into a single report.
+ * <p>
+ * Enabled by setting {@value #TP_COALESCE_VARIABLE_NAME} to true.
+ * A passed command report without a screenshot is held back until the next report is made. Following reports
+ * of the same command, with the same parameters and result, are counted instead of being submitted.
+ * Once a different report is made, or {@value #TP_COALESCE_MAX_REPEATS_VARIABLE_NAME} reports were counted,
+ * the held report is submitted carrying the number of executions and the time of the first and the last one.
+ * Failed commands, and commands with a different result, are always reported on their own.
+ */
+public final class ReportsCoalescer {
+
+    /**
+     * Constant for environment variable name that may enable coalescing identical command reports.
+     */
+    public static final String TP_COALESCE_VARIABLE_NAME = "TP_REPORTS_COALESCE";
+
+    /**
+     * Constant for environment variable name that may store the maximum number of executions
+     * a coalesced report stands for.
+     */
+    public static final String TP_COALESCE_MAX_REPEATS_VARIABLE_NAME = "TP_REPORTS_COALESCE_MAX_REPEATS";
+
+    /**
+     * The default maximum number of executions a coalesced report stands for is 1000.
+     */
+    private static final int COALESCE_MAX_REPEATS = 1000;
+
+    /**
+     * Action submitting a report, returning True if it was successfully submitted.
+     */
+    private final Predicate<DriverCommandReport> downstream;
+
+    /**
+     * Maximum number of executions a coalesced report stands for.
+     */
+    private final int maxRepeats;
+
+    /**
+     * Report held back, null if none.
+     */
+    private DriverCommandReport pending;
+
+    /**
+     * Number of executions the held report stands for.
+     */
+    private int repeats;
+
+    /**
+     * Time of the first execution the held report stands for, in milliseconds since the epoch.
+     */
+    private long firstTimestamp;
+
+    /**
+     * Time of the last execution the held report stands for, in milliseconds since the epoch.
+     */
+    private long lastTimestamp;
+
+    /**
+     * Initializes a new instance of the class.
+     *
+     * @param submit     Action submitting a report, returning True if it was successfully submitted.
+     * @param maxRepeats Maximum number of executions a coalesced report stands for.
+     */
+    public ReportsCoalescer(final Predicate<DriverCommandReport> submit, final int maxRepeats) {
+        this.downstream = submit;
+        this.maxRepeats = Math.max(1, maxRepeats);
+    }
+
+    /**
+     * Creates a coalescer using the values set in the environment variables.
+     *
+     * @param submit Action submitting a report, returning True if it was successfully submitted.
+     * @return Reports coalescer, or null if reports should not be coalesced.
+     */
+    public static ReportsCoalescer create(final Predicate<DriverCommandReport> submit) {
+        if (!Boolean.parseBoolean(EnvironmentHelper.getString(TP_COALESCE_VARIABLE_NAME, "false"))) {
+            return null;
+        }
+
+        return new ReportsCoalescer(submit,
+                EnvironmentHelper.getInt(TP_COALESCE_MAX_REPEATS_VARIABLE_NAME, COALESCE_MAX_REPEATS));
+    }
+
+    /**
+     * Counts a report when it is identical to the held report, otherwise submits the held report
+     * and holds the new one back, or submits it as well if it can't be coalesced.
+     *
+     * @param report Command report.
+     * @return True if the report was held back or successfully submitted, otherwise False.
+     */
+    public boolean submit(final DriverCommandReport report) {
+        return submit(report, System.currentTimeMillis());
+    }
+
+    /**
+     * Counts a report of a command executed at a given time, see {@link #submit(DriverCommandReport)}.
+     *
+     * @param report Command report.
+     * @param now    Time the command was executed, in milliseconds since the epoch.
+     * @return True if the report was held back or successfully submitted, otherwise False.
+     */
+    public synchronized boolean submit(final DriverCommandReport report, final long now) {
+        if (this.pending != null && isRepeat(this.pending, report)) {
+            this.repeats++;
+            this.lastTimestamp = now;
+            if (this.repeats >= this.maxRepeats) {
+                flush();
+            }
+            return true;
+        }
+
+        flush();
+        if (!isCoalescable(report)) {
+            return this.downstream.test(report);
+        }
+
+        this.pending = report;
+        this.repeats = 1;
+        this.firstTimestamp = now;
+        this.lastTimestamp = now;
+        return true;
+    }
+
+    /**
+     * Submits the held report, if any, e.g. before a report of another kind is submitted.
+     *
+     * @return True if there was no held report or it was successfully submitted, otherwise False.
+     */
+    public synchronized boolean flush() {
+        if (this.pending == null) {
+            return true;
+        }
+
+        DriverCommandReport report = this.pending;
+        if (this.repeats > 1) {
+            report.setRepeats(this.repeats, this.firstTimestamp, this.lastTimestamp);
+        }
+        this.pending = null;
+        this.repeats = 0;
+        return this.downstream.test(report);
+    }
+
+    /**
+     * Checks whether a report may stand for several executions: it passed and carries no screenshot.
+     *
+     * @param report Command report.
+     * @return True if the report may be coalesced, otherwise False.
+     */
+    private static boolean isCoalescable(final DriverCommandReport report) {
+        return report.isPassed() && report.getScreenshot() == null && report.getScreenshotDigest() == null;
+    }
+
+    /**
+     * Checks whether a report repeats the held report: same command, parameters and result.
+     *
+     * @param held   Held report.
+     * @param report Command report.
+     * @return True if the report can be counted by the held report, otherwise False.
+     */
+    private static boolean isRepeat(final DriverCommandReport held, final DriverCommandReport report) {
+        return isCoalescable(report)
+                && Objects.equals(held.getCommandName(), report.getCommandName())
+                && Objects.equals(held.getCommandParameters(), report.getCommandParameters())
+                && Objects.equals(held.getResult(), report.getResult());
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of values recorded by the reports queue, such as latencies and batch sizes.
+ * <p>
+ * Values are counted in buckets of powers of two, so that recording is cheap and lock free,
+ * and percentiles are accurate to within a factor of two.
+ */
+public final class ReportsHistogram {
+
+    /**
+     * Number of buckets, one for zero and one per number of significant bits of a positive long value.
+     */
+    private static final int BUCKETS = Long.SIZE;
+
+    /**
+     * Percentiles are given out of 100.
+     */
+    private static final double PERCENT = 100;
+
+    /**
+     * Number of values recorded in every bucket.
+     * Bucket {@code i} holds the values of {@code i} significant bits, from {@code 2^(i-1)} to {@code 2^i - 1}.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Number of values recorded.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Sum of the values recorded.
+     */
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * Largest value recorded.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value, negative values are recorded as zero.
+     *
+     * @param value Value to record.
+     */
+    public void record(final long value) {
+        long recorded = Math.max(0, value);
+        this.buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(recorded));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(recorded);
+        this.max.accumulateAndGet(recorded, Math::max);
+    }
+
+    /**
+     * Number of values recorded.
+     *
+     * @return the number of values recorded.
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * Sum of the values recorded.
+     *
+     * @return the sum of the values recorded.
+     */
+    public long getSum() {
+        return this.sum.get();
+    }
+
+    /**
+     * Largest value recorded.
+     *
+     * @return the largest value recorded, 0 if none was recorded.
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Average of the values recorded.
+     *
+     * @return the average of the values recorded, 0 if none was recorded.
+     */
+    public double getMean() {
+        long recorded = this.count.get();
+        return recorded == 0 ? 0 : (double) this.sum.get() / recorded;
+    }
+
+    /**
+     * Value below which a given percentage of the recorded values fall,
+     * rounded up to the upper bound of its bucket.
+     *
+     * @param percentile Percentage of the values, from 0 to 100.
+     * @return the upper bound of the bucket holding the percentile, no larger than the largest value recorded.
+     */
+    public long getPercentile(final double percentile) {
+        long recorded = this.count.get();
+        if (recorded == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(recorded * Math.min(PERCENT, Math.max(0, percentile)) / PERCENT));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.buckets.get(i);
+            if (seen >= rank) {
+                return Math.min((1L << i) - 1, getMax());
+            }
+        }
+
+        return getMax();
+    }
+}
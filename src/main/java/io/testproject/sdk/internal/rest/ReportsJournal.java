@@ -0,0 +1,614 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.helpers.EnvironmentHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Append-only, memory-mapped journal that the reports queue spills to when too many reports are waiting in memory.
+ * <p>
+ * The journal is stored as a sequence of segment files named {@code <session>.<index>.journal}.
+ * Every segment starts with a header holding the position of the next unread record,
+ * followed by records of the form {@code [payload length][uri length][uri][payload]}.
+ * The payload length is written last, so a record that was only partially written is ignored on recovery.
+ * Since segments are memory-mapped, written records survive the JVM exiting unexpectedly,
+ * and are recovered when a journal is opened again for the same session.
+ * Segments are deleted as soon as all their records are read.
+ */
+public final class ReportsJournal implements Closeable {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ReportsJournal.class);
+
+    /**
+     * Constant for environment variable name that may store the journal directory.
+     * The journal is disabled when the variable is not set, unless the {@link ReportsOverflowPolicy#SPILL}
+     * policy is selected explicitly, in which case the journal is kept under the temporary directory.
+     */
+    public static final String TP_JOURNAL_DIR_VARIABLE_NAME = "TP_REPORTS_JOURNAL_DIR";
+
+    /**
+     * Constant for environment variable name that may store the size of a journal segment in bytes.
+     */
+    public static final String TP_JOURNAL_SEGMENT_BYTES_VARIABLE_NAME = "TP_REPORTS_JOURNAL_SEGMENT_BYTES";
+
+    /**
+     * Constant for environment variable name that may store the size in bytes of reports kept in memory,
+     * before further reports are spilled to the journal.
+     */
+    public static final String TP_MEMORY_WATERMARK_VARIABLE_NAME = "TP_REPORTS_QUEUE_MEMORY_BYTES";
+
+    /**
+     * The default size of a journal segment is 64MB.
+     */
+    private static final int JOURNAL_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * The default size of reports kept in memory is 32MB.
+     */
+    private static final long MEMORY_WATERMARK_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * Directory under the temporary directory used when spilling is requested without a journal directory.
+     */
+    private static final String DEFAULT_DIRECTORY = "testproject-reports";
+
+    /**
+     * Journal segment file extension.
+     */
+    private static final String EXTENSION = ".journal";
+
+    /**
+     * Value identifying a journal segment file.
+     */
+    private static final int MAGIC = 0x54504A31;
+
+    /**
+     * Segment header size: magic value and read position.
+     */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    /**
+     * Offset of the read position in the segment header.
+     */
+    private static final int READ_POSITION_OFFSET = Integer.BYTES;
+
+    /**
+     * Record header size: payload length and URI length.
+     */
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    /**
+     * Directory storing the journal segments.
+     */
+    private final Path directory;
+
+    /**
+     * Prefix of the segment file names, derived from the session ID.
+     */
+    private final String prefix;
+
+    /**
+     * Size of a new segment in bytes.
+     */
+    private final int segmentSize;
+
+    /**
+     * Size in bytes of reports kept in memory, before further reports are spilled to the journal.
+     */
+    private final long memoryWatermark;
+
+    /**
+     * Segments holding unread records, oldest first.
+     */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    /**
+     * Index of the next segment to create.
+     */
+    private long nextIndex;
+
+    /**
+     * Number of unread records.
+     */
+    private int records;
+
+    /**
+     * Flag that is raised once the journal is closed.
+     */
+    private boolean closed;
+
+    /**
+     * Opens the journal of a session, recovering records left by a previous run.
+     *
+     * @param directory       Directory storing the journal segments.
+     * @param sessionId       Driver session ID.
+     * @param segmentSize     Size of a new segment in bytes.
+     * @param memoryWatermark Size in bytes of reports kept in memory, before further reports are spilled.
+     * @throws IOException if the directory can't be created or an existing segment can't be read.
+     */
+    public ReportsJournal(final Path directory, final String sessionId, final int segmentSize,
+                          final long memoryWatermark) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.prefix = sessionId.replaceAll("[^A-Za-z0-9_-]", "_") + ".";
+        this.segmentSize = Math.max(HEADER_SIZE + RECORD_HEADER_SIZE, segmentSize);
+        this.memoryWatermark = memoryWatermark;
+        recover();
+    }
+
+    /**
+     * Opens the journal of a session as configured by the environment variables.
+     *
+     * @param sessionId Driver session ID.
+     * @return Journal, or null if the journal is disabled or can't be opened.
+     */
+    public static ReportsJournal open(final String sessionId) {
+        String directory = EnvironmentHelper.getString(TP_JOURNAL_DIR_VARIABLE_NAME, null);
+        if (directory == null) {
+            if (ReportsOverflowPolicy.get() != ReportsOverflowPolicy.SPILL) {
+                return null;
+            }
+
+            // Spilling was requested explicitly, without choosing where to
+            directory = Paths.get(System.getProperty("java.io.tmpdir"), DEFAULT_DIRECTORY).toString();
+        }
+
+        try {
+            return new ReportsJournal(Paths.get(directory), sessionId,
+                    EnvironmentHelper.getInt(TP_JOURNAL_SEGMENT_BYTES_VARIABLE_NAME, JOURNAL_SEGMENT_BYTES),
+                    getConfiguredMemoryWatermark());
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to open reports journal in [{}], reports will be kept in memory only.", directory, e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the size in bytes of reports kept in memory from {@value #TP_MEMORY_WATERMARK_VARIABLE_NAME}.
+     *
+     * @return Memory watermark in bytes.
+     */
+    static long getConfiguredMemoryWatermark() {
+        return EnvironmentHelper.getLong(TP_MEMORY_WATERMARK_VARIABLE_NAME, MEMORY_WATERMARK_BYTES);
+    }
+
+    /**
+     * Getter for {@link #memoryWatermark} field.
+     *
+     * @return value of {@link #memoryWatermark} field
+     */
+    public long getMemoryWatermark() {
+        return memoryWatermark;
+    }
+
+    /**
+     * Number of unread records.
+     *
+     * @return the number of records that were appended and not read yet.
+     */
+    public synchronized int size() {
+        return records;
+    }
+
+    /**
+     * Checks whether the journal has no unread records.
+     *
+     * @return True if there are no unread records, otherwise False.
+     */
+    public synchronized boolean isEmpty() {
+        return records == 0;
+    }
+
+    /**
+     * Appends a report to the end of the journal.
+     *
+     * @param uri     Agent endpoint that accepts the report when it is sent on its own.
+     * @param payload Report serialized to UTF-8 encoded JSON.
+     * @throws IOException if the journal is closed or a new segment can't be created.
+     */
+    public synchronized void append(final String uri, final byte[] payload) throws IOException {
+        if (closed) {
+            throw new IOException("Reports journal is closed");
+        }
+
+        byte[] encodedUri = uri.getBytes(StandardCharsets.UTF_8);
+        int recordSize = RECORD_HEADER_SIZE + encodedUri.length + payload.length;
+        Segment tail = segments.peekLast();
+        if (tail == null || tail.remaining() < recordSize) {
+            tail = create(nextIndex++, Math.max(segmentSize, HEADER_SIZE + recordSize));
+            segments.addLast(tail);
+        }
+
+        tail.write(encodedUri, payload);
+        records++;
+    }
+
+    /**
+     * Inserts reports before all unread records, preserving their order.
+     * Used to save reports that were already taken from the journal but could not be sent.
+     *
+     * @param items Reports to insert, oldest first.
+     * @throws IOException if the journal is closed or a new segment can't be created.
+     */
+    public synchronized void prepend(final List<Record> items) throws IOException {
+        if (closed) {
+            throw new IOException("Reports journal is closed");
+        }
+
+        if (items.isEmpty()) {
+            return;
+        }
+
+        List<byte[]> encodedUris = new ArrayList<>(items.size());
+        int size = HEADER_SIZE;
+        for (Record item : items) {
+            byte[] encodedUri = item.getUri().getBytes(StandardCharsets.UTF_8);
+            encodedUris.add(encodedUri);
+            size += RECORD_HEADER_SIZE + encodedUri.length + item.getPayload().length;
+        }
+
+        long index = segments.isEmpty() ? nextIndex++ : segments.peekFirst().index - 1;
+        Segment head = create(index, size);
+        for (int i = 0; i < items.size(); i++) {
+            head.write(encodedUris.get(i), items.get(i).getPayload());
+        }
+        segments.addFirst(head);
+        records += items.size();
+    }
+
+    /**
+     * Reads the oldest unread record, marking it as read.
+     *
+     * @return the oldest unread record, or null if there are no unread records.
+     */
+    public synchronized Record poll() {
+        while (!segments.isEmpty()) {
+            Segment head = segments.peekFirst();
+            Record record = head.read();
+            if (head.isConsumed()) {
+                segments.pollFirst();
+                delete(head.path);
+            }
+
+            if (record != null) {
+                records--;
+                return record;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Flushes the unread records to disk and closes the journal.
+     * Segment files are kept only if there are unread records, to be recovered by the next run.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        for (Segment segment : segments) {
+            if (records > 0) {
+                segment.buffer.force();
+            } else {
+                delete(segment.path);
+            }
+        }
+
+        if (records > 0) {
+            LOG.warn("{} unsent reports were saved to the reports journal in [{}]", records, directory);
+        }
+        segments.clear();
+    }
+
+    /**
+     * Recovers segments left by a previous run of the same session.
+     *
+     * @throws IOException if the directory or a segment can't be read.
+     */
+    private void recover() throws IOException {
+        List<Segment> recovered = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long index;
+                try {
+                    index = Long.parseLong(name.substring(prefix.length(), name.length() - EXTENSION.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+
+                Segment segment = map(file, index, (int) Files.size(file), false);
+                if (segment == null || segment.isConsumed()) {
+                    delete(file);
+                } else {
+                    recovered.add(segment);
+                }
+            }
+        }
+
+        recovered.sort(Comparator.comparingLong(segment -> segment.index));
+        for (Segment segment : recovered) {
+            segments.addLast(segment);
+            records += segment.count();
+            nextIndex = Math.max(nextIndex, segment.index + 1);
+        }
+
+        if (records > 0) {
+            LOG.info("Recovered {} unsent reports from the reports journal in [{}]", records, directory);
+        }
+    }
+
+    /**
+     * Creates a new segment.
+     *
+     * @param index Segment index.
+     * @param size  Segment size in bytes.
+     * @return the new segment.
+     * @throws IOException if the segment file can't be created.
+     */
+    private Segment create(final long index, final int size) throws IOException {
+        return map(directory.resolve(prefix + index + EXTENSION), index, size, true);
+    }
+
+    /**
+     * Maps a segment file to memory.
+     *
+     * @param file   Segment file.
+     * @param index  Segment index.
+     * @param size   Segment size in bytes.
+     * @param create True to create a new segment, False to open an existing one.
+     * @return the segment, or null if an existing file is not a valid segment.
+     * @throws IOException if the file can't be mapped.
+     */
+    private static Segment map(final Path file, final long index, final int size, final boolean create)
+            throws IOException {
+        if (!create && size < HEADER_SIZE) {
+            return null;
+        }
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = create
+                ? FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping remains valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        if (create) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(READ_POSITION_OFFSET, HEADER_SIZE);
+        } else if (buffer.getInt(0) != MAGIC) {
+            LOG.warn("Ignoring invalid reports journal segment [{}]", file);
+            return null;
+        }
+
+        return new Segment(file, index, buffer);
+    }
+
+    /**
+     * Deletes a segment file.
+     *
+     * @param file Segment file.
+     */
+    private static void delete(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Mapped files can't be deleted on some platforms
+            LOG.debug("Failed to delete reports journal segment [{}], deleting on exit", file, e);
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * A report stored in the journal.
+     */
+    public static final class Record {
+
+        /**
+         * Agent endpoint that accepts the report when it is sent on its own.
+         */
+        private final String uri;
+
+        /**
+         * Report serialized to UTF-8 encoded JSON.
+         */
+        private final byte[] payload;
+
+        /**
+         * Initializes a new instance of the class.
+         *
+         * @param uri     Agent endpoint that accepts the report when it is sent on its own.
+         * @param payload Report serialized to UTF-8 encoded JSON.
+         */
+        public Record(final String uri, final byte[] payload) {
+            this.uri = uri;
+            this.payload = payload;
+        }
+
+        /**
+         * Getter for {@link #uri} field.
+         *
+         * @return value of {@link #uri} field
+         */
+        public String getUri() {
+            return uri;
+        }
+
+        /**
+         * Getter for {@link #payload} field.
+         *
+         * @return value of {@link #payload} field
+         */
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    /**
+     * A memory-mapped journal segment file.
+     */
+    private static final class Segment {
+
+        /**
+         * Segment file.
+         */
+        private final Path path;
+
+        /**
+         * Segment index, defining the order of segments.
+         */
+        private final long index;
+
+        /**
+         * Memory-mapped segment content.
+         */
+        private final MappedByteBuffer buffer;
+
+        /**
+         * Position of the next unread record.
+         */
+        private int readPosition;
+
+        /**
+         * Position to append the next record at.
+         */
+        private int writePosition;
+
+        /**
+         * Initializes a new instance of the class, locating the read and write positions.
+         *
+         * @param path   Segment file.
+         * @param index  Segment index.
+         * @param buffer Memory-mapped segment content.
+         */
+        Segment(final Path path, final long index, final MappedByteBuffer buffer) {
+            this.path = path;
+            this.index = index;
+            this.buffer = buffer;
+            this.readPosition = Math.max(HEADER_SIZE, buffer.getInt(READ_POSITION_OFFSET));
+
+            // Skip complete records, a partially written record has a zero payload length
+            int position = HEADER_SIZE;
+            while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+                int payloadLength = buffer.getInt(position);
+                int uriLength = buffer.getInt(position + Integer.BYTES);
+                long next = (long) position + RECORD_HEADER_SIZE + uriLength + payloadLength;
+                if (payloadLength <= 0 || uriLength < 0 || next > buffer.capacity()) {
+                    break;
+                }
+                position = (int) next;
+            }
+            this.writePosition = position;
+            this.readPosition = Math.min(this.readPosition, this.writePosition);
+        }
+
+        /**
+         * Free space left in the segment.
+         *
+         * @return number of bytes that can still be appended.
+         */
+        int remaining() {
+            return buffer.capacity() - writePosition;
+        }
+
+        /**
+         * Checks whether all records of the segment were read.
+         *
+         * @return True if there are no unread records, otherwise False.
+         */
+        boolean isConsumed() {
+            return readPosition >= writePosition;
+        }
+
+        /**
+         * Counts the unread records.
+         *
+         * @return number of unread records.
+         */
+        int count() {
+            int count = 0;
+            for (int position = readPosition; position < writePosition; count++) {
+                position += RECORD_HEADER_SIZE + buffer.getInt(position) + buffer.getInt(position + Integer.BYTES);
+            }
+            return count;
+        }
+
+        /**
+         * Appends a record. The payload length is written last to mark the record as complete.
+         *
+         * @param uri     UTF-8 encoded endpoint URI.
+         * @param payload UTF-8 encoded report.
+         */
+        void write(final byte[] uri, final byte[] payload) {
+            buffer.putInt(writePosition + Integer.BYTES, uri.length);
+            buffer.position(writePosition + RECORD_HEADER_SIZE);
+            buffer.put(uri);
+            buffer.put(payload);
+            buffer.putInt(writePosition, payload.length);
+            writePosition += RECORD_HEADER_SIZE + uri.length + payload.length;
+        }
+
+        /**
+         * Reads the next unread record and persists the new read position.
+         *
+         * @return the record, or null if there are no unread records.
+         */
+        Record read() {
+            if (isConsumed()) {
+                return null;
+            }
+
+            int payloadLength = buffer.getInt(readPosition);
+            byte[] uri = new byte[buffer.getInt(readPosition + Integer.BYTES)];
+            byte[] payload = new byte[payloadLength];
+            buffer.position(readPosition + RECORD_HEADER_SIZE);
+            buffer.get(uri);
+            buffer.get(payload);
+            readPosition += RECORD_HEADER_SIZE + uri.length + payload.length;
+            buffer.putInt(READ_POSITION_OFFSET, readPosition);
+
+            return new Record(new String(uri, StandardCharsets.UTF_8), payload);
+        }
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.helpers.EnvironmentHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of the reports sent by a driver session: queue depth, latencies, batches, retries and drops.
+ * <p>
+ * Metrics are updated by the {@link ReportsQueue} as reports flow through it, read through
+ * {@link io.testproject.sdk.internal.reporting.Reporter#getMetrics()}, and registered as a JMX MBean named
+ * {@code io.testproject.sdk:type=Reports,session=<session ID>} while the session is open,
+ * unless {@value #TP_REPORTS_JMX_VARIABLE_NAME} is set to false.
+ */
+public final class ReportsMetrics implements ReportsMetricsMBean {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ReportsMetrics.class);
+
+    /**
+     * Constant for environment variable name that may disable registering the metrics as JMX MBeans.
+     */
+    public static final String TP_REPORTS_JMX_VARIABLE_NAME = "TP_REPORTS_JMX";
+
+    /**
+     * JMX domain of the MBeans.
+     */
+    private static final String JMX_DOMAIN = "io.testproject.sdk";
+
+    /**
+     * Median.
+     */
+    private static final double P50 = 50;
+
+    /**
+     * 99th percentile.
+     */
+    private static final double P99 = 99;
+
+    /**
+     * Queue the metrics are collected from.
+     */
+    private final ReportsQueue queue;
+
+    /**
+     * Driver session ID.
+     */
+    private final String sessionId;
+
+    /**
+     * Largest number of reports that waited in memory at once.
+     */
+    private final AtomicInteger highWaterMark = new AtomicInteger();
+
+    /**
+     * Number of reports submitted to the queue.
+     */
+    private final AtomicLong submittedReports = new AtomicLong();
+
+    /**
+     * Number of reports the Agent accepted.
+     */
+    private final AtomicLong sentReports = new AtomicLong();
+
+    /**
+     * Number of report requests sent again after a failed attempt.
+     */
+    private final AtomicLong retries = new AtomicLong();
+
+    /**
+     * Time in nanoseconds from queueing a report in memory until the Agent accepted it.
+     */
+    private final ReportsHistogram latency = new ReportsHistogram();
+
+    /**
+     * Number of reports per request.
+     */
+    private final ReportsHistogram batchSize = new ReportsHistogram();
+
+    /**
+     * Size in bytes of the reports in a request, before compression.
+     */
+    private final ReportsHistogram batchBytes = new ReportsHistogram();
+
+    /**
+     * Time in nanoseconds to serialize a report.
+     */
+    private final ReportsHistogram serialization = new ReportsHistogram();
+
+    /**
+     * Name of the registered MBean, or null if it is not registered.
+     */
+    private ObjectName objectName;
+
+    /**
+     * Initializes a new instance of the class.
+     *
+     * @param queue     Queue the metrics are collected from.
+     * @param sessionId Driver session ID.
+     */
+    ReportsMetrics(final ReportsQueue queue, final String sessionId) {
+        this.queue = queue;
+        this.sessionId = sessionId;
+    }
+
+    /**
+     * Registers the metrics as a JMX MBean, unless disabled by {@value #TP_REPORTS_JMX_VARIABLE_NAME}.
+     * Failures are ignored, the metrics are still available through the API.
+     */
+    public synchronized void register() {
+        if (this.objectName != null
+                || !Boolean.parseBoolean(EnvironmentHelper.getString(TP_REPORTS_JMX_VARIABLE_NAME, "true"))) {
+            return;
+        }
+
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=Reports,session="
+                    + ObjectName.quote(String.valueOf(this.sessionId)));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            this.objectName = name;
+        } catch (JMException e) {
+            LOG.debug("Failed to register reports metrics of session [{}] with JMX", this.sessionId, e);
+        }
+    }
+
+    /**
+     * Unregisters the JMX MBean, if it was registered.
+     */
+    public synchronized void unregister() {
+        if (this.objectName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+        } catch (JMException e) {
+            LOG.debug("Failed to unregister reports metrics of session [{}] from JMX", this.sessionId, e);
+        }
+        this.objectName = null;
+    }
+
+    /**
+     * Getter for {@link #objectName} field.
+     *
+     * @return value of {@link #objectName} field, null if the metrics are not registered with JMX
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Counts a report that was submitted to the queue.
+     */
+    void submitted() {
+        this.submittedReports.incrementAndGet();
+    }
+
+    /**
+     * Updates the high-water mark once a report was queued in memory.
+     *
+     * @param depth Number of reports in memory.
+     */
+    void queued(final int depth) {
+        this.highWaterMark.accumulateAndGet(depth, Math::max);
+    }
+
+    /**
+     * Records the time it took to serialize a report.
+     *
+     * @param nanos Time in nanoseconds.
+     */
+    void serialized(final long nanos) {
+        this.serialization.record(nanos);
+    }
+
+    /**
+     * Counts a report request that is sent again after a failed attempt.
+     */
+    void retried() {
+        this.retries.incrementAndGet();
+    }
+
+    /**
+     * Records a request accepted by the Agent.
+     *
+     * @param items Reports sent in the request.
+     */
+    void sent(final Collection<ReportsQueue.QueueItem> items) {
+        long now = System.nanoTime();
+        long bytes = 0;
+        for (ReportsQueue.QueueItem item : items) {
+            this.latency.record(now - item.getQueuedAt());
+            bytes += item.getSize();
+        }
+
+        this.sentReports.addAndGet(items.size());
+        this.batchSize.record(items.size());
+        this.batchBytes.record(bytes);
+    }
+
+    /**
+     * Getter for {@link #latency} field.
+     *
+     * @return value of {@link #latency} field, in nanoseconds
+     */
+    public ReportsHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Getter for {@link #batchSize} field.
+     *
+     * @return value of {@link #batchSize} field
+     */
+    public ReportsHistogram getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Getter for {@link #batchBytes} field.
+     *
+     * @return value of {@link #batchBytes} field
+     */
+    public ReportsHistogram getBatchBytes() {
+        return batchBytes;
+    }
+
+    /**
+     * Getter for {@link #serialization} field.
+     *
+     * @return value of {@link #serialization} field, in nanoseconds
+     */
+    public ReportsHistogram getSerialization() {
+        return serialization;
+    }
+
+    @Override
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return this.queue.getQueue().size();
+    }
+
+    @Override
+    public int getQueueHighWaterMark() {
+        return this.highWaterMark.get();
+    }
+
+    @Override
+    public long getQueuedBytes() {
+        return this.queue.getQueuedBytes();
+    }
+
+    @Override
+    public long getSubmittedReports() {
+        return this.submittedReports.get();
+    }
+
+    @Override
+    public long getSentReports() {
+        return this.sentReports.get();
+    }
+
+    @Override
+    public long getRetries() {
+        return this.retries.get();
+    }
+
+    @Override
+    public long getDroppedReports() {
+        return this.queue.getDroppedReports();
+    }
+
+    @Override
+    public long getDroppedScreenshots() {
+        return this.queue.getDroppedScreenshots();
+    }
+
+    @Override
+    public String getCircuitBreakerState() {
+        return this.queue.getCircuitBreaker().getState().name();
+    }
+
+    @Override
+    public long getCircuitBreakerTrips() {
+        return this.queue.getCircuitBreaker().getTrips();
+    }
+
+    @Override
+    public double getLatencyMeanMillis() {
+        return toMillis(this.latency.getMean());
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return toMillis(this.latency.getPercentile(P50));
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return toMillis(this.latency.getPercentile(P99));
+    }
+
+    @Override
+    public double getLatencyMaxMillis() {
+        return toMillis(this.latency.getMax());
+    }
+
+    @Override
+    public double getBatchSizeMean() {
+        return this.batchSize.getMean();
+    }
+
+    @Override
+    public long getBatchSizeMax() {
+        return this.batchSize.getMax();
+    }
+
+    @Override
+    public double getBatchBytesMean() {
+        return this.batchBytes.getMean();
+    }
+
+    @Override
+    public long getBatchBytesMax() {
+        return this.batchBytes.getMax();
+    }
+
+    @Override
+    public double getSerializationMeanMicros() {
+        return toMicros(this.serialization.getMean());
+    }
+
+    @Override
+    public double getSerializationMaxMicros() {
+        return toMicros(this.serialization.getMax());
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds, keeping the fraction.
+     *
+     * @param nanos Time in nanoseconds.
+     * @return Time in milliseconds.
+     */
+    private static double toMillis(final double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Converts nanoseconds to microseconds, keeping the fraction.
+     *
+     * @param nanos Time in nanoseconds.
+     * @return Time in microseconds.
+     */
+    private static double toMicros(final double nanos) {
+        return nanos / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+}
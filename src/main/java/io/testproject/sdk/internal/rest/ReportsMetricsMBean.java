@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+/**
+ * Management interface of {@link ReportsMetrics}, exposing the reporting metrics of a session as JMX attributes.
+ */
+public interface ReportsMetricsMBean {
+
+    /**
+     * Driver session ID.
+     *
+     * @return the driver session ID.
+     */
+    String getSessionId();
+
+    /**
+     * Number of reports waiting in memory to be sent.
+     *
+     * @return the number of queued reports.
+     */
+    int getQueueDepth();
+
+    /**
+     * Largest number of reports that waited in memory at once.
+     *
+     * @return the queue high-water mark.
+     */
+    int getQueueHighWaterMark();
+
+    /**
+     * Size in bytes of the reports waiting in memory to be sent.
+     *
+     * @return the size of the queued reports.
+     */
+    long getQueuedBytes();
+
+    /**
+     * Number of reports submitted to the queue.
+     *
+     * @return the number of submitted reports.
+     */
+    long getSubmittedReports();
+
+    /**
+     * Number of reports the Agent accepted.
+     *
+     * @return the number of sent reports.
+     */
+    long getSentReports();
+
+    /**
+     * Number of report requests sent again after a failed attempt.
+     *
+     * @return the number of retries.
+     */
+    long getRetries();
+
+    /**
+     * Number of reports dropped because the queue was full.
+     *
+     * @return the number of dropped reports.
+     */
+    long getDroppedReports();
+
+    /**
+     * Number of screenshots stripped or dropped because the queue was full.
+     *
+     * @return the number of dropped screenshots.
+     */
+    long getDroppedScreenshots();
+
+    /**
+     * State of the circuit breaker guarding the Agent.
+     *
+     * @return CLOSED, OPEN or HALF_OPEN.
+     */
+    String getCircuitBreakerState();
+
+    /**
+     * Number of times the circuit breaker opened.
+     *
+     * @return the number of circuit breaker trips.
+     */
+    long getCircuitBreakerTrips();
+
+    /**
+     * Average time from submitting a report until the Agent accepted it.
+     *
+     * @return the average latency in milliseconds.
+     */
+    double getLatencyMeanMillis();
+
+    /**
+     * Median time from submitting a report until the Agent accepted it.
+     *
+     * @return the median latency in milliseconds.
+     */
+    double getLatencyP50Millis();
+
+    /**
+     * 99th percentile of the time from submitting a report until the Agent accepted it.
+     *
+     * @return the 99th percentile latency in milliseconds.
+     */
+    double getLatencyP99Millis();
+
+    /**
+     * Longest time from submitting a report until the Agent accepted it.
+     *
+     * @return the maximum latency in milliseconds.
+     */
+    double getLatencyMaxMillis();
+
+    /**
+     * Average number of reports per request.
+     *
+     * @return the average batch size.
+     */
+    double getBatchSizeMean();
+
+    /**
+     * Largest number of reports in a request.
+     *
+     * @return the maximum batch size.
+     */
+    long getBatchSizeMax();
+
+    /**
+     * Average size in bytes of the reports in a request, before compression.
+     *
+     * @return the average batch size in bytes.
+     */
+    double getBatchBytesMean();
+
+    /**
+     * Largest size in bytes of the reports in a request, before compression.
+     *
+     * @return the maximum batch size in bytes.
+     */
+    long getBatchBytesMax();
+
+    /**
+     * Average time to serialize a report.
+     *
+     * @return the average serialization time in microseconds.
+     */
+    double getSerializationMeanMicros();
+
+    /**
+     * Longest time to serialize a report.
+     *
+     * @return the maximum serialization time in microseconds.
+     */
+    double getSerializationMaxMicros();
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.helpers.EnvironmentHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+
+/**
+ * Policies applied when a report is submitted while the reports queue is full.
+ * <p>
+ * The queue is full when it holds its maximum number of reports, or when the reports waiting in memory
+ * exceed {@value ReportsJournal#TP_MEMORY_WATERMARK_VARIABLE_NAME} bytes.
+ * Whatever the policy, a report is never rejected with an exception: when no room can be made for it
+ * within {@value #TP_OVERFLOW_TIMEOUT_VARIABLE_NAME} milliseconds, the report is dropped and counted.
+ * <p>
+ * When {@value ReportsJournal#TP_JOURNAL_DIR_VARIABLE_NAME} is set, reports are always spilled to the journal,
+ * since reports recovered from a previous run must be sent before the new ones.
+ */
+public enum ReportsOverflowPolicy {
+
+    /**
+     * Block the submitting thread until there is room for the report.
+     */
+    BLOCK("block"),
+
+    /**
+     * Drop the oldest queued reports of passed commands to make room for the report.
+     */
+    DROP_PASSED("drop-passed"),
+
+    /**
+     * Strip screenshots from the report and from the oldest queued reports to make room for the report.
+     */
+    STRIP_SCREENSHOTS("strip-screenshots"),
+
+    /**
+     * Spill the report to the reports journal on disk.
+     */
+    SPILL("spill");
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ReportsOverflowPolicy.class);
+
+    /**
+     * Constant for environment variable name that may store the overflow policy:
+     * block (default), drop-passed, strip-screenshots or spill.
+     */
+    public static final String TP_OVERFLOW_POLICY_VARIABLE_NAME = "TP_REPORTS_OVERFLOW_POLICY";
+
+    /**
+     * Constant for environment variable name that may store the maximum time in milliseconds
+     * a report submission may block when the reports queue is full.
+     */
+    public static final String TP_OVERFLOW_TIMEOUT_VARIABLE_NAME = "TP_REPORTS_OVERFLOW_TIMEOUT_MS";
+
+    /**
+     * The default maximum time a report submission may block is one second.
+     */
+    private static final long OVERFLOW_TIMEOUT_MS = 1000;
+
+    /**
+     * Name of the policy in {@value #TP_OVERFLOW_POLICY_VARIABLE_NAME}.
+     */
+    private final String token;
+
+    /**
+     * Initializes a new instance of the enum.
+     *
+     * @param token Name of the policy in {@value #TP_OVERFLOW_POLICY_VARIABLE_NAME}.
+     */
+    ReportsOverflowPolicy(final String token) {
+        this.token = token;
+    }
+
+    /**
+     * Getter for {@link #token} field.
+     *
+     * @return value of {@link #token} field
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Reads the overflow policy from {@value #TP_OVERFLOW_POLICY_VARIABLE_NAME}.
+     *
+     * @return Configured policy, or {@link #BLOCK} if it is not set or unknown.
+     */
+    public static ReportsOverflowPolicy get() {
+        String value = EnvironmentHelper.getString(TP_OVERFLOW_POLICY_VARIABLE_NAME, BLOCK.token)
+                .toLowerCase(Locale.ROOT);
+        for (ReportsOverflowPolicy policy : values()) {
+            if (policy.token.equals(value)) {
+                return policy;
+            }
+        }
+
+        LOG.warn("Unknown value [{}] of environment variable {}, using: {}.",
+                value, TP_OVERFLOW_POLICY_VARIABLE_NAME, BLOCK.token);
+        return BLOCK;
+    }
+
+    /**
+     * Reads the maximum time a report submission may block from {@value #TP_OVERFLOW_TIMEOUT_VARIABLE_NAME}.
+     *
+     * @return Timeout in milliseconds.
+     */
+    public static long getTimeoutMillis() {
+        return Math.max(0, EnvironmentHelper.getLong(TP_OVERFLOW_TIMEOUT_VARIABLE_NAME, OVERFLOW_TIMEOUT_MS));
+    }
+}
@@ -17,13 +17,18 @@
 
 package io.testproject.sdk.internal.rest;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import io.testproject.sdk.internal.exceptions.FailedReportException;
+import io.testproject.sdk.internal.rest.messages.DriverCommandReport;
 import io.testproject.sdk.internal.rest.messages.Report;
+import io.testproject.sdk.internal.rest.messages.StepReport;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
@@ -31,10 +36,23 @@ import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.core.Response;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A runnable class to manage reports queue.
+ * <p>
+ * When a report is submitted while the queue is full, the {@link ReportsOverflowPolicy} decides how to make room
+ * for it. Submitting a report never fails: a report that can't be queued in time is dropped and counted,
+ * see {@link #getDroppedReports()} and {@link #getDroppedScreenshots()}.
  */
 public class ReportsQueue implements Runnable {
     /**
@@ -42,11 +60,6 @@ public class ReportsQueue implements Runnable {
      */
     private static final Logger LOG = LoggerFactory.getLogger(ReportsQueue.class);
 
-    /**
-     * An instance of the Google JSON serializer to serialize and deserialize objects.
-     */
-    protected static final Gson GSON = new GsonBuilder().create();
-
     /**
      * Progress report delay in seconds.
      * Print the number of the remaining reports to send every 3 seconds.
@@ -54,15 +67,30 @@ public class ReportsQueue implements Runnable {
     private static final int PROGRESS_REPORT_DELAY = 3;
 
     /**
-     * Maximum attempts to try sending a report to the Agent.
+     * Maximum attempts to try sending a report to the Agent, before the circuit breaker opens.
      */
     protected static final int MAX_REPORT_FAILURE_ATTEMPTS = 4;
 
     /**
-     * Queue to synchronize reports sent to Agent.
-     * Queue depth defined as 10K - assuming that even with very high latency, the queue won't get full.
+     * Minimum number of reports in the queue.
      */
-    private final LinkedBlockingQueue<QueueItem> queue = new LinkedBlockingQueue<>(1024 * 10);
+    private static final int QUEUE_CAPACITY = 1024 * 16;
+
+    /**
+     * Maximum number of reports in the queue, the slots of as many reports take about 3MB.
+     */
+    private static final int MAX_QUEUE_CAPACITY = 1024 * 256;
+
+    /**
+     * Size in bytes of a small report. The queue has a slot for as many such reports as fit in its memory size,
+     * so that its slots only run out before its memory with smaller reports.
+     */
+    private static final int SLOT_BYTES = 128;
+
+    /**
+     * Queue to synchronize reports sent to Agent, see {@link ReportsRingBuffer}.
+     */
+    private final ReportsRingBuffer<QueueItem> queue;
 
     /**
      * HTTP client to submit reports to the Agent.
@@ -74,10 +102,97 @@ public class ReportsQueue implements Runnable {
      */
     private final String sessionId;
 
+    /**
+     * Configuration applied to every request sent to the Agent, may be null to use the client defaults.
+     */
+    private final RequestConfig requestConfig;
+
+    /**
+     * Content encoding negotiated with the Agent for report requests.
+     */
+    private final ContentEncoding contentEncoding;
+
+    /**
+     * Compression level used when reports are compressed.
+     */
+    private final int compressionLevel;
+
+    /**
+     * Journal that reports are spilled to when too many reports are waiting in memory, may be null.
+     */
+    private final ReportsJournal journal;
+
+    /**
+     * Size in bytes of the reports waiting in {@link #queue}.
+     */
+    private final AtomicLong queuedBytes = new AtomicLong();
+
+    /**
+     * Maximum size in bytes of the reports waiting in {@link #queue}.
+     */
+    private final long maxQueuedBytes;
+
+    /**
+     * Policy applied when a report is submitted while the queue is full.
+     */
+    private final ReportsOverflowPolicy overflowPolicy;
+
+    /**
+     * Maximum time in nanoseconds a report submission may block while the queue is full.
+     */
+    private final long overflowTimeoutNanos;
+
+    /**
+     * Monitor that submitting threads wait on for room in the queue.
+     */
+    private final Object space = new Object();
+
+    /**
+     * Number of submitting threads waiting for room in the queue.
+     */
+    private final AtomicInteger waitingSubmitters = new AtomicInteger();
+
+    /**
+     * Number of reports dropped because the queue was full.
+     */
+    private final AtomicLong droppedReports = new AtomicLong();
+
+    /**
+     * Number of screenshots stripped from reports because the queue was full.
+     */
+    private final AtomicLong droppedScreenshots = new AtomicLong();
+
+    /**
+     * Lock that orders spilling reports to the {@link #journal} and moving them back to the {@link #queue}.
+     */
+    private final Object spillLock = new Object();
+
     /**
      * Flag to keep running the loop of taking items from the queue.
+     * Raised when the queue is created (so that an early {@link #stop()} is not overridden by {@link #run()}),
+     * and lowered by a different thread, hence volatile.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Circuit breaker pacing the attempts to send reports to the Agent.
      */
-    private boolean running;
+    private final ReportsCircuitBreaker circuitBreaker = new ReportsCircuitBreaker();
+
+    /**
+     * Metrics of the reports flowing through the queue.
+     */
+    private final ReportsMetrics metrics;
+
+    /**
+     * Cache of the screenshots sent to the Agent, told about the screenshots that won't reach it, may be null.
+     */
+    private volatile ScreenshotCache screenshotCache;
+
+    /**
+     * Report that was taken from the queue but could not be sent before the queue stopped.
+     */
+    private QueueItem unsentItem;
 
     /**
      * Future to report remaining reports in queue.
@@ -85,7 +200,7 @@ public class ReportsQueue implements Runnable {
     private Future<?> progressFuture;
 
     /**
-     * A flag that is raised when all attempts submitting a report fail.
+     * A flag that is raised when all attempts submitting a report fail while the queue stops.
      */
     private boolean stopReports = false;
 
@@ -94,17 +209,41 @@ public class ReportsQueue implements Runnable {
      *
      * @param httpClient HTTP client ot use for communicating with the Agent.
      * @param sessionId  Driver session ID.
+     * @param requestConfig Configuration to apply to report requests, may be null.
+     * @param contentEncoding Content encoding accepted by the Agent, may be null to send reports uncompressed.
+     * @param journal Journal to spill reports to, may be null to keep all reports in memory.
      */
-    public ReportsQueue(final CloseableHttpClient httpClient, final String sessionId) {
+    public ReportsQueue(final CloseableHttpClient httpClient, final String sessionId,
+                        final RequestConfig requestConfig, final ContentEncoding contentEncoding,
+                        final ReportsJournal journal) {
         this.httpClient = httpClient;
         this.sessionId = sessionId;
+        this.requestConfig = requestConfig;
+        this.contentEncoding = contentEncoding != null ? contentEncoding : ContentEncoding.IDENTITY;
+        this.compressionLevel = ContentEncoding.getCompressionLevel();
+        this.journal = journal;
+        this.maxQueuedBytes = journal != null
+                ? journal.getMemoryWatermark() : ReportsJournal.getConfiguredMemoryWatermark();
+        this.queue = new ReportsRingBuffer<>((int) Math.max(QUEUE_CAPACITY,
+                Math.min(MAX_QUEUE_CAPACITY, this.maxQueuedBytes / SLOT_BYTES)), ReportsWaitStrategy.get());
+        this.overflowTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(ReportsOverflowPolicy.getTimeoutMillis());
+
+        ReportsOverflowPolicy policy = ReportsOverflowPolicy.get();
+        if (journal != null) {
+            policy = ReportsOverflowPolicy.SPILL;
+        } else if (policy == ReportsOverflowPolicy.SPILL) {
+            LOG.warn("Reports journal is not available, blocking when the reports queue is full instead.");
+            policy = ReportsOverflowPolicy.BLOCK;
+        }
+        this.overflowPolicy = policy;
+        this.metrics = new ReportsMetrics(this, sessionId);
     }
 
     /**
      * Getter method for {@link #queue}.
      * @return the reports queue.
      */
-    protected LinkedBlockingQueue<QueueItem> getQueue() {
+    protected ReportsRingBuffer<QueueItem> getQueue() {
         return queue;
     }
 
@@ -116,15 +255,547 @@ public class ReportsQueue implements Runnable {
         return httpClient;
     }
 
+    /**
+     * Getter method for {@link #running}.
+     * @return True while the queue accepts and waits for new reports, False once it is stopping.
+     */
+    protected boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Getter for {@link #overflowPolicy} field.
+     *
+     * @return value of {@link #overflowPolicy} field
+     */
+    public ReportsOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Getter for {@link #circuitBreaker} field.
+     *
+     * @return value of {@link #circuitBreaker} field
+     */
+    public ReportsCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Getter for {@link #metrics} field.
+     *
+     * @return value of {@link #metrics} field
+     */
+    public ReportsMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Size in bytes of the reports waiting in memory to be sent.
+     *
+     * @return the size of the queued reports.
+     */
+    long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * Number of reports dropped because the queue was full.
+     *
+     * @return the number of dropped reports.
+     */
+    public long getDroppedReports() {
+        return droppedReports.get();
+    }
+
+    /**
+     * Number of screenshots stripped from reports because the queue was full.
+     *
+     * @return the number of dropped screenshots.
+     */
+    public long getDroppedScreenshots() {
+        return droppedScreenshots.get();
+    }
+
+    /**
+     * Setter for {@link #screenshotCache} field.
+     *
+     * @param screenshotCache Cache of the screenshots sent to the Agent, may be null.
+     */
+    void setScreenshotCache(final ScreenshotCache screenshotCache) {
+        this.screenshotCache = screenshotCache;
+    }
+
+    /**
+     * Number of reports that were submitted but not yet sent.
+     *
+     * @return the number of outstanding reports.
+     */
+    protected int pendingReports() {
+        return queue.size() + (journal != null ? journal.size() : 0);
+    }
+
     /**
      * Adds a report to the queue.
+     * The report is expected to be serialized once by the caller, only its encoded form is kept in the queue.
+     * <p>
+     * When a {@link ReportsJournal} is used, the report is spilled to it if the reports waiting in memory
+     * exceed its memory watermark, or if earlier reports were already spilled, to preserve the reports order.
+     * Otherwise, when the queue is full, room is made for the report according to the {@link #overflowPolicy}.
+     *
+     * @param uri     Agent endpoint that accepts this report when it is sent on its own.
+     * @param payload Report serialized to UTF-8 encoded JSON.
+     * @param report  Report that was serialized, used to tell which reports may be dropped or stripped
+     *                when the queue is full. May be null.
+     */
+    void submit(final String uri, final byte[] payload, final Report report) {
+        if (this.stopReports) {
+            return;
+        }
+
+        this.metrics.submitted();
+        QueueItem item = new QueueItem(uri, payload, isPassedCommand(report), hasScreenshot(report),
+                getScreenshotDigest(report), getReferencedDigest(report));
+        if (this.journal == null) {
+            enqueue(item);
+            return;
+        }
+
+        synchronized (this.spillLock) {
+            if (!this.journal.isEmpty() || this.queuedBytes.get() + item.getSize() > this.journal.getMemoryWatermark()
+                    || this.queue.remainingCapacity() <= 1) {
+                try {
+                    this.journal.append(uri, payload);
+                    return;
+                } catch (IOException e) {
+                    LOG.warn("Failed to spill a report to the reports journal, keeping it in memory.", e);
+                }
+            }
+
+            // Waiting for room here would hold back refilling the queue from the journal
+            if (!tryEnqueue(item)) {
+                dropped(item);
+            }
+        }
+    }
+
+    /**
+     * Adds an item to the in-memory queue, making room for it according to the {@link #overflowPolicy}.
+     * Drops the item if no room was made for it in time.
+     * <p>
+     * Dropped reports only give their slots back once the queue skips them, so when the slots run out
+     * before the memory, the {@link ReportsOverflowPolicy#DROP_PASSED} policy drops the item itself
+     * if it is of a passed command.
+     * <p>
+     * While the {@link #circuitBreaker} is not closed, the queue doesn't drain,
+     * so the item is dropped right away instead of waiting for room, and so are items already waiting.
+     *
+     * @param item Item to add.
+     */
+    private void enqueue(final QueueItem item) {
+        if (tryEnqueue(item)) {
+            return;
+        }
+
+        if (this.overflowPolicy == ReportsOverflowPolicy.DROP_PASSED) {
+            if (!hasFreeSlot() && item.isPassedCommand()) {
+                dropped(item);
+                return;
+            }
+            dropPassedCommands(item);
+        } else if (this.overflowPolicy == ReportsOverflowPolicy.STRIP_SCREENSHOTS) {
+            stripScreenshots(item);
+        }
+
+        if (!tryEnqueue(item) && (this.circuitBreaker.getState() != ReportsCircuitBreaker.State.CLOSED
+                || !awaitEnqueue(item))) {
+            dropped(item);
+        }
+    }
+
+    /**
+     * Adds an item to the in-memory queue if there is room for it, keeping track of the queued bytes.
      *
-     * @param request Request to be sent over HTTP.
-     * @param report  Report that this request contains.
+     * @param item Item to add.
+     * @return True if the item was added, otherwise False.
      */
-    void submit(final HttpEntityEnclosingRequestBase request, final Report report) {
-        if (!this.stopReports) {
-            this.queue.add(new QueueItem(request, report));
+    private boolean tryEnqueue(final QueueItem item) {
+        if (!fits(item) || !hasFreeSlot() || !this.queue.offer(item)) {
+            return false;
+        }
+
+        this.queuedBytes.addAndGet(item.getSize());
+        this.metrics.queued(this.queue.size());
+        return true;
+    }
+
+    /**
+     * Checks whether the bytes of an item fit in the in-memory queue.
+     * An item larger than {@link #maxQueuedBytes} still fits when the queue holds no other reports.
+     *
+     * @param item Item to check.
+     * @return True if the item fits, otherwise False.
+     */
+    private boolean fits(final QueueItem item) {
+        long queued = this.queuedBytes.get();
+        return queued == 0 || queued + item.getSize() <= this.maxQueuedBytes;
+    }
+
+    /**
+     * Checks whether the in-memory queue has a free slot.
+     * One slot is always kept free for the stop marker.
+     *
+     * @return True if there is a free slot, otherwise False.
+     */
+    private boolean hasFreeSlot() {
+        return this.queue.remainingCapacity() > 1;
+    }
+
+    /**
+     * Waits up to {@link #overflowTimeoutNanos} for room in the in-memory queue and adds the item.
+     * Gives up waiting once the {@link #circuitBreaker} opens.
+     *
+     * @param item Item to add.
+     * @return True if the item was added, otherwise False.
+     */
+    private boolean awaitEnqueue(final QueueItem item) {
+        long deadline = System.nanoTime() + this.overflowTimeoutNanos;
+        this.waitingSubmitters.incrementAndGet();
+        try {
+            synchronized (this.space) {
+                while (!tryEnqueue(item)) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || this.circuitBreaker.getState() != ReportsCircuitBreaker.State.CLOSED) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this.space, remaining);
+                }
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            this.waitingSubmitters.decrementAndGet();
+        }
+    }
+
+    /**
+     * Drops the oldest queued reports of passed commands until there is room for an item.
+     * Dropped reports give their bytes back right away, and their slots once the queue skips them.
+     * Reports carrying a screenshot that queued reports refer to by its digest are kept.
+     *
+     * @param item Item to make room for.
+     */
+    private void dropPassedCommands(final QueueItem item) {
+        Set<String> referenced = getReferencedDigests(item);
+        this.queue.visit(queued -> {
+            if (fits(item)) {
+                return false;
+            }
+
+            if (!referenced.contains(queued.getScreenshotDigest())) {
+                released(dropPassedCommand(queued));
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Drops a queued report if it is of a passed command.
+     *
+     * @param queued Queued item.
+     * @return Bytes freed by dropping the item, or 0 if it was not dropped.
+     */
+    private long dropPassedCommand(final QueueItem queued) {
+        long freed = queued.isPassedCommand() ? queued.drop() : -1;
+        if (freed < 0) {
+            return 0;
+        }
+
+        dropped(queued);
+        return freed;
+    }
+
+    /**
+     * Strips screenshots from an item, and from the oldest queued reports until there is room for the item.
+     * Screenshots that queued reports refer to by their digest are kept.
+     *
+     * @param item Item to make room for.
+     */
+    private void stripScreenshots(final QueueItem item) {
+        stripScreenshot(item);
+        Set<String> referenced = getReferencedDigests(item);
+        this.queue.visit(queued -> {
+            if (fits(item)) {
+                return false;
+            }
+
+            if (!referenced.contains(queued.getScreenshotDigest())) {
+                released(stripScreenshot(queued));
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Collects the digests of the screenshots that queued reports, or an item about to be queued,
+     * refer to instead of carrying them: the reports carrying these screenshots must reach the Agent intact.
+     *
+     * @param item Item about to be queued.
+     * @return Referenced screenshot digests, empty when screenshots are not deduplicated.
+     */
+    private Set<String> getReferencedDigests(final QueueItem item) {
+        if (this.screenshotCache == null) {
+            return Collections.emptySet();
+        }
+
+        Set<String> referenced = new HashSet<>();
+        if (item.getReferencedDigest() != null) {
+            referenced.add(item.getReferencedDigest());
+        }
+        this.queue.visit(queued -> {
+            if (queued.getReferencedDigest() != null && !queued.isDropped()) {
+                referenced.add(queued.getReferencedDigest());
+            }
+            return true;
+        });
+        return referenced;
+    }
+
+    /**
+     * Strips the screenshot from a report.
+     *
+     * @param item Item to strip.
+     * @return Bytes freed by stripping the screenshot, or 0 if the item had none.
+     */
+    private long stripScreenshot(final QueueItem item) {
+        long freed = item.stripScreenshot();
+        if (freed < 0) {
+            return 0;
+        }
+
+        forgetScreenshot(item);
+        this.droppedScreenshots.incrementAndGet();
+        return freed;
+    }
+
+    /**
+     * Counts a report that was dropped because the queue was full.
+     *
+     * @param item Item dropped.
+     */
+    private void dropped(final QueueItem item) {
+        forgetScreenshot(item);
+        if (this.droppedReports.incrementAndGet() == 1) {
+            LOG.warn("Reports queue is full, reports are dropped using the [{}] policy.",
+                    this.overflowPolicy.getToken());
+        }
+    }
+
+    /**
+     * Forgets that the screenshot carried by a report was sent, once the report won't reach the Agent,
+     * so that the next report of the same image carries it instead of a digest the Agent can't resolve.
+     *
+     * @param item Item that won't be sent.
+     */
+    private void forgetScreenshot(final QueueItem item) {
+        ScreenshotCache cache = this.screenshotCache;
+        if (cache != null && item.getScreenshotDigest() != null) {
+            cache.forget(item.getScreenshotDigest());
+        }
+    }
+
+    /**
+     * Updates the queued bytes once an item left the in-memory queue or shrunk,
+     * and wakes up the threads waiting for room in the queue.
+     *
+     * @param bytes Number of bytes released.
+     */
+    private void released(final long bytes) {
+        this.queuedBytes.addAndGet(-bytes);
+        if (this.waitingSubmitters.get() > 0) {
+            synchronized (this.space) {
+                this.space.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Adds an item to the in-memory queue unconditionally, keeping track of the queued bytes.
+     *
+     * @param item Item to add.
+     */
+    private void add(final QueueItem item) {
+        this.queue.add(item);
+        this.queuedBytes.addAndGet(item.getSize());
+        this.metrics.queued(this.queue.size());
+    }
+
+    /**
+     * Checks whether a report may be dropped when the queue is full.
+     *
+     * @param report Report to check, may be null.
+     * @return True if the report is of a passed command, otherwise False.
+     */
+    private static boolean isPassedCommand(final Report report) {
+        return report instanceof DriverCommandReport && ((DriverCommandReport) report).isPassed();
+    }
+
+    /**
+     * Checks whether a report carries a screenshot that may be stripped when the queue is full.
+     *
+     * @param report Report to check, may be null.
+     * @return True if the report has a screenshot, otherwise False.
+     */
+    private static boolean hasScreenshot(final Report report) {
+        if (report instanceof DriverCommandReport) {
+            return ((DriverCommandReport) report).getScreenshot() != null;
+        }
+
+        return report instanceof StepReport && ((StepReport) report).getScreenshot() != null;
+    }
+
+    /**
+     * Gets the digest of the screenshot a report carries inline.
+     *
+     * @param report Report to check, may be null.
+     * @return Screenshot digest, or null if the report carries no screenshot or it was not deduplicated.
+     */
+    private static String getScreenshotDigest(final Report report) {
+        if (!hasScreenshot(report)) {
+            return null;
+        }
+
+        return report instanceof DriverCommandReport ? ((DriverCommandReport) report).getScreenshotDigest()
+                : ((StepReport) report).getScreenshotDigest();
+    }
+
+    /**
+     * Gets the digest of the screenshot a report refers to, that an earlier report carried inline.
+     *
+     * @param report Report to check, may be null.
+     * @return Screenshot digest, or null if the report carries its screenshot inline or has none.
+     */
+    private static String getReferencedDigest(final Report report) {
+        if (hasScreenshot(report)) {
+            return null;
+        }
+
+        if (report instanceof DriverCommandReport) {
+            return ((DriverCommandReport) report).getScreenshotDigest();
+        }
+
+        return report instanceof StepReport ? ((StepReport) report).getScreenshotDigest() : null;
+    }
+
+    /**
+     * Takes the next item, waiting until one is available.
+     *
+     * @return the next item.
+     * @throws InterruptedException in case reports queue was interrupted
+     */
+    protected QueueItem take() throws InterruptedException {
+        refill();
+        QueueItem item = this.queue.take();
+        while (!dequeued(item)) {
+            item = this.queue.take();
+        }
+        return item;
+    }
+
+    /**
+     * Takes the next item, waiting up to the specified time until one is available.
+     *
+     * @param timeout Time to wait.
+     * @param unit    Unit of the time to wait.
+     * @return the next item, or null if none became available in time.
+     * @throws InterruptedException in case reports queue was interrupted
+     */
+    protected QueueItem poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        refill();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        QueueItem item = this.queue.poll(timeout, unit);
+        while (item != null && !dequeued(item)) {
+            item = this.queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        return item;
+    }
+
+    /**
+     * Takes all items that are available without waiting, up to the specified number of items.
+     *
+     * @param items    Collection to add the items to.
+     * @param maxItems Maximum number of items to take.
+     * @return the number of items taken.
+     */
+    protected int drainTo(final Collection<QueueItem> items, final int maxItems) {
+        refill();
+        List<QueueItem> drained = new ArrayList<>();
+        this.queue.drainTo(drained, maxItems);
+        int count = 0;
+        for (QueueItem item : drained) {
+            if (dequeued(item)) {
+                items.add(item);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Updates the queued bytes once an item was taken from the in-memory queue.
+     *
+     * @param item Item taken from the queue.
+     * @return True if the item is to be sent, False if it was dropped while queued.
+     */
+    private boolean dequeued(final QueueItem item) {
+        long size = item.markTaken();
+        if (size < 0) {
+            return false;
+        }
+
+        released(size);
+        return true;
+    }
+
+    /**
+     * Moves reports from the journal back to memory, while they fit under the memory watermark.
+     * At least one report is moved when the in-memory queue is empty,
+     * so that the queue is never empty while the journal has reports.
+     */
+    private void refill() {
+        if (this.journal == null) {
+            return;
+        }
+
+        synchronized (this.spillLock) {
+            while (!this.journal.isEmpty() && this.queue.remainingCapacity() > 1
+                    && (this.queue.isEmpty() || this.queuedBytes.get() < this.journal.getMemoryWatermark())) {
+                ReportsJournal.Record record = this.journal.poll();
+                add(new QueueItem(record.getUri(), record.getPayload(), false, false, null, null));
+            }
+        }
+    }
+
+    /**
+     * Collects the reports that were taken from the queue but not sent yet.
+     * Subclasses that hold on to items taken from the queue add them before the queued ones.
+     *
+     * @param items List to add the items to, oldest first.
+     */
+    protected void drainUnsent(final List<QueueItem> items) {
+        if (this.unsentItem != null) {
+            items.add(this.unsentItem);
+            this.unsentItem = null;
+        }
+
+        List<QueueItem> drained = new ArrayList<>();
+        this.queue.drainTo(drained, Integer.MAX_VALUE);
+        for (QueueItem item : drained) {
+            if (!item.isDropped()) {
+                items.add(item);
+            }
         }
     }
 
@@ -134,9 +805,9 @@ public class ReportsQueue implements Runnable {
      * @throws FailedReportException in case of 4 failures to send reports to the agent
      */
     void handleReport() throws InterruptedException, FailedReportException {
-        QueueItem item = this.queue.take();
+        QueueItem item = take();
 
-        if (item.getRequest() == null && item.getReport() == null) {
+        if (item.getUri() == null && item.getPayload() == null) {
             if (this.running) {
                 // There nulls are not OK, something went wrong preparing the report/request.
                 LOG.error("Empty report and request were submitted to the queue!");
@@ -146,7 +817,15 @@ public class ReportsQueue implements Runnable {
             return;
         }
 
-        sendReport((HttpPost) item.getRequest());
+        HttpPost httpPost = new HttpPost(item.getUri());
+        httpPost.setEntity(new ByteArrayEntity(item.getPayload(), ContentType.APPLICATION_JSON));
+        try {
+            sendReport(httpPost);
+        } catch (FailedReportException e) {
+            this.unsentItem = item;
+            throw e;
+        }
+        this.metrics.sent(Collections.singletonList(item));
     }
 
     /**
@@ -154,8 +833,7 @@ public class ReportsQueue implements Runnable {
      */
     @Override
     public void run() {
-        this.running = true;
-        while (this.running || !this.queue.isEmpty()) {
+        while (this.running || pendingReports() > 0) {
             try {
                 handleReport();
             } catch (InterruptedException e) {
@@ -164,59 +842,142 @@ public class ReportsQueue implements Runnable {
             } catch (FailedReportException e) {
                 this.stopReports = true;
                 LOG.warn("Reports are disabled due to multiple failed attempts of sending reports to the agent.");
+                break;
             }
         }
 
+        finish();
         LOG.trace("Reports queue for session [{}] has been stopped.", sessionId);
 
-        if (!this.queue.isEmpty()) {
-            LOG.warn("There are {} unreported items in the queue", this.queue.size());
+        List<QueueItem> unsent = new ArrayList<>();
+        drainUnsent(unsent);
+        unsent.forEach(this::forgetScreenshot);
+        if (this.journal != null) {
+            saveUnsent(unsent);
+        } else if (!unsent.isEmpty()) {
+            LOG.warn("There are {} unreported items in the queue", unsent.size());
         }
+
+        if (getDroppedReports() > 0 || getDroppedScreenshots() > 0) {
+            LOG.warn("{} reports and {} screenshots were dropped since the reports queue was full.",
+                    getDroppedReports(), getDroppedScreenshots());
+        }
+    }
+
+    /**
+     * Saves the reports that were not sent to the journal, ahead of the reports that are already there,
+     * so that they are recovered in order by the next run of the same session.
+     *
+     * @param unsent Reports that were not sent, oldest first.
+     */
+    private void saveUnsent(final List<QueueItem> unsent) {
+        List<ReportsJournal.Record> records = new ArrayList<>(unsent.size());
+        for (QueueItem item : unsent) {
+            if (item.getPayload() != null) {
+                records.add(new ReportsJournal.Record(item.getUri(), item.getPayload()));
+            }
+        }
+
+        try {
+            this.journal.prepend(records);
+        } catch (IOException e) {
+            LOG.warn("Failed to save {} unreported items to the reports journal", records.size(), e);
+        }
+        this.journal.close();
+    }
+
+    /**
+     * Completes the work that is still in progress once the queue stops taking items.
+     * Does nothing by default, since reports are sent synchronously.
+     */
+    protected void finish() {
     }
 
     /**
      * Submits a report to the Agent via HTTP RESTFul API endpoint.
+     * <p>
+     * Failed attempts are retried with an exponential backoff. When all attempts fail, the {@link #circuitBreaker}
+     * opens and the request waits for the Agent to recover, probing it periodically, while new reports keep
+     * accumulating in the queue. Sending is given up once the queue is stopping,
+     * or once the Agent was unavailable for longer than the circuit breaker allows.
+     *
      * @param httpPost For lower versions than 3.1.0 -> HTTP request retrieved from the queue.
      *                 For versions 3.1.0 and greater -> Build reports batch HTTP request.
-     * @throws FailedReportException in case of 4 failures to send reports to the agent
+     * @throws FailedReportException in case the report could not be sent before the queue stopped
      */
     void sendReport(final HttpPost httpPost) throws FailedReportException {
-        int reportAttemptsCount;
-        CloseableHttpResponse response = null;
-        // Send the report to the agent.
-        // In case of failure - make 3 more attempts.
-        for (reportAttemptsCount = MAX_REPORT_FAILURE_ATTEMPTS; reportAttemptsCount > 0; reportAttemptsCount--) {
-            try {
-                response = this.getHttpClient().execute(httpPost);
-            } catch (IOException e) {
-                LOG.error("Failed to submit report.", e);
-            } finally {
-                // Consume response to release the resources
-                if (response != null) {
-                    EntityUtils.consumeQuietly(response.getEntity());
+        if (this.requestConfig != null) {
+            httpPost.setConfig(this.requestConfig);
+        }
+        httpPost.setEntity(this.contentEncoding.compress(httpPost.getEntity(), this.compressionLevel));
+
+        boolean attempted = false;
+        try {
+            while (true) {
+                int attempts = this.circuitBreaker.awaitAttempts(MAX_REPORT_FAILURE_ATTEMPTS);
+                if (attempts == 0) {
+                    break;
                 }
-            }
+                for (int attempt = 1; attempt <= attempts; attempt++) {
+                    if (attempt > 1) {
+                        Thread.sleep(this.circuitBreaker.backoffMillis(attempt - 1));
+                    }
 
-            if (response != null) {
-                // If the reports were sent successfully, there is no need to continue to the rest of the code
-                // since it's handling unsuccessful response.
-                if (Response.Status.Family.familyOf(response.getStatusLine().getStatusCode())
-                    == Response.Status.Family.SUCCESSFUL) {
-                    return;
+                    if (attempted) {
+                        this.metrics.retried();
+                    }
+                    attempted = true;
+
+                    if (post(httpPost)) {
+                        this.circuitBreaker.onSuccess();
+                        return;
+                    }
+                    LOG.info("Failed to send a report to the Agent, {} attempts remaining...", attempts - attempt);
                 }
 
-                // Handle unsuccessful response
-                LOG.warn("Agent responded with an unexpected status {} to report.",
-                        response.getStatusLine().getStatusCode());
-                LOG.info("Failed to send a report to the Agent, {} attempts remaining...", reportAttemptsCount - 1);
+                this.circuitBreaker.onFailure();
+                // Submitters waiting for room give up, the queue doesn't drain while the circuit is open
+                released(0);
+                if (!this.running) {
+                    break;
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        LOG.error("All attempts to send report have failed.");
+        throw new FailedReportException("All attempts to send report have failed.");
+    }
+
+    /**
+     * Makes a single attempt to send a request to the Agent.
+     *
+     * @param httpPost Request to send.
+     * @return True if the Agent accepted the request, otherwise False.
+     */
+    private boolean post(final HttpPost httpPost) {
+        CloseableHttpResponse response = null;
+        try {
+            response = this.getHttpClient().execute(httpPost);
+        } catch (IOException e) {
+            LOG.error("Failed to submit report.", e);
+            return false;
+        } finally {
+            // Consume response to release the resources
+            if (response != null) {
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
+        }
+
+        if (Response.Status.Family.familyOf(response.getStatusLine().getStatusCode())
+                == Response.Status.Family.SUCCESSFUL) {
+            return true;
         }
 
-        // In case all attempts to send the report are failed.
-        // If the report has been sent successfully - this code will not execute.
-        LOG.error("All {} attempts to send report have failed.", MAX_REPORT_FAILURE_ATTEMPTS);
-        throw new FailedReportException("All " + MAX_REPORT_FAILURE_ATTEMPTS
-                + " attempts to send report have failed.");
+        LOG.warn("Agent responded with an unexpected status {} to report.",
+                response.getStatusLine().getStatusCode());
+        return false;
     }
 
     /**
@@ -226,10 +987,14 @@ public class ReportsQueue implements Runnable {
         LOG.trace("Raising flag to stop reports queue for session [{}]", sessionId);
         this.running = false;
 
+        // Don't let the remaining reports wait for the Agent to recover, try them once more and give up
+        this.circuitBreaker.expedite();
+
         // Feed the queue with one more (null) object.
         // This is required to to let it proceed with the loop to evaluate the condition (running?) again.
-        // Note: Sending null as QueueItem is not possible since ArrayBlockingQueue prohibit null elements.
-        this.queue.add(new QueueItem(null, null));
+        // Note: Sending null as QueueItem is not possible since the queue prohibits null elements.
+        // A full queue does not need the marker, the loop proceeds as soon as it takes the next item.
+        this.queue.offer(new QueueItem(null, null, false, false, null, null));
 
         // Start a scheduled future when stopping the queue to log to console the remaining items left to be reported.
         ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
@@ -237,8 +1002,8 @@ public class ReportsQueue implements Runnable {
             progressFuture = scheduler.scheduleAtFixedRate(() -> {
                         Thread.currentThread().setName("Queue-Progress-Report");
                         LOG.info("There are [{}] outstanding reports that should be transmitted to the Agent before"
-                                + " the process exits.", queue.size());
-                        if (queue.isEmpty()) {
+                                + " the process exits.", pendingReports());
+                        if (pendingReports() == 0) {
                             LOG.trace("Reporting queue is empty, stopping progress report...");
                             progressFuture.cancel(true);
                             scheduler.shutdown();
@@ -249,47 +1014,205 @@ public class ReportsQueue implements Runnable {
     }
 
     /**
-     * Internal class to keep the HTTP request and contained report together in the queue.
+     * Internal class to keep an encoded report and its destination together in the queue.
      */
     static class QueueItem {
 
         /**
-         * HTTP request.
+         * Agent endpoint that accepts the report when it is sent on its own.
+         */
+        private final String uri;
+
+        /**
+         * Report serialized to UTF-8 encoded JSON.
+         * Replaced only while the item is queued, when its screenshot is stripped.
+         */
+        private volatile byte[] payload;
+
+        /**
+         * True if the report is of a passed command, and may be dropped when the queue is full.
+         */
+        private final boolean passedCommand;
+
+        /**
+         * True if the report carries a screenshot that may be stripped when the queue is full.
+         */
+        private boolean screenshot;
+
+        /**
+         * Digest of the screenshot the report carries inline, that the {@link ScreenshotCache} recorded as sent.
+         * Null if the report carries no screenshot or it was not deduplicated.
          */
-        private final HttpEntityEnclosingRequestBase request;
+        private final String screenshotDigest;
 
         /**
-         * Report that the request will transmit.
+         * Digest of the screenshot the report refers to instead of carrying it, sent inline by an earlier report.
+         * Null if the report carries its screenshot inline or has none.
          */
-        private final Report report;
+        private final String referencedDigest;
 
         /**
-         * Getter for {@link #request} field.
+         * Flag that is raised once the item left the queue, after which it is no longer modified.
+         */
+        private boolean taken;
+
+        /**
+         * Flag that is raised when the item was dropped while queued, to make room for other reports.
+         */
+        private boolean dropped;
+
+        /**
+         * Time, as returned by {@link System#nanoTime()}, when the item was queued in memory.
+         */
+        private final long queuedAt = System.nanoTime();
+
+        /**
+         * Getter for {@link #uri} field.
          *
-         * @return value of {@link #request} field
+         * @return value of {@link #uri} field
          */
-        HttpEntityEnclosingRequestBase getRequest() {
-            return request;
+        String getUri() {
+            return uri;
         }
 
         /**
-         * Getter for {@link #report} field.
+         * Getter for {@link #payload} field.
          *
-         * @return value of {@link #report} field
+         * @return value of {@link #payload} field
          */
-        Report getReport() {
-            return report;
+        byte[] getPayload() {
+            return payload;
+        }
+
+        /**
+         * Getter for {@link #screenshotDigest} field.
+         *
+         * @return value of {@link #screenshotDigest} field
+         */
+        String getScreenshotDigest() {
+            return screenshotDigest;
+        }
+
+        /**
+         * Getter for {@link #referencedDigest} field.
+         *
+         * @return value of {@link #referencedDigest} field
+         */
+        String getReferencedDigest() {
+            return referencedDigest;
+        }
+
+        /**
+         * Size in bytes of the encoded report.
+         *
+         * @return payload length, or zero for the stop marker.
+         */
+        long getSize() {
+            byte[] bytes = payload;
+            return bytes != null ? bytes.length : 0;
+        }
+
+        /**
+         * Getter for {@link #queuedAt} field.
+         *
+         * @return value of {@link #queuedAt} field
+         */
+        long getQueuedAt() {
+            return queuedAt;
+        }
+
+        /**
+         * Getter for {@link #passedCommand} field.
+         *
+         * @return value of {@link #passedCommand} field
+         */
+        boolean isPassedCommand() {
+            return passedCommand;
+        }
+
+        /**
+         * Marks the item as taken from the queue, so that its screenshot is no longer stripped.
+         *
+         * @return Size in bytes of the encoded report, or -1 if the item was dropped while queued.
+         */
+        synchronized long markTaken() {
+            if (dropped) {
+                return -1;
+            }
+
+            taken = true;
+            return getSize();
+        }
+
+        /**
+         * Marks the item as dropped, as long as it was not taken from the queue, so that it is skipped.
+         *
+         * @return Size in bytes of the encoded report, or -1 if the item was already taken or dropped.
+         */
+        synchronized long drop() {
+            if (taken || dropped) {
+                return -1;
+            }
+
+            dropped = true;
+            return getSize();
+        }
+
+        /**
+         * Getter for {@link #dropped} field.
+         *
+         * @return value of {@link #dropped} field
+         */
+        synchronized boolean isDropped() {
+            return dropped;
+        }
+
+        /**
+         * Removes the screenshot from the encoded report, as long as the item was not taken from the queue.
+         *
+         * @return Number of bytes saved, or -1 if there was no screenshot to remove.
+         */
+        synchronized long stripScreenshot() {
+            if (taken || dropped || !screenshot) {
+                return -1;
+            }
+
+            screenshot = false;
+            try {
+                JsonElement json = new JsonParser().parse(new String(payload, StandardCharsets.UTF_8));
+                if (!json.isJsonObject() || json.getAsJsonObject().remove("screenshot") == null) {
+                    return -1;
+                }
+                json.getAsJsonObject().remove("screenshotDigest");
+
+                byte[] stripped = json.toString().getBytes(StandardCharsets.UTF_8);
+                long saved = payload.length - stripped.length;
+                payload = stripped;
+                return saved;
+            } catch (JsonParseException e) {
+                LOG.warn("Failed to remove the screenshot from a queued report.", e);
+                return -1;
+            }
         }
 
         /**
          * Initializes a new instance of the class.
          *
-         * @param request HTTP request to be transmitted to the Agent.
-         * @param report  Report that the request contains.
+         * @param uri              Agent endpoint that accepts the report when it is sent on its own.
+         * @param payload          Report serialized to UTF-8 encoded JSON.
+         * @param passedCommand    True if the report is of a passed command.
+         * @param screenshot       True if the report carries a screenshot.
+         * @param screenshotDigest Digest of the screenshot the report carries inline, may be null.
+         * @param referencedDigest Digest of the screenshot the report refers to instead of carrying it, may be null.
          */
-        QueueItem(final HttpEntityEnclosingRequestBase request, final Report report) {
-            this.request = request;
-            this.report = report;
+        QueueItem(final String uri, final byte[] payload, final boolean passedCommand, final boolean screenshot,
+                  final String screenshotDigest, final String referencedDigest) {
+            this.uri = uri;
+            this.payload = payload;
+            this.passedCommand = passedCommand;
+            this.screenshot = screenshot;
+            this.screenshotDigest = screenshotDigest;
+            this.referencedDigest = referencedDigest;
         }
     }
 }
@@ -18,18 +18,45 @@
 package io.testproject.sdk.internal.rest;
 
 import io.testproject.sdk.internal.exceptions.FailedReportException;
-import io.testproject.sdk.internal.rest.messages.Report;
+import io.testproject.sdk.internal.helpers.EnvironmentHelper;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Reports queue that sends reports to the Agent in batches.
+ * <p>
+ * Batch assembly blocks until the first report arrives, then lingers for up to {@link #lingerMillis}
+ * collecting more reports, and flushes as soon as the linger time elapses or the batch is full.
+ * A batch is full when it reaches either {@link #maxBatchSize} reports or {@link #maxBatchBytes} bytes.
+ * Reports larger than {@link #largeReportBytes} (typically carrying a screenshot) are sent in their own request,
+ * so that a huge report never holds back a train of small ones.
+ * <p>
+ * Reports are queued already encoded, and a batch is streamed into the request body as a JSON array
+ * by {@link ReportsBatchEntity}, without serializing the reports again or joining them into one buffer.
+ * <p>
+ * Up to {@link #pipelineDepth} batches may be in flight at once, as long as their total size does not exceed
+ * {@link #maxInFlightBytes}. Every batch carries the ID of the queue and a sequence number in the
+ * {@value #STREAM_HEADER} and {@value #SEQUENCE_HEADER} headers, so that the Agent can restore the order
+ * of batches that arrive out of order, and recognize a batch that is sent again after a failed attempt.
+ */
 public class ReportsQueueBatch extends ReportsQueue {
     /**
      * Logger instance.
@@ -42,94 +69,387 @@ public class ReportsQueueBatch extends ReportsQueue {
     private final URL remoteAddress;
 
     /**
-     * The default batch report size is a maximum of 10 reports.
+     * The default batch report size is a maximum of 100 reports.
+     */
+    private static final int MAX_REPORTS_BATCH_SIZE = 100;
+
+    /**
+     * The default batch size in bytes is a maximum of 4MB.
+     */
+    private static final long MAX_REPORTS_BATCH_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The default size in bytes above which a report is sent in a request of its own.
+     */
+    private static final long LARGE_REPORT_BYTES = 256 * 1024;
+
+    /**
+     * The default time in milliseconds to wait for more reports once the first report of a batch has arrived.
+     */
+    private static final long REPORTS_BATCH_LINGER_MS = 100;
+
+    /**
+     * The default number of batches in flight is one, sending batches one after the other.
+     */
+    private static final int REPORTS_PIPELINE_DEPTH = 1;
+
+    /**
+     * The default maximum size of batches in flight is 16MB.
+     */
+    private static final int MAX_IN_FLIGHT_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Time in seconds to wait for the batches in flight to be sent when the queue stops.
+     */
+    private static final int IN_FLIGHT_TIMEOUT = 60;
+
+    /**
+     * Header carrying the ID of the queue that sent a batch.
+     */
+    public static final String STREAM_HEADER = "X-Reports-Stream";
+
+    /**
+     * Header carrying the sequence number of a batch within its stream, starting from 1.
+     */
+    public static final String SEQUENCE_HEADER = "X-Reports-Batch-Sequence";
+
+    /**
+     * Constant for environment variable name that may store the number of batches in flight.
      */
-    private static final int MAX_REPORTS_BATCH_SIZE = 10;
+    private static final String TP_PIPELINE_DEPTH_VARIABLE_NAME = "TP_REPORTS_PIPELINE_DEPTH";
+
+    /**
+     * Constant for environment variable name that may store the maximum size in bytes of batches in flight.
+     */
+    private static final String TP_MAX_IN_FLIGHT_BYTES_VARIABLE_NAME = "TP_REPORTS_MAX_IN_FLIGHT_BYTES";
 
     /**
      * Constant for environment variable name that may store the max batch size.
      */
     private static final String TP_MAX_BATCH_SIZE_VARIABLE_NAME = "TP_MAX_REPORTS_BATCH_SIZE";
 
+    /**
+     * Constant for environment variable name that may store the max batch size in bytes.
+     */
+    private static final String TP_MAX_BATCH_BYTES_VARIABLE_NAME = "TP_MAX_REPORTS_BATCH_BYTES";
+
+    /**
+     * Constant for environment variable name that may store the size in bytes of a report sent on its own.
+     */
+    private static final String TP_LARGE_REPORT_BYTES_VARIABLE_NAME = "TP_REPORTS_BATCH_LARGE_REPORT_BYTES";
+
+    /**
+     * Constant for environment variable name that may store the batch linger time in milliseconds.
+     */
+    private static final String TP_BATCH_LINGER_VARIABLE_NAME = "TP_REPORTS_BATCH_LINGER_MS";
+
     /**
      * Class member to store actual max batch size.
      */
     private final int maxBatchSize;
 
+    /**
+     * Class member to store actual max batch size in bytes.
+     */
+    private final long maxBatchBytes;
+
+    /**
+     * Class member to store actual size in bytes above which a report is sent on its own.
+     */
+    private final long largeReportBytes;
+
+    /**
+     * Class member to store actual batch linger time in milliseconds.
+     */
+    private final long lingerMillis;
+
+    /**
+     * Items taken from the queue that did not fit into the previous batch.
+     * Accessed only by the thread running the queue.
+     */
+    private final Deque<QueueItem> pending = new ArrayDeque<>();
+
+    /**
+     * Number of items in {@link #pending}, published by the thread running the queue to the other threads.
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /**
+     * Class member to store actual number of batches in flight.
+     */
+    private final int pipelineDepth;
+
+    /**
+     * Class member to store actual maximum size in bytes of batches in flight.
+     */
+    private final int maxInFlightBytes;
+
+    /**
+     * Permits for batches in flight.
+     */
+    private final Semaphore inFlightBatches;
+
+    /**
+     * Permits for bytes in flight.
+     */
+    private final Semaphore inFlightBytes;
+
+    /**
+     * Executor sending batches when more than one batch may be in flight, null otherwise.
+     */
+    private final ExecutorService senders;
+
+    /**
+     * ID of the stream of batches sent by this queue.
+     */
+    private final String streamId = UUID.randomUUID().toString();
+
+    /**
+     * Sequence number of the last batch.
+     * Accessed only by the thread running the queue.
+     */
+    private long sequence;
+
+    /**
+     * Failure of a batch that was sent asynchronously, reported on the queue thread.
+     */
+    private final AtomicReference<FailedReportException> failure = new AtomicReference<>();
+
+    /**
+     * Reports of batches that could not be sent asynchronously before the queue stopped, by batch sequence number.
+     */
+    private final Map<Long, List<QueueItem>> unsentBatches = new ConcurrentSkipListMap<>();
+
     /**
      * Initializes a new instance of the class.
      *
      * @param httpClient HTTP client ot use for communicating with the Agent.
      * @param sessionId  Driver session ID.
      * @param remoteAddress Reports remote address.
+     * @param requestConfig Configuration to apply to report requests, may be null.
+     * @param contentEncoding Content encoding accepted by the Agent, may be null to send reports uncompressed.
+     * @param journal Journal to spill reports to, may be null to keep all reports in memory.
      */
-    ReportsQueueBatch(final CloseableHttpClient httpClient, final String sessionId, final URL remoteAddress) {
-        super(httpClient, sessionId);
+    ReportsQueueBatch(final CloseableHttpClient httpClient, final String sessionId, final URL remoteAddress,
+                      final RequestConfig requestConfig, final ContentEncoding contentEncoding,
+                      final ReportsJournal journal) {
+        super(httpClient, sessionId, requestConfig, contentEncoding, journal);
         this.remoteAddress = remoteAddress;
+        this.maxBatchSize = Math.max(1, EnvironmentHelper.getInt(TP_MAX_BATCH_SIZE_VARIABLE_NAME,
+                MAX_REPORTS_BATCH_SIZE));
+        this.maxBatchBytes = Math.max(1, EnvironmentHelper.getLong(TP_MAX_BATCH_BYTES_VARIABLE_NAME,
+                MAX_REPORTS_BATCH_BYTES));
+        this.largeReportBytes = Math.min(this.maxBatchBytes, EnvironmentHelper.getLong(
+                TP_LARGE_REPORT_BYTES_VARIABLE_NAME, LARGE_REPORT_BYTES));
+        this.lingerMillis = Math.max(0, EnvironmentHelper.getLong(TP_BATCH_LINGER_VARIABLE_NAME,
+                REPORTS_BATCH_LINGER_MS));
+        this.pipelineDepth = getPipelineDepth();
+        this.maxInFlightBytes = Math.max(1, EnvironmentHelper.getInt(TP_MAX_IN_FLIGHT_BYTES_VARIABLE_NAME,
+                MAX_IN_FLIGHT_BYTES));
+        this.inFlightBatches = new Semaphore(this.pipelineDepth);
+        this.inFlightBytes = new Semaphore(this.maxInFlightBytes);
+        this.senders = this.pipelineDepth > 1 ? Executors.newFixedThreadPool(this.pipelineDepth) : null;
+    }
 
-        // Try to get maximum report batch size from env variable.
-        int maxBatchSizeValueToSet;
-        try {
-            String tpMaxBatchSizeEnvVarValue = System.getenv(TP_MAX_BATCH_SIZE_VARIABLE_NAME);
-            maxBatchSizeValueToSet = (tpMaxBatchSizeEnvVarValue != null)
-                    ? Integer.parseInt(tpMaxBatchSizeEnvVarValue) : MAX_REPORTS_BATCH_SIZE;
-        } catch (SecurityException e) {
-            LOG.warn("Failed to retrieve the value of environment variable {}. "
-                            + "Maximum reports batch size is set to the default value: {}.",
-                    TP_MAX_BATCH_SIZE_VARIABLE_NAME, MAX_REPORTS_BATCH_SIZE, e);
-            maxBatchSizeValueToSet = MAX_REPORTS_BATCH_SIZE;
-        } catch (Exception e) {
-            LOG.warn("Failed to convert the value of environment variable {}. "
-                            + "Maximum reports batch size is set to the default value: {}.",
-                    TP_MAX_BATCH_SIZE_VARIABLE_NAME, MAX_REPORTS_BATCH_SIZE, e);
-            maxBatchSizeValueToSet = MAX_REPORTS_BATCH_SIZE;
-        }
-        this.maxBatchSize = maxBatchSizeValueToSet;
+    /**
+     * Reads the number of batches that may be in flight at once.
+     *
+     * @return Pipeline depth, at least one.
+     */
+    public static int getPipelineDepth() {
+        return Math.max(1, EnvironmentHelper.getInt(TP_PIPELINE_DEPTH_VARIABLE_NAME, REPORTS_PIPELINE_DEPTH));
     }
 
     /**
      * From version 3.1.0 -> send reports in batches.
-     * Collect reports from reports queue and build reports batch.
-     * Send the reports batch to the agent.
+     * Block until a report is available, collect reports from the queue to build a reports batch,
+     * and send the reports batch to the agent.
      * @throws InterruptedException in case reports queue was interrupted
      * @throws FailedReportException in case of 4 failures to send reports to the agent
      */
     @Override
     void handleReport() throws InterruptedException, FailedReportException {
-        // Linked list to store the reports batch before sending them.
-        // Those reports will be extract from the queue.
-        List<Report> batchReports = new LinkedList<>();
+        FailedReportException failed = this.failure.getAndSet(null);
+        if (failed != null) {
+            throw failed;
+        }
 
-        // Extract and remove up to {this.maxBatchSize} items or till queue is empty from queue - without blocking it.
-        while (!getQueue().isEmpty() && batchReports.size() < this.maxBatchSize) {
-            // Get the first item in the queue without blocking it.
-            QueueItem item = getQueue().poll();
+        List<QueueItem> batchItems = collectBatch();
+        this.pendingCount.set(this.pending.size());
 
-            if (null != item && item.getReport() != null) {
-                batchReports.add(item.getReport());
-            }
+        if (batchItems.isEmpty()) {
+            return;
         }
 
-        if (batchReports.isEmpty()) {
+        long batchBytes = 0;
+        List<byte[]> payloads = new ArrayList<>(batchItems.size());
+        for (QueueItem item : batchItems) {
+            payloads.add(item.getPayload());
+            batchBytes += item.getSize();
+        }
+
+        // Create httpPost and execute, reports are streamed into the request body
+        HttpPost httpPost = new HttpPost(this.remoteAddress + AgentClient.Routes.REPORT_BATCH);
+        httpPost.setHeader(STREAM_HEADER, this.streamId);
+        httpPost.setHeader(SEQUENCE_HEADER, Long.toString(++this.sequence));
+        httpPost.setEntity(new ReportsBatchEntity(payloads));
+
+        if (this.senders == null) {
+            try {
+                this.sendReport(httpPost);
+                getMetrics().sent(batchItems);
+            } catch (FailedReportException e) {
+                // Keep the reports for the journal, ahead of the reports that were not collected yet
+                for (int i = batchItems.size() - 1; i >= 0; i--) {
+                    this.pending.addFirst(batchItems.get(i));
+                }
+                this.pendingCount.set(this.pending.size());
+                throw e;
+            }
             return;
         }
 
-        // Create json from reports list
-        String json = null;
+        // A batch larger than the limit is sent alone
+        int permits = (int) Math.min(batchBytes, this.maxInFlightBytes);
+        this.inFlightBatches.acquire();
         try {
-            json = this.GSON.toJson(batchReports);
-        } catch (Exception e) {
-            LOG.error("Failed to create json from list: [{}]", batchReports, e);
+            this.inFlightBytes.acquire(permits);
+        } catch (InterruptedException e) {
+            this.inFlightBatches.release();
+            throw e;
+        }
+
+        long batchSequence = this.sequence;
+        this.senders.execute(() -> {
+            try {
+                this.sendReport(httpPost);
+                getMetrics().sent(batchItems);
+            } catch (FailedReportException e) {
+                this.unsentBatches.put(batchSequence, batchItems);
+                this.failure.compareAndSet(null, e);
+            } finally {
+                this.inFlightBytes.release(permits);
+                this.inFlightBatches.release();
+            }
+        });
+    }
+
+    /**
+     * Waits for the batches in flight to be sent.
+     */
+    @Override
+    protected void finish() {
+        if (this.senders == null) {
             return;
         }
 
-        // Parse batch report to json string
-        StringEntity entity = new StringEntity(json, StandardCharsets.UTF_8);
+        this.senders.shutdown();
+        try {
+            if (!this.senders.awaitTermination(IN_FLIGHT_TIMEOUT, TimeUnit.SECONDS)) {
+                LOG.warn("Reports batches in flight were not sent in a timely manner");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Number of reports that were submitted but not yet sent,
+     * including the reports that did not fit into the previous batch.
+     *
+     * @return the number of outstanding reports.
+     */
+    @Override
+    protected int pendingReports() {
+        return super.pendingReports() + this.pendingCount.get();
+    }
 
-        // Create httpPost and execute
-        HttpPost httpPost = new HttpPost(this.remoteAddress + AgentClient.Routes.REPORT_BATCH);
-        httpPost.setEntity(entity);
+    /**
+     * Collects the reports that were not sent yet, starting with the batches that failed to be sent
+     * and the ones that did not fit into the previous batch.
+     *
+     * @param items List to add the items to, oldest first.
+     */
+    @Override
+    protected void drainUnsent(final List<QueueItem> items) {
+        this.unsentBatches.values().forEach(items::addAll);
+        this.unsentBatches.clear();
+        items.addAll(this.pending);
+        this.pending.clear();
+        this.pendingCount.set(0);
+        super.drainUnsent(items);
+    }
 
-        this.sendReport(httpPost);
+    /**
+     * Collects the next batch of reports from the queue.
+     * <p>
+     * Blocks until the first item is available, then drains whatever is already queued,
+     * and keeps waiting for more items until the batch is full or the linger time elapses.
+     * Lingering is skipped once the queue is stopping, to flush the remaining reports without delay.
+     * Items that don't fit into the batch are kept in {@link #pending} for the next one.
+     *
+     * @return Items to send, may be empty if only the stop marker was taken from the queue.
+     * @throws InterruptedException in case reports queue was interrupted
+     */
+    private List<QueueItem> collectBatch() throws InterruptedException {
+        List<QueueItem> batchReports = new ArrayList<>();
+        long batchBytes = 0;
+
+        // Block until the first item arrives, unless there are leftovers from the previous batch.
+        if (this.pending.isEmpty()) {
+            this.pending.add(take());
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.lingerMillis);
+
+        while (true) {
+            while (!this.pending.isEmpty()) {
+                QueueItem item = this.pending.peekFirst();
+                if (item.getPayload() == null) {
+                    // Stop marker
+                    this.pending.pollFirst();
+                    continue;
+                }
+
+                if (item.getSize() > this.largeReportBytes) {
+                    if (batchReports.isEmpty()) {
+                        // Large report goes alone
+                        this.pending.pollFirst();
+                        batchReports.add(item);
+                    }
+
+                    // Otherwise flush the reports collected so far, the large report will be sent next
+                    return batchReports;
+                }
+
+                if (batchReports.size() >= this.maxBatchSize || batchBytes + item.getSize() > this.maxBatchBytes) {
+                    return batchReports;
+                }
+
+                this.pending.pollFirst();
+                batchReports.add(item);
+                batchBytes += item.getSize();
+            }
+
+            if (batchReports.size() >= this.maxBatchSize) {
+                return batchReports;
+            }
+
+            // Take everything that is already available, without blocking, up to the batch size.
+            if (drainTo(this.pending, this.maxBatchSize - batchReports.size()) > 0) {
+                continue;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !isRunning()) {
+                return batchReports;
+            }
+
+            // Wait for more items until the linger time elapses.
+            QueueItem item = poll(remaining, TimeUnit.NANOSECONDS);
+            if (item == null) {
+                return batchReports;
+            }
+            this.pending.add(item);
+        }
     }
 }
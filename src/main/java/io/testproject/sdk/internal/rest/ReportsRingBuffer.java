@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.internal.rest;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Bounded, lock-free queue of reports for many submitting threads and a single thread taking the reports.
+ * <p>
+ * Elements are stored in a ring of slots allocated up front. Every slot has a sequence number telling whether
+ * it is free for the element at a position or holds it, so that submitting threads only race for a position
+ * with a compare-and-set, and the taking thread never contends with them. While the queue is empty,
+ * the taking thread waits according to a {@link ReportsWaitStrategy}.
+ * <p>
+ * Only one thread may take elements at a time, any thread may submit them.
+ *
+ * @param <E> Type of the elements.
+ */
+public final class ReportsRingBuffer<E> {
+
+    /**
+     * Shortest time in nanoseconds the taking thread parks, see {@link ReportsWaitStrategy#PARK}.
+     */
+    private static final long MIN_PARK_NANOS = 1000;
+
+    /**
+     * Longest time in nanoseconds the taking thread parks, see {@link ReportsWaitStrategy#PARK}.
+     */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Number of slots, a power of two.
+     */
+    private final int capacity;
+
+    /**
+     * Mask turning a position into the index of its slot.
+     */
+    private final int mask;
+
+    /**
+     * Elements, by slot.
+     */
+    private final AtomicReferenceArray<E> slots;
+
+    /**
+     * Sequence numbers, by slot: the position the slot is free for, or that position plus one
+     * once the slot holds the element at that position.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * Position of the next element to be submitted.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Position of the next element to be taken, only written by the taking thread.
+     */
+    private volatile long head;
+
+    /**
+     * Strategy of the taking thread to wait while the queue is empty.
+     */
+    private final ReportsWaitStrategy waitStrategy;
+
+    /**
+     * Lock the taking thread waits on, see {@link ReportsWaitStrategy#BLOCK}.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Condition signalled when an element is submitted while the taking thread waits.
+     */
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * Flag that is raised while the taking thread waits on {@link #notEmpty}.
+     */
+    private volatile boolean waiting;
+
+    /**
+     * Initializes a new instance of the class.
+     *
+     * @param capacity     Minimum number of elements the queue holds, rounded up to a power of two.
+     * @param waitStrategy Strategy of the taking thread to wait while the queue is empty.
+     */
+    public ReportsRingBuffer(final int capacity, final ReportsWaitStrategy waitStrategy) {
+        int size = Integer.highestOneBit(Math.max(1, capacity));
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        this.capacity = size;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.sequences.set(i, i);
+        }
+        this.waitStrategy = waitStrategy != null ? waitStrategy : ReportsWaitStrategy.BLOCK;
+    }
+
+    /**
+     * Adds an element if there is room for it, without waiting.
+     *
+     * @param element Element to add.
+     * @return True if the element was added, False if the queue is full.
+     */
+    public boolean offer(final E element) {
+        Objects.requireNonNull(element);
+        long position = this.tail.get();
+        while (true) {
+            int index = (int) position & this.mask;
+            long difference = this.sequences.get(index) - position;
+            if (difference == 0) {
+                if (this.tail.compareAndSet(position, position + 1)) {
+                    this.slots.set(index, element);
+                    this.sequences.set(index, position + 1);
+                    signal();
+                    return true;
+                }
+            } else if (difference < 0) {
+                // The slot still holds the element one lap behind
+                return false;
+            }
+            position = this.tail.get();
+        }
+    }
+
+    /**
+     * Adds an element, failing if there is no room for it.
+     *
+     * @param element Element to add.
+     * @throws IllegalStateException if the queue is full.
+     */
+    public void add(final E element) {
+        if (!offer(element)) {
+            throw new IllegalStateException("Queue full");
+        }
+    }
+
+    /**
+     * Takes the next element without waiting. Must only be called by the taking thread.
+     *
+     * @return the next element, or null if the queue is empty.
+     */
+    public E poll() {
+        long position = this.head;
+        int index = (int) position & this.mask;
+        if (this.sequences.get(index) != position + 1) {
+            return null;
+        }
+
+        E element = this.slots.get(index);
+        this.slots.lazySet(index, null);
+        this.head = position + 1;
+        // Free the slot for the element one lap ahead
+        this.sequences.set(index, position + this.capacity);
+        return element;
+    }
+
+    /**
+     * Takes the next element, waiting up to the specified time until one is available.
+     * Must only be called by the taking thread.
+     *
+     * @param timeout Time to wait.
+     * @param unit    Unit of the time to wait.
+     * @return the next element, or null if none became available in time.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return await(System.nanoTime() + unit.toNanos(timeout), true);
+    }
+
+    /**
+     * Takes the next element, waiting until one is available. Must only be called by the taking thread.
+     *
+     * @return the next element.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    public E take() throws InterruptedException {
+        return await(0, false);
+    }
+
+    /**
+     * Takes all elements that are available without waiting, up to the specified number of elements.
+     * Must only be called by the taking thread.
+     *
+     * @param elements    Collection to add the elements to.
+     * @param maxElements Maximum number of elements to take.
+     * @return the number of elements taken.
+     */
+    public int drainTo(final Collection<? super E> elements, final int maxElements) {
+        int count = 0;
+        while (count < maxElements) {
+            E element = poll();
+            if (element == null) {
+                break;
+            }
+            elements.add(element);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Visits the queued elements, oldest first, until the visitor returns False.
+     * Elements submitted or taken meanwhile may or may not be visited.
+     *
+     * @param visitor Visitor of the elements, returning True to visit the next element.
+     */
+    public void visit(final Predicate<? super E> visitor) {
+        long end = this.tail.get();
+        for (long position = this.head; position < end; position++) {
+            int index = (int) position & this.mask;
+            if (this.sequences.get(index) != position + 1) {
+                continue;
+            }
+
+            E element = this.slots.get(index);
+            if (element != null && this.sequences.get(index) == position + 1 && !visitor.test(element)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Number of elements in the queue, including the ones being submitted.
+     *
+     * @return the number of elements.
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(this.capacity, this.tail.get() - this.head));
+    }
+
+    /**
+     * Checks whether the next element is available to be taken.
+     *
+     * @return True if there is no element to take, otherwise False.
+     */
+    public boolean isEmpty() {
+        long position = this.head;
+        return this.sequences.get((int) position & this.mask) != position + 1;
+    }
+
+    /**
+     * Number of elements that can be added without waiting.
+     *
+     * @return the number of free slots.
+     */
+    public int remainingCapacity() {
+        return this.capacity - size();
+    }
+
+    /**
+     * Getter for {@link #capacity} field.
+     *
+     * @return value of {@link #capacity} field
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Waits for the next element according to the {@link #waitStrategy} and takes it.
+     * Like a blocking queue, fails when the thread is interrupted even if an element is available.
+     *
+     * @param deadline Time, as returned by {@link System#nanoTime()}, to stop waiting at.
+     * @param timed    False to wait without a deadline.
+     * @return the next element, or null if none became available in time.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    private E await(final long deadline, final boolean timed) throws InterruptedException {
+        long parkNanos = MIN_PARK_NANOS;
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            E element = poll();
+            if (element != null) {
+                return element;
+            }
+
+            long remaining = timed ? deadline - System.nanoTime() : Long.MAX_VALUE;
+            if (remaining <= 0) {
+                return null;
+            }
+
+            switch (this.waitStrategy) {
+                case YIELD:
+                    Thread.yield();
+                    break;
+                case PARK:
+                    LockSupport.parkNanos(this, Math.min(parkNanos, remaining));
+                    parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+                    break;
+                default:
+                    block(remaining);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Sleeps until an element is submitted, see {@link ReportsWaitStrategy#BLOCK}.
+     *
+     * @param nanos Maximum time to sleep.
+     * @throws InterruptedException if the thread was interrupted while sleeping.
+     */
+    private void block(final long nanos) throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            // Announce the wait before checking once more, so that a submitting thread either sees it or is seen
+            this.waiting = true;
+            if (isEmpty()) {
+                this.notEmpty.awaitNanos(nanos);
+            }
+        } finally {
+            this.waiting = false;
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up the taking thread if it sleeps waiting for an element.
+     */
+    private void signal() {
+        if (!this.waiting) {
+            return;
+        }
+
+        this.lock.lock();
+        try {
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+}
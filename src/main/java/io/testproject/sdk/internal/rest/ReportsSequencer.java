@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Hands reports over to the reports queue in the order they were made,
+ * while the parts of the reports that take time to prepare, such as screenshots, are prepared on other threads.
+ * <p>
+ * A report is handed over once its own parts are ready and all the reports made before it were handed over.
+ * When nothing is pending, a report that is ready is handed over right away on the calling thread.
+ */
+public final class ReportsSequencer {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ReportsSequencer.class);
+
+    /**
+     * Completes once the last report submitted was handed over.
+     */
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+    /**
+     * Hands over a report that is ready, after the reports submitted before it.
+     *
+     * @param action Action handing the report over to the reports queue.
+     * @return Outcome of the action if it ran right away, otherwise True.
+     */
+    public boolean submit(final BooleanSupplier action) {
+        return submit(CompletableFuture.completedFuture(null), value -> action.getAsBoolean());
+    }
+
+    /**
+     * Hands over a report once a part of it is ready, after the reports submitted before it.
+     *
+     * @param value  Part of the report that is being prepared.
+     * @param action Action completing the report with the prepared part and handing it over to the reports queue.
+     * @param <T>    Type of the prepared part.
+     * @return Outcome of the action if it ran right away, otherwise True.
+     */
+    public synchronized <T> boolean submit(final CompletableFuture<T> value, final Predicate<T> action) {
+        if (this.tail.isDone() && value.isDone()) {
+            return run(action, value.handle(ReportsSequencer::recover).join());
+        }
+
+        this.tail = this.tail.thenCombine(value.handle(ReportsSequencer::recover), (previous, prepared) -> prepared)
+                .thenAccept(prepared -> run(action, prepared));
+        return true;
+    }
+
+    /**
+     * Waits for all the submitted reports to be handed over.
+     *
+     * @param timeout Maximum time to wait.
+     * @param unit    Unit of the timeout.
+     * @return True if all the reports were handed over, otherwise False.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    public boolean flush(final long timeout, final TimeUnit unit) throws InterruptedException {
+        CompletableFuture<Void> last;
+        synchronized (this) {
+            last = this.tail;
+        }
+
+        try {
+            last.get(timeout, unit);
+            return true;
+        } catch (ExecutionException e) {
+            // Actions never fail the chain, see run()
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs a hand over action, so that a failing report doesn't hold back the reports after it.
+     *
+     * @param action   Action to run.
+     * @param prepared Prepared part of the report.
+     * @param <T>      Type of the prepared part.
+     * @return Outcome of the action, False if it failed.
+     */
+    private static <T> boolean run(final Predicate<T> action, final T prepared) {
+        try {
+            return action.test(prepared);
+        } catch (Exception e) {
+            LOG.error("Failed to submit a report", e);
+            return false;
+        }
+    }
+
+    /**
+     * Replaces a part that failed to be prepared with null, so that the report is still handed over.
+     *
+     * @param prepared Prepared part of the report.
+     * @param error    Error thrown while preparing it, or null.
+     * @param <T>      Type of the prepared part.
+     * @return The prepared part, or null if it failed.
+     */
+    private static <T> T recover(final T prepared, final Throwable error) {
+        if (error != null) {
+            LOG.error("Failed to prepare a report", error);
+            return null;
+        }
+        return prepared;
+    }
+}
@@ -0,0 +1,538 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.helpers.EnvironmentHelper;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Uploads reports recorded by the {@link FileReportSink} to an Agent, using the reports batch endpoint.
+ * <p>
+ * Recorded reports are streamed from the file into large batches, several of which are sent at once.
+ * Batches may be throttled to a maximum rate, so that a large upload doesn't overwhelm an Agent that is in use.
+ * An upload stops at the first batch that fails to be sent, and returns the offset in the file up to which
+ * all the reports were accepted, from which a later upload resumes.
+ */
+public final class ReportsUploader {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ReportsUploader.class);
+
+    /**
+     * Constant for environment variable name that may store the maximum number of reports in an uploaded batch.
+     */
+    public static final String TP_UPLOAD_BATCH_SIZE_VARIABLE_NAME = "TP_REPORTS_UPLOAD_BATCH_SIZE";
+
+    /**
+     * Constant for environment variable name that may store the maximum size in bytes of an uploaded batch.
+     */
+    public static final String TP_UPLOAD_BATCH_BYTES_VARIABLE_NAME = "TP_REPORTS_UPLOAD_BATCH_BYTES";
+
+    /**
+     * Constant for environment variable name that may store the number of batches uploaded at once.
+     */
+    public static final String TP_UPLOAD_PARALLELISM_VARIABLE_NAME = "TP_REPORTS_UPLOAD_PARALLELISM";
+
+    /**
+     * Constant for environment variable name that may store the maximum number of batches uploaded per second,
+     * 0 for no limit.
+     */
+    public static final String TP_UPLOAD_RATE_VARIABLE_NAME = "TP_REPORTS_UPLOAD_BATCHES_PER_SECOND";
+
+    /**
+     * The default maximum number of reports in an uploaded batch.
+     */
+    private static final int UPLOAD_BATCH_SIZE = 1000;
+
+    /**
+     * The default maximum size of an uploaded batch is 4MB.
+     */
+    private static final long UPLOAD_BATCH_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The default number of batches uploaded at once.
+     */
+    private static final int UPLOAD_PARALLELISM = 4;
+
+    /**
+     * Number of attempts to send a batch before the upload stops.
+     */
+    private static final int MAX_ATTEMPTS = ReportsQueue.MAX_REPORT_FAILURE_ATTEMPTS;
+
+    /**
+     * Size of the buffer the file is read into is 1MB.
+     */
+    private static final int READ_BUFFER_BYTES = 1024 * 1024;
+
+    /**
+     * Maximum time to wait for the batches in flight once the file was read, in minutes.
+     */
+    private static final long IN_FLIGHT_TIMEOUT = 10;
+
+    /**
+     * Separator of the reports in a file.
+     */
+    private static final byte NEW_LINE = '\n';
+
+    /**
+     * HTTP client to send the batches with, authorized by the Agent.
+     */
+    private final CloseableHttpClient httpClient;
+
+    /**
+     * Agent API base URL.
+     */
+    private final URL remoteAddress;
+
+    /**
+     * Encoding used to compress the batches.
+     */
+    private final ContentEncoding contentEncoding;
+
+    /**
+     * Maximum number of reports in a batch.
+     */
+    private final int maxBatchSize;
+
+    /**
+     * Maximum size in bytes of a batch, a single larger report is sent alone.
+     */
+    private final long maxBatchBytes;
+
+    /**
+     * Number of batches sent at once.
+     */
+    private final int parallelism;
+
+    /**
+     * Minimum time in nanoseconds between the start of two batches, 0 for no limit.
+     */
+    private final long batchIntervalNanos;
+
+    /**
+     * Provides the delays between attempts to send a batch.
+     */
+    private final ReportsCircuitBreaker backoff = new ReportsCircuitBreaker();
+
+    /**
+     * Initializes a new instance using the values set in the environment variables.
+     *
+     * @param httpClient      HTTP client to send the batches with, authorized by the Agent.
+     * @param remoteAddress   Agent API base URL.
+     * @param contentEncoding Encoding used to compress the batches, may be null to send them uncompressed.
+     */
+    public ReportsUploader(final CloseableHttpClient httpClient, final URL remoteAddress,
+                           final ContentEncoding contentEncoding) {
+        this(httpClient, remoteAddress, contentEncoding,
+                EnvironmentHelper.getInt(TP_UPLOAD_BATCH_SIZE_VARIABLE_NAME, UPLOAD_BATCH_SIZE),
+                EnvironmentHelper.getLong(TP_UPLOAD_BATCH_BYTES_VARIABLE_NAME, UPLOAD_BATCH_BYTES),
+                EnvironmentHelper.getInt(TP_UPLOAD_PARALLELISM_VARIABLE_NAME, UPLOAD_PARALLELISM),
+                EnvironmentHelper.getInt(TP_UPLOAD_RATE_VARIABLE_NAME, 0));
+    }
+
+    /**
+     * Initializes a new instance of the class.
+     *
+     * @param httpClient       HTTP client to send the batches with, authorized by the Agent.
+     * @param remoteAddress    Agent API base URL.
+     * @param contentEncoding  Encoding used to compress the batches, may be null to send them uncompressed.
+     * @param maxBatchSize     Maximum number of reports in a batch.
+     * @param maxBatchBytes    Maximum size in bytes of a batch.
+     * @param parallelism      Number of batches sent at once.
+     * @param batchesPerSecond Maximum number of batches started per second, 0 for no limit.
+     */
+    public ReportsUploader(final CloseableHttpClient httpClient, final URL remoteAddress,
+                           final ContentEncoding contentEncoding, final int maxBatchSize, final long maxBatchBytes,
+                           final int parallelism, final int batchesPerSecond) {
+        this.httpClient = httpClient;
+        this.remoteAddress = remoteAddress;
+        this.contentEncoding = contentEncoding != null ? contentEncoding : ContentEncoding.IDENTITY;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxBatchBytes = Math.max(1, maxBatchBytes);
+        this.parallelism = Math.max(1, parallelism);
+        this.batchIntervalNanos = batchesPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / batchesPerSecond : 0;
+    }
+
+    /**
+     * Uploads the reports recorded in a file, starting at an offset.
+     * A last line that is not terminated, e.g. by a process that crashed while writing it, is not uploaded.
+     *
+     * @param file   File recorded by the {@link FileReportSink}.
+     * @param offset Offset in the file to start from, 0 or the offset returned by a previous upload.
+     * @return Outcome of the upload.
+     * @throws IOException          if the file could not be read.
+     * @throws InterruptedException if the thread was interrupted while uploading.
+     */
+    public Result upload(final Path file, final long offset) throws IOException, InterruptedException {
+        Progress progress = new Progress(offset);
+        String streamId = UUID.randomUUID().toString();
+        ExecutorService senders = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "reports-uploader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore inFlight = new Semaphore(this.parallelism);
+
+        long sequence = 0;
+        long nextStart = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(offset);
+            byte[] chunk = new byte[READ_BUFFER_BYTES];
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            List<byte[]> payloads = new ArrayList<>();
+            long batchBytes = 0;
+            long position = offset;
+
+            while (!progress.failed.get()) {
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    break;
+                }
+
+                int from = 0;
+                for (int i = 0; i < read; i++) {
+                    if (chunk[i] != NEW_LINE) {
+                        continue;
+                    }
+
+                    line.write(chunk, from, i - from);
+                    position += i + 1 - from;
+                    from = i + 1;
+                    if (line.size() == 0) {
+                        continue;
+                    }
+
+                    if (!payloads.isEmpty() && (payloads.size() >= this.maxBatchSize
+                            || batchBytes + line.size() > this.maxBatchBytes)) {
+                        // Ends before the current line
+                        long end = position - line.size() - 1;
+                        nextStart = pace(nextStart);
+                        send(senders, inFlight, progress, streamId, ++sequence, payloads, end);
+                        payloads = new ArrayList<>();
+                        batchBytes = 0;
+                    }
+
+                    payloads.add(line.toByteArray());
+                    batchBytes += line.size();
+                    line.reset();
+                }
+
+                // Beginning of a line that continues in the next chunk
+                line.write(chunk, from, read - from);
+                position += read - from;
+                buffer.clear();
+            }
+
+            if (!payloads.isEmpty() && !progress.failed.get()) {
+                // Ends after the last terminated line
+                pace(nextStart);
+                send(senders, inFlight, progress, streamId, ++sequence, payloads, position - line.size());
+            }
+        } finally {
+            senders.shutdown();
+            if (!senders.awaitTermination(IN_FLIGHT_TIMEOUT, TimeUnit.MINUTES)) {
+                LOG.warn("Uploaded batches were not sent in a timely manner");
+                senders.shutdownNow();
+            }
+        }
+
+        Result result = progress.toResult(sequence);
+        LOG.info("Uploaded {} reports ({} bytes) from [{}], {} at offset {}", result.getReports(), result.getBytes(),
+                file, result.isComplete() ? "completed" : "stopped", result.getOffset());
+        return result;
+    }
+
+    /**
+     * Waits until the next batch may start, according to the maximum rate.
+     *
+     * @param nextStart Time, as returned by {@link System#nanoTime()}, when the next batch may start.
+     * @return Time when the batch after it may start.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    private long pace(final long nextStart) throws InterruptedException {
+        if (this.batchIntervalNanos == 0) {
+            return nextStart;
+        }
+
+        long now = System.nanoTime();
+        if (nextStart > now) {
+            TimeUnit.NANOSECONDS.sleep(nextStart - now);
+            return nextStart + this.batchIntervalNanos;
+        }
+        return now + this.batchIntervalNanos;
+    }
+
+    /**
+     * Sends a batch on a sender thread, once fewer than {@link #parallelism} batches are in flight.
+     *
+     * @param senders  Sender threads.
+     * @param inFlight Permits for batches in flight.
+     * @param progress Progress of the upload.
+     * @param streamId ID of the stream of batches, see {@link ReportsQueueBatch#STREAM_HEADER}.
+     * @param sequence Sequence number of the batch.
+     * @param payloads Reports serialized to UTF-8 encoded JSON.
+     * @param end      Offset in the file after the last report of the batch.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    private void send(final ExecutorService senders, final Semaphore inFlight, final Progress progress,
+                      final String streamId, final long sequence, final List<byte[]> payloads, final long end)
+            throws InterruptedException {
+        inFlight.acquire();
+        long bytes = 0;
+        for (byte[] payload : payloads) {
+            bytes += payload.length;
+        }
+        long batchBytes = bytes;
+
+        senders.execute(() -> {
+            try {
+                if (progress.failed.get()) {
+                    return;
+                }
+
+                HttpPost httpPost = new HttpPost(this.remoteAddress + AgentClient.Routes.REPORT_BATCH);
+                httpPost.setHeader(ReportsQueueBatch.STREAM_HEADER, streamId);
+                httpPost.setHeader(ReportsQueueBatch.SEQUENCE_HEADER, Long.toString(sequence));
+                httpPost.setEntity(this.contentEncoding.compress(new ReportsBatchEntity(payloads),
+                        ContentEncoding.getCompressionLevel()));
+
+                if (post(httpPost)) {
+                    progress.acknowledge(sequence, end, payloads.size(), batchBytes);
+                } else {
+                    LOG.error("Failed to upload batch {} of {} reports, the upload stops.", sequence, payloads.size());
+                    progress.failed.set(true);
+                }
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    /**
+     * Sends a batch, retrying with a backoff when it fails.
+     *
+     * @param httpPost Request to send.
+     * @return True if the Agent accepted the batch, otherwise False.
+     */
+    private boolean post(final HttpPost httpPost) {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            if (attempt > 1) {
+                try {
+                    Thread.sleep(this.backoff.backoffMillis(attempt - 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+
+            try (CloseableHttpResponse response = this.httpClient.execute(httpPost)) {
+                EntityUtils.consumeQuietly(response.getEntity());
+                if (Response.Status.Family.familyOf(response.getStatusLine().getStatusCode())
+                        == Response.Status.Family.SUCCESSFUL) {
+                    return true;
+                }
+                LOG.warn("Agent responded with an unexpected status {} to uploaded batch.",
+                        response.getStatusLine().getStatusCode());
+            } catch (IOException e) {
+                LOG.warn("Failed to upload a batch of reports.", e);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Keeps track of the batches accepted by the Agent, which may complete in any order,
+     * and of the offset up to which all the reports were accepted.
+     */
+    private static final class Progress {
+
+        /**
+         * Flag that is raised when a batch failed to be sent.
+         */
+        private final AtomicBoolean failed = new AtomicBoolean();
+
+        /**
+         * Batches that were accepted ahead of a batch still in flight, by sequence number.
+         * Every entry holds the end offset, the number of reports and the number of bytes of the batch.
+         */
+        private final Map<Long, long[]> ahead = new HashMap<>();
+
+        /**
+         * Sequence number of the next batch to be committed.
+         */
+        private long next = 1;
+
+        /**
+         * Offset up to which all the reports were accepted.
+         */
+        private long offset;
+
+        /**
+         * Number of reports accepted up to {@link #offset}.
+         */
+        private long reports;
+
+        /**
+         * Number of bytes of reports accepted up to {@link #offset}.
+         */
+        private long bytes;
+
+        /**
+         * Initializes a new instance of the class.
+         *
+         * @param offset Offset the upload starts from.
+         */
+        private Progress(final long offset) {
+            this.offset = offset;
+        }
+
+        /**
+         * Records a batch accepted by the Agent, moving the offset past the batches accepted in a row.
+         *
+         * @param sequence Sequence number of the batch.
+         * @param end      Offset in the file after the last report of the batch.
+         * @param count    Number of reports in the batch.
+         * @param size     Size in bytes of the reports in the batch.
+         */
+        private synchronized void acknowledge(final long sequence, final long end, final long count,
+                                              final long size) {
+            this.ahead.put(sequence, new long[]{end, count, size});
+            for (long[] batch = this.ahead.remove(this.next); batch != null; batch = this.ahead.remove(this.next)) {
+                this.offset = batch[0];
+                this.reports += batch[1];
+                this.bytes += batch[2];
+                this.next++;
+            }
+        }
+
+        /**
+         * Summarizes the upload.
+         *
+         * @param batches Number of batches that were read from the file.
+         * @return Outcome of the upload.
+         */
+        private synchronized Result toResult(final long batches) {
+            return new Result(this.offset, this.reports, this.bytes, !this.failed.get() && this.next > batches);
+        }
+    }
+
+    /**
+     * Outcome of an upload.
+     */
+    public static final class Result {
+
+        /**
+         * Offset in the file up to which all the reports were accepted, where a later upload resumes.
+         */
+        private final long offset;
+
+        /**
+         * Number of reports accepted.
+         */
+        private final long reports;
+
+        /**
+         * Size in bytes of the reports accepted.
+         */
+        private final long bytes;
+
+        /**
+         * True if all the reports in the file were accepted.
+         */
+        private final boolean complete;
+
+        /**
+         * Initializes a new instance of the class.
+         *
+         * @param offset   Offset in the file up to which all the reports were accepted.
+         * @param reports  Number of reports accepted.
+         * @param bytes    Size in bytes of the reports accepted.
+         * @param complete True if all the reports in the file were accepted.
+         */
+        private Result(final long offset, final long reports, final long bytes, final boolean complete) {
+            this.offset = offset;
+            this.reports = reports;
+            this.bytes = bytes;
+            this.complete = complete;
+        }
+
+        /**
+         * Getter for {@link #offset} field.
+         *
+         * @return value of {@link #offset} field
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Getter for {@link #reports} field.
+         *
+         * @return value of {@link #reports} field
+         */
+        public long getReports() {
+            return reports;
+        }
+
+        /**
+         * Getter for {@link #bytes} field.
+         *
+         * @return value of {@link #bytes} field
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Getter for {@link #complete} field.
+         *
+         * @return value of {@link #complete} field
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+}
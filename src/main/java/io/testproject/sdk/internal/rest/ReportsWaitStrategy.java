@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.helpers.EnvironmentHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+
+/**
+ * Strategies the reports queue uses to wait for reports while it is empty, see {@link ReportsRingBuffer}.
+ */
+public enum ReportsWaitStrategy {
+
+    /**
+     * Sleep until a submitting thread signals a new report. Submitting threads take a lock only while
+     * the queue is waiting, and an idle queue uses no CPU.
+     */
+    BLOCK("block"),
+
+    /**
+     * Check for reports, parking the thread for increasing periods of up to a millisecond in between.
+     * Submitting threads never take a lock, at the cost of some CPU while the queue is idle.
+     */
+    PARK("park"),
+
+    /**
+     * Check for reports continuously, yielding the processor in between.
+     * Lowest latency, at the cost of a busy processor while the queue is idle.
+     */
+    YIELD("yield");
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ReportsWaitStrategy.class);
+
+    /**
+     * Constant for environment variable name that may store the wait strategy: block (default), park or yield.
+     */
+    public static final String TP_WAIT_STRATEGY_VARIABLE_NAME = "TP_REPORTS_QUEUE_WAIT_STRATEGY";
+
+    /**
+     * Name of the strategy in {@value #TP_WAIT_STRATEGY_VARIABLE_NAME}.
+     */
+    private final String token;
+
+    /**
+     * Initializes a new instance of the enum.
+     *
+     * @param token Name of the strategy in {@value #TP_WAIT_STRATEGY_VARIABLE_NAME}.
+     */
+    ReportsWaitStrategy(final String token) {
+        this.token = token;
+    }
+
+    /**
+     * Getter for {@link #token} field.
+     *
+     * @return value of {@link #token} field
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Reads the wait strategy from {@value #TP_WAIT_STRATEGY_VARIABLE_NAME}.
+     *
+     * @return Configured strategy, or {@link #BLOCK} if it is not set or unknown.
+     */
+    public static ReportsWaitStrategy get() {
+        String value = EnvironmentHelper.getString(TP_WAIT_STRATEGY_VARIABLE_NAME, BLOCK.token)
+                .toLowerCase(Locale.ROOT);
+        for (ReportsWaitStrategy strategy : values()) {
+            if (strategy.token.equals(value)) {
+                return strategy;
+            }
+        }
+
+        LOG.warn("Unknown value [{}] of environment variable {}, using: {}.",
+                value, TP_WAIT_STRATEGY_VARIABLE_NAME, BLOCK.token);
+        return BLOCK;
+    }
+}
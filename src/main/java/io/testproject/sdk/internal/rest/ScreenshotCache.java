@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.helpers.EnvironmentHelper;
+import io.testproject.sdk.internal.rest.messages.DriverCommandReport;
+import io.testproject.sdk.internal.rest.messages.StepReport;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per session cache of the screenshots that were already sent to the Agent, addressed by their content digest.
+ * <p>
+ * Every screenshot is reported with its digest. The first report of an image carries the image itself,
+ * later reports of the same image carry only the digest, which the Agent resolves to the image it received.
+ * The cache holds only digests, and remembers up to {@value #TP_CACHE_SIZE_VARIABLE_NAME} of the most recently
+ * reported images: an image that was evicted is simply sent again. So is an image whose report was dropped,
+ * stripped of its screenshot or not sent by the reports queue, since the Agent never received it.
+ * <p>
+ * Used only when the Agent advertises that it resolves screenshot digests, other Agents receive every
+ * screenshot inline as before.
+ */
+public final class ScreenshotCache {
+
+    /**
+     * Constant for environment variable name that may disable screenshots deduplication: auto (default) or none.
+     */
+    public static final String TP_DEDUPLICATION_VARIABLE_NAME = "TP_REPORTS_SCREENSHOT_DEDUPLICATION";
+
+    /**
+     * Constant for environment variable name that may store the number of screenshot digests to remember.
+     */
+    public static final String TP_CACHE_SIZE_VARIABLE_NAME = "TP_REPORTS_SCREENSHOT_CACHE_SIZE";
+
+    /**
+     * The default number of screenshot digests to remember.
+     */
+    private static final int CACHE_SIZE = 1024;
+
+    /**
+     * Value of {@value #TP_DEDUPLICATION_VARIABLE_NAME} that disables deduplication.
+     */
+    private static final String NONE = "none";
+
+    /**
+     * Digest algorithm.
+     */
+    private static final String ALGORITHM = "SHA-256";
+
+    /**
+     * Prefix identifying the digest algorithm in a screenshot digest.
+     */
+    private static final String PREFIX = "sha256:";
+
+    /**
+     * Hexadecimal digits.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Number of bits in a hexadecimal digit.
+     */
+    private static final int HEX_BITS = 4;
+
+    /**
+     * Mask of a hexadecimal digit.
+     */
+    private static final int HEX_MASK = 0xF;
+
+    /**
+     * Digests of the screenshots sent to the Agent, least recently reported first.
+     */
+    private final Map<String, Boolean> digests;
+
+    /**
+     * Initializes a new instance of the class.
+     *
+     * @param capacity Number of screenshot digests to remember.
+     */
+    public ScreenshotCache(final int capacity) {
+        this.digests = new LinkedHashMap<>(capacity, 1, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Creates the cache for a session, if the Agent resolves screenshot digests and deduplication
+     * was not disabled using {@value #TP_DEDUPLICATION_VARIABLE_NAME}.
+     *
+     * @param accepted True if the Agent advertised that it resolves screenshot digests.
+     * @return Cache to use, or null if screenshots should be sent inline.
+     */
+    public static ScreenshotCache negotiate(final boolean accepted) {
+        String preference = EnvironmentHelper.getString(TP_DEDUPLICATION_VARIABLE_NAME, "auto")
+                .toLowerCase(Locale.ROOT);
+        if (!accepted || preference.equals(NONE)) {
+            return null;
+        }
+
+        return new ScreenshotCache(Math.max(1, EnvironmentHelper.getInt(TP_CACHE_SIZE_VARIABLE_NAME, CACHE_SIZE)));
+    }
+
+    /**
+     * Sets the screenshot digest of a command report,
+     * omitting the screenshot itself if it was already sent to the Agent.
+     *
+     * @param report Report to deduplicate.
+     */
+    public void deduplicate(final DriverCommandReport report) {
+        if (report.getScreenshot() == null) {
+            return;
+        }
+
+        String digest = digest(report.getScreenshot());
+        report.setScreenshotDigest(digest);
+        if (!add(digest)) {
+            report.setScreenshot(null);
+        }
+    }
+
+    /**
+     * Sets the screenshot digest of a step report,
+     * omitting the screenshot itself if it was already sent to the Agent.
+     *
+     * @param report Report to deduplicate.
+     */
+    public void deduplicate(final StepReport report) {
+        if (report.getScreenshot() == null) {
+            return;
+        }
+
+        String digest = digest(report.getScreenshot());
+        report.setScreenshotDigest(digest);
+        if (!add(digest)) {
+            report.setScreenshot(null);
+        }
+    }
+
+    /**
+     * Remembers a screenshot digest.
+     *
+     * @param digest Screenshot digest.
+     * @return True if the screenshot is new, and should be sent, otherwise False.
+     */
+    private synchronized boolean add(final String digest) {
+        return this.digests.put(digest, Boolean.TRUE) == null;
+    }
+
+    /**
+     * Forgets a screenshot digest, once the report carrying the screenshot won't reach the Agent,
+     * so that the screenshot is sent again the next time it is reported.
+     *
+     * @param digest Screenshot digest.
+     */
+    synchronized void forget(final String digest) {
+        this.digests.remove(digest);
+    }
+
+    /**
+     * Calculates the digest of a screenshot.
+     * The base64 encoded image is hashed as is, it is not decoded first.
+     *
+     * @param screenshot Screenshot as base64 string.
+     * @return Digest in the form of sha256:hex.
+     */
+    public static String digest(final String screenshot) {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform implementation supports SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        byte[] hash = messageDigest.digest(screenshot.getBytes(StandardCharsets.UTF_8));
+        StringBuilder builder = new StringBuilder(PREFIX.length() + hash.length * 2).append(PREFIX);
+        for (byte b : hash) {
+            builder.append(HEX[(b >> HEX_BITS) & HEX_MASK]).append(HEX[b & HEX_MASK]);
+        }
+        return builder.toString();
+    }
+}
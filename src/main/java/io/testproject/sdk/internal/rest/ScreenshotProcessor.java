@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.helpers.EnvironmentHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shrinks the screenshots attached to reports on a pool of worker threads,
+ * so that the test thread only pays for taking the screenshot.
+ * <p>
+ * Screenshots are decoded, downscaled to fit {@value #TP_MAX_DIMENSION_VARIABLE_NAME} pixels
+ * and encoded again using the format set in {@value #TP_FORMAT_VARIABLE_NAME}.
+ * A screenshot that can't be decoded, or that would not get any smaller, is reported as taken.
+ * When the workers are all busy and {@value #PENDING_PER_WORKER} screenshots per worker are waiting,
+ * the reporting thread shrinks the screenshot itself instead of piling up more full size images in memory.
+ */
+public final class ScreenshotProcessor {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ScreenshotProcessor.class);
+
+    /**
+     * Constant for environment variable name that may store the format screenshots are encoded in:
+     * png (default, screenshots are kept in the format they were taken in) or jpeg.
+     */
+    public static final String TP_FORMAT_VARIABLE_NAME = "TP_SCREENSHOT_FORMAT";
+
+    /**
+     * Constant for environment variable name that may store the maximum width and height of screenshots in pixels.
+     */
+    public static final String TP_MAX_DIMENSION_VARIABLE_NAME = "TP_SCREENSHOT_MAX_DIMENSION";
+
+    /**
+     * Constant for environment variable name that may store the JPEG quality of screenshots, from 1 to 100.
+     */
+    public static final String TP_JPEG_QUALITY_VARIABLE_NAME = "TP_SCREENSHOT_JPEG_QUALITY";
+
+    /**
+     * Constant for environment variable name that may store the number of threads processing screenshots.
+     */
+    public static final String TP_WORKERS_VARIABLE_NAME = "TP_SCREENSHOT_WORKERS";
+
+    /**
+     * Format of screenshots taken by the drivers.
+     */
+    public static final String PNG = "png";
+
+    /**
+     * Lossy format that shrinks screenshots the most.
+     */
+    public static final String JPEG = "jpeg";
+
+    /**
+     * The default maximum width and height: screenshots are not downscaled.
+     */
+    private static final int MAX_DIMENSION = 0;
+
+    /**
+     * The default JPEG quality.
+     */
+    private static final int JPEG_QUALITY = 80;
+
+    /**
+     * Highest JPEG quality.
+     */
+    private static final int MAX_JPEG_QUALITY = 100;
+
+    /**
+     * Number of screenshots per worker that may wait to be processed.
+     */
+    private static final int PENDING_PER_WORKER = 4;
+
+    /**
+     * Workers are released after being idle for a minute.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * Counter used to name the worker threads.
+     */
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    /**
+     * Maximum width and height of screenshots in pixels, 0 to keep their original size.
+     */
+    private final int maxDimension;
+
+    /**
+     * True to encode screenshots as JPEG, False to encode them as PNG.
+     */
+    private final boolean jpeg;
+
+    /**
+     * JPEG quality, from 0 to 1.
+     */
+    private final float quality;
+
+    /**
+     * Worker threads processing the screenshots.
+     */
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * Initializes a new instance of the class.
+     *
+     * @param maxDimension Maximum width and height of screenshots in pixels, 0 to keep their original size.
+     * @param format       Format to encode screenshots in, {@link #PNG} or {@link #JPEG}.
+     * @param quality      JPEG quality, from 1 to 100.
+     * @param threads      Number of worker threads.
+     */
+    public ScreenshotProcessor(final int maxDimension, final String format, final int quality, final int threads) {
+        this.maxDimension = Math.max(0, maxDimension);
+        this.jpeg = JPEG.equals(format);
+        this.quality = (float) Math.min(MAX_JPEG_QUALITY, Math.max(1, quality)) / MAX_JPEG_QUALITY;
+        this.workers = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * PENDING_PER_WORKER), runnable -> {
+                    Thread thread = new Thread(runnable, "screenshot-processor-" + THREADS.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Creates a processor using the values set in the environment variables.
+     *
+     * @return Screenshot processor, or null if screenshots should be reported as taken.
+     */
+    public static ScreenshotProcessor create() {
+        String format = EnvironmentHelper.getString(TP_FORMAT_VARIABLE_NAME, PNG).toLowerCase(Locale.ROOT);
+        if (format.equals("jpg")) {
+            format = JPEG;
+        } else if (!format.equals(JPEG) && !format.equals(PNG)) {
+            LOG.warn("Unknown value [{}] of environment variable {}, using: {}.",
+                    format, TP_FORMAT_VARIABLE_NAME, PNG);
+            format = PNG;
+        }
+
+        int maxDimension = EnvironmentHelper.getInt(TP_MAX_DIMENSION_VARIABLE_NAME, MAX_DIMENSION);
+        if (format.equals(PNG) && maxDimension <= 0) {
+            return null;
+        }
+
+        int threads = Math.max(1, EnvironmentHelper.getInt(TP_WORKERS_VARIABLE_NAME,
+                Runtime.getRuntime().availableProcessors() / 2));
+        LOG.trace("Screenshots will be encoded as {} and downscaled to {} pixels using {} threads",
+                format, maxDimension, threads);
+        return new ScreenshotProcessor(maxDimension, format,
+                EnvironmentHelper.getInt(TP_JPEG_QUALITY_VARIABLE_NAME, JPEG_QUALITY), threads);
+    }
+
+    /**
+     * Processes a screenshot on a worker thread.
+     *
+     * @param screenshot Screenshot as base64 string.
+     * @return Future completed with the processed screenshot.
+     */
+    public CompletableFuture<String> processAsync(final String screenshot) {
+        if (this.workers.isShutdown()) {
+            return CompletableFuture.completedFuture(screenshot);
+        }
+
+        return CompletableFuture.supplyAsync(() -> process(screenshot), this.workers);
+    }
+
+    /**
+     * Processes a screenshot on the calling thread.
+     *
+     * @param screenshot Screenshot as base64 string.
+     * @return Processed screenshot as base64 string, or the original one if it can't be made smaller.
+     */
+    public String process(final String screenshot) {
+        try {
+            byte[] original = Base64.getMimeDecoder().decode(screenshot);
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(original));
+            if (image == null) {
+                LOG.debug("Screenshot format is not supported, reporting it as taken.");
+                return screenshot;
+            }
+
+            double scale = this.maxDimension > 0
+                    ? Math.min(1, (double) this.maxDimension / Math.max(image.getWidth(), image.getHeight())) : 1;
+            if (scale == 1 && !this.jpeg) {
+                return screenshot;
+            }
+
+            byte[] processed = encode(scale(image, scale));
+            return processed.length < original.length ? Base64.getEncoder().encodeToString(processed) : screenshot;
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Failed to process a screenshot, reporting it as taken.", e);
+            return screenshot;
+        }
+    }
+
+    /**
+     * Stops the worker threads once the pending screenshots are processed.
+     */
+    public void close() {
+        this.workers.shutdown();
+    }
+
+    /**
+     * Downscales an image, dropping its transparency when encoding to JPEG.
+     *
+     * @param image Decoded image.
+     * @param scale Scale factor, at most 1.
+     * @return Downscaled image.
+     */
+    private BufferedImage scale(final BufferedImage image, final double scale) {
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        boolean alpha = !this.jpeg && image.getColorModel().hasAlpha();
+        BufferedImage scaled = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, alpha ? null : Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    /**
+     * Encodes an image in the configured format.
+     *
+     * @param image Image to encode.
+     * @return Encoded image.
+     * @throws IOException if encoding fails.
+     */
+    private byte[] encode(final BufferedImage image) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (!this.jpeg) {
+            ImageIO.write(image, PNG, output);
+            return output.toByteArray();
+        }
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(JPEG);
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG encoder is available");
+        }
+
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(output)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(this.quality);
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+}
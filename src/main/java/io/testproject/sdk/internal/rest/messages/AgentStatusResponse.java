@@ -20,6 +20,8 @@
 
 package io.testproject.sdk.internal.rest.messages;
 
+import java.util.List;
+
 public class AgentStatusResponse {
 
     /**
@@ -27,6 +29,16 @@ public class AgentStatusResponse {
      */
     private String tag;
 
+    /**
+     * Content encodings that the Agent accepts for report requests (e.g. gzip, deflate).
+     */
+    private List<String> acceptedContentEncodings;
+
+    /**
+     * True if the Agent resolves screenshots referenced by their digest in reports.
+     */
+    private Boolean acceptsScreenshotDigests;
+
     /**
      * Getter for {@link #tag} field.
      *
@@ -35,4 +47,22 @@ public class AgentStatusResponse {
     public String getTag() {
         return tag;
     }
+
+    /**
+     * Getter for {@link #acceptedContentEncodings} field.
+     *
+     * @return value of {@link #acceptedContentEncodings} field
+     */
+    public List<String> getAcceptedContentEncodings() {
+        return acceptedContentEncodings;
+    }
+
+    /**
+     * Getter for {@link #acceptsScreenshotDigests} field.
+     *
+     * @return value of {@link #acceptsScreenshotDigests} field, null if the Agent did not advertise it
+     */
+    public Boolean getAcceptsScreenshotDigests() {
+        return acceptsScreenshotDigests;
+    }
 }
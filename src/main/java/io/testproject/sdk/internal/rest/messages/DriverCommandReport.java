@@ -48,6 +48,27 @@ public final class DriverCommandReport extends Report {
      */
     private String screenshot;
 
+    /**
+     * Digest of the screenshot, set when the Agent resolves screenshots by digest.
+     * The screenshot itself is omitted when the Agent already received it.
+     */
+    private String screenshotDigest;
+
+    /**
+     * Number of identical consecutive executions the report stands for, set only when it stands for several.
+     */
+    private Integer repeatCount;
+
+    /**
+     * Time of the first of the identical executions, in milliseconds since the epoch.
+     */
+    private Long firstTimestamp;
+
+    /**
+     * Time of the last of the identical executions, in milliseconds since the epoch.
+     */
+    private Long lastTimestamp;
+
     /**
      * Define type as Command for batch report support.
      */
@@ -70,6 +91,63 @@ public final class DriverCommandReport extends Report {
         this.screenshot = screenshot;
     }
 
+    /**
+     * Getter for {@link #screenshotDigest} field.
+     *
+     * @return value of {@link #screenshotDigest} field
+     */
+    public String getScreenshotDigest() {
+        return screenshotDigest;
+    }
+
+    /**
+     * Setter for {@link #screenshotDigest} field.
+     * @param screenshotDigest Digest of the screenshot.
+     */
+    public void setScreenshotDigest(final String screenshotDigest) {
+        this.screenshotDigest = screenshotDigest;
+    }
+
+    /**
+     * Getter for {@link #repeatCount} field.
+     *
+     * @return value of {@link #repeatCount} field, null if the report stands for a single execution
+     */
+    public Integer getRepeatCount() {
+        return repeatCount;
+    }
+
+    /**
+     * Getter for {@link #firstTimestamp} field.
+     *
+     * @return value of {@link #firstTimestamp} field
+     */
+    public Long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    /**
+     * Getter for {@link #lastTimestamp} field.
+     *
+     * @return value of {@link #lastTimestamp} field
+     */
+    public Long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Marks the report as standing for identical consecutive executions of the command.
+     *
+     * @param repeatCount    Number of executions.
+     * @param firstTimestamp Time of the first execution, in milliseconds since the epoch.
+     * @param lastTimestamp  Time of the last execution, in milliseconds since the epoch.
+     */
+    public void setRepeats(final int repeatCount, final long firstTimestamp, final long lastTimestamp) {
+        this.repeatCount = repeatCount;
+        this.firstTimestamp = firstTimestamp;
+        this.lastTimestamp = lastTimestamp;
+    }
+
     /**
      * Creates a new instance using provided commandName, result and boolean success/failure flag.
      *
@@ -75,6 +75,16 @@ public class SessionResponse {
      */
     private List<String> warnings;
 
+    /**
+     * Content encodings that the Agent accepts for report requests (e.g. gzip, deflate).
+     */
+    private List<String> acceptedContentEncodings;
+
+    /**
+     * True if the Agent resolves screenshots referenced by their digest in reports.
+     */
+    private Boolean acceptsScreenshotDigests;
+
     /**
      * Getter for {@link #devSocketPort} field.
      *
@@ -164,4 +174,22 @@ public class SessionResponse {
     public List<String> getWarnings() {
         return warnings;
     }
+
+    /**
+     * Getter for {@link #acceptedContentEncodings} field.
+     *
+     * @return value of {@link #acceptedContentEncodings} field
+     */
+    public List<String> getAcceptedContentEncodings() {
+        return acceptedContentEncodings;
+    }
+
+    /**
+     * Getter for {@link #acceptsScreenshotDigests} field.
+     *
+     * @return value of {@link #acceptsScreenshotDigests} field, null if the Agent did not advertise it
+     */
+    public Boolean getAcceptsScreenshotDigests() {
+        return acceptsScreenshotDigests;
+    }
 }
@@ -43,7 +43,13 @@ public final class StepReport extends Report {
     /**
      * Step Screenshot.
      */
-    private final String screenshot;
+    private String screenshot;
+
+    /**
+     * Digest of the screenshot, set when the Agent resolves screenshots by digest.
+     * The screenshot itself is omitted when the Agent already received it.
+     */
+    private String screenshotDigest;
 
     /**
      * Flag to indicate pass/fail state.
@@ -92,6 +98,31 @@ public final class StepReport extends Report {
         return screenshot;
     }
 
+    /**
+     * Setter for {@link #screenshot} field.
+     * @param screenshot Screenshot (PNG as base64 string)
+     */
+    public void setScreenshot(final String screenshot) {
+        this.screenshot = screenshot;
+    }
+
+    /**
+     * Getter for {@link #screenshotDigest} field.
+     *
+     * @return value of {@link #screenshotDigest} field
+     */
+    public String getScreenshotDigest() {
+        return screenshotDigest;
+    }
+
+    /**
+     * Setter for {@link #screenshotDigest} field.
+     * @param screenshotDigest Digest of the screenshot.
+     */
+    public void setScreenshotDigest(final String screenshotDigest) {
+        this.screenshotDigest = screenshotDigest;
+    }
+
     /**
      * Getter for {@link #passed} field.
      *
@@ -64,7 +64,7 @@ public final class SocketManager {
     private static final int SOCKET_VALIDATION_TIMEOUT = 30000;
 
     /**
-     * Private constructor to prevent creating more than one instance.
+     * Private constructor, instances are obtained using {@link #getInstance()} or {@link #create()}.
      */
     private SocketManager() {
     }
@@ -74,7 +74,7 @@ public final class SocketManager {
      *
      * @return SocketManager instance.
      */
-    public static SocketManager getInstance() {
+    public static synchronized SocketManager getInstance() {
         if (instance == null) {
             instance = new SocketManager();
         }
@@ -82,10 +82,19 @@ public final class SocketManager {
         return instance;
     }
 
+    /**
+     * Creates an instance managing a socket of its own, for a single session among several running in parallel.
+     *
+     * @return New SocketManager instance.
+     */
+    public static SocketManager create() {
+        return new SocketManager();
+    }
+
     /**
      * Closes the TCP socket connection to the Agent.
      */
-    public void closeSocket() {
+    public synchronized void closeSocket() {
         if (isOpen()) {
             LOG.debug("Disconnecting TCP development socket...");
             try {
@@ -107,7 +116,7 @@ public final class SocketManager {
      * @param uuid Uuid sent by the Agent to verify connection.
      * @throws AgentConnectException When connection fails.
      */
-    public void openSocket(final String host, final int port, final String uuid)
+    public synchronized void openSocket(final String host, final int port, final String uuid)
             throws AgentConnectException {
         if (socket != null && socket.isConnected()) {
             LOG.debug("Development socket is already connected.");
@@ -160,7 +169,7 @@ public final class SocketManager {
      * Checks whether the socket is open or closed.
      * @return True if open, otherwise False.
      */
-    public boolean isOpen() {
+    public synchronized boolean isOpen() {
         return socket != null && socket.isConnected();
     }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.internal.rest;
+
+import io.testproject.sdk.internal.rest.messages.Report;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import java.net.URL;
+
+/**
+ * Gives the tests access to the reports queues, that are otherwise created and fed only by the {@link AgentClient}.
+ */
+public final class ReportsQueues {
+
+    /**
+     * Utility class, not to be instantiated.
+     */
+    private ReportsQueues() {
+    }
+
+    /**
+     * Creates a reports queue that sends reports in batches.
+     *
+     * @param httpClient      HTTP client to use for communicating with the Agent.
+     * @param sessionId       Driver session ID.
+     * @param remoteAddress   Reports remote address.
+     * @param requestConfig   Configuration to apply to report requests, may be null.
+     * @param contentEncoding Content encoding accepted by the Agent, may be null to send reports uncompressed.
+     * @param journal         Journal to spill reports to, may be null to keep all reports in memory.
+     * @return Reports queue, that is not running yet.
+     */
+    public static ReportsQueueBatch batch(final CloseableHttpClient httpClient, final String sessionId,
+                                          final URL remoteAddress, final RequestConfig requestConfig,
+                                          final ContentEncoding contentEncoding, final ReportsJournal journal) {
+        return new ReportsQueueBatch(httpClient, sessionId, remoteAddress, requestConfig, contentEncoding, journal);
+    }
+
+    /**
+     * Adds a report to a queue.
+     *
+     * @param queue   Reports queue.
+     * @param uri     Agent endpoint that accepts this report when it is sent on its own.
+     * @param payload Report serialized to UTF-8 encoded JSON.
+     */
+    public static void submit(final ReportsQueue queue, final String uri, final byte[] payload) {
+        queue.submit(uri, payload, null);
+    }
+
+    /**
+     * Adds a report to a queue.
+     *
+     * @param queue   Reports queue.
+     * @param uri     Agent endpoint that accepts this report when it is sent on its own.
+     * @param payload Report serialized to UTF-8 encoded JSON.
+     * @param report  Report that was serialized.
+     */
+    public static void submit(final ReportsQueue queue, final String uri, final byte[] payload,
+                              final Report report) {
+        queue.submit(uri, payload, report);
+    }
+
+    /**
+     * Sets the cache of the screenshots sent to the Agent, as the {@link AgentClient} does when it negotiated one.
+     *
+     * @param queue Reports queue.
+     * @param cache Cache of the screenshots sent to the Agent.
+     */
+    public static void setScreenshotCache(final ReportsQueue queue, final ScreenshotCache cache) {
+        queue.setScreenshotCache(cache);
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.tests.ci.internal.helpers;
+
+import io.testproject.sdk.internal.helpers.CallStack;
+import io.testproject.sdk.internal.reporting.inferrers.GenericInferrer;
+import io.testproject.sdk.internal.reporting.inferrers.InferrerFactory;
+import io.testproject.sdk.internal.reporting.inferrers.JUnitInferrer;
+import io.testproject.sdk.internal.reporting.inferrers.TestNGInferrer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.runner.JUnitCore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.TestNG;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Call stack walked to infer the running test")
+class CallStackTest {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(CallStackTest.class);
+
+    /**
+     * Number of frames between the thread start and the caller, like the frames of a test framework.
+     */
+    private static final int RUNNER_DEPTH = 80;
+
+    /**
+     * Number of frames between the thread start and the driver command in a plain main method.
+     */
+    private static final int MAIN_DEPTH = 5;
+
+    /**
+     * Number of commands executed by the benchmark before it is measured.
+     */
+    private static final int WARM_UP_COUNT = 20 * 1000;
+
+    /**
+     * Number of commands measured by the benchmark, for every caller.
+     */
+    private static final int BENCHMARK_COUNT = 200 * 1000;
+
+    /**
+     * Number of garbage collections to wait for a class loader to be collected.
+     */
+    private static final int GC_ATTEMPTS = 20;
+
+    /**
+     * Time to wait between garbage collections.
+     */
+    private static final long GC_PAUSE_MS = 50;
+
+    /**
+     * Class name searched for by driver commands, to tell whether they are executed by a FluentWait.
+     */
+    private static final String FLUENT_WAIT = "org.openqa.selenium.support.ui.FluentWait";
+
+    /**
+     * Action run by the test methods of the callers, nothing when they are run by a test framework.
+     */
+    private static final ThreadLocal<Runnable> CALLEE = ThreadLocal.withInitial(() -> () -> { });
+
+    @Test
+    @DisplayName("Test names are inferred from the annotations of the calling test")
+    void testTestNames() throws Exception {
+        assertEquals("Test names are inferred from the annotations of the calling test",
+                new JUnitInferrer(CallStack.capture()).inferTestName());
+        assertEquals("junit4", callFrom(new JUnit4Caller()::junit4,
+                () -> new JUnitInferrer(CallStack.capture()).inferTestName()));
+        assertEquals("name - description", callFrom(new TestNGCaller()::testng,
+                () -> new TestNGInferrer(CallStack.capture()).inferTestName()));
+
+        // Without a test framework, the method the thread started with is used
+        assertEquals("run", runDeep(RUNNER_DEPTH, () -> new GenericInferrer(CallStack.capture()).inferTestName()));
+    }
+
+    @Test
+    @DisplayName("Searches stop at the first matching frame, on the thread that captured the stack")
+    void testShortCircuit() throws Exception {
+        AtomicInteger walked = new AtomicInteger();
+        CallStack deep = runDeep(RUNNER_DEPTH, () -> {
+            CallStack captured = CallStack.capture();
+            // The frames are walked from the one of the method that captured the stack
+            assertTrue(captured.anyMatch(frame -> {
+                walked.incrementAndGet();
+                return frame.getMethodName().equals("deep");
+            }));
+            assertEquals("run", captured.getOutermost().getMethodName());
+            return captured;
+        });
+        // Only the frames of the capturing lambda and of its caller were walked
+        assertEquals(2, walked.get());
+        assertThrows(IllegalStateException.class, deep::getOutermost);
+    }
+
+    @Test
+    @DisplayName("Classes of the calling tests are unloaded with their class loader")
+    void testUnloading() throws Exception {
+        WeakReference<ClassLoader> loader = callFromClassLoader();
+        for (int i = 0; i < GC_ATTEMPTS && loader.get() != null; i++) {
+            System.gc();
+            Thread.sleep(GC_PAUSE_MS);
+        }
+        assertNull(loader.get(), "The class loader of the calling test was not collected");
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "TP_BENCHMARKS", matches = "true")
+    @DisplayName("Benchmark test inference per driver command, for every kind of caller")
+    void benchmarkCallers() throws Exception {
+        benchmark("JUnit 5", CallStackTest::measureCommand);
+        benchmark("JUnit 4", () -> callFrom(() -> JUnitCore.runClasses(JUnit4Caller.class),
+                CallStackTest::measureCommand));
+        benchmark("TestNG", () -> callFrom(() -> {
+            TestNG testNG = new TestNG(false);
+            testNG.setTestClasses(new Class[] {TestNGCaller.class});
+            testNG.run();
+        }, CallStackTest::measureCommand));
+        benchmark("main", () -> runDeep(MAIN_DEPTH, CallStackTest::measureCommand));
+    }
+
+    /**
+     * Logs the time a caller spends per driver command to infer the test.
+     *
+     * @param caller      Name of the caller.
+     * @param measurement Action measuring the caller.
+     * @throws Exception if the measurement failed.
+     */
+    private static void benchmark(final String caller, final Callable<long[]> measurement) throws Exception {
+        long[] nanos = measurement.call();
+        LOG.info("{}: {} ns per command, {} ns materializing the stack trace as before", caller, nanos[0], nanos[1]);
+    }
+
+    /**
+     * Measures what a driver command does to infer the test, and materializing the stack trace at the same depth.
+     *
+     * @return Time per command, and time per stack trace, in nanoseconds.
+     */
+    private static long[] measureCommand() {
+        long command = measure(() -> {
+            CallStack stack = CallStack.capture(InferrerFactory::isFramework);
+            return InferrerFactory.getInferrer(stack).inferTestName() != null
+                    && !Boolean.TRUE.equals(stack.find(frame -> frame.getClassName().equals(FLUENT_WAIT)
+                    ? Boolean.TRUE : InferrerFactory.isFramework(frame) ? Boolean.FALSE : null));
+        });
+        long legacy = measure(() -> Arrays.stream(Thread.currentThread().getStackTrace())
+                .anyMatch(t -> t.getClassName().equals(FLUENT_WAIT)));
+        return new long[] {command, legacy};
+    }
+
+    /**
+     * Measures an action after warming it up.
+     *
+     * @param action Action to measure.
+     * @return Time per execution in nanoseconds.
+     */
+    private static long measure(final BooleanSupplier action) {
+        for (int i = 0; i < WARM_UP_COUNT; i++) {
+            action.getAsBoolean();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_COUNT; i++) {
+            action.getAsBoolean();
+        }
+        return (System.nanoTime() - start) / BENCHMARK_COUNT;
+    }
+
+    /**
+     * Runs an action from the test method of a caller.
+     *
+     * @param caller Action running the test method of the caller.
+     * @param action Action to run.
+     * @param <T>    Type of the result.
+     * @return Result of the action.
+     */
+    private static <T> T callFrom(final Runnable caller, final Supplier<T> action) {
+        AtomicReference<T> result = new AtomicReference<>();
+        CALLEE.set(() -> result.set(action.get()));
+        try {
+            caller.run();
+        } finally {
+            CALLEE.remove();
+        }
+        return result.get();
+    }
+
+    /**
+     * Infers the test name from a caller defined by a class loader of its own.
+     *
+     * @return Reference to the class loader of the caller.
+     * @throws Exception if the caller failed to be loaded.
+     */
+    @SuppressWarnings("unchecked")
+    private static WeakReference<ClassLoader> callFromClassLoader() throws Exception {
+        ClassLoader loader = new CallerClassLoader();
+        Supplier<String> caller = (Supplier<String>) loader.loadClass(UnloadableCaller.class.getName())
+                .getDeclaredConstructor().newInstance();
+        assertEquals("unloadable", caller.get());
+        return new WeakReference<>(loader);
+    }
+
+    /**
+     * Runs an action on a new thread, below a number of frames.
+     *
+     * @param depth  Number of frames to add.
+     * @param action Action to run.
+     * @param <T>    Type of the result.
+     * @return Result of the action, or null if it failed.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    private static <T> T runDeep(final int depth, final Supplier<T> action) throws InterruptedException {
+        AtomicReference<T> result = new AtomicReference<>();
+        Thread thread = new Thread(() -> result.set(deep(depth, action)));
+        thread.start();
+        thread.join();
+        return result.get();
+    }
+
+    /**
+     * Runs an action below a number of frames.
+     *
+     * @param depth  Number of frames to add.
+     * @param action Action to run.
+     * @param <T>    Type of the result.
+     * @return Result of the action.
+     */
+    private static <T> T deep(final int depth, final Supplier<T> action) {
+        return depth == 0 ? action.get() : deep(depth - 1, action);
+    }
+
+    /**
+     * Caller running in a JUnit 4 test.
+     */
+    public static final class JUnit4Caller {
+
+        /**
+         * Runs the action of the calling test.
+         */
+        @org.junit.Test
+        public void junit4() {
+            CALLEE.get().run();
+        }
+    }
+
+    /**
+     * Caller running in a TestNG test.
+     */
+    public static final class TestNGCaller {
+
+        /**
+         * Runs the action of the calling test.
+         */
+        @org.testng.annotations.Test(testName = "name", description = "description")
+        public void testng() {
+            CALLEE.get().run();
+        }
+    }
+
+    /**
+     * Caller inferring its own test name, loaded by {@link CallerClassLoader}.
+     */
+    public static final class UnloadableCaller implements Supplier<String> {
+
+        /**
+         * Infers the name of this test, never run by a test framework as it returns a value.
+         *
+         * @return Inferred test name.
+         */
+        @Test
+        @DisplayName("unloadable")
+        @Override
+        public String get() {
+            return new JUnitInferrer(CallStack.capture()).inferTestName();
+        }
+    }
+
+    /**
+     * Class loader defining {@link UnloadableCaller} itself, and delegating any other class.
+     */
+    private static final class CallerClassLoader extends ClassLoader {
+
+        /**
+         * Initializes a new class loader delegating to the one of the tests.
+         */
+        CallerClassLoader() {
+            super(CallStackTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(UnloadableCaller.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    try (InputStream stream = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                        byte[] bytes = stream.readAllBytes();
+                        loaded = defineClass(name, bytes, 0, bytes.length);
+                    } catch (IOException e) {
+                        throw new ClassNotFoundException(name, e);
+                    }
+                }
+                return loaded;
+            }
+        }
+    }
+}
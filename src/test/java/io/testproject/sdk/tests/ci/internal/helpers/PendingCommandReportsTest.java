@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.tests.ci.internal.helpers;
+
+import io.testproject.sdk.internal.helpers.PendingCommandReports;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Command reports prepared in the background")
+class PendingCommandReportsTest {
+
+    /**
+     * Time it takes to prepare a report.
+     */
+    private static final long PREPARE_MS = 50;
+
+    /**
+     * Maximum time handing a report over may take.
+     */
+    private static final long HANDOVER_MS = 100;
+
+    /**
+     * Number of commands reported in the ordering test.
+     */
+    private static final int COMMANDS_COUNT = 5;
+
+    @Test
+    @DisplayName("Background reporting is disabled by default")
+    void testDisabled() {
+        assertNull(PendingCommandReports.create());
+    }
+
+    @Test
+    @DisplayName("Commands don't wait for their reports, other reports wait for the reports made before them")
+    void testOrdering() {
+        PendingCommandReports reports = create();
+        List<String> submitted = new CopyOnWriteArrayList<>();
+        Thread caller = Thread.currentThread();
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < COMMANDS_COUNT; i++) {
+                String name = "command-" + i;
+                reports.submit(() -> {
+                    sleep(PREPARE_MS);
+                    // Reports made while preparing a report, such as the test report, don't wait for themselves
+                    reports.await();
+                    assertNotEquals(caller, Thread.currentThread());
+                    submitted.add(name);
+                });
+            }
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < HANDOVER_MS);
+
+            // A step waits for the commands reported before it
+            reports.await();
+            submitted.add("step");
+            assertEquals(List.of("command-0", "command-1", "command-2", "command-3", "command-4", "step"),
+                    submitted);
+        } finally {
+            reports.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Commands prepare their reports themselves, in order, once too many reports are pending")
+    void testMaxPending() {
+        PendingCommandReports reports = create(1);
+        List<String> submitted = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        Thread caller = Thread.currentThread();
+        try {
+            for (int i = 0; i < COMMANDS_COUNT; i++) {
+                String name = "command-" + i;
+                reports.submit(() -> {
+                    sleep(PREPARE_MS);
+                    threads.add(Thread.currentThread());
+                    submitted.add(name);
+                });
+            }
+            assertTrue(threads.contains(caller), "All reports were prepared in the background");
+        } finally {
+            reports.close();
+        }
+        assertEquals(List.of("command-0", "command-1", "command-2", "command-3", "command-4"), submitted);
+    }
+
+    @Test
+    @DisplayName("A failing report doesn't hold back the reports after it")
+    void testFailure() {
+        PendingCommandReports reports = create();
+        List<String> submitted = new CopyOnWriteArrayList<>();
+        try {
+            reports.submit(() -> {
+                throw new IllegalStateException("Failed to serialize");
+            });
+            reports.submit(() -> submitted.add("next"));
+        } finally {
+            reports.close();
+        }
+        assertEquals(List.of("next"), submitted);
+
+        // Reports made while the session closes are prepared right away
+        reports.submit(() -> submitted.add("closing"));
+        assertEquals(List.of("next", "closing"), submitted);
+    }
+
+    /**
+     * Creates pending command reports, enabled for the test.
+     *
+     * @return Pending command reports.
+     */
+    private static PendingCommandReports create() {
+        System.setProperty(PendingCommandReports.TP_ASYNC_COMMAND_REPORTS_VARIABLE_NAME, "true");
+        try {
+            return PendingCommandReports.create();
+        } finally {
+            System.clearProperty(PendingCommandReports.TP_ASYNC_COMMAND_REPORTS_VARIABLE_NAME);
+        }
+    }
+
+    /**
+     * Creates pending command reports, enabled for the test, with a limit on the pending reports.
+     *
+     * @param maxPending Maximum number of reports waiting to be prepared.
+     * @return Pending command reports.
+     */
+    private static PendingCommandReports create(final int maxPending) {
+        System.setProperty(PendingCommandReports.TP_ASYNC_COMMAND_REPORTS_MAX_PENDING_VARIABLE_NAME,
+                Integer.toString(maxPending));
+        try {
+            return create();
+        } finally {
+            System.clearProperty(PendingCommandReports.TP_ASYNC_COMMAND_REPORTS_MAX_PENDING_VARIABLE_NAME);
+        }
+    }
+
+    /**
+     * Sleeps, simulating a slow report.
+     *
+     * @param millis Time to sleep.
+     */
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.tests.ci.internal.helpers;
+
+import io.testproject.sdk.internal.helpers.PendingScreenshots;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Screenshots taken in the background")
+class PendingScreenshotsTest {
+
+    /**
+     * Time it takes to take a screenshot.
+     */
+    private static final long CAPTURE_MS = 300;
+
+    /**
+     * Maximum time requesting a screenshot may take.
+     */
+    private static final long REQUEST_MS = 100;
+
+    /**
+     * Number of commands executed in the ordering test.
+     */
+    private static final int COMMANDS_COUNT = 5;
+
+    /**
+     * Maximum time to wait for a screenshot.
+     */
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    @DisplayName("Requesting a screenshot doesn't wait for it to be taken")
+    void testNonBlocking() throws Exception {
+        PendingScreenshots screenshots = new PendingScreenshots();
+        try {
+            long start = System.nanoTime();
+            CompletableFuture<String> screenshot = screenshots.capture(() -> {
+                sleep(CAPTURE_MS);
+                return "image";
+            });
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < REQUEST_MS);
+            assertFalse(screenshot.isDone());
+
+            screenshots.await();
+            assertTrue(screenshot.isDone());
+            assertEquals("image", screenshot.get());
+        } finally {
+            screenshots.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Screenshots show the state before the next command")
+    void testOrdering() throws Exception {
+        PendingScreenshots screenshots = new PendingScreenshots();
+        AtomicInteger state = new AtomicInteger();
+        List<CompletableFuture<String>> taken = new ArrayList<>();
+        try {
+            for (int i = 0; i < COMMANDS_COUNT; i++) {
+                taken.add(screenshots.capture(() -> {
+                    // Executing the screenshot command waits for nothing
+                    screenshots.await();
+                    sleep(CAPTURE_MS / COMMANDS_COUNT);
+                    return "state-" + state.get();
+                }));
+
+                // Next command
+                screenshots.await();
+                state.incrementAndGet();
+            }
+
+            for (int i = 0; i < COMMANDS_COUNT; i++) {
+                assertEquals("state-" + i, taken.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            }
+        } finally {
+            screenshots.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Reports get no screenshot when it fails to be taken")
+    void testFailure() throws Exception {
+        PendingScreenshots screenshots = new PendingScreenshots();
+        try {
+            CompletableFuture<String> screenshot = screenshots.capture(() -> {
+                throw new IllegalStateException("Session is gone");
+            });
+            assertNull(screenshot.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        } finally {
+            screenshots.close();
+        }
+
+        // Screenshots requested while quitting are taken right away
+        assertEquals("image", screenshots.capture(() -> "image").getNow(null));
+    }
+
+    /**
+     * Sleeps, simulating a slow driver.
+     *
+     * @param millis Time to sleep.
+     */
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.tests.ci.internal.helpers;
+
+import io.testproject.sdk.internal.helpers.SecureElements;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.Dialect;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.SessionId;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Secure elements remembered for redaction")
+class SecureElementsTest {
+
+    /**
+     * Session of the commands.
+     */
+    private static final SessionId SESSION = new SessionId("redaction-session");
+
+    @Test
+    @DisplayName("Elements are checked once, until they may have gone stale")
+    void testInvalidation() {
+        SecureElements elements = new SecureElements();
+        AtomicInteger checks = new AtomicInteger();
+        Predicate<String> check = id -> {
+            checks.incrementAndGet();
+            return id.equals("password");
+        };
+
+        assertTrue(elements.isSecure("password", check));
+        assertFalse(elements.isSecure("username", check));
+        assertTrue(elements.isSecure("password", check));
+        assertFalse(elements.isSecure("username", check));
+        assertEquals(2, checks.get());
+
+        // Typing into another element doesn't change anything
+        elements.update(command(DriverCommand.SEND_KEYS_TO_ELEMENT, Map.of("id", "username")), new Response());
+        assertTrue(elements.isSecure("password", check));
+        assertEquals(2, checks.get());
+
+        // The element went stale
+        Response stale = new Response();
+        stale.setStatus(ErrorCodes.STALE_ELEMENT_REFERENCE);
+        elements.update(command(DriverCommand.SEND_KEYS_TO_ELEMENT, Map.of("id", "password")), stale);
+        assertTrue(elements.isSecure("password", check));
+        assertFalse(elements.isSecure("username", check));
+        assertEquals(2 + 1, checks.get());
+
+        // The page changed
+        elements.update(command(DriverCommand.GET, Map.of("url", "https://example.com")), new Response());
+        assertTrue(elements.isSecure("password", check));
+        assertFalse(elements.isSecure("username", check));
+        assertEquals(2 + 1 + 2, checks.get());
+    }
+
+    @Test
+    @DisplayName("Elements found using safe locators are not checked")
+    void testSafeLocators() {
+        System.setProperty(SecureElements.TP_REDACTION_SAFE_LOCATORS_VARIABLE_NAME, "id=(search|query)");
+        SecureElements elements;
+        try {
+            elements = new SecureElements();
+        } finally {
+            System.clearProperty(SecureElements.TP_REDACTION_SAFE_LOCATORS_VARIABLE_NAME);
+        }
+
+        elements.update(command(DriverCommand.FIND_ELEMENT, Map.of("using", "id", "value", "search")),
+                found(Map.of(Dialect.W3C.getEncodedElementKey(), "search")));
+        elements.update(command(DriverCommand.FIND_ELEMENTS, Map.of("using", "id", "value", "query")),
+                found(List.of(Map.of(Dialect.OSS.getEncodedElementKey(), "query"))));
+        elements.update(command(DriverCommand.FIND_ELEMENT, Map.of("using", "id", "value", "password")),
+                found(Map.of(Dialect.W3C.getEncodedElementKey(), "password")));
+
+        AtomicInteger checks = new AtomicInteger();
+        Predicate<String> check = id -> {
+            checks.incrementAndGet();
+            return true;
+        };
+        assertFalse(elements.isSecure("search", check));
+        assertFalse(elements.isSecure("query", check));
+        assertTrue(elements.isSecure("password", check));
+        assertEquals(1, checks.get());
+    }
+
+    @Test
+    @DisplayName("All the typed values can be redacted without checking the elements")
+    void testRedactAll() {
+        System.setProperty(SecureElements.TP_REDACTION_POLICY_VARIABLE_NAME, SecureElements.POLICY_ALWAYS);
+        try {
+            assertTrue(new SecureElements().isSecure("username", id -> {
+                throw new IllegalStateException("Elements should not be checked");
+            }));
+        } finally {
+            System.clearProperty(SecureElements.TP_REDACTION_POLICY_VARIABLE_NAME);
+        }
+    }
+
+    /**
+     * Creates a command of the session.
+     *
+     * @param name       Name of the command.
+     * @param parameters Parameters of the command.
+     * @return Command.
+     */
+    private static Command command(final String name, final Map<String, ?> parameters) {
+        return new Command(SESSION, name, parameters);
+    }
+
+    /**
+     * Creates the response of a successful find command.
+     *
+     * @param value Element, or list of elements, found.
+     * @return Response.
+     */
+    private static Response found(final Object value) {
+        Response response = new Response(SESSION);
+        response.setStatus(ErrorCodes.SUCCESS);
+        response.setState("success");
+        response.setValue(value);
+        return response;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.tests.ci.internal.reporting;
+
+import io.testproject.sdk.internal.reporting.TestContext;
+import io.testproject.sdk.internal.reporting.extensions.junit4.TestContextPublisher;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.Description;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@DisplayName("Running test published by the frameworks listeners")
+@ExtendWith(io.testproject.sdk.internal.reporting.extensions.junit5.TestContextPublisher.class)
+class TestContextTest {
+
+    /**
+     * Display name of the test checking the JUnit5 extension.
+     */
+    private static final String JUNIT5_TEST_NAME = "The JUnit5 extension publishes the running test";
+
+    /**
+     * Number of tests running in parallel.
+     */
+    private static final int THREADS_COUNT = 4;
+
+    /**
+     * Maximum time to wait for a thread.
+     */
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    @DisplayName(JUNIT5_TEST_NAME)
+    void testJUnit5() {
+        assertEquals(JUNIT5_TEST_NAME, TestContext.getTestName());
+    }
+
+    @Test
+    @DisplayName("The JUnit4 listener publishes the running test")
+    void testJUnit4() throws Exception {
+        TestContextPublisher publisher = new TestContextPublisher();
+        try {
+            publisher.testStarted(Description.createTestDescription(JUnit4Test.class, "junit4"));
+            assertEquals("junit4", TestContext.getTestName());
+            publisher.testFinished(Description.createTestDescription(JUnit4Test.class, "junit4"));
+            assertNull(TestContext.getTestName());
+
+            // Parameterized tests are left to the call stack inference
+            publisher.testStarted(Description.createTestDescription(JUnit4Test.class, "junit4[0]"));
+            assertNull(TestContext.getTestName());
+        } finally {
+            TestContext.end();
+        }
+    }
+
+    @Test
+    @DisplayName("Threads started by a test inherit it until it ends")
+    void testInheritance() throws Exception {
+        TestContext.start("parent");
+        // The thread of the executor is started by the test
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals("parent", executor.submit(TestContext::getTestName).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+            TestContext.end();
+            assertNull(TestContext.getTestName());
+            assertNull(executor.submit(TestContext::getTestName).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+            TestContext.end();
+        }
+    }
+
+    @Test
+    @DisplayName("Tests running in parallel publish to their own thread")
+    void testParallel() throws Exception {
+        TestContext.end();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS_COUNT);
+        CyclicBarrier started = new CyclicBarrier(THREADS_COUNT);
+        try {
+            List<Future<String>> names = new ArrayList<>();
+            for (int i = 0; i < THREADS_COUNT; i++) {
+                String name = "test-" + i;
+                names.add(executor.submit(() -> {
+                    TestContext.start(name);
+                    try {
+                        // All the tests are running
+                        started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                        return TestContext.getTestName();
+                    } finally {
+                        TestContext.end();
+                    }
+                }));
+            }
+
+            for (int i = 0; i < THREADS_COUNT; i++) {
+                assertEquals("test-" + i, names.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            }
+            assertNull(TestContext.getTestName());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * JUnit4 test described to the listener.
+     */
+    public static final class JUnit4Test {
+
+        /**
+         * Test doing nothing.
+         */
+        @org.junit.Test
+        public void junit4() {
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import io.testproject.sdk.internal.rest.AgentConnectionPool;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.pool.PoolStats;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Agent connection pool")
+class AgentConnectionPoolTest {
+
+    /**
+     * Maximum number of connections per route in the tests.
+     */
+    private static final int MAX_PER_ROUTE = 3;
+
+    /**
+     * Number of clients created in the reuse test, like sessions and status requests.
+     */
+    private static final int CLIENTS_COUNT = 5;
+
+    /**
+     * Number of requests sent by every client.
+     */
+    private static final int REQUESTS_COUNT = 10;
+
+    /**
+     * Maximum time to wait for a connection to open.
+     */
+    private static final int TIMEOUT_MS = 5 * 1000;
+
+    @Test
+    @DisplayName("Connections are opened ahead of time and reused by all the clients")
+    void testWarmUpAndReuse() throws Exception {
+        System.setProperty(AgentConnectionPool.TP_MAX_CONNECTIONS_PER_ROUTE_VARIABLE_NAME,
+                Integer.toString(MAX_PER_ROUTE));
+        System.setProperty(AgentConnectionPool.TP_WARM_UP_CONNECTIONS_VARIABLE_NAME,
+                Integer.toString(MAX_PER_ROUTE));
+        try (StubAgent agent = new StubAgent()) {
+            URL address = agent.getAddress();
+            AgentConnectionPool pool = AgentConnectionPool.get(address);
+            assertSame(pool, AgentConnectionPool.get(new URL(address, "/api/status")));
+            assertEquals(MAX_PER_ROUTE, pool.getManager().getDefaultMaxPerRoute());
+
+            assertEquals(MAX_PER_ROUTE, pool.warmUp(TIMEOUT_MS));
+            assertEquals(MAX_PER_ROUTE, pool.getManager().getTotalStats().getAvailable());
+
+            // Connections that are already open are not opened again
+            assertEquals(0, pool.warmUp(TIMEOUT_MS));
+
+            for (int i = 0; i < CLIENTS_COUNT; i++) {
+                try (CloseableHttpClient client = pool.newClientBuilder().build()) {
+                    for (int j = 0; j < REQUESTS_COUNT; j++) {
+                        HttpPost post = new HttpPost(address + StubAgent.REPORT_BATCH);
+                        post.setEntity(new StringEntity("[]", ContentType.APPLICATION_JSON));
+                        try (CloseableHttpResponse response = client.execute(post)) {
+                            assertEquals(HttpURLConnection.HTTP_OK, response.getStatusLine().getStatusCode());
+                        }
+                    }
+                }
+            }
+
+            // Closing the clients left the pool open, and every connection was returned to it
+            PoolStats stats = pool.getManager().getTotalStats();
+            assertEquals(0, stats.getLeased());
+            assertTrue(stats.getAvailable() > 0 && stats.getAvailable() <= MAX_PER_ROUTE,
+                    "Pool holds " + stats.getAvailable() + " connections");
+            assertEquals(CLIENTS_COUNT * REQUESTS_COUNT, agent.getBatches());
+        } finally {
+            System.clearProperty(AgentConnectionPool.TP_MAX_CONNECTIONS_PER_ROUTE_VARIABLE_NAME);
+            System.clearProperty(AgentConnectionPool.TP_WARM_UP_CONNECTIONS_VARIABLE_NAME);
+        }
+    }
+
+    @Test
+    @DisplayName("Warming up an unreachable Agent is ignored")
+    void testWarmUpUnreachable() throws Exception {
+        URL address;
+        try (StubAgent agent = new StubAgent()) {
+            address = agent.getAddress();
+        }
+
+        assertEquals(0, AgentConnectionPool.get(address).warmUp(TIMEOUT_MS));
+        assertEquals(0, AgentConnectionPool.get(address).getManager().getTotalStats().getLeased());
+    }
+}
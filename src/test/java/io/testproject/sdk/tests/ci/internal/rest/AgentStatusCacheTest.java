@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import com.google.gson.Gson;
+import io.testproject.sdk.internal.exceptions.AgentConnectException;
+import io.testproject.sdk.internal.rest.AgentCapabilities;
+import io.testproject.sdk.internal.rest.AgentStatusCache;
+import io.testproject.sdk.internal.rest.messages.AgentStatusResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Agent status cache")
+class AgentStatusCacheTest {
+
+    /**
+     * Number of drivers created in the tests.
+     */
+    private static final int DRIVERS_COUNT = 5;
+
+    /**
+     * Short time to keep a status, in milliseconds.
+     */
+    private static final long SHORT_TTL_MS = 50;
+
+    @Test
+    @DisplayName("Status is requested once for all the drivers, and again when the Agent fails")
+    void testSharedAndInvalidated() throws Exception {
+        URL address = new URL("http://status-shared.invalid:8585");
+        AtomicInteger requests = new AtomicInteger();
+        AgentStatusCache.Loader loader = url -> {
+            requests.incrementAndGet();
+            return status("3.2.0");
+        };
+
+        for (int i = 0; i < DRIVERS_COUNT; i++) {
+            AgentCapabilities capabilities = AgentStatusCache.getCapabilities(address, loader);
+            assertEquals("3.2.0", capabilities.getVersion());
+            assertTrue(capabilities.isBatchReports());
+        }
+        assertSame(AgentStatusCache.getStatus(new URL(address, "/api/status"), loader),
+                AgentStatusCache.getStatus(address, loader));
+        assertEquals(1, requests.get());
+
+        // A session reporting the same version keeps the status
+        AgentStatusCache.verify(address, "3.2.0");
+        AgentStatusCache.getCapabilities(address, loader);
+        assertEquals(1, requests.get());
+
+        // A failure drops it
+        AgentStatusCache.invalidate(address);
+        assertThrows(AgentConnectException.class, () -> AgentStatusCache.getCapabilities(address, url -> {
+            throw new AgentConnectException("Agent is down");
+        }));
+        AgentStatusCache.getCapabilities(address, loader);
+        assertEquals(2, requests.get());
+
+        // An upgraded Agent drops it
+        AgentStatusCache.verify(address, "3.3.0");
+        AgentStatusCache.getCapabilities(address, loader);
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    @DisplayName("Status is requested again once it expires")
+    void testExpiration() throws Exception {
+        URL address = new URL("http://status-expiration.invalid:8585");
+        AtomicInteger requests = new AtomicInteger();
+        AgentStatusCache.Loader loader = url -> {
+            requests.incrementAndGet();
+            return status("2.5.0");
+        };
+
+        System.setProperty(AgentStatusCache.TP_STATUS_TTL_VARIABLE_NAME, Long.toString(SHORT_TTL_MS));
+        try {
+            AgentStatusCache.getCapabilities(address, loader);
+            AgentStatusCache.getCapabilities(address, loader);
+            assertEquals(1, requests.get());
+
+            Thread.sleep(SHORT_TTL_MS * 2);
+            AgentStatusCache.getCapabilities(address, loader);
+            assertEquals(2, requests.get());
+
+            // Disabled cache
+            System.setProperty(AgentStatusCache.TP_STATUS_TTL_VARIABLE_NAME, "0");
+            AgentStatusCache.invalidate(address);
+            AgentStatusCache.getCapabilities(address, loader);
+            AgentStatusCache.getCapabilities(address, loader);
+            assertEquals(4, requests.get());
+        } finally {
+            System.clearProperty(AgentStatusCache.TP_STATUS_TTL_VARIABLE_NAME);
+        }
+    }
+
+    @Test
+    @DisplayName("Capabilities are inferred from the Agent version")
+    void testCapabilities() {
+        AgentCapabilities legacy = AgentCapabilities.of("0.64.35");
+        assertTrue(legacy.isSessionReuse());
+        assertFalse(legacy.isGenericDriver());
+        assertFalse(legacy.isLocalReports());
+        assertFalse(legacy.isBatchReports());
+
+        AgentCapabilities local = AgentCapabilities.of("2.1.0");
+        assertTrue(local.isGenericDriver());
+        assertTrue(local.isLocalReports());
+        assertFalse(local.isBatchReports());
+        assertSame(local, AgentCapabilities.of("2.1.0"));
+
+        AgentCapabilities unknown = AgentCapabilities.of(null);
+        assertFalse(unknown.isSessionReuse());
+        assertFalse(unknown.isBatchReports());
+    }
+
+    /**
+     * Creates a status as returned by the Agent.
+     *
+     * @param version Agent version.
+     * @return Agent status.
+     */
+    private static AgentStatusResponse status(final String version) {
+        return new Gson().fromJson("{\"tag\":\"" + version + "\"}", AgentStatusResponse.class);
+    }
+}
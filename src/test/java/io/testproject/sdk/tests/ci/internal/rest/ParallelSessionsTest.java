@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import com.google.gson.JsonElement;
+import io.testproject.sdk.internal.rest.AgentClient;
+import io.testproject.sdk.internal.rest.ReportSettings;
+import io.testproject.sdk.internal.rest.messages.TestReport;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.openqa.selenium.MutableCapabilities;
+
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Agent clients of drivers running in parallel")
+class ParallelSessionsTest {
+
+    /**
+     * Development token sent to the stub Agent.
+     */
+    private static final String TOKEN = "token";
+
+    /**
+     * Time in milliseconds a session may take to start.
+     */
+    private static final int SESSION_TIMEOUT_MS = 10 * 1000;
+
+    /**
+     * Maximum time to wait for a driver thread.
+     */
+    private static final long TIMEOUT_SECONDS = 10;
+
+    /**
+     * Time in milliseconds between checks of the development sockets.
+     */
+    private static final long POLL_MS = 10;
+
+    @Test
+    @DisplayName("Every thread finds the client of its own driver, with its own socket and reports queue")
+    void testParallelSessions() throws Exception {
+        System.setProperty(AgentClient.TP_PARALLEL_SESSIONS_VARIABLE_NAME, "true");
+        ExecutorService firstThread = Executors.newSingleThreadExecutor();
+        ExecutorService secondThread = Executors.newSingleThreadExecutor();
+        try (StubAgent agent = new StubAgent()) {
+            // Both drivers are created at the same time, each on its own thread
+            CyclicBarrier barrier = new CyclicBarrier(2);
+            Future<AgentClient> firstFuture = firstThread.submit(() -> {
+                barrier.await();
+                return createClient(agent);
+            });
+            Future<AgentClient> secondFuture = secondThread.submit(() -> {
+                barrier.await();
+                return createClient(agent);
+            });
+            AgentClient first = firstFuture.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            AgentClient second = secondFuture.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            String firstSession = first.getSession().getSessionId();
+            String secondSession = second.getSession().getSessionId();
+
+            // Every session validated a development socket of its own
+            assertNotEquals(firstSession, secondSession);
+            assertTrue(agent.isDevSocketConnected(firstSession));
+            assertTrue(agent.isDevSocketConnected(secondSession));
+
+            // Clients are found by driver and by the thread that created the driver, never by another thread
+            assertSame(first, AgentClient.getInstance(first.getSession().getCapabilities()));
+            assertSame(second, AgentClient.getInstance(second.getSession().getCapabilities()));
+            assertSame(first, getInstance(firstThread));
+            assertSame(second, getInstance(secondThread));
+            assertNull(AgentClient.getInstance());
+
+            // Closing one session leaves the other one running
+            firstThread.submit(() -> first.close()).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            awaitDisconnected(agent, firstSession);
+            assertTrue(agent.isDevSocketConnected(secondSession));
+            assertNull(AgentClient.getInstance(first.getSession().getCapabilities()));
+            assertNull(getInstance(firstThread));
+            assertSame(second, getInstance(secondThread));
+
+            assertTrue(second.reportTest(new TestReport("Parallel test")));
+            secondThread.submit(() -> second.close()).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            awaitDisconnected(agent, secondSession);
+            List<JsonElement> received = agent.getReceived();
+            assertEquals(1, received.size());
+            assertEquals("Parallel test", received.get(0).getAsJsonObject().get("name").getAsString());
+        } finally {
+            firstThread.shutdownNow();
+            secondThread.shutdownNow();
+            System.clearProperty(AgentClient.TP_PARALLEL_SESSIONS_VARIABLE_NAME);
+        }
+    }
+
+    @Test
+    @DisplayName("The client of a driver that quit stays the current one when sessions don't run in parallel")
+    void testClosedClient() throws Exception {
+        ExecutorService otherThread = Executors.newSingleThreadExecutor();
+        try (StubAgent agent = new StubAgent()) {
+            AgentClient client = createClient(agent);
+            assertSame(client, AgentClient.getInstance());
+            assertSame(client, getInstance(otherThread));
+
+            // Quitting the driver closes its client
+            client.close();
+            assertNull(AgentClient.getInstance(client.getSession().getCapabilities()));
+            assertSame(client, AgentClient.getInstance());
+            assertSame(client, getInstance(otherThread));
+        } finally {
+            otherThread.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets the current Agent client of a thread.
+     *
+     * @param thread Thread looking the client up.
+     * @return Current Agent client of the thread, or null if it has none.
+     * @throws Exception if the lookup fails.
+     */
+    private static AgentClient getInstance(final ExecutorService thread) throws Exception {
+        return thread.submit(() -> AgentClient.getInstance()).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates the Agent client of a new driver, reporting to the stub Agent.
+     *
+     * @param agent Stub Agent.
+     * @return Agent client.
+     * @throws Exception if the session fails to start.
+     */
+    private static AgentClient createClient(final StubAgent agent) throws Exception {
+        return AgentClient.getClient(agent.getAddress(), TOKEN, new MutableCapabilities(),
+                new ReportSettings("Parallel Sessions", "Parallel Sessions"), false, SESSION_TIMEOUT_MS);
+    }
+
+    /**
+     * Waits for the stub Agent to notice that a session closed its development socket.
+     *
+     * @param agent     Stub Agent.
+     * @param sessionId ID of the session.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    private static void awaitDisconnected(final StubAgent agent, final String sessionId)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (agent.isDevSocketConnected(sessionId) && System.nanoTime() < deadline) {
+            Thread.sleep(POLL_MS);
+        }
+        assertFalse(agent.isDevSocketConnected(sessionId), "Session " + sessionId + " is still connected");
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import com.google.gson.Gson;
+import io.testproject.sdk.internal.rest.FileReportSink;
+import io.testproject.sdk.internal.rest.ReportSink;
+import io.testproject.sdk.internal.rest.ReportSinks;
+import io.testproject.sdk.internal.rest.messages.DriverCommandReport;
+import io.testproject.sdk.internal.rest.messages.Report;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Report sinks")
+class ReportSinksTest {
+
+    /**
+     * JSON serializer used to encode reports.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Number of reports recorded in the tests.
+     */
+    private static final int REPORTS_COUNT = 100;
+
+    /**
+     * Size of a file in the rotation test, holding a few reports.
+     */
+    private static final long FILE_MAX_BYTES = 1024;
+
+    @Test
+    @DisplayName("Reports are recorded as newline-delimited JSON to rotated files")
+    void testFileSink() throws Exception {
+        Path directory = Files.createTempDirectory("reports-file");
+        try {
+            List<String> expected = new ArrayList<>();
+            FileReportSink sink = new FileReportSink(directory, "file-session", FILE_MAX_BYTES);
+            for (int i = 0; i < REPORTS_COUNT; i++) {
+                byte[] payload = payload(i);
+                expected.add(new String(payload, StandardCharsets.UTF_8));
+                assertTrue(sink.accept(StubAgent.REPORT_COMMAND, payload, null));
+            }
+            sink.close();
+            assertFalse(sink.accept(StubAgent.REPORT_COMMAND, payload(0), null));
+
+            List<Path> files = files(directory);
+            assertTrue(files.size() > 1, "Reports were recorded to " + files.size() + " files");
+            for (Path file : files) {
+                assertTrue(Files.size(file) <= FILE_MAX_BYTES, file + " holds " + Files.size(file) + " bytes");
+            }
+            assertEquals(expected, readLines(files));
+
+            // Recording again for the same session appends new files
+            FileReportSink next = new FileReportSink(directory, "file-session", FILE_MAX_BYTES);
+            next.accept(StubAgent.REPORT_COMMAND, payload(REPORTS_COUNT), null);
+            next.close();
+            assertEquals(files.size() + 1, files(directory).size());
+            assertEquals(expected, readLines(files));
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @Test
+    @DisplayName("Configured sinks are combined")
+    void testCombined() throws Exception {
+        Path directory = Files.createTempDirectory("reports-file");
+        System.setProperty(ReportSinks.TP_REPORT_SINKS_VARIABLE_NAME, "Agent, file, unknown");
+        System.setProperty(FileReportSink.TP_FILE_DIR_VARIABLE_NAME, directory.toString());
+        try {
+            List<String> sent = new ArrayList<>();
+            ReportSink agent = new ReportSink() {
+                @Override
+                public boolean accept(final String route, final byte[] payload, final Report report) {
+                    sent.add(new String(payload, StandardCharsets.UTF_8));
+                    return true;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+
+            ReportSink sink = ReportSinks.open("combined-session", agent);
+            for (int i = 0; i < REPORTS_COUNT; i++) {
+                assertTrue(sink.accept(StubAgent.REPORT_COMMAND, payload(i), null));
+            }
+            sink.close();
+
+            assertEquals(REPORTS_COUNT, sent.size());
+            assertEquals(sent, readLines(files(directory)));
+
+            // No Agent sink and nothing else configured
+            System.setProperty(ReportSinks.TP_REPORT_SINKS_VARIABLE_NAME, "agent");
+            assertNull(ReportSinks.open("combined-session", null));
+        } finally {
+            System.clearProperty(ReportSinks.TP_REPORT_SINKS_VARIABLE_NAME);
+            System.clearProperty(FileReportSink.TP_FILE_DIR_VARIABLE_NAME);
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    /**
+     * Serializes a command report with a unique ID.
+     *
+     * @param id Report ID.
+     * @return Report serialized to UTF-8 encoded JSON.
+     */
+    private static byte[] payload(final int id) {
+        DriverCommandReport report = new DriverCommandReport("findElement",
+                Collections.singletonMap("value", "#id-" + id), null, true);
+        return GSON.toJson(report).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lists the recorded files, in the order they were written.
+     *
+     * @param directory Directory of the files.
+     * @return Recorded files.
+     * @throws Exception if the directory could not be listed.
+     */
+    private static List<Path> files(final Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted((a, b) -> Integer.compare(index(a), index(b))).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Extracts the index of a file from its name.
+     *
+     * @param file Recorded file.
+     * @return the index of the file.
+     */
+    private static int index(final Path file) {
+        String[] parts = file.getFileName().toString().split("\\.");
+        return Integer.parseInt(parts[parts.length - 2]);
+    }
+
+    /**
+     * Reads the lines of recorded files.
+     *
+     * @param files Recorded files.
+     * @return Lines of all the files, in order.
+     * @throws Exception if a file could not be read.
+     */
+    private static List<String> readLines(final List<Path> files) throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (Path file : files) {
+            lines.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import io.testproject.sdk.internal.rest.ReportsBatchEntity;
+import io.testproject.sdk.internal.rest.messages.DriverCommandReport;
+import org.apache.http.entity.StringEntity;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@DisplayName("ReportsBatchEntity")
+class ReportsBatchEntityTest {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ReportsBatchEntityTest.class);
+
+    /**
+     * JSON serializer used to encode reports.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Number of reports in the batch.
+     */
+    private static final int REPORTS_COUNT = 16;
+
+    /**
+     * Size of the screenshot attached to every report.
+     */
+    private static final int SCREENSHOT_SIZE = 256 * 1024;
+
+    /**
+     * Number of times the batch is written before measuring, to load and initialize all involved classes.
+     */
+    private static final int WARM_UP_ITERATIONS = 3;
+
+    @Test
+    @DisplayName("Batch is written as a JSON array")
+    void testJsonArray() throws Exception {
+        List<DriverCommandReport> reports = new ArrayList<>();
+        List<byte[]> payloads = new ArrayList<>();
+        for (int i = 0; i < REPORTS_COUNT; i++) {
+            DriverCommandReport report = new DriverCommandReport("findElement",
+                    Collections.singletonMap("value", "#id-" + i), null, true);
+            reports.add(report);
+            payloads.add(GSON.toJson(report).getBytes(StandardCharsets.UTF_8));
+        }
+
+        ReportsBatchEntity entity = new ReportsBatchEntity(payloads);
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        entity.writeTo(written);
+        byte[] content;
+        try (InputStream input = entity.getContent()) {
+            content = StubAgent.readBody(input);
+        }
+
+        assertTrue(entity.isChunked());
+        assertTrue(entity.isRepeatable());
+        assertArrayEquals(written.toByteArray(), content);
+        JsonArray array = new JsonParser().parse(written.toString(StandardCharsets.UTF_8)).getAsJsonArray();
+        assertEquals(GSON.toJsonTree(reports), array);
+    }
+
+    @Test
+    @DisplayName("Writing a batch allocates less than a single report")
+    void testAllocation() throws Exception {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        List<DriverCommandReport> reports = new ArrayList<>();
+        List<byte[]> payloads = new ArrayList<>();
+        long batchBytes = 0;
+        for (int i = 0; i < REPORTS_COUNT; i++) {
+            DriverCommandReport report = new DriverCommandReport("findElement",
+                    Collections.singletonMap("value", "#id-" + i), null, false);
+            report.setScreenshot("A".repeat(SCREENSHOT_SIZE));
+            reports.add(report);
+            payloads.add(GSON.toJson(report).getBytes(StandardCharsets.UTF_8));
+            batchBytes += payloads.get(i).length;
+        }
+
+        ReportsBatchEntity entity = new ReportsBatchEntity(payloads);
+        OutputStream sink = OutputStream.nullOutputStream();
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            entity.writeTo(sink);
+            new StringEntity(GSON.toJson(reports), StandardCharsets.UTF_8).writeTo(sink);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        entity.writeTo(sink);
+        long streamed = threads.getThreadAllocatedBytes(threadId) - before;
+
+        before = threads.getThreadAllocatedBytes(threadId);
+        new StringEntity(GSON.toJson(reports), StandardCharsets.UTF_8).writeTo(sink);
+        long serialized = threads.getThreadAllocatedBytes(threadId) - before;
+
+        LOG.info("Writing a batch of {} bytes allocated {} bytes streamed, {} bytes serialized as a string",
+                batchBytes, streamed, serialized);
+        assertTrue(streamed < SCREENSHOT_SIZE, "Streaming a batch allocated " + streamed + " bytes");
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import io.testproject.sdk.internal.rest.ReportsCircuitBreaker;
+import io.testproject.sdk.internal.rest.ReportsJournal;
+import io.testproject.sdk.internal.rest.ReportsOverflowPolicy;
+import io.testproject.sdk.internal.rest.ReportsQueueBatch;
+import io.testproject.sdk.internal.rest.ReportsQueues;
+import io.testproject.sdk.internal.rest.messages.DriverCommandReport;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Reports circuit breaker")
+class ReportsCircuitBreakerTest {
+
+    /**
+     * JSON serializer used to encode reports.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Number of reports submitted in every phase of a test.
+     */
+    private static final int REPORTS_COUNT = 50;
+
+    /**
+     * Delay before the first retry in the backoff test.
+     */
+    private static final long BACKOFF_MS = 100;
+
+    /**
+     * Maximum delay between retries in the backoff test.
+     */
+    private static final long MAX_BACKOFF_MS = 1000;
+
+    /**
+     * Number of retries checked in the backoff test.
+     */
+    private static final int RETRIES = 10;
+
+    /**
+     * Short delay between retries, to keep the tests fast.
+     */
+    private static final long SHORT_BACKOFF_MS = 10;
+
+    /**
+     * Short open interval, to have the Agent probed several times during a test.
+     */
+    private static final long SHORT_OPEN_MS = 100;
+
+    /**
+     * Maximum open interval when the short open interval keeps doubling.
+     */
+    private static final long SHORT_MAX_OPEN_MS = 400;
+
+    /**
+     * Open interval longer than any test, the Agent is never probed on schedule.
+     */
+    private static final long LONG_OPEN_MS = 60 * 1000;
+
+    /**
+     * Time the Agent is unavailable in the recovery test.
+     */
+    private static final long OUTAGE_MS = 1000;
+
+    /**
+     * Maximum number of requests the Agent may get during the outage:
+     * the attempts before the circuit opened, and one probe per open interval.
+     */
+    private static final int MAX_REQUESTS_DURING_OUTAGE = 10;
+
+    /**
+     * Queue memory size that only fits a part of the reports submitted in a phase.
+     */
+    private static final int SMALL_QUEUE_BYTES = 2048;
+
+    /**
+     * Maximum time submitting a phase of reports may take while the circuit is open.
+     */
+    private static final long MAX_SUBMIT_MS = 1000;
+
+    /**
+     * Maximum time to wait for a condition or for the reports thread to finish.
+     */
+    private static final long TIMEOUT_MS = 10 * 1000;
+
+    /**
+     * Interval between checks of a condition.
+     */
+    private static final long POLL_MS = 10;
+
+    @Test
+    @DisplayName("Retry delays grow exponentially up to the maximum, with jitter")
+    void testBackoff() {
+        System.setProperty(ReportsCircuitBreaker.TP_RETRY_BACKOFF_VARIABLE_NAME, Long.toString(BACKOFF_MS));
+        System.setProperty(ReportsCircuitBreaker.TP_RETRY_MAX_BACKOFF_VARIABLE_NAME, Long.toString(MAX_BACKOFF_MS));
+        try {
+            ReportsCircuitBreaker breaker = new ReportsCircuitBreaker();
+            for (int retry = 1; retry <= RETRIES; retry++) {
+                long cap = Math.min(MAX_BACKOFF_MS, BACKOFF_MS << (retry - 1));
+                long delay = breaker.backoffMillis(retry);
+                assertTrue(delay >= cap / 2 && delay <= cap, "Retry " + retry + " delayed by " + delay + "ms");
+            }
+        } finally {
+            clearProperties();
+        }
+    }
+
+    @Test
+    @DisplayName("Reporting resumes once the Agent recovers, without losing or hammering")
+    void testRecovery() throws Exception {
+        configure(SHORT_OPEN_MS);
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "breaker-session", agent.getAddress(),
+                    null, null, null);
+            ReportsCircuitBreaker breaker = queue.getCircuitBreaker();
+            Thread thread = new Thread(queue);
+            thread.start();
+
+            agent.setFailing(true);
+            submit(queue, 0, REPORTS_COUNT);
+            assertTrue(await(() -> breaker.getTrips() == 1), "Circuit did not open");
+            Thread.sleep(OUTAGE_MS);
+
+            assertNotEquals(ReportsCircuitBreaker.State.CLOSED, breaker.getState());
+            assertEquals(1, breaker.getTrips());
+            assertTrue(agent.getRejected() <= MAX_REQUESTS_DURING_OUTAGE,
+                    "Agent got " + agent.getRejected() + " requests during the outage");
+
+            // Reports submitted while the circuit is open are kept
+            submit(queue, REPORTS_COUNT, 2 * REPORTS_COUNT);
+            agent.setFailing(false);
+            assertTrue(await(() -> agent.getReports() == 2 * REPORTS_COUNT), "Reports were not sent after recovery");
+            assertEquals(ReportsCircuitBreaker.State.CLOSED, breaker.getState());
+
+            queue.stop();
+            thread.join(TIMEOUT_MS);
+            assertFalse(thread.isAlive());
+            assertEquals(expectedIds(2 * REPORTS_COUNT), receivedIds(agent));
+        } finally {
+            clearProperties();
+        }
+    }
+
+    @Test
+    @DisplayName("Reports submitted to a full queue while the circuit is open are dropped without waiting")
+    void testOpenCircuitDrops() throws Exception {
+        configure(LONG_OPEN_MS);
+        System.setProperty(ReportsOverflowPolicy.TP_OVERFLOW_TIMEOUT_VARIABLE_NAME, Long.toString(TIMEOUT_MS));
+        System.setProperty(ReportsJournal.TP_MEMORY_WATERMARK_VARIABLE_NAME, Integer.toString(SMALL_QUEUE_BYTES));
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "breaker-session", agent.getAddress(),
+                    null, null, null);
+            Thread thread = new Thread(queue);
+            thread.start();
+
+            agent.setFailing(true);
+            long start = System.currentTimeMillis();
+            submit(queue, 0, REPORTS_COUNT);
+            assertTrue(await(() -> queue.getCircuitBreaker().getTrips() == 1), "Circuit did not open");
+            assertTrue(System.currentTimeMillis() - start < TIMEOUT_MS, "Submitting waited for the full timeout");
+
+            start = System.currentTimeMillis();
+            submit(queue, REPORTS_COUNT, 2 * REPORTS_COUNT);
+            long elapsed = System.currentTimeMillis() - start;
+            assertTrue(elapsed < MAX_SUBMIT_MS, "Submitting took " + elapsed + "ms while the circuit was open");
+            long dropped = queue.getDroppedReports();
+            assertTrue(dropped > 0, "No reports were dropped");
+
+            agent.setFailing(false);
+            queue.stop();
+            thread.join(TIMEOUT_MS);
+            assertFalse(thread.isAlive());
+            assertEquals(2 * REPORTS_COUNT - dropped, agent.getReports());
+        } finally {
+            clearProperties();
+        }
+    }
+
+    @Test
+    @DisplayName("Reports are given up once the Agent is unavailable for longer than the maximum outage")
+    void testMaxOutage() throws Exception {
+        configure(SHORT_OPEN_MS);
+        System.setProperty(ReportsCircuitBreaker.TP_CIRCUIT_MAX_OUTAGE_VARIABLE_NAME, Long.toString(OUTAGE_MS));
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "breaker-session", agent.getAddress(),
+                    null, null, null);
+            Thread thread = new Thread(queue);
+            thread.start();
+
+            agent.setFailing(true);
+            submit(queue, 0, REPORTS_COUNT);
+            thread.join(TIMEOUT_MS);
+            assertFalse(thread.isAlive(), "Reports queue kept waiting for the Agent");
+
+            // Reporting stays disabled after the Agent recovers
+            agent.setFailing(false);
+            submit(queue, REPORTS_COUNT, 2 * REPORTS_COUNT);
+            assertEquals(0, agent.getReports());
+        } finally {
+            clearProperties();
+        }
+    }
+
+    @Test
+    @DisplayName("Stopping gives up waiting for the Agent and keeps the unsent reports in the journal")
+    void testStopWhileOpen() throws Exception {
+        configure(LONG_OPEN_MS);
+        Path directory = Files.createTempDirectory("reports-journal");
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsJournal journal = new ReportsJournal(directory, "breaker-session", (int) FileUtils.ONE_MB,
+                    FileUtils.ONE_MB);
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "breaker-session", agent.getAddress(),
+                    null, null, journal);
+            Thread thread = new Thread(queue);
+            thread.start();
+
+            agent.setFailing(true);
+            submit(queue, 0, REPORTS_COUNT);
+            assertTrue(await(() -> queue.getCircuitBreaker().getTrips() == 1), "Circuit did not open");
+
+            queue.stop();
+            thread.join(TIMEOUT_MS);
+            assertFalse(thread.isAlive(), "Reports queue kept waiting for the Agent");
+            assertEquals(0, agent.getReports());
+
+            ReportsJournal recovered = new ReportsJournal(directory, "breaker-session", (int) FileUtils.ONE_MB,
+                    FileUtils.ONE_MB);
+            List<String> saved = new ArrayList<>();
+            for (ReportsJournal.Record record = recovered.poll(); record != null; record = recovered.poll()) {
+                saved.add(GSON.fromJson(new String(record.getPayload(), StandardCharsets.UTF_8),
+                        DriverCommandReport.class).getCommandParameters().get("value").toString());
+            }
+            recovered.close();
+            assertEquals(expectedIds(REPORTS_COUNT), saved);
+        } finally {
+            clearProperties();
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    /**
+     * Configures short retry delays and the circuit open interval.
+     *
+     * @param openMs Time in milliseconds the circuit stays open.
+     */
+    private static void configure(final long openMs) {
+        System.setProperty(ReportsCircuitBreaker.TP_RETRY_BACKOFF_VARIABLE_NAME, Long.toString(SHORT_BACKOFF_MS));
+        System.setProperty(ReportsCircuitBreaker.TP_RETRY_MAX_BACKOFF_VARIABLE_NAME,
+                Long.toString(SHORT_BACKOFF_MS));
+        System.setProperty(ReportsCircuitBreaker.TP_CIRCUIT_OPEN_VARIABLE_NAME, Long.toString(openMs));
+        System.setProperty(ReportsCircuitBreaker.TP_CIRCUIT_MAX_OPEN_VARIABLE_NAME,
+                Long.toString(Math.max(openMs, SHORT_MAX_OPEN_MS)));
+    }
+
+    /**
+     * Clears the properties set by the tests.
+     */
+    private static void clearProperties() {
+        System.clearProperty(ReportsCircuitBreaker.TP_RETRY_BACKOFF_VARIABLE_NAME);
+        System.clearProperty(ReportsCircuitBreaker.TP_RETRY_MAX_BACKOFF_VARIABLE_NAME);
+        System.clearProperty(ReportsCircuitBreaker.TP_CIRCUIT_OPEN_VARIABLE_NAME);
+        System.clearProperty(ReportsCircuitBreaker.TP_CIRCUIT_MAX_OPEN_VARIABLE_NAME);
+        System.clearProperty(ReportsCircuitBreaker.TP_CIRCUIT_MAX_OUTAGE_VARIABLE_NAME);
+        System.clearProperty(ReportsOverflowPolicy.TP_OVERFLOW_TIMEOUT_VARIABLE_NAME);
+        System.clearProperty(ReportsJournal.TP_MEMORY_WATERMARK_VARIABLE_NAME);
+    }
+
+    /**
+     * Waits for a condition to be met.
+     *
+     * @param condition Condition to wait for.
+     * @return True if the condition was met in time, otherwise False.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    private static boolean await(final BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(POLL_MS);
+        }
+        return true;
+    }
+
+    /**
+     * Submits command reports with unique IDs to the queue.
+     *
+     * @param queue Queue to submit the reports to.
+     * @param from  First index, inclusive.
+     * @param to    Last index, exclusive.
+     */
+    private static void submit(final ReportsQueueBatch queue, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            DriverCommandReport report = new DriverCommandReport("findElement",
+                    Collections.singletonMap("value", "#id-" + i), null, true);
+            ReportsQueues.submit(queue, StubAgent.REPORT_COMMAND,
+                    GSON.toJson(report).getBytes(StandardCharsets.UTF_8), report);
+        }
+    }
+
+    /**
+     * Creates the list of expected report IDs.
+     *
+     * @param count Number of reports.
+     * @return Report IDs.
+     */
+    private static List<String> expectedIds(final int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add("#id-" + i);
+        }
+        return ids;
+    }
+
+    /**
+     * Extracts the IDs of the reports received by the Agent.
+     *
+     * @param agent Stub Agent.
+     * @return Report IDs in order of arrival.
+     */
+    private static List<String> receivedIds(final StubAgent agent) {
+        List<String> ids = new ArrayList<>();
+        for (JsonElement report : agent.getReceived()) {
+            ids.add(report.getAsJsonObject().getAsJsonObject("commandParameters").get("value").getAsString());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import io.testproject.sdk.internal.rest.ReportsCoalescer;
+import io.testproject.sdk.internal.rest.messages.DriverCommandReport;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Reports coalescer")
+class ReportsCoalescerTest {
+
+    /**
+     * Number of identical reports made by the polling loop.
+     */
+    private static final int POLLS_COUNT = 25;
+
+    /**
+     * Maximum number of executions a coalesced report stands for in the limit test.
+     */
+    private static final int MAX_REPEATS = 10;
+
+    /**
+     * Time the first command was executed in the timestamps test.
+     */
+    private static final long EXECUTED_AT = 1_600_000_000_000L;
+
+    @Test
+    @DisplayName("Identical consecutive reports are merged, failures and changed results are reported on their own")
+    void testCoalescing() {
+        List<DriverCommandReport> submitted = new ArrayList<>();
+        ReportsCoalescer coalescer = new ReportsCoalescer(submitted::add, Integer.MAX_VALUE);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < POLLS_COUNT; i++) {
+            assertTrue(coalescer.submit(report("http://a", true)));
+        }
+        assertTrue(submitted.isEmpty());
+
+        // The result changed
+        assertTrue(coalescer.submit(report("http://b", true)));
+        assertEquals(1, submitted.size());
+        DriverCommandReport merged = submitted.get(0);
+        assertEquals(Integer.valueOf(POLLS_COUNT), merged.getRepeatCount());
+        assertTrue(merged.getFirstTimestamp() >= start);
+        assertTrue(merged.getLastTimestamp() >= merged.getFirstTimestamp());
+        assertTrue(merged.getLastTimestamp() <= System.currentTimeMillis());
+
+        // A failure is reported on its own, even when identical to the previous failure
+        DriverCommandReport failed = report("http://b", false);
+        assertTrue(coalescer.submit(failed));
+        assertTrue(coalescer.submit(report("http://b", false)));
+        assertEquals(List.of("http://a", "http://b", "http://b", "http://b"), results(submitted));
+        assertNull(submitted.get(1).getRepeatCount());
+        assertSame(failed, submitted.get(2));
+        assertNull(submitted.get(submitted.size() - 1).getRepeatCount());
+
+        // A single held report is submitted as is
+        DriverCommandReport single = report("http://c", true);
+        int count = submitted.size();
+        assertTrue(coalescer.submit(single));
+        assertEquals(count, submitted.size());
+        assertTrue(coalescer.flush());
+        assertSame(single, submitted.get(submitted.size() - 1));
+        assertNull(single.getRepeatCount());
+
+        // Nothing is held anymore
+        assertTrue(coalescer.flush());
+        assertEquals(count + 1, submitted.size());
+    }
+
+    @Test
+    @DisplayName("A coalesced report stands for a limited number of executions")
+    void testMaxRepeats() {
+        List<DriverCommandReport> submitted = new ArrayList<>();
+        ReportsCoalescer coalescer = new ReportsCoalescer(submitted::add, MAX_REPEATS);
+
+        for (int i = 0; i < POLLS_COUNT; i++) {
+            coalescer.submit(report("http://a", true));
+        }
+        coalescer.flush();
+
+        assertEquals(POLLS_COUNT / MAX_REPEATS + 1, submitted.size());
+        int executions = 0;
+        for (DriverCommandReport report : submitted) {
+            executions += report.getRepeatCount();
+        }
+        assertEquals(POLLS_COUNT, executions);
+    }
+
+    @Test
+    @DisplayName("Reports made later keep the time the commands were executed")
+    void testTimestamps() {
+        List<DriverCommandReport> submitted = new ArrayList<>();
+        ReportsCoalescer coalescer = new ReportsCoalescer(submitted::add, Integer.MAX_VALUE);
+
+        for (int i = 0; i < POLLS_COUNT; i++) {
+            coalescer.submit(report("http://a", true), EXECUTED_AT + i);
+        }
+        coalescer.flush();
+
+        assertEquals(1, submitted.size());
+        assertEquals(Long.valueOf(EXECUTED_AT), submitted.get(0).getFirstTimestamp());
+        assertEquals(Long.valueOf(EXECUTED_AT + POLLS_COUNT - 1), submitted.get(0).getLastTimestamp());
+    }
+
+    /**
+     * Lists the results of the submitted reports.
+     *
+     * @param submitted Submitted reports.
+     * @return the results, in order.
+     */
+    private static List<Object> results(final List<DriverCommandReport> submitted) {
+        List<Object> results = new ArrayList<>();
+        for (DriverCommandReport report : submitted) {
+            results.add(report.getResult());
+        }
+        return results;
+    }
+
+    /**
+     * Creates a report of the command reading the current URL.
+     *
+     * @param url    Command result.
+     * @param passed Boolean flag to indicate command successful execution or failure.
+     * @return Command report.
+     */
+    private static DriverCommandReport report(final String url, final boolean passed) {
+        return new DriverCommandReport("getCurrentUrl", Collections.singletonMap("sessionId", "coalesce-session"),
+                url, passed);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import com.google.gson.Gson;
+import io.testproject.sdk.internal.rest.ContentEncoding;
+import io.testproject.sdk.internal.rest.ReportsQueueBatch;
+import io.testproject.sdk.internal.rest.ReportsQueues;
+import io.testproject.sdk.internal.rest.messages.DriverCommandReport;
+import io.testproject.sdk.internal.rest.messages.StepReport;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@DisplayName("Reports compression")
+class ReportsCompressionTest {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ReportsCompressionTest.class);
+
+    /**
+     * JSON serializer used to encode reports.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Number of reports in the mix.
+     */
+    private static final int REPORTS_COUNT = 2000;
+
+    /**
+     * Every n-th report in the mix is a failed command carrying a screenshot.
+     */
+    private static final int SCREENSHOT_EVERY = 50;
+
+    /**
+     * Every n-th report in the mix is a step.
+     */
+    private static final int STEP_EVERY = 10;
+
+    /**
+     * Size of the raw screenshot image, before base64 encoding.
+     */
+    private static final int SCREENSHOT_SIZE = 64 * 1024;
+
+    /**
+     * Seed for generating the same reports mix on every run.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Maximum time to wait for the reports thread to finish.
+     */
+    private static final long JOIN_TIMEOUT_MS = 60 * 1000;
+
+    @Test
+    @DisplayName("Encoding is negotiated with the Agent")
+    void testNegotiation() {
+        assumeTrue(System.getenv(ContentEncoding.TP_COMPRESSION_VARIABLE_NAME) == null);
+
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.negotiate(null));
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.negotiate(List.of()));
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.negotiate(List.of("br")));
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate(List.of("deflate", "GZIP")));
+        assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate(List.of("deflate")));
+    }
+
+    @Test
+    @DisplayName("Compressed batches save bytes on a realistic reports mix")
+    void testByteSavings() throws Exception {
+        List<byte[]> payloads = reportsMix();
+
+        long identity = send(ContentEncoding.IDENTITY, payloads);
+        long gzip = send(ContentEncoding.GZIP, payloads);
+        long deflate = send(ContentEncoding.DEFLATE, payloads);
+
+        assertTrue(gzip < identity, "Gzip sent " + gzip + " bytes, uncompressed " + identity);
+        assertTrue(deflate < identity, "Deflate sent " + deflate + " bytes, uncompressed " + identity);
+    }
+
+    /**
+     * Sends the reports through a batch queue to a stub Agent.
+     *
+     * @param encoding Content encoding to use.
+     * @param payloads Encoded reports.
+     * @return Number of bytes the Agent received.
+     * @throws Exception if the stub Agent can't be started.
+     */
+    private static long send(final ContentEncoding encoding, final List<byte[]> payloads) throws Exception {
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "compression-session", agent.getAddress(),
+                    null, encoding, null);
+            Thread thread = new Thread(queue);
+            thread.start();
+
+            long start = System.nanoTime();
+            for (byte[] payload : payloads) {
+                ReportsQueues.submit(queue, StubAgent.REPORT_COMMAND, payload);
+            }
+            queue.stop();
+            thread.join(JOIN_TIMEOUT_MS);
+            long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            LOG.info("{}: {} reports, {} bytes in {} batches, {}ms ({} reports/s)", encoding, agent.getReports(),
+                    agent.getBytes(), agent.getBatches(), elapsedMillis,
+                    agent.getReports() * TimeUnit.SECONDS.toMillis(1) / elapsedMillis);
+            assertEquals(payloads.size(), agent.getReports());
+            assertEquals(List.of(encoding.getToken()), new ArrayList<>(agent.getContentEncodings()));
+            return agent.getBytes();
+        }
+    }
+
+    /**
+     * Generates a reports mix resembling a typical test:
+     * mostly passed commands, some steps and an occasional failed command with a screenshot.
+     *
+     * @return Encoded reports.
+     */
+    private static List<byte[]> reportsMix() {
+        Random random = new Random(SEED);
+        List<byte[]> payloads = new ArrayList<>(REPORTS_COUNT);
+        for (int i = 0; i < REPORTS_COUNT; i++) {
+            Object report;
+            if (i % SCREENSHOT_EVERY == 0) {
+                // Screenshots are already compressed images, only their base64 encoding compresses
+                byte[] image = new byte[SCREENSHOT_SIZE];
+                random.nextBytes(image);
+                DriverCommandReport command = new DriverCommandReport("clickElement",
+                        Map.of("id", "element-" + i), null, false);
+                command.setScreenshot(Base64.getEncoder().encodeToString(image));
+                report = command;
+            } else if (i % STEP_EVERY == 0) {
+                report = new StepReport("Verify item " + i + " is displayed", "Item " + i + " is displayed",
+                        true, null);
+            } else {
+                Map<String, Object> parameters = new LinkedHashMap<>();
+                parameters.put("using", "css selector");
+                parameters.put("value", "#main > div.container > ul.items > li:nth-child(" + i + ") > a.link");
+                report = new DriverCommandReport("findElement", parameters,
+                        Map.of("ELEMENT", "0." + random.nextInt() + "-" + i), true);
+            }
+            payloads.add(GSON.toJson(report).getBytes(StandardCharsets.UTF_8));
+        }
+        return payloads;
+    }
+}
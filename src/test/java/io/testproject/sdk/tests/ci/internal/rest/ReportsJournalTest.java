@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import io.testproject.sdk.internal.rest.ReportsJournal;
+import io.testproject.sdk.internal.rest.ReportsQueueBatch;
+import io.testproject.sdk.internal.rest.ReportsQueues;
+import io.testproject.sdk.internal.rest.messages.DriverCommandReport;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("ReportsJournal")
+class ReportsJournalTest {
+
+    /**
+     * JSON serializer used to encode reports.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Number of reports written in every test.
+     */
+    private static final int REPORTS_COUNT = 500;
+
+    /**
+     * Number of reports read before the journal is closed in the recovery test.
+     */
+    private static final int READ_COUNT = 123;
+
+    /**
+     * Small segment size, to have the reports span multiple segments.
+     */
+    private static final int SEGMENT_SIZE = 16 * 1024;
+
+    /**
+     * Small memory watermark, to have reports spilled to the journal.
+     */
+    private static final long MEMORY_WATERMARK = 8 * 1024;
+
+    /**
+     * Time to let the reports queue accumulate reports while the Agent is paused.
+     */
+    private static final long PAUSE_MS = 500;
+
+    /**
+     * Maximum time to wait for the reports thread to finish.
+     */
+    private static final long JOIN_TIMEOUT_MS = 30 * 1000;
+
+    @Test
+    @DisplayName("Unread records are recovered in order after the journal is reopened")
+    void testRecovery() throws Exception {
+        Path directory = Files.createTempDirectory("reports-journal");
+        try {
+            ReportsJournal journal = new ReportsJournal(directory, "recovery-session", SEGMENT_SIZE, MEMORY_WATERMARK);
+            for (int i = 0; i < REPORTS_COUNT; i++) {
+                journal.append(StubAgent.REPORT_COMMAND, payload(i));
+            }
+            for (int i = 0; i < READ_COUNT; i++) {
+                assertEquals(id(i), new String(journal.poll().getPayload(), StandardCharsets.UTF_8));
+            }
+            journal.close();
+            assertTrue(countFiles(directory) > 1, "Records were not written to multiple segments");
+
+            journal = new ReportsJournal(directory, "recovery-session", SEGMENT_SIZE, MEMORY_WATERMARK);
+            assertEquals(REPORTS_COUNT - READ_COUNT, journal.size());
+            for (int i = READ_COUNT; i < REPORTS_COUNT; i++) {
+                ReportsJournal.Record record = journal.poll();
+                assertEquals(StubAgent.REPORT_COMMAND, record.getUri());
+                assertEquals(id(i), new String(record.getPayload(), StandardCharsets.UTF_8));
+            }
+            assertNull(journal.poll());
+            journal.close();
+
+            assertEquals(0, countFiles(directory));
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @Test
+    @DisplayName("Reports spill to the journal while the Agent is stalled and are replayed in order")
+    void testSpillAndReplay() throws Exception {
+        Path directory = Files.createTempDirectory("reports-journal");
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsJournal journal = new ReportsJournal(directory, "spill-session", SEGMENT_SIZE, MEMORY_WATERMARK);
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "spill-session", agent.getAddress(),
+                    null, null, journal);
+            agent.pause();
+            Thread thread = new Thread(queue);
+            thread.start();
+
+            for (int i = 0; i < REPORTS_COUNT; i++) {
+                submit(queue, i);
+            }
+            assertTrue(journal.size() > 0, "Reports were not spilled to the journal");
+
+            Thread.sleep(PAUSE_MS);
+            agent.resume();
+            queue.stop();
+            thread.join(JOIN_TIMEOUT_MS);
+
+            assertFalse(thread.isAlive());
+            assertEquals(expectedIds(0, REPORTS_COUNT), receivedIds(agent));
+            assertEquals(0, countFiles(directory));
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @Test
+    @DisplayName("Unsent reports are saved to the journal when the queue is terminated")
+    void testUnsentSaved() throws Exception {
+        Path directory = Files.createTempDirectory("reports-journal");
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsJournal journal = new ReportsJournal(directory, "unsent-session", SEGMENT_SIZE, MEMORY_WATERMARK);
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "unsent-session", agent.getAddress(),
+                    null, null, journal);
+            agent.pause();
+            Thread thread = new Thread(queue);
+            thread.start();
+
+            for (int i = 0; i < REPORTS_COUNT; i++) {
+                submit(queue, i);
+            }
+
+            // Terminate the queue while the first batch is held by the Agent
+            Thread.sleep(PAUSE_MS);
+            thread.interrupt();
+            agent.resume();
+            thread.join(JOIN_TIMEOUT_MS);
+            assertFalse(thread.isAlive());
+
+            List<String> received = receivedIds(agent);
+            assertTrue(received.size() < REPORTS_COUNT, "All reports were sent before the queue was terminated");
+
+            ReportsJournal recovered = new ReportsJournal(directory, "unsent-session", SEGMENT_SIZE,
+                    MEMORY_WATERMARK);
+            List<String> saved = new ArrayList<>();
+            for (ReportsJournal.Record record = recovered.poll(); record != null; record = recovered.poll()) {
+                saved.add(GSON.fromJson(new String(record.getPayload(), StandardCharsets.UTF_8),
+                        DriverCommandReport.class).getCommandParameters().get("value").toString());
+            }
+            recovered.close();
+
+            List<String> all = new ArrayList<>(received);
+            all.addAll(saved);
+            assertEquals(expectedIds(0, REPORTS_COUNT), all);
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    /**
+     * Submits a command report with a unique ID to the queue.
+     *
+     * @param queue Queue to submit the report to.
+     * @param index Index of the report.
+     */
+    private static void submit(final ReportsQueueBatch queue, final int index) {
+        DriverCommandReport report = new DriverCommandReport("findElement",
+                Collections.singletonMap("value", id(index)), null, true);
+        ReportsQueues.submit(queue, StubAgent.REPORT_COMMAND, GSON.toJson(report).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a unique report ID.
+     *
+     * @param index Index of the report.
+     * @return Report ID.
+     */
+    private static String id(final int index) {
+        return "#id-" + index;
+    }
+
+    /**
+     * Encodes a report ID as a journal payload.
+     *
+     * @param index Index of the report.
+     * @return Encoded report ID.
+     */
+    private static byte[] payload(final int index) {
+        return id(index).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates the list of expected report IDs.
+     *
+     * @param from First index, inclusive.
+     * @param to   Last index, exclusive.
+     * @return Report IDs.
+     */
+    private static List<String> expectedIds(final int from, final int to) {
+        List<String> ids = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            ids.add(id(i));
+        }
+        return ids;
+    }
+
+    /**
+     * Extracts the IDs of the reports received by the Agent.
+     *
+     * @param agent Stub Agent.
+     * @return Report IDs in order of arrival.
+     */
+    private static List<String> receivedIds(final StubAgent agent) {
+        List<String> ids = new ArrayList<>();
+        for (JsonElement report : agent.getReceived()) {
+            ids.add(report.getAsJsonObject().getAsJsonObject("commandParameters").get("value").getAsString());
+        }
+        return ids;
+    }
+
+    /**
+     * Counts the files in the journal directory.
+     *
+     * @param directory Journal directory.
+     * @return number of files.
+     * @throws Exception if the directory can't be listed.
+     */
+    private static long countFiles(final Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import com.google.gson.Gson;
+import io.testproject.sdk.internal.rest.ReportsCircuitBreaker;
+import io.testproject.sdk.internal.rest.ReportsHistogram;
+import io.testproject.sdk.internal.rest.ReportsMetrics;
+import io.testproject.sdk.internal.rest.ReportsQueueBatch;
+import io.testproject.sdk.internal.rest.ReportsQueues;
+import io.testproject.sdk.internal.rest.messages.DriverCommandReport;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Reports metrics")
+class ReportsMetricsTest {
+
+    /**
+     * JSON serializer used to encode reports.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Number of reports submitted in the tests.
+     */
+    private static final int REPORTS_COUNT = 50;
+
+    /**
+     * Time the Agent takes to respond.
+     */
+    private static final long LATENCY_MS = 20;
+
+    /**
+     * Short delay between retries, to keep the tests fast.
+     */
+    private static final long SHORT_BACKOFF_MS = 10;
+
+    /**
+     * Maximum time to wait for a condition or for the reports thread to finish.
+     */
+    private static final long TIMEOUT_MS = 10 * 1000;
+
+    /**
+     * Interval between checks of a condition.
+     */
+    private static final long POLL_MS = 10;
+
+    /**
+     * Number of values recorded in the histogram test.
+     */
+    private static final int VALUES_COUNT = 1000;
+
+    @Test
+    @DisplayName("Queue depth, latencies and batches are measured and exposed with JMX")
+    void testMetrics() throws Exception {
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "metrics-session", agent.getAddress(),
+                    null, null, null);
+            ReportsMetrics metrics = queue.getMetrics();
+            metrics.register();
+            Thread thread = new Thread(queue);
+            thread.start();
+
+            // Reports pile up while the Agent is stalled
+            agent.setLatencyMillis(LATENCY_MS);
+            agent.pause();
+            submit(queue);
+            agent.resume();
+            assertTrue(await(() -> metrics.getSentReports() == REPORTS_COUNT), "Reports were not sent");
+
+            assertEquals(REPORTS_COUNT, metrics.getSubmittedReports());
+            assertEquals(0, metrics.getQueueDepth());
+            assertTrue(metrics.getQueueHighWaterMark() > 1, "High-water mark " + metrics.getQueueHighWaterMark());
+            assertEquals(REPORTS_COUNT, metrics.getBatchSize().getSum());
+            assertEquals(agent.getBatches(), metrics.getBatchSize().getCount());
+            // Every batch adds brackets and separators to its reports
+            assertEquals(agent.getBytes() - agent.getBatches() - REPORTS_COUNT, metrics.getBatchBytes().getSum());
+            assertEquals(REPORTS_COUNT, metrics.getLatency().getCount());
+            assertTrue(metrics.getLatencyMaxMillis() >= LATENCY_MS, "Max latency " + metrics.getLatencyMaxMillis());
+            assertEquals(0, metrics.getRetries());
+            assertEquals(ReportsCircuitBreaker.State.CLOSED.name(), metrics.getCircuitBreakerState());
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = metrics.getObjectName();
+            assertNotNull(name);
+            assertEquals((long) REPORTS_COUNT, server.getAttribute(name, "SentReports"));
+            assertEquals("metrics-session", server.getAttribute(name, "SessionId"));
+
+            queue.stop();
+            thread.join(TIMEOUT_MS);
+            metrics.unregister();
+            assertFalse(server.isRegistered(name));
+            assertNull(metrics.getObjectName());
+        }
+    }
+
+    @Test
+    @DisplayName("Retries are counted")
+    void testRetries() throws Exception {
+        System.setProperty(ReportsCircuitBreaker.TP_RETRY_BACKOFF_VARIABLE_NAME, Long.toString(SHORT_BACKOFF_MS));
+        System.setProperty(ReportsCircuitBreaker.TP_RETRY_MAX_BACKOFF_VARIABLE_NAME,
+                Long.toString(SHORT_BACKOFF_MS));
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "retries-session", agent.getAddress(),
+                    null, null, null);
+            ReportsMetrics metrics = queue.getMetrics();
+            Thread thread = new Thread(queue);
+            thread.start();
+
+            agent.setFailing(true);
+            submit(queue);
+            assertTrue(await(() -> metrics.getRetries() > 0), "Failed request was not retried");
+            agent.setFailing(false);
+            assertTrue(await(() -> metrics.getSentReports() == REPORTS_COUNT), "Reports were not sent");
+            assertEquals(agent.getRejected(), metrics.getRetries());
+
+            queue.stop();
+            thread.join(TIMEOUT_MS);
+        } finally {
+            System.clearProperty(ReportsCircuitBreaker.TP_RETRY_BACKOFF_VARIABLE_NAME);
+            System.clearProperty(ReportsCircuitBreaker.TP_RETRY_MAX_BACKOFF_VARIABLE_NAME);
+        }
+    }
+
+    @Test
+    @DisplayName("Percentiles are accurate to within a factor of two")
+    void testHistogram() {
+        ReportsHistogram histogram = new ReportsHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+
+        for (int i = 1; i <= VALUES_COUNT; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertEquals(VALUES_COUNT, histogram.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(VALUES_COUNT), histogram.getMax());
+        assertEquals(histogram.getMax(), histogram.getPercentile(100));
+        for (int percentile = 1; percentile < 100; percentile++) {
+            long exact = TimeUnit.MILLISECONDS.toNanos(VALUES_COUNT * percentile / 100);
+            long estimate = histogram.getPercentile(percentile);
+            assertTrue(estimate >= exact && estimate < 2 * exact, "P" + percentile + " estimated " + estimate);
+        }
+    }
+
+    /**
+     * Submits command reports to the queue.
+     *
+     * @param queue Queue to submit the reports to.
+     */
+    private static void submit(final ReportsQueueBatch queue) {
+        for (int i = 0; i < REPORTS_COUNT; i++) {
+            DriverCommandReport report = new DriverCommandReport("findElement",
+                    Collections.singletonMap("value", "#id-" + i), null, true);
+            ReportsQueues.submit(queue, StubAgent.REPORT_COMMAND,
+                    GSON.toJson(report).getBytes(StandardCharsets.UTF_8), report);
+        }
+    }
+
+    /**
+     * Waits for a condition to be met.
+     *
+     * @param condition Condition to wait for.
+     * @return True if the condition was met in time, otherwise False.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    private static boolean await(final BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(POLL_MS);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.testproject.sdk.internal.rest.ReportsOverflowPolicy;
+import io.testproject.sdk.internal.rest.ReportsQueueBatch;
+import io.testproject.sdk.internal.rest.ReportsQueues;
+import io.testproject.sdk.internal.rest.messages.DriverCommandReport;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Reports queue overflow")
+class ReportsOverflowTest {
+
+    /**
+     * JSON serializer used to encode reports.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Number of reports submitted in every test.
+     */
+    private static final int REPORTS_COUNT = 200;
+
+    /**
+     * Minimum number of reports the queue holds, submitted twice over to fill the queue by count.
+     */
+    private static final int QUEUE_SLOTS = 1024 * 16;
+
+    /**
+     * Every n-th report is of a failed command.
+     */
+    private static final int FAILED_EVERY = 5;
+
+    /**
+     * Size of the reports queue in bytes, small enough to overflow.
+     */
+    private static final int QUEUE_BYTES = 8 * 1024;
+
+    /**
+     * Size of the reports queue in bytes, large enough for all the reports once their screenshots are stripped.
+     */
+    private static final int LARGE_QUEUE_BYTES = 32 * 1024;
+
+    /**
+     * Size of the reports queue in bytes, for more small reports than the {@link #QUEUE_SLOTS} it has.
+     */
+    private static final int SLOTS_QUEUE_BYTES = QUEUE_SLOTS * 128;
+
+    /**
+     * Size of the reports queue in bytes, large enough for twice {@link #QUEUE_SLOTS} reports.
+     */
+    private static final int HUGE_QUEUE_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * Size of a screenshot, large enough to fill the queue with a few reports.
+     */
+    private static final int SCREENSHOT_SIZE = 4 * 1024;
+
+    /**
+     * Short time a submission may block, for the blocking policy.
+     */
+    private static final long SHORT_TIMEOUT_MS = 10;
+
+    /**
+     * Long time a submission may block, that policies making room for reports should never reach.
+     */
+    private static final long LONG_TIMEOUT_MS = 10 * 1000;
+
+    /**
+     * Allowance for scheduling delays when measuring how long a submission blocked.
+     */
+    private static final long SLACK_MS = 500;
+
+    /**
+     * Maximum time to wait for the reports thread to finish.
+     */
+    private static final long JOIN_TIMEOUT_MS = 30 * 1000;
+
+    @Test
+    @DisplayName("Blocking submissions time out and drop the report instead of failing")
+    void testBlock() throws Exception {
+        Result result = submit(ReportsOverflowPolicy.BLOCK, SHORT_TIMEOUT_MS, QUEUE_BYTES, REPORTS_COUNT, false);
+
+        assertTrue(result.dropped > 0, "No reports were dropped");
+        assertTrue(result.maxSubmitMillis < SHORT_TIMEOUT_MS + SLACK_MS,
+                "A submission blocked for " + result.maxSubmitMillis + "ms");
+        assertEquals(REPORTS_COUNT, result.received.size() + result.dropped);
+    }
+
+    @Test
+    @DisplayName("Oldest passed commands are dropped to make room for new reports")
+    void testDropPassed() throws Exception {
+        Result result = submit(ReportsOverflowPolicy.DROP_PASSED, LONG_TIMEOUT_MS, QUEUE_BYTES, REPORTS_COUNT, false);
+
+        assertTrue(result.dropped > 0, "No reports were dropped");
+        assertTrue(result.maxSubmitMillis < LONG_TIMEOUT_MS, "A submission blocked until it timed out");
+        assertEquals(REPORTS_COUNT, result.received.size() + result.dropped);
+
+        long failed = result.received.stream().filter(report -> !report.get("passed").getAsBoolean()).count();
+        assertEquals(REPORTS_COUNT / FAILED_EVERY, failed);
+
+        // The newest report always makes it
+        assertEquals(id(REPORTS_COUNT - 1), id(result.received.get(result.received.size() - 1)));
+    }
+
+    @Test
+    @DisplayName("Screenshots are stripped to make room for new reports")
+    void testStripScreenshots() throws Exception {
+        Result result = submit(ReportsOverflowPolicy.STRIP_SCREENSHOTS, LONG_TIMEOUT_MS, LARGE_QUEUE_BYTES,
+                REPORTS_COUNT, true);
+
+        assertEquals(0, result.dropped);
+        assertTrue(result.droppedScreenshots > 0, "No screenshots were stripped");
+        assertTrue(result.maxSubmitMillis < LONG_TIMEOUT_MS, "A submission blocked until it timed out");
+        assertEquals(REPORTS_COUNT, result.received.size());
+
+        long stripped = result.received.stream().filter(report -> !report.has("screenshot")).count();
+        assertEquals(result.droppedScreenshots, stripped);
+        for (int i = 0; i < REPORTS_COUNT; i++) {
+            assertEquals(id(i), id(result.received.get(i)));
+        }
+    }
+
+    @Test
+    @DisplayName("Reports beyond the queue slots are kept while they fit in memory")
+    void testSlots() throws Exception {
+        Result result = submit(ReportsOverflowPolicy.DROP_PASSED, LONG_TIMEOUT_MS, HUGE_QUEUE_BYTES,
+                2 * QUEUE_SLOTS, false);
+
+        assertEquals(0, result.dropped);
+        assertTrue(result.maxSubmitMillis < LONG_TIMEOUT_MS, "A submission blocked until it timed out");
+        assertEquals(2 * QUEUE_SLOTS, result.received.size());
+        for (int i = 0; i < 2 * QUEUE_SLOTS; i++) {
+            assertEquals(id(i), id(result.received.get(i)));
+        }
+    }
+
+    @Test
+    @DisplayName("New passed commands are dropped when the queue slots run out before its memory")
+    void testDropPassedSlots() throws Exception {
+        int count = QUEUE_SLOTS + REPORTS_COUNT;
+        Result result = submit(ReportsOverflowPolicy.DROP_PASSED, SHORT_TIMEOUT_MS, SLOTS_QUEUE_BYTES, count, false);
+
+        // Passed commands beyond the slots are dropped right away, failed ones only wait for the timeout
+        assertTrue(result.dropped > 0, "No reports were dropped");
+        assertTrue(result.maxSubmitMillis < SHORT_TIMEOUT_MS + SLACK_MS,
+                "A submission blocked for " + result.maxSubmitMillis + "ms");
+        assertEquals(count, result.received.size() + result.dropped);
+
+        // One slot is kept for the stop marker, all the reports that got a slot are sent in order
+        assertTrue(result.received.size() >= QUEUE_SLOTS - 1);
+        for (int i = 0; i < QUEUE_SLOTS - 1; i++) {
+            assertEquals(id(i), id(result.received.get(i)));
+        }
+    }
+
+    /**
+     * Submits reports to a queue that is not consumed until all reports are submitted, then sends them.
+     *
+     * @param policy      Overflow policy.
+     * @param timeoutMs   Time a submission may block.
+     * @param queueBytes  Size of the reports queue in bytes.
+     * @param count       Number of reports to submit.
+     * @param screenshots True to attach a screenshot to every report.
+     * @return Reports received by the Agent, and the queue statistics.
+     * @throws Exception if the stub Agent can't be started.
+     */
+    private static Result submit(final ReportsOverflowPolicy policy, final long timeoutMs, final int queueBytes,
+                                 final int count, final boolean screenshots) throws Exception {
+        System.setProperty(ReportsOverflowPolicy.TP_OVERFLOW_POLICY_VARIABLE_NAME, policy.getToken());
+        System.setProperty(ReportsOverflowPolicy.TP_OVERFLOW_TIMEOUT_VARIABLE_NAME, Long.toString(timeoutMs));
+        System.setProperty("TP_REPORTS_QUEUE_MEMORY_BYTES", Integer.toString(queueBytes));
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "overflow-session", agent.getAddress(),
+                    null, null, null);
+            assertEquals(policy, queue.getOverflowPolicy());
+
+            char[] screenshot = new char[SCREENSHOT_SIZE];
+            Arrays.fill(screenshot, 'A');
+
+            long maxSubmitNanos = 0;
+            for (int i = 0; i < count; i++) {
+                DriverCommandReport report = new DriverCommandReport("findElement",
+                        Collections.singletonMap("value", id(i)), null, i % FAILED_EVERY != 0);
+                if (screenshots) {
+                    report.setScreenshot(new String(screenshot));
+                }
+
+                long start = System.nanoTime();
+                ReportsQueues.submit(queue, StubAgent.REPORT_COMMAND,
+                        GSON.toJson(report).getBytes(StandardCharsets.UTF_8), report);
+                maxSubmitNanos = Math.max(maxSubmitNanos, System.nanoTime() - start);
+            }
+
+            Thread thread = new Thread(queue);
+            thread.start();
+            queue.stop();
+            thread.join(JOIN_TIMEOUT_MS);
+            assertFalse(thread.isAlive());
+
+            Result result = new Result();
+            result.maxSubmitMillis = TimeUnit.NANOSECONDS.toMillis(maxSubmitNanos);
+            result.dropped = queue.getDroppedReports();
+            result.droppedScreenshots = queue.getDroppedScreenshots();
+            for (JsonElement report : agent.getReceived()) {
+                result.received.add(report.getAsJsonObject());
+            }
+            return result;
+        } finally {
+            System.clearProperty(ReportsOverflowPolicy.TP_OVERFLOW_POLICY_VARIABLE_NAME);
+            System.clearProperty(ReportsOverflowPolicy.TP_OVERFLOW_TIMEOUT_VARIABLE_NAME);
+            System.clearProperty("TP_REPORTS_QUEUE_MEMORY_BYTES");
+        }
+    }
+
+    /**
+     * Creates a unique report ID.
+     *
+     * @param index Index of the report.
+     * @return Report ID.
+     */
+    private static String id(final int index) {
+        return "#id-" + index;
+    }
+
+    /**
+     * Extracts the ID of a received report.
+     *
+     * @param report Received report.
+     * @return Report ID.
+     */
+    private static String id(final JsonObject report) {
+        return report.getAsJsonObject("commandParameters").get("value").getAsString();
+    }
+
+    /**
+     * Outcome of submitting the reports.
+     */
+    private static final class Result {
+
+        /**
+         * Reports received by the Agent, in order of arrival.
+         */
+        private final List<JsonObject> received = new ArrayList<>();
+
+        /**
+         * Number of reports dropped by the queue.
+         */
+        private long dropped;
+
+        /**
+         * Number of screenshots stripped by the queue.
+         */
+        private long droppedScreenshots;
+
+        /**
+         * Longest time a single submission took.
+         */
+        private long maxSubmitMillis;
+    }
+}
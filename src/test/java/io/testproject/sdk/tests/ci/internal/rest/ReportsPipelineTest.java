@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import io.testproject.sdk.internal.rest.ReportsQueueBatch;
+import io.testproject.sdk.internal.rest.ReportsQueues;
+import io.testproject.sdk.internal.rest.messages.DriverCommandReport;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Reports pipeline")
+class ReportsPipelineTest {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ReportsPipelineTest.class);
+
+    /**
+     * JSON serializer used to encode reports.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Number of reports submitted in every test.
+     */
+    private static final int REPORTS_COUNT = 200;
+
+    /**
+     * Number of reports in a batch.
+     */
+    private static final int BATCH_SIZE = 10;
+
+    /**
+     * Number of batches in flight in the pipelined runs.
+     */
+    private static final int PIPELINE_DEPTH = 4;
+
+    /**
+     * Simulated Agent response time.
+     */
+    private static final long LATENCY_MS = 50;
+
+    /**
+     * In-flight bytes limit that fits a single batch of {@link #BATCH_SIZE} reports.
+     */
+    private static final int SINGLE_BATCH_BYTES = 1500;
+
+    /**
+     * Maximum time to wait for the reports thread to finish.
+     */
+    private static final long JOIN_TIMEOUT_MS = 30 * 1000;
+
+    @Test
+    @DisplayName("Several batches in flight improve throughput and keep the order")
+    void testPipelineThroughput() throws Exception {
+        long sequential = send(1, Integer.MAX_VALUE, false);
+        long pipelined = send(PIPELINE_DEPTH, Integer.MAX_VALUE, true);
+
+        LOG.info("Sent {} reports in {}ms one batch at a time, in {}ms with {} batches in flight",
+                REPORTS_COUNT, sequential, pipelined, PIPELINE_DEPTH);
+        assertTrue(pipelined < sequential / 2, "Pipelined: " + pipelined + "ms, sequential: " + sequential + "ms");
+    }
+
+    @Test
+    @DisplayName("Batches in flight are limited by size")
+    void testInFlightBytesLimit() throws Exception {
+        send(PIPELINE_DEPTH, SINGLE_BATCH_BYTES, false);
+    }
+
+    /**
+     * Sends the reports through a batch queue to a stub Agent with latency.
+     *
+     * @param depth            Number of batches in flight.
+     * @param maxInFlightBytes Maximum size in bytes of batches in flight.
+     * @param concurrent       True if the Agent is expected to handle several batches at once.
+     * @return Time it took to send all reports in milliseconds.
+     * @throws Exception if the stub Agent can't be started.
+     */
+    private static long send(final int depth, final int maxInFlightBytes, final boolean concurrent)
+            throws Exception {
+        System.setProperty("TP_MAX_REPORTS_BATCH_SIZE", Integer.toString(BATCH_SIZE));
+        System.setProperty("TP_REPORTS_PIPELINE_DEPTH", Integer.toString(depth));
+        System.setProperty("TP_REPORTS_MAX_IN_FLIGHT_BYTES", Integer.toString(maxInFlightBytes));
+        try (StubAgent agent = new StubAgent();
+             CloseableHttpClient client = HttpClients.custom().setMaxConnPerRoute(depth).build()) {
+            agent.setLatencyMillis(LATENCY_MS);
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "pipeline-session", agent.getAddress(),
+                    null, null, null);
+            Thread thread = new Thread(queue);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < REPORTS_COUNT; i++) {
+                DriverCommandReport report = new DriverCommandReport("findElement",
+                        Collections.singletonMap("value", "#id-" + i), null, true);
+                ReportsQueues.submit(queue, StubAgent.REPORT_COMMAND,
+                        GSON.toJson(report).getBytes(StandardCharsets.UTF_8));
+            }
+            thread.start();
+            queue.stop();
+            thread.join(JOIN_TIMEOUT_MS);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertFalse(thread.isAlive());
+            assertEquals(concurrent, agent.getMaxActive() > 1, "Batches handled at once: " + agent.getMaxActive());
+
+            // Batches are restored to their original order using the sequence numbers
+            Map<Long, JsonArray> batches = agent.getSequencedBatches();
+            List<String> ids = new ArrayList<>();
+            long expectedSequence = 1;
+            for (Map.Entry<Long, JsonArray> batch : batches.entrySet()) {
+                assertEquals(expectedSequence++, (long) batch.getKey());
+                batch.getValue().forEach(report -> ids.add(report.getAsJsonObject()
+                        .getAsJsonObject("commandParameters").get("value").getAsString()));
+            }
+            for (int i = 0; i < REPORTS_COUNT; i++) {
+                assertEquals("#id-" + i, ids.get(i));
+            }
+            assertEquals(REPORTS_COUNT, ids.size());
+
+            return elapsedMillis;
+        } finally {
+            System.clearProperty("TP_MAX_REPORTS_BATCH_SIZE");
+            System.clearProperty("TP_REPORTS_PIPELINE_DEPTH");
+            System.clearProperty("TP_REPORTS_MAX_IN_FLIGHT_BYTES");
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import com.google.gson.Gson;
+import io.testproject.sdk.internal.rest.ReportsQueue;
+import io.testproject.sdk.internal.rest.ReportsQueueBatch;
+import io.testproject.sdk.internal.rest.ReportsQueues;
+import io.testproject.sdk.internal.rest.messages.DriverCommandReport;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@DisplayName("ReportsQueueBatch")
+class ReportsQueueBatchTest {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ReportsQueueBatchTest.class);
+
+    /**
+     * JSON serializer used to encode reports before submitting them.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Number of reports submitted in the throughput test.
+     */
+    private static final int REPORTS_COUNT = 1000;
+
+    /**
+     * Time to keep the queue idle when measuring CPU usage.
+     */
+    private static final long IDLE_PERIOD_MS = 1000;
+
+    /**
+     * Maximum CPU time the reports thread may consume while idle.
+     */
+    private static final long MAX_IDLE_CPU_MS = 100;
+
+    /**
+     * Size of a screenshot that is too large to share a batch with other reports.
+     */
+    private static final int LARGE_SCREENSHOT_SIZE = 1024 * 1024;
+
+    /**
+     * Size of a screenshot that fits into a batch.
+     */
+    private static final int MEDIUM_SCREENSHOT_SIZE = 100 * 1024;
+
+    /**
+     * Number of reports with medium screenshots submitted in the byte budget test.
+     */
+    private static final int MEDIUM_REPORTS_COUNT = 100;
+
+    /**
+     * Default maximum batch size in bytes.
+     */
+    private static final long MAX_BATCH_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Number of small reports submitted before and after a large one.
+     */
+    private static final int SMALL_REPORTS_COUNT = 5;
+
+    /**
+     * Maximum time to wait for the reports thread to finish.
+     */
+    private static final long JOIN_TIMEOUT_MS = 30 * 1000;
+
+    @Test
+    @DisplayName("Idle queue blocks instead of spinning")
+    void testIdleQueueDoesNotSpin() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadCpuTimeSupported());
+
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "idle-session", agent.getAddress(),
+                    null, null, null);
+            Thread thread = new Thread(queue);
+            thread.start();
+
+            Thread.sleep(IDLE_PERIOD_MS);
+            long cpuMillis = TimeUnit.NANOSECONDS.toMillis(threads.getThreadCpuTime(thread.getId()));
+
+            queue.stop();
+            thread.join(JOIN_TIMEOUT_MS);
+
+            LOG.info("Idle reports thread consumed {}ms of CPU in {}ms", cpuMillis, IDLE_PERIOD_MS);
+            assertFalse(thread.isAlive());
+            assertTrue(cpuMillis < MAX_IDLE_CPU_MS, "Idle reports thread consumed " + cpuMillis + "ms of CPU");
+        }
+    }
+
+    @Test
+    @DisplayName("Reports are delivered in full batches")
+    void testThroughput() throws Exception {
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "throughput-session", agent.getAddress(),
+                    null, null, null);
+            Thread thread = new Thread(queue);
+            thread.start();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < REPORTS_COUNT; i++) {
+                submit(queue, commandReport(i, null));
+            }
+            queue.stop();
+            thread.join(JOIN_TIMEOUT_MS);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            LOG.info("Delivered {} reports in {} batches within {}ms",
+                    agent.getReports(), agent.getBatches(), elapsedMillis);
+            assertFalse(thread.isAlive());
+            assertEquals(REPORTS_COUNT, agent.getReports());
+            assertTrue(agent.getBatches() < REPORTS_COUNT / 2, "Reports were not batched: "
+                    + agent.getBatches() + " requests for " + REPORTS_COUNT + " reports");
+        }
+    }
+
+    @Test
+    @DisplayName("Large screenshot reports are sent on their own")
+    void testLargeReportSentAlone() throws Exception {
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "large-session", agent.getAddress(),
+                    null, null, null);
+            Thread thread = new Thread(queue);
+            thread.start();
+
+            for (int i = 0; i < SMALL_REPORTS_COUNT; i++) {
+                submit(queue, commandReport(i, null));
+            }
+            submit(queue, commandReport(SMALL_REPORTS_COUNT, "A".repeat(LARGE_SCREENSHOT_SIZE)));
+            for (int i = 0; i < SMALL_REPORTS_COUNT; i++) {
+                submit(queue, commandReport(i, null));
+            }
+            queue.stop();
+            thread.join(JOIN_TIMEOUT_MS);
+
+            List<Integer> sizes = agent.getBatchSizes();
+            List<Long> bytes = agent.getBatchBytes();
+            LOG.info("Batches: {} reports, {} bytes", sizes, bytes);
+            assertEquals(SMALL_REPORTS_COUNT * 2 + 1, agent.getReports());
+            for (int i = 0; i < sizes.size(); i++) {
+                if (bytes.get(i) > LARGE_SCREENSHOT_SIZE) {
+                    assertEquals(1, (int) sizes.get(i), "Large report shared a batch with other reports");
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Batches respect the byte budget")
+    void testByteBudget() throws Exception {
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "budget-session", agent.getAddress(),
+                    null, null, null);
+            Thread thread = new Thread(queue);
+            thread.start();
+
+            for (int i = 0; i < MEDIUM_REPORTS_COUNT; i++) {
+                submit(queue, commandReport(i, "B".repeat(MEDIUM_SCREENSHOT_SIZE)));
+            }
+            queue.stop();
+            thread.join(JOIN_TIMEOUT_MS);
+
+            LOG.info("Batches: {} reports, {} bytes", agent.getBatchSizes(), agent.getBatchBytes());
+            assertEquals(MEDIUM_REPORTS_COUNT, agent.getReports());
+            assertEquals(List.of(), agent.getBatchBytes().stream().filter(b -> b > MAX_BATCH_BYTES).collect(toList()),
+                    "Batches exceeded the byte budget");
+        }
+    }
+
+    /**
+     * Creates a command report for testing.
+     *
+     * @param index      Index used to make command parameters unique.
+     * @param screenshot Screenshot to attach, may be null.
+     * @return a new command report.
+     */
+    private static DriverCommandReport commandReport(final int index, final String screenshot) {
+        DriverCommandReport report = new DriverCommandReport("findElement",
+                Collections.singletonMap("value", "#id-" + index), null, true);
+        report.setScreenshot(screenshot);
+        return report;
+    }
+
+    /**
+     * Encodes a report and submits it to the queue, the same way the Agent client does.
+     *
+     * @param queue  Queue to submit the report to.
+     * @param report Report to submit.
+     */
+    private static void submit(final ReportsQueue queue, final DriverCommandReport report) {
+        ReportsQueues.submit(queue, StubAgent.REPORT_COMMAND, GSON.toJson(report).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import io.testproject.sdk.internal.rest.ReportsRingBuffer;
+import io.testproject.sdk.internal.rest.ReportsWaitStrategy;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Reports ring buffer")
+class ReportsRingBufferTest {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ReportsRingBufferTest.class);
+
+    /**
+     * Capacity requested in the tests, rounded up to {@link #ROUNDED_CAPACITY}.
+     */
+    private static final int CAPACITY = 100;
+
+    /**
+     * Capacity of the ring buffer in the tests.
+     */
+    private static final int ROUNDED_CAPACITY = 128;
+
+    /**
+     * Number of submitting threads in the concurrency test.
+     */
+    private static final int PRODUCERS_COUNT = 8;
+
+    /**
+     * Number of elements submitted by every thread in the concurrency test.
+     */
+    private static final int ELEMENTS_COUNT = 5 * 1000;
+
+    /**
+     * Maximum time to wait for an element.
+     */
+    private static final long TIMEOUT_MS = 10 * 1000;
+
+    /**
+     * Time to wait for an element that is never submitted.
+     */
+    private static final long EMPTY_TIMEOUT_MS = 50;
+
+    /**
+     * Numbers of submitting threads compared by the benchmark.
+     */
+    private static final int[] BENCHMARK_PRODUCERS = {1, 8, 32};
+
+    /**
+     * Number of elements passed through the queues by the benchmark, for every number of threads.
+     */
+    private static final int BENCHMARK_ELEMENTS_COUNT = 4 * 1000 * 1000;
+
+    /**
+     * Capacity of the queues compared by the benchmark, as in the reports queue.
+     */
+    private static final int BENCHMARK_CAPACITY = 1024 * 16;
+
+    @Test
+    @DisplayName("Elements are taken in order, and submitting to a full queue fails")
+    void testBounded() throws Exception {
+        ReportsRingBuffer<Integer> buffer = new ReportsRingBuffer<>(CAPACITY, ReportsWaitStrategy.BLOCK);
+        assertEquals(ROUNDED_CAPACITY, buffer.getCapacity());
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.poll(EMPTY_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        for (int i = 0; i < ROUNDED_CAPACITY; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(ROUNDED_CAPACITY));
+        assertThrows(IllegalStateException.class, () -> buffer.add(ROUNDED_CAPACITY));
+        assertEquals(ROUNDED_CAPACITY, buffer.size());
+        assertEquals(0, buffer.remainingCapacity());
+
+        // Visiting stops when asked to
+        List<Integer> visited = new ArrayList<>();
+        buffer.visit(element -> visited.add(element) && element < 2);
+        assertEquals(List.of(0, 1, 2), visited);
+
+        assertEquals(Integer.valueOf(0), buffer.take());
+        assertTrue(buffer.offer(ROUNDED_CAPACITY));
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(ROUNDED_CAPACITY, buffer.drainTo(drained, Integer.MAX_VALUE));
+        for (int i = 0; i < ROUNDED_CAPACITY; i++) {
+            assertEquals(Integer.valueOf(i + 1), drained.get(i));
+        }
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.size());
+
+        // Taking fails when the thread is interrupted, even if an element is available
+        buffer.add(0);
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, buffer::take);
+        assertEquals(Integer.valueOf(0), buffer.poll());
+    }
+
+    @Test
+    @DisplayName("Elements of concurrent threads are all taken, in the order of each thread, whatever the strategy")
+    void testConcurrentProducers() throws Exception {
+        for (ReportsWaitStrategy strategy : ReportsWaitStrategy.values()) {
+            ReportsRingBuffer<long[]> buffer = new ReportsRingBuffer<>(CAPACITY, strategy);
+            List<Thread> producers = startProducers(PRODUCERS_COUNT, ELEMENTS_COUNT, buffer::offer);
+
+            long[] next = new long[PRODUCERS_COUNT];
+            for (int i = 0; i < PRODUCERS_COUNT * ELEMENTS_COUNT; i++) {
+                long[] element = buffer.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                assertTrue(element != null, "Missing element with the " + strategy.getToken() + " strategy");
+                int producer = (int) element[0];
+                assertEquals(next[producer]++, element[1]);
+            }
+
+            for (Thread producer : producers) {
+                producer.join(TIMEOUT_MS);
+            }
+            assertTrue(buffer.isEmpty());
+        }
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "TP_BENCHMARKS", matches = "true")
+    @DisplayName("Benchmark the ring buffer against a linked blocking queue")
+    void benchmarkProducers() throws Exception {
+        for (int producers : BENCHMARK_PRODUCERS) {
+            int perProducer = BENCHMARK_ELEMENTS_COUNT / producers;
+
+            LinkedBlockingQueue<long[]> linked = new LinkedBlockingQueue<>(BENCHMARK_CAPACITY);
+            long start = System.nanoTime();
+            List<Thread> threads = startProducers(producers, perProducer, linked::offer);
+            for (int i = 0; i < producers * perProducer; i++) {
+                linked.take();
+            }
+            long linkedNanos = System.nanoTime() - start;
+            joinAll(threads);
+
+            for (ReportsWaitStrategy strategy : ReportsWaitStrategy.values()) {
+                ReportsRingBuffer<long[]> buffer = new ReportsRingBuffer<>(BENCHMARK_CAPACITY, strategy);
+                start = System.nanoTime();
+                threads = startProducers(producers, perProducer, buffer::offer);
+                for (int i = 0; i < producers * perProducer; i++) {
+                    buffer.take();
+                }
+                long bufferNanos = System.nanoTime() - start;
+                joinAll(threads);
+
+                LOG.info("{} producers: linked queue {} ops/ms, ring buffer ({}) {} ops/ms", producers,
+                        producers * perProducer * TimeUnit.MILLISECONDS.toNanos(1) / linkedNanos,
+                        strategy.getToken(), producers * perProducer * TimeUnit.MILLISECONDS.toNanos(1) / bufferNanos);
+            }
+        }
+    }
+
+    /**
+     * Starts threads submitting sequential elements, retrying while the queue is full.
+     * Every element holds the index of its thread and its sequence number.
+     *
+     * @param count    Number of threads.
+     * @param elements Number of elements submitted by every thread.
+     * @param offer    Action submitting an element, returning False if the queue is full.
+     * @return the started threads.
+     */
+    private static List<Thread> startProducers(final int count, final int elements,
+                                               final Predicate<long[]> offer) {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long producer = i;
+            Thread thread = new Thread(() -> {
+                for (long sequence = 0; sequence < elements; sequence++) {
+                    long[] element = {producer, sequence};
+                    while (!offer.test(element)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        return threads;
+    }
+
+    /**
+     * Waits for threads to finish.
+     *
+     * @param threads Threads to wait for.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    private static void joinAll(final List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT_MS);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import io.testproject.sdk.internal.rest.ContentEncoding;
+import io.testproject.sdk.internal.rest.FileReportSink;
+import io.testproject.sdk.internal.rest.ReportsCircuitBreaker;
+import io.testproject.sdk.internal.rest.ReportsUploader;
+import io.testproject.sdk.internal.rest.messages.DriverCommandReport;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Reports uploader")
+class ReportsUploaderTest {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ReportsUploaderTest.class);
+
+    /**
+     * JSON serializer used to encode reports.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Number of reports recorded in the tests.
+     */
+    private static final int REPORTS_COUNT = 1000;
+
+    /**
+     * Number of reports in an uploaded batch.
+     */
+    private static final int BATCH_SIZE = 50;
+
+    /**
+     * Maximum size in bytes of an uploaded batch, large enough to never limit the batches.
+     */
+    private static final long BATCH_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Number of batches uploaded at once.
+     */
+    private static final int PARALLELISM = 4;
+
+    /**
+     * Number of reports uploaded before the upload is resumed in the resume test.
+     */
+    private static final int RESUME_AFTER = 321;
+
+    /**
+     * Number of batches started per second in the throttling test.
+     */
+    private static final int BATCHES_PER_SECOND = 20;
+
+    /**
+     * Number of reports recorded in the benchmark.
+     */
+    private static final int BENCHMARK_REPORTS_COUNT = 1000 * 1000;
+
+    /**
+     * Size of a recorded file in the benchmark, holding all the reports.
+     */
+    private static final long BENCHMARK_FILE_BYTES = Long.MAX_VALUE;
+
+    @Test
+    @DisplayName("Recorded reports are uploaded in parallel batches, in order")
+    void testUpload() throws Exception {
+        Path directory = Files.createTempDirectory("reports-upload");
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            Path file = record(directory, REPORTS_COUNT);
+            agent.setLatencyMillis(BATCHES_PER_SECOND);
+
+            ReportsUploader uploader = new ReportsUploader(client, agent.getAddress(), ContentEncoding.GZIP,
+                    BATCH_SIZE, BATCH_BYTES, PARALLELISM, 0);
+            ReportsUploader.Result result = uploader.upload(file, 0);
+
+            assertTrue(result.isComplete());
+            assertEquals(Files.size(file), result.getOffset());
+            assertEquals(REPORTS_COUNT, result.getReports());
+            assertEquals(REPORTS_COUNT / BATCH_SIZE, agent.getBatches());
+            assertTrue(agent.getMaxActive() > 1, "Batches were uploaded one at a time");
+            assertEquals(ids(0, REPORTS_COUNT), receivedIds(agent));
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @Test
+    @DisplayName("An upload that failed resumes from the offset it reached")
+    void testResume() throws Exception {
+        Path directory = Files.createTempDirectory("reports-upload");
+        System.setProperty(ReportsCircuitBreaker.TP_RETRY_BACKOFF_VARIABLE_NAME, "1");
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            Path file = record(directory, REPORTS_COUNT);
+            ReportsUploader uploader = new ReportsUploader(client, agent.getAddress(), ContentEncoding.IDENTITY,
+                    BATCH_SIZE, BATCH_BYTES, PARALLELISM, 0);
+
+            agent.setFailing(true);
+            ReportsUploader.Result failed = uploader.upload(file, 0);
+            assertFalse(failed.isComplete());
+            assertEquals(0, failed.getOffset());
+            assertEquals(0, failed.getReports());
+            assertTrue(agent.getRejected() > 0);
+
+            // Resume after some reports, while the last report is still being written
+            long offset = 0;
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            for (int i = 0; i < RESUME_AFTER; i++) {
+                offset += lines.get(i).getBytes(StandardCharsets.UTF_8).length + 1;
+            }
+            long recorded = Files.size(file);
+            Files.write(file, "{\"type\":".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+            agent.setFailing(false);
+            ReportsUploader.Result resumed = uploader.upload(file, offset);
+            assertTrue(resumed.isComplete());
+            assertEquals(recorded, resumed.getOffset());
+            assertEquals(REPORTS_COUNT - RESUME_AFTER, resumed.getReports());
+            assertEquals(recorded - offset - (REPORTS_COUNT - RESUME_AFTER), resumed.getBytes());
+            assertEquals(ids(RESUME_AFTER, REPORTS_COUNT), receivedIds(agent));
+
+            // Nothing is left to upload
+            ReportsUploader.Result again = uploader.upload(file, resumed.getOffset());
+            assertTrue(again.isComplete());
+            assertEquals(recorded, again.getOffset());
+            assertEquals(0, again.getReports());
+        } finally {
+            System.clearProperty(ReportsCircuitBreaker.TP_RETRY_BACKOFF_VARIABLE_NAME);
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @Test
+    @DisplayName("Uploads are throttled to the maximum rate of batches")
+    void testThrottling() throws Exception {
+        Path directory = Files.createTempDirectory("reports-upload");
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            int batches = BATCHES_PER_SECOND / 2;
+            Path file = record(directory, batches * BATCH_SIZE);
+            ReportsUploader uploader = new ReportsUploader(client, agent.getAddress(), ContentEncoding.IDENTITY,
+                    BATCH_SIZE, BATCH_BYTES, PARALLELISM, BATCHES_PER_SECOND);
+
+            long start = System.nanoTime();
+            assertTrue(uploader.upload(file, 0).isComplete());
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Every batch but the first waits for its turn
+            long expected = TimeUnit.SECONDS.toMillis(batches - 1) / BATCHES_PER_SECOND;
+            assertTrue(elapsed >= expected, "Uploaded " + batches + " batches in " + elapsed + " ms");
+            assertEquals(batches, agent.getBatches());
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "TP_BENCHMARKS", matches = "true")
+    @DisplayName("Benchmark uploading a million reports")
+    void benchmarkUpload() throws Exception {
+        Path directory = Files.createTempDirectory("reports-upload");
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            agent.setRetaining(false);
+            Path file = record(directory, BENCHMARK_REPORTS_COUNT);
+
+            ReportsUploader uploader = new ReportsUploader(client, agent.getAddress(), ContentEncoding.IDENTITY);
+            long start = System.nanoTime();
+            ReportsUploader.Result result = uploader.upload(file, 0);
+            long elapsed = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            assertTrue(result.isComplete());
+            assertEquals(BENCHMARK_REPORTS_COUNT, agent.getReports());
+            LOG.info("Uploaded {} reports ({} MB) in {} ms: {} reports/s, {} MB/s", result.getReports(),
+                    result.getBytes() / FileUtils.ONE_MB, elapsed,
+                    result.getReports() * TimeUnit.SECONDS.toMillis(1) / elapsed,
+                    result.getBytes() * TimeUnit.SECONDS.toMillis(1) / elapsed / FileUtils.ONE_MB);
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    /**
+     * Records command reports with sequential IDs to a single file.
+     *
+     * @param directory Directory of the file.
+     * @param count     Number of reports to record.
+     * @return The recorded file.
+     * @throws Exception if the file could not be written.
+     */
+    private static Path record(final Path directory, final int count) throws Exception {
+        FileReportSink sink = new FileReportSink(directory, "upload-session", BENCHMARK_FILE_BYTES);
+        for (int i = 0; i < count; i++) {
+            DriverCommandReport report = new DriverCommandReport("findElement",
+                    Collections.singletonMap("value", "#id-" + i), null, true);
+            assertTrue(sink.accept(StubAgent.REPORT_COMMAND, GSON.toJson(report).getBytes(StandardCharsets.UTF_8),
+                    report));
+        }
+        sink.close();
+        return sink.getFile();
+    }
+
+    /**
+     * Lists the IDs of a range of recorded reports.
+     *
+     * @param from First ID, inclusive.
+     * @param to   Last ID, exclusive.
+     * @return the IDs.
+     */
+    private static List<String> ids(final int from, final int to) {
+        List<String> ids = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            ids.add("#id-" + i);
+        }
+        return ids;
+    }
+
+    /**
+     * Lists the IDs of the reports received by the stub Agent, in the order of the batches.
+     *
+     * @param agent Stub Agent.
+     * @return the IDs.
+     */
+    private static List<String> receivedIds(final StubAgent agent) {
+        List<String> ids = new ArrayList<>();
+        for (JsonArray batch : agent.getSequencedBatches().values()) {
+            for (JsonElement report : batch) {
+                ids.add(report.getAsJsonObject().getAsJsonObject("commandParameters").get("value").getAsString());
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.testproject.sdk.internal.rest.ReportsCircuitBreaker;
+import io.testproject.sdk.internal.rest.ReportsOverflowPolicy;
+import io.testproject.sdk.internal.rest.ReportsQueueBatch;
+import io.testproject.sdk.internal.rest.ReportsQueues;
+import io.testproject.sdk.internal.rest.ScreenshotCache;
+import io.testproject.sdk.internal.rest.messages.DriverCommandReport;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Screenshots deduplication")
+class ScreenshotCacheTest {
+
+    /**
+     * JSON serializer used to encode reports.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Number of reports submitted in the suite.
+     */
+    private static final int REPORTS_COUNT = 200;
+
+    /**
+     * Number of distinct screenshots in the suite, most screens are captured over and over again.
+     */
+    private static final int DISTINCT_SCREENSHOTS = 5;
+
+    /**
+     * Size of a raw screenshot, before base64 encoding.
+     */
+    private static final int SCREENSHOT_SIZE = 64 * 1024;
+
+    /**
+     * Seed of the random screenshots, so that runs are reproducible.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Size of the reports queue in bytes, that holds a single report with a screenshot.
+     */
+    private static final int QUEUE_BYTES = SCREENSHOT_SIZE * 2;
+
+    /**
+     * Time a submission may wait for room in the queue, longer than sending the queued reports takes.
+     */
+    private static final long OVERFLOW_TIMEOUT_MS = 10 * 1000;
+
+    /**
+     * Time a submission may wait for room in the queue, when the queue is not consumed.
+     */
+    private static final long SHORT_OVERFLOW_TIMEOUT_MS = 100;
+
+    /**
+     * Short delay between retries, to give up sending reports quickly.
+     */
+    private static final long BACKOFF_MS = 10;
+
+    /**
+     * Maximum time to wait for the reports thread to finish, or for the Agent to receive reports.
+     */
+    private static final long JOIN_TIMEOUT_MS = 30 * 1000;
+
+    /**
+     * Interval between checks of the reports received by the Agent.
+     */
+    private static final long POLL_MS = 10;
+
+    @Test
+    @DisplayName("Repeated screenshots are sent once and resolved by digest")
+    void testDeduplication() throws Exception {
+        List<String> screenshots = screenshots();
+
+        Suite inline = run(screenshots, null);
+        Suite deduplicated = run(screenshots, new ScreenshotCache(DISTINCT_SCREENSHOTS));
+
+        assertEquals(expected(screenshots), inline.received);
+        assertEquals(expected(screenshots), deduplicated.received);
+        assertEquals(0, deduplicated.unresolved);
+        assertTrue(deduplicated.bytes * DISTINCT_SCREENSHOTS < inline.bytes,
+                "Sent " + deduplicated.bytes + " bytes instead of " + inline.bytes);
+    }
+
+    @Test
+    @DisplayName("Screenshots evicted from the cache are sent again")
+    void testEviction() {
+        List<String> screenshots = screenshots();
+        ScreenshotCache cache = new ScreenshotCache(2);
+
+        assertNotNull(deduplicate(cache, screenshots.get(0)).getScreenshot());
+        assertNotNull(deduplicate(cache, screenshots.get(1)).getScreenshot());
+        assertNull(deduplicate(cache, screenshots.get(0)).getScreenshot());
+        assertNotNull(deduplicate(cache, screenshots.get(2)).getScreenshot());
+
+        // The second screenshot was the least recently reported, and was evicted
+        DriverCommandReport report = deduplicate(cache, screenshots.get(1));
+        assertNotNull(report.getScreenshot());
+        assertEquals(ScreenshotCache.digest(screenshots.get(1)), report.getScreenshotDigest());
+    }
+
+    @Test
+    @DisplayName("Screenshots stripped from queued reports are sent again")
+    void testStripped() throws Exception {
+        List<String> screenshots = screenshots();
+        Suite suite = overflow(ReportsOverflowPolicy.STRIP_SCREENSHOTS, screenshots, 1);
+
+        // The newest report has its screenshot stripped first
+        assertEquals(0, suite.unresolved);
+        assertEquals(Arrays.asList(screenshots.get(0), null, screenshots.get(1)), suite.received);
+    }
+
+    @Test
+    @DisplayName("Screenshots that queued reports refer to by digest are not stripped")
+    void testStrippedReferenced() throws Exception {
+        List<String> screenshots = screenshots();
+        ScreenshotCache cache = new ScreenshotCache(DISTINCT_SCREENSHOTS);
+        System.setProperty(ReportsOverflowPolicy.TP_OVERFLOW_POLICY_VARIABLE_NAME,
+                ReportsOverflowPolicy.STRIP_SCREENSHOTS.getToken());
+        System.setProperty(ReportsOverflowPolicy.TP_OVERFLOW_TIMEOUT_VARIABLE_NAME,
+                Long.toString(SHORT_OVERFLOW_TIMEOUT_MS));
+        System.setProperty("TP_REPORTS_QUEUE_MEMORY_BYTES", Integer.toString(QUEUE_BYTES));
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "referenced-session", agent.getAddress(),
+                    null, null, null);
+            ReportsQueues.setScreenshotCache(queue, cache);
+
+            // The carrier of the screenshot and a report referring to it are queued
+            assertNotNull(submit(queue, cache, screenshots.get(0), true).getScreenshot());
+            assertNull(submit(queue, cache, screenshots.get(0), true).getScreenshot());
+
+            // A large report without a screenshot doesn't fit, stripping the carrier would make room
+            char[] value = new char[SCREENSHOT_SIZE];
+            Arrays.fill(value, 'x');
+            DriverCommandReport large = new DriverCommandReport("sendKeys",
+                    Collections.singletonMap("value", new String(value)), null, true);
+            ReportsQueues.submit(queue, StubAgent.REPORT_COMMAND,
+                    GSON.toJson(large).getBytes(StandardCharsets.UTF_8), large);
+            assertEquals(0, queue.getDroppedScreenshots());
+            assertEquals(1, queue.getDroppedReports());
+
+            Thread thread = new Thread(queue);
+            thread.start();
+            queue.stop();
+            thread.join(JOIN_TIMEOUT_MS);
+            assertFalse(thread.isAlive());
+
+            assertEquals(0, agent.getUnresolved());
+            List<String> received = new ArrayList<>();
+            for (JsonElement report : agent.getReceived()) {
+                JsonObject object = report.getAsJsonObject();
+                received.add(object.has("screenshot") ? object.get("screenshot").getAsString() : null);
+            }
+            assertEquals(Arrays.asList(screenshots.get(0), screenshots.get(0)), received);
+        } finally {
+            System.clearProperty(ReportsOverflowPolicy.TP_OVERFLOW_POLICY_VARIABLE_NAME);
+            System.clearProperty(ReportsOverflowPolicy.TP_OVERFLOW_TIMEOUT_VARIABLE_NAME);
+            System.clearProperty("TP_REPORTS_QUEUE_MEMORY_BYTES");
+        }
+    }
+
+    @Test
+    @DisplayName("Screenshots of dropped reports are sent again")
+    void testDropped() throws Exception {
+        List<String> screenshots = screenshots();
+        Suite suite = overflow(ReportsOverflowPolicy.DROP_PASSED, screenshots, 0);
+
+        assertEquals(0, suite.unresolved);
+        assertEquals(Arrays.asList(screenshots.get(1), screenshots.get(0)), suite.received);
+    }
+
+    @Test
+    @DisplayName("Screenshots of reports that were given up on are sent again")
+    void testGivenUp() throws Exception {
+        List<String> screenshots = screenshots();
+        ScreenshotCache cache = new ScreenshotCache(DISTINCT_SCREENSHOTS);
+        System.setProperty(ReportsCircuitBreaker.TP_RETRY_BACKOFF_VARIABLE_NAME, Long.toString(BACKOFF_MS));
+        System.setProperty(ReportsCircuitBreaker.TP_RETRY_MAX_BACKOFF_VARIABLE_NAME, Long.toString(BACKOFF_MS));
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "given-up-session", agent.getAddress(),
+                    null, null, null);
+            ReportsQueues.setScreenshotCache(queue, cache);
+            agent.setFailing(true);
+            Thread thread = new Thread(queue);
+            thread.start();
+
+            submit(queue, cache, screenshots.get(0), true);
+            queue.stop();
+            thread.join(JOIN_TIMEOUT_MS);
+            assertFalse(thread.isAlive());
+            assertEquals(0, agent.getReports());
+
+            assertNotNull(deduplicate(cache, screenshots.get(0)).getScreenshot());
+        } finally {
+            System.clearProperty(ReportsCircuitBreaker.TP_RETRY_BACKOFF_VARIABLE_NAME);
+            System.clearProperty(ReportsCircuitBreaker.TP_RETRY_MAX_BACKOFF_VARIABLE_NAME);
+        }
+    }
+
+    @Test
+    @DisplayName("Screenshots are sent inline to Agents that don't resolve digests, or when disabled")
+    void testNegotiation() {
+        assertNull(ScreenshotCache.negotiate(false));
+        assertNotNull(ScreenshotCache.negotiate(true));
+
+        System.setProperty(ScreenshotCache.TP_DEDUPLICATION_VARIABLE_NAME, "none");
+        try {
+            assertNull(ScreenshotCache.negotiate(true));
+        } finally {
+            System.clearProperty(ScreenshotCache.TP_DEDUPLICATION_VARIABLE_NAME);
+        }
+    }
+
+    /**
+     * Reports the suite to a stub Agent.
+     *
+     * @param screenshots Distinct screenshots of the suite.
+     * @param cache       Screenshots cache, or null to send all screenshots inline.
+     * @return Screenshots resolved by the Agent, and the bytes sent.
+     * @throws Exception if the stub Agent can't be started.
+     */
+    private static Suite run(final List<String> screenshots, final ScreenshotCache cache) throws Exception {
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "screenshots-session", agent.getAddress(),
+                    null, null, null);
+            Thread thread = new Thread(queue);
+            thread.start();
+
+            for (int i = 0; i < REPORTS_COUNT; i++) {
+                DriverCommandReport report = new DriverCommandReport("findElement",
+                        Collections.singletonMap("value", "#id-" + i), null, true);
+                report.setScreenshot(screenshots.get(i % DISTINCT_SCREENSHOTS));
+                if (cache != null) {
+                    cache.deduplicate(report);
+                }
+                ReportsQueues.submit(queue, StubAgent.REPORT_COMMAND,
+                        GSON.toJson(report).getBytes(StandardCharsets.UTF_8), report);
+            }
+
+            queue.stop();
+            thread.join(JOIN_TIMEOUT_MS);
+            assertFalse(thread.isAlive());
+
+            Suite suite = new Suite();
+            suite.bytes = agent.getBytes();
+            suite.unresolved = agent.getUnresolved();
+            for (JsonElement report : agent.getReceived()) {
+                JsonObject object = report.getAsJsonObject();
+                suite.received.add(object.has("screenshot") ? object.get("screenshot").getAsString() : null);
+            }
+            return suite;
+        }
+    }
+
+    /**
+     * Reports a passed command with a screenshot and a failed command with another screenshot to a full queue,
+     * then reports the screenshot that did not make it again, once the queue is consumed.
+     *
+     * @param policy      Overflow policy making room in the queue.
+     * @param screenshots Distinct screenshots.
+     * @param lost        Index of the screenshot that does not make it.
+     * @return Screenshots resolved by the Agent.
+     * @throws Exception if the stub Agent can't be started.
+     */
+    private static Suite overflow(final ReportsOverflowPolicy policy, final List<String> screenshots,
+                                  final int lost) throws Exception {
+        ScreenshotCache cache = new ScreenshotCache(DISTINCT_SCREENSHOTS);
+        System.setProperty(ReportsOverflowPolicy.TP_OVERFLOW_POLICY_VARIABLE_NAME, policy.getToken());
+        System.setProperty(ReportsOverflowPolicy.TP_OVERFLOW_TIMEOUT_VARIABLE_NAME,
+                Long.toString(OVERFLOW_TIMEOUT_MS));
+        System.setProperty("TP_REPORTS_QUEUE_MEMORY_BYTES", Integer.toString(QUEUE_BYTES));
+        try (StubAgent agent = new StubAgent(); CloseableHttpClient client = HttpClients.createDefault()) {
+            ReportsQueueBatch queue = ReportsQueues.batch(client, "overflow-session", agent.getAddress(),
+                    null, null, null);
+            ReportsQueues.setScreenshotCache(queue, cache);
+
+            submit(queue, cache, screenshots.get(0), true);
+            submit(queue, cache, screenshots.get(1), false);
+
+            Thread thread = new Thread(queue);
+            thread.start();
+            // Wait for the failed command, so that the next report does not overflow the queue
+            long deadline = System.currentTimeMillis() + JOIN_TIMEOUT_MS;
+            while (agent.getReceived().stream().allMatch(report -> report.getAsJsonObject().get("passed")
+                    .getAsBoolean()) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(POLL_MS);
+            }
+
+            // The screenshot never reached the Agent, its next report carries it
+            assertNotNull(submit(queue, cache, screenshots.get(lost), true).getScreenshot());
+            queue.stop();
+            thread.join(JOIN_TIMEOUT_MS);
+            assertFalse(thread.isAlive());
+
+            Suite suite = new Suite();
+            suite.unresolved = agent.getUnresolved();
+            for (JsonElement report : agent.getReceived()) {
+                JsonObject object = report.getAsJsonObject();
+                suite.received.add(object.has("screenshot") ? object.get("screenshot").getAsString() : null);
+            }
+            return suite;
+        } finally {
+            System.clearProperty(ReportsOverflowPolicy.TP_OVERFLOW_POLICY_VARIABLE_NAME);
+            System.clearProperty(ReportsOverflowPolicy.TP_OVERFLOW_TIMEOUT_VARIABLE_NAME);
+            System.clearProperty("TP_REPORTS_QUEUE_MEMORY_BYTES");
+        }
+    }
+
+    /**
+     * Deduplicates the screenshot of a new command report and submits it to a queue.
+     *
+     * @param queue      Reports queue.
+     * @param cache      Screenshots cache.
+     * @param screenshot Screenshot of the report.
+     * @param passed     True if the command passed.
+     * @return Submitted report.
+     */
+    private static DriverCommandReport submit(final ReportsQueueBatch queue, final ScreenshotCache cache,
+                                              final String screenshot, final boolean passed) {
+        DriverCommandReport report = new DriverCommandReport("findElement", null, null, passed);
+        report.setScreenshot(screenshot);
+        cache.deduplicate(report);
+        ReportsQueues.submit(queue, StubAgent.REPORT_COMMAND, GSON.toJson(report).getBytes(StandardCharsets.UTF_8),
+                report);
+        return report;
+    }
+
+    /**
+     * Deduplicates the screenshot of a new command report.
+     *
+     * @param cache      Screenshots cache.
+     * @param screenshot Screenshot of the report.
+     * @return Deduplicated report.
+     */
+    private static DriverCommandReport deduplicate(final ScreenshotCache cache, final String screenshot) {
+        DriverCommandReport report = new DriverCommandReport("findElement", null, null, true);
+        report.setScreenshot(screenshot);
+        cache.deduplicate(report);
+        return report;
+    }
+
+    /**
+     * Creates distinct random screenshots.
+     *
+     * @return Base64 encoded screenshots.
+     */
+    private static List<String> screenshots() {
+        Random random = new Random(SEED);
+        List<String> screenshots = new ArrayList<>();
+        for (int i = 0; i < DISTINCT_SCREENSHOTS; i++) {
+            byte[] image = new byte[SCREENSHOT_SIZE];
+            random.nextBytes(image);
+            screenshots.add(Base64.getEncoder().encodeToString(image));
+        }
+        return screenshots;
+    }
+
+    /**
+     * Creates the list of screenshots the Agent is expected to resolve.
+     *
+     * @param screenshots Distinct screenshots of the suite.
+     * @return Screenshot of every report, in order.
+     */
+    private static List<String> expected(final List<String> screenshots) {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < REPORTS_COUNT; i++) {
+            expected.add(screenshots.get(i % DISTINCT_SCREENSHOTS));
+        }
+        return expected;
+    }
+
+    /**
+     * Outcome of reporting the suite.
+     */
+    private static final class Suite {
+
+        /**
+         * Screenshots resolved by the Agent, in order of arrival.
+         */
+        private final List<String> received = new ArrayList<>();
+
+        /**
+         * Number of request body bytes sent.
+         */
+        private long bytes;
+
+        /**
+         * Number of screenshot digests the Agent could not resolve.
+         */
+        private int unresolved;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import io.testproject.sdk.internal.rest.ReportsSequencer;
+import io.testproject.sdk.internal.rest.ScreenshotProcessor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Screenshots processing")
+class ScreenshotProcessorTest {
+
+    /**
+     * Width of a 4K screenshot.
+     */
+    private static final int WIDTH = 3840;
+
+    /**
+     * Height of a 4K screenshot.
+     */
+    private static final int HEIGHT = 2160;
+
+    /**
+     * Maximum dimension of processed screenshots.
+     */
+    private static final int MAX_DIMENSION = 1280;
+
+    /**
+     * JPEG quality of processed screenshots.
+     */
+    private static final int QUALITY = 80;
+
+    /**
+     * Expected reduction of the screenshot size.
+     */
+    private static final int REDUCTION = 10;
+
+    /**
+     * Number of lines of text drawn on the screenshot.
+     */
+    private static final int LINES = 100;
+
+    /**
+     * Font size of the text drawn on the screenshot.
+     */
+    private static final int FONT_SIZE = 18;
+
+    /**
+     * Seed of the random screenshot content, so that runs are reproducible.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Number of reports submitted in the ordering test.
+     */
+    private static final int REPORTS_COUNT = 100;
+
+    /**
+     * Maximum time to wait for the reports to be handed over.
+     */
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    @DisplayName("4K screenshots are downscaled and encoded as JPEG")
+    void testDownscale() throws Exception {
+        String screenshot = Base64.getEncoder().encodeToString(png(screenshot(WIDTH, HEIGHT)));
+        ScreenshotProcessor processor = new ScreenshotProcessor(MAX_DIMENSION, ScreenshotProcessor.JPEG, QUALITY, 1);
+        try {
+            String processed = processor.processAsync(screenshot).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            byte[] bytes = Base64.getDecoder().decode(processed);
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+
+            assertEquals(MAX_DIMENSION, image.getWidth());
+            assertEquals(MAX_DIMENSION * HEIGHT / WIDTH, image.getHeight());
+            assertEquals((byte) 0xFF, bytes[0]);
+            assertEquals((byte) 0xD8, bytes[1]);
+            assertTrue(processed.length() * REDUCTION < screenshot.length(),
+                    "Screenshot shrunk from " + screenshot.length() + " to " + processed.length() + " characters");
+        } finally {
+            processor.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Screenshots that can't be made smaller are reported as taken")
+    void testKeepOriginal() throws Exception {
+        ScreenshotProcessor processor = new ScreenshotProcessor(MAX_DIMENSION, ScreenshotProcessor.PNG, QUALITY, 1);
+        try {
+            String small = Base64.getEncoder().encodeToString(png(screenshot(MAX_DIMENSION / 2, MAX_DIMENSION / 2)));
+            assertEquals(small, processor.process(small));
+
+            String invalid = Base64.getEncoder().encodeToString("not an image".getBytes(StandardCharsets.UTF_8));
+            assertEquals(invalid, processor.process(invalid));
+            assertEquals("%%%", processor.process("%%%"));
+        } finally {
+            processor.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Reports are handed over in order, whichever screenshot is ready first")
+    void testOrdering() throws Exception {
+        ReportsSequencer sequencer = new ReportsSequencer();
+        List<Integer> handedOver = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Integer>> pending = new ArrayList<>();
+
+        for (int i = 0; i < REPORTS_COUNT; i++) {
+            if (i % 2 == 0) {
+                CompletableFuture<Integer> screenshot = new CompletableFuture<>();
+                pending.add(screenshot);
+                sequencer.submit(screenshot, handedOver::add);
+            } else {
+                int index = i;
+                sequencer.submit(() -> handedOver.add(index));
+            }
+        }
+        assertTrue(handedOver.isEmpty());
+
+        // Screenshots are ready in reverse order, one of them fails
+        for (int i = pending.size() - 1; i > 0; i--) {
+            pending.get(i).complete(i * 2);
+        }
+        pending.get(0).completeExceptionally(new IOException("Failed to process the screenshot"));
+        assertTrue(sequencer.flush(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertEquals(REPORTS_COUNT, handedOver.size());
+        assertNull(handedOver.get(0));
+        for (int i = 1; i < REPORTS_COUNT; i++) {
+            assertEquals(Integer.valueOf(i), handedOver.get(i));
+        }
+
+        // Once nothing is pending, reports are handed over right away
+        sequencer.submit(() -> handedOver.add(REPORTS_COUNT));
+        assertEquals(Integer.valueOf(REPORTS_COUNT), handedOver.get(REPORTS_COUNT));
+    }
+
+    /**
+     * Draws a screenshot of a page with a background gradient and lines of text.
+     *
+     * @param width  Width of the screenshot.
+     * @param height Height of the screenshot.
+     * @return Screenshot image.
+     */
+    private static BufferedImage screenshot(final int width, final int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            Random random = new Random(SEED);
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            graphics.setPaint(new GradientPaint(0, 0, Color.WHITE, width, height, Color.LIGHT_GRAY));
+            graphics.fillRect(0, 0, width, height);
+            graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, FONT_SIZE));
+            for (int line = 0; line < LINES; line++) {
+                graphics.setColor(new Color(random.nextInt()));
+                graphics.drawString("Line " + line + " of text " + random.nextLong(),
+                        random.nextInt(width), random.nextInt(height));
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Encodes an image as PNG, like screenshots taken by the drivers.
+     *
+     * @param image Image to encode.
+     * @return Encoded image.
+     * @throws IOException if encoding fails.
+     */
+    private static byte[] png(final BufferedImage image) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,547 @@
+/*
+ * Copyright (c) 2020 TestProject LTD. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.testproject.sdk.tests.ci.internal.rest;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.testproject.sdk.internal.rest.ReportsQueueBatch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Minimal local stand-in for the Agent reporting and development session endpoints.
+ * Counts the requests, reports and bytes it receives.
+ */
+final class StubAgent implements AutoCloseable {
+
+    /**
+     * Batch reporting endpoint address.
+     */
+    static final String REPORT_BATCH = "/api/development/report/batch";
+
+    /**
+     * Command reporting endpoint address.
+     */
+    static final String REPORT_COMMAND = "/api/development/report/command";
+
+    /**
+     * Development session endpoint address.
+     */
+    static final String DEVELOPMENT_SESSION = "/api/development/session";
+
+    /**
+     * Agent version returned when a session starts, one that supports batch reports.
+     */
+    private static final String VERSION = "3.1.0";
+
+    /**
+     * Number of threads handling incoming requests.
+     */
+    private static final int HANDLER_THREADS = 4;
+
+    /**
+     * Underlying HTTP server.
+     */
+    private final HttpServer server;
+
+    /**
+     * Executor handling incoming requests.
+     */
+    private final ExecutorService executor = Executors.newFixedThreadPool(HANDLER_THREADS);
+
+    /**
+     * Number of batch requests received.
+     */
+    private final AtomicInteger batches = new AtomicInteger();
+
+    /**
+     * Number of reports received in all batches.
+     */
+    private final AtomicInteger reports = new AtomicInteger();
+
+    /**
+     * Number of request body bytes received, as sent over the wire.
+     */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Number of request body bytes received in each batch, in order of arrival.
+     */
+    private final List<Long> batchBytes = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Number of reports received in each batch, in order of arrival.
+     */
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Content encodings of the received requests.
+     */
+    private final Set<String> contentEncodings = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Reports received in all batches, in order of arrival.
+     */
+    private final List<JsonElement> received = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Gate that holds incoming requests while the stub Agent is paused.
+     */
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+
+    /**
+     * Time in milliseconds to delay every response, simulating a remote Agent.
+     */
+    private volatile long latencyMillis;
+
+    /**
+     * Number of requests being handled.
+     */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * Maximum number of requests handled at the same time.
+     */
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    /**
+     * Flag that is raised to reject incoming requests, simulating an unavailable Agent.
+     */
+    private volatile boolean failing;
+
+    /**
+     * Flag that is lowered to only count the received reports, e.g. when benchmarking a large upload.
+     */
+    private volatile boolean retaining = true;
+
+    /**
+     * Number of requests rejected while {@link #failing}.
+     */
+    private final AtomicInteger rejected = new AtomicInteger();
+
+    /**
+     * Reports received in each batch, by batch sequence number.
+     */
+    private final Map<Long, JsonArray> sequencedBatches = new ConcurrentSkipListMap<>();
+
+    /**
+     * Screenshots received inline, by their digest.
+     */
+    private final Map<String, JsonElement> screenshots = new ConcurrentHashMap<>();
+
+    /**
+     * Number of screenshot digests that did not match a screenshot received before.
+     */
+    private final AtomicInteger unresolved = new AtomicInteger();
+
+    /**
+     * Development sockets connected by the sessions, by the UUID of the session that validated them.
+     */
+    private final Map<String, Socket> devSockets = new ConcurrentHashMap<>();
+
+    /**
+     * Starts a new stub Agent on a random local port.
+     *
+     * @throws IOException if the server can't be started.
+     */
+    StubAgent() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(REPORT_BATCH, this::handleBatch);
+        server.createContext(DEVELOPMENT_SESSION, this::handleSession);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Handles a batch report request.
+     *
+     * @param exchange HTTP exchange.
+     * @throws IOException if reading the request or writing the response fails.
+     */
+    private void handleBatch(final HttpExchange exchange) throws IOException {
+        maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+        try {
+            gate.await();
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_UNAVAILABLE, -1);
+            exchange.close();
+            return;
+        } finally {
+            active.decrementAndGet();
+        }
+
+        byte[] body = readBody(exchange.getRequestBody());
+        if (failing) {
+            rejected.incrementAndGet();
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_UNAVAILABLE, -1);
+            exchange.close();
+            return;
+        }
+
+        bytes.addAndGet(body.length);
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        contentEncodings.add(encoding != null ? encoding : "identity");
+        byte[] json = decode(body, encoding);
+        JsonArray array = new JsonParser().parse(new String(json, StandardCharsets.UTF_8)).getAsJsonArray();
+        reports.addAndGet(array.size());
+        batches.incrementAndGet();
+        batchBytes.add((long) body.length);
+        batchSizes.add(array.size());
+        if (!retaining) {
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, -1);
+            exchange.close();
+            return;
+        }
+
+        array.forEach(this::resolveScreenshot);
+        array.forEach(received::add);
+        String sequence = exchange.getRequestHeaders().getFirst(ReportsQueueBatch.SEQUENCE_HEADER);
+        if (sequence != null) {
+            sequencedBatches.put(Long.parseLong(sequence), array);
+        }
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, -1);
+        exchange.close();
+    }
+
+    /**
+     * Handles a development session request, opening a development socket for the session.
+     *
+     * @param exchange HTTP exchange.
+     * @throws IOException if reading the request or writing the response fails.
+     */
+    private void handleSession(final HttpExchange exchange) throws IOException {
+        JsonObject request = new JsonParser().parse(new String(readBody(exchange.getRequestBody()),
+                StandardCharsets.UTF_8)).getAsJsonObject();
+        String uuid = UUID.randomUUID().toString();
+        ServerSocket devSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> acceptDevSocket(devSocket, uuid), "stub-agent-socket");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        JsonArray encodings = new JsonArray();
+        encodings.add("identity");
+        JsonObject response = new JsonObject();
+        response.addProperty("sessionId", uuid);
+        response.addProperty("version", VERSION);
+        response.addProperty("serverAddress", getAddress() + "/wd/hub");
+        response.addProperty("devSocketPort", devSocket.getLocalPort());
+        response.addProperty("uuid", uuid);
+        response.add("capabilities", request.get("capabilities"));
+        response.add("acceptedContentEncodings", encodings);
+        response.addProperty("acceptsScreenshotDigests", false);
+
+        byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    /**
+     * Accepts the development socket of a session and sends it the session UUID, like the Agent does.
+     * The socket counts as connected until the session closes it.
+     *
+     * @param devSocket Server socket the session connects to.
+     * @param uuid      UUID of the session.
+     */
+    private void acceptDevSocket(final ServerSocket devSocket, final String uuid) {
+        try (ServerSocket listener = devSocket; Socket socket = listener.accept()) {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            output.writeUTF(uuid);
+            output.flush();
+            devSockets.put(uuid, socket);
+
+            // Blocks until the session closes the socket
+            InputStream input = socket.getInputStream();
+            while (input.read() != -1) {
+                continue;
+            }
+        } catch (IOException e) {
+            // The socket was closed by either side
+        } finally {
+            devSockets.remove(uuid);
+        }
+    }
+
+    /**
+     * Resolves the screenshot of a report sent by digest, like the Agent does.
+     *
+     * @param report Received report, updated with the screenshot it refers to.
+     */
+    private void resolveScreenshot(final JsonElement report) {
+        JsonObject object = report.getAsJsonObject();
+        if (!object.has("screenshotDigest")) {
+            return;
+        }
+
+        String digest = object.get("screenshotDigest").getAsString();
+        if (object.has("screenshot")) {
+            screenshots.put(digest, object.get("screenshot"));
+        } else if (screenshots.containsKey(digest)) {
+            object.add("screenshot", screenshots.get(digest));
+        } else {
+            unresolved.incrementAndGet();
+        }
+    }
+
+    /**
+     * Decompresses a request body according to its content encoding.
+     *
+     * @param body     Request body as received.
+     * @param encoding Value of the Content-Encoding header, may be null.
+     * @return Decoded request body.
+     * @throws IOException if the body can't be decompressed.
+     */
+    private static byte[] decode(final byte[] body, final String encoding) throws IOException {
+        if ("gzip".equals(encoding)) {
+            return readBody(new GZIPInputStream(new ByteArrayInputStream(body)));
+        } else if ("deflate".equals(encoding)) {
+            return readBody(new InflaterInputStream(new ByteArrayInputStream(body)));
+        }
+        return body;
+    }
+
+    /**
+     * Reads a request body fully.
+     *
+     * @param stream Request body stream.
+     * @return Request body bytes.
+     * @throws IOException if reading fails.
+     */
+    static byte[] readBody(final InputStream stream) throws IOException {
+        try (InputStream input = stream) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            input.transferTo(output);
+            return output.toByteArray();
+        }
+    }
+
+    /**
+     * Base URL of the stub Agent.
+     *
+     * @return Base URL.
+     * @throws MalformedURLException never, the address is always valid.
+     */
+    URL getAddress() throws MalformedURLException {
+        return new URL("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+    }
+
+    /**
+     * Getter for {@link #batches} field.
+     *
+     * @return number of batch requests received.
+     */
+    int getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Getter for {@link #reports} field.
+     *
+     * @return number of reports received.
+     */
+    int getReports() {
+        return reports.get();
+    }
+
+    /**
+     * Getter for {@link #bytes} field.
+     *
+     * @return number of request body bytes received.
+     */
+    long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Getter for {@link #batchBytes} field.
+     *
+     * @return copy of the bytes received in each batch.
+     */
+    List<Long> getBatchBytes() {
+        synchronized (batchBytes) {
+            return new ArrayList<>(batchBytes);
+        }
+    }
+
+    /**
+     * Getter for {@link #batchSizes} field.
+     *
+     * @return copy of the number of reports received in each batch.
+     */
+    List<Integer> getBatchSizes() {
+        synchronized (batchSizes) {
+            return new ArrayList<>(batchSizes);
+        }
+    }
+
+    /**
+     * Holds incoming requests until {@link #resume()} is called, simulating a stalled Agent.
+     */
+    void pause() {
+        gate = new CountDownLatch(1);
+    }
+
+    /**
+     * Releases the requests held since {@link #pause()} was called.
+     */
+    void resume() {
+        gate.countDown();
+    }
+
+    /**
+     * Setter for {@link #latencyMillis} field.
+     *
+     * @param latencyMillis Time in milliseconds to delay every response.
+     */
+    void setLatencyMillis(final long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Setter for {@link #failing} field.
+     *
+     * @param failing True to reject incoming requests.
+     */
+    void setFailing(final boolean failing) {
+        this.failing = failing;
+    }
+
+    /**
+     * Setter for {@link #retaining} field.
+     *
+     * @param retaining False to only count the received reports.
+     */
+    void setRetaining(final boolean retaining) {
+        this.retaining = retaining;
+    }
+
+    /**
+     * Getter for {@link #rejected} field.
+     *
+     * @return number of rejected requests.
+     */
+    int getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Getter for {@link #maxActive} field.
+     *
+     * @return maximum number of requests handled at the same time.
+     */
+    int getMaxActive() {
+        return maxActive.get();
+    }
+
+    /**
+     * Getter for {@link #sequencedBatches} field.
+     *
+     * @return copy of the reports received in each batch, by batch sequence number.
+     */
+    Map<Long, JsonArray> getSequencedBatches() {
+        return new TreeMap<>(sequencedBatches);
+    }
+
+    /**
+     * Getter for {@link #unresolved} field.
+     *
+     * @return number of screenshot digests that did not match a screenshot received before.
+     */
+    int getUnresolved() {
+        return unresolved.get();
+    }
+
+    /**
+     * Getter for {@link #received} field.
+     *
+     * @return copy of the reports received in all batches.
+     */
+    List<JsonElement> getReceived() {
+        synchronized (received) {
+            return new ArrayList<>(received);
+        }
+    }
+
+    /**
+     * Getter for {@link #contentEncodings} field.
+     *
+     * @return copy of the content encodings of the received requests.
+     */
+    Set<String> getContentEncodings() {
+        return new HashSet<>(contentEncodings);
+    }
+
+    /**
+     * Checks whether the development socket of a session is connected.
+     *
+     * @param sessionId ID of the session.
+     * @return True if the session connected its development socket and did not close it yet, otherwise False.
+     */
+    boolean isDevSocketConnected(final String sessionId) {
+        return devSockets.containsKey(sessionId);
+    }
+
+    @Override
+    public void close() {
+        resume();
+        server.stop(0);
+        executor.shutdownNow();
+        for (Socket socket : devSockets.values()) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+}